@@ -0,0 +1,8 @@
+#!/bin/bash
+
+# builds the document prior column read by Lucene.DocumentPrior.path,
+# see org.apache.lucene.search.DocumentPriorBuilder
+# usage: bin/build_document_prior.sh input output [indexPath]
+# input has one "docno value" line per document;
+# without indexPath the index is Lucene.indexDirectory
+bin/anyclass.sh org.apache.lucene.search.DocumentPriorBuilder $@
@@ -0,0 +1,9 @@
+#!/bin/bash
+
+# builds the term pair proximity postings the DFR and BiL2 phrase scorers
+# read, see org.dutir.lucene.ProximityIndexBuilder
+# usage: bin/build_proximity_index.sh [indexPath]
+# the pairs come from Lucene.ProximityIndex.pairs and frequentPairs, the
+# window sizes from Lucene.ProximityIndex.windows; rebuild after the index
+# changes, stale postings are ignored
+bin/anyclass.sh org.dutir.lucene.ProximityIndexBuilder $@
@@ -0,0 +1,8 @@
+#!/bin/bash
+
+# builds the block-compressed stored fields IndexSearcher.doc reads,
+# see org.dutir.lucene.StoredDocumentStoreBuilder
+# usage: bin/build_stored_documents.sh [indexPath]
+# without indexPath the indexes are those of Lucene.indexDirectory;
+# rebuild after the index changes, a stale store is ignored
+bin/anyclass.sh org.dutir.lucene.StoredDocumentStoreBuilder $@
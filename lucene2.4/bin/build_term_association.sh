@@ -0,0 +1,7 @@
+#!/bin/bash
+
+# builds the term association index read from TermAssociationIndex.path,
+# see org.dutir.lucene.TermAssociationIndexBuilder
+# usage: bin/build_term_association.sh output [field [indexPath]]
+# the field defaults to Lucene.SearchField, the index to Lucene.indexDirectory
+bin/anyclass.sh org.dutir.lucene.TermAssociationIndexBuilder $@
@@ -0,0 +1,7 @@
+#!/bin/bash
+
+# builds the token store of a field read from Lucene.DocumentTokenStore.path,
+# see org.dutir.lucene.DocumentTokenStoreBuilder
+# usage: bin/build_token_store.sh outputDir [field [indexPath]]
+# the field defaults to Lucene.SearchField, the index to Lucene.indexDirectory
+bin/anyclass.sh org.dutir.lucene.DocumentTokenStoreBuilder $@
@@ -0,0 +1,8 @@
+#!/bin/bash
+
+# copies an index with its documents renumbered so that similar documents
+# are close, see org.dutir.lucene.DocidReorderTool
+# usage: bin/reorder_docids.sh input output [url|cluster|bisection]
+# the old number of every new document is written to output/docid.map;
+# rebuild the document priors and stored document store of the copy
+bin/anyclass.sh org.dutir.lucene.DocidReorderTool $@
@@ -0,0 +1,57 @@
+#!/bin/bash
+
+# thin client of bin/search_server.sh, prints TREC-format results to stdout
+#
+# usage: search_client.sh [-h host] [-p port] [-D property=value]... [topics_file]...
+#  -D overrides a property for this run only, e.g.
+#     -D Lucene.Search.WeightingModel=PL2 -D Lucene.PostProcess=QueryExpansion
+#  topics files are read by the server; without them, queries are read from
+#  stdin, one "queryid query text" per line.
+#  the command REOPEN, SAVE or SHUTDOWN may be given instead of a run.
+
+HOST=${SEARCH_HOST:-127.0.0.1}
+PORT=${SEARCH_PORT:-7070}
+SETS=()
+while getopts "h:p:D:" opt; do
+	case $opt in
+		h) HOST=$OPTARG;;
+		p) PORT=$OPTARG;;
+		D) SETS+=("SET ${OPTARG%%=*} ${OPTARG#*=}");;
+		*) exit 1;;
+	esac
+done
+shift $((OPTIND-1))
+
+exec 3<>/dev/tcp/$HOST/$PORT || exit 1
+
+case "$1" in
+	REOPEN|SAVE|SHUTDOWN)
+		echo "$1" >&3;;
+	*)
+		for s in "${SETS[@]}"; do
+			echo "$s" >&3
+		done
+		if [ $# -gt 0 ]; then
+			for f in "$@"; do
+				# topics are read on the server side
+				case $f in
+					/*) echo "TOPICS $f" >&3;;
+					*) echo "TOPICS $PWD/$f" >&3;;
+				esac
+			done
+		else
+			while read -r qid query; do
+				[ -n "$qid" ] && echo "QUERY $qid $query" >&3
+			done
+		fi
+		echo "RUN" >&3;;
+esac
+
+while read -r line <&3; do
+	[ "$line" = "END" ] && break
+	case $line in
+		ERROR*) echo "$line" >&2;;
+		*) echo "$line";;
+	esac
+done
+exec 3>&-
@@ -0,0 +1,5 @@
+#!/bin/bash
+
+# runs the queries on standard input ("id text" per line) over several search nodes
+# usage: bin/search_distributed.sh host:port[,host:port...] [k] < queries
+bin/anyclass.sh org.dutir.lucene.distributed.DistributedSearcher $@
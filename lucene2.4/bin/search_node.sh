@@ -0,0 +1,6 @@
+#!/bin/bash
+
+# serves one shard to DistributedSearcher, see org.dutir.lucene.distributed.SearchNode
+# usage: bin/search_node.sh [port [indexPath]]
+# without arguments the port is Lucene.SearchNode.port and the index Lucene.indexDirectory
+bin/anyclass.sh org.dutir.lucene.distributed.SearchNode $@
@@ -0,0 +1,5 @@
+#!/bin/bash
+
+# starts the search daemon, see org.dutir.lucene.SearchServer
+# the host/port are set by Lucene.SearchServer.host/Lucene.SearchServer.port
+bin/anyclass.sh org.dutir.lucene.SearchServer $@
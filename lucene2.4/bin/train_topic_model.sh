@@ -0,0 +1,7 @@
+#!/bin/bash
+
+# trains the collection topic model read by TopicTermSelector.model,
+# see org.apache.lucene.postProcess.termselector.TopicModelTrainer
+# usage: bin/train_topic_model.sh output [indexPath]
+# without indexPath the index is Lucene.indexDirectory
+bin/anyclass.sh org.apache.lucene.postProcess.termselector.TopicModelTrainer $@
@@ -18,6 +18,7 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TopDocCollector;
 import org.apache.lucene.search.model.Idf;
+import org.dutir.lucene.DocumentTokenStore;
 import org.dutir.lucene.evaluation.TRECQrelsInMemory;
 import org.dutir.lucene.util.ApplicationSetup;
 
@@ -53,6 +54,10 @@ public class DistanceRelationPrinter extends QueryExpansion {
 			float[] idfs = getIDFs(qterms);
 
 			ScoreDoc docs[] = this.ScoreDoc;
+			// the tokens of a store are grouped by term without sorting them
+			DocumentTokenStore store = DocumentTokenStore.getFromPropertyFile(
+					searcher.getIndexReader(), field);
+			DocumentTokenStore.Tokens tokens = new DocumentTokenStore.Tokens();
 			for (int i = 0; i < 30 && i < docs.length; i++) {
 				Document document = searcher.doc(docs[i].doc);
 				float score = docs[i].score;
@@ -62,13 +67,30 @@ public class DistanceRelationPrinter extends QueryExpansion {
 				StringBuilder buf = new StringBuilder();
 				buf.append("id:" + queryid + ", score:" + score + ", qNum: "
 						+ qterms.length);
-				TermPositionVector vec = (TermPositionVector) searcher
-						.getIndexReader().getTermFreqVector(docs[i].doc, field);
-				String[] terms = vec.getTerms();
+				String[] terms;
+				int[][] positions;
 				int length = 0;
-				int freqs[] = vec.getTermFrequencies();
-				for (int k = 0; k < freqs.length; k++) {
-					length += freqs[k];
+				if (store != null) {
+					store.read(docs[i].doc, tokens);
+					terms = new String[tokens.byTerm()];
+					positions = new int[terms.length][];
+					for (int k = 0; k < terms.length; k++) {
+						terms[k] = store.term(tokens.terms[k]);
+						positions[k] = java.util.Arrays.copyOfRange(
+								tokens.termPositions, tokens.termStarts[k],
+								tokens.termStarts[k + 1]);
+					}
+					length = tokens.length;
+				} else {
+					TermPositionVector vec = (TermPositionVector) searcher
+							.getIndexReader().getTermFreqVector(docs[i].doc,
+									field);
+					terms = vec.getTerms();
+					positions = new int[terms.length][];
+					for (int k = 0; k < terms.length; k++) {
+						positions[k] = vec.getTermPositions(k);
+						length += positions[k].length;
+					}
 				}
 				float[] averPos = new float[qterms.length];
 				Arrays.fill(averPos, length);
@@ -78,7 +100,7 @@ public class DistanceRelationPrinter extends QueryExpansion {
 					String term = terms[k];
 					int qid = Arrays.binarySearch(qterms, term);
 					if (qid > -1) {
-						int[] pos = vec.getTermPositions(k);
+						int[] pos = positions[k];
 						averPos[qid] = org.dutir.util.Arrays.aver(pos);
 						minPos[qid] = pos;
 					}
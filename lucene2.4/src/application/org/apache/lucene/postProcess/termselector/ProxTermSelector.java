@@ -13,6 +13,7 @@ import org.apache.log4j.Logger;
 import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.postProcess.QueryExpansionModel;
 import org.apache.lucene.search.model.Idf;
+import org.dutir.lucene.DocumentTokenStore;
 import org.dutir.lucene.IndexUtility;
 import org.dutir.lucene.util.ApplicationSetup;
 import org.dutir.lucene.util.Distance;
@@ -105,10 +106,30 @@ public class ProxTermSelector extends TermSelector {
 		String sterms[][] = new String[docids.length][];
 		int termFreqs[][] = new int[docids.length][];
 		TermPositionVector tfvs[] = new TermPositionVector[docids.length];
+		// the tokens of a store are grouped by term without sorting them
+		DocumentTokenStore store = DocumentTokenStore.getFromPropertyFile(
+				this.searcher.getIndexReader(), field);
+		DocumentTokenStore.Tokens tokens = new DocumentTokenStore.Tokens();
 		for (int i = 0; i < docids.length; i++) {
+			if (store != null) {
+				store.read(docids[i], tokens);
+				int n = tokens.byTerm();
+				String strterms[] = sterms[i] = new String[n];
+				int freqs[] = termFreqs[i] = new int[n];
+				int positions[][] = new int[n][];
+				for (int k = 0; k < n; k++) {
+					strterms[k] = store.term(tokens.terms[k]);
+					positions[k] = java.util.Arrays.copyOfRange(
+							tokens.termPositions, tokens.termStarts[k],
+							tokens.termStarts[k + 1]);
+					freqs[k] = positions[k].length;
+				}
+				posCBTerm.insert(strterms, freqs, positions);
+				continue;
+			}
 			TermPositionVector tfv = null;
 			try {
-				tfv = (TermPositionVector) this.searcher.getIndexReader().getTermFreqVector(docids[i], field);
+				tfv = DocumentTokenStore.getTermPositionVector(this.searcher.getIndexReader(), docids[i], field);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -277,6 +298,13 @@ public class ProxTermSelector extends TermSelector {
 		}
 
 		public void insert(String terms[], int tfreqs[], TermPositionVector vec) {
+			int positions[][] = new int[terms.length][];
+			for (int i = 0; i < terms.length; i++)
+				positions[i] = vec.getTermPositions(i);
+			insert(terms, tfreqs, positions);
+		}
+
+		public void insert(String terms[], int tfreqs[], int positions[][]) {
 			reset();
 			int docLen = 0;
 			for (int i = 0; i < terms.length; i++) { // extract all terms in
@@ -285,16 +313,24 @@ public class ProxTermSelector extends TermSelector {
 				if (termset.contains(terms[i])) {
 					int pos = Arrays.binarySearch(qterms, terms[i]);
 					freqs[pos] = tfreqs[i];
-					position[pos] = vec.getTermPositions(i);
+					position[pos] = positions[i];
 					assert freqs[pos] == position[pos].length;
 				}
 			}
+			// the windows of each query term, counted once for all the terms
+			int windows[][] = null;
+			if (proxType == 2) {
+				windows = new int[queryNum][];
+				for (int i = 0; i < queryNum; i++)
+					windows[i] = Distance.windowCounts(position[i], 0,
+							position[i].length, winSize, docLen);
+			}
 
 			for (int i = 0; i < terms.length; i++) {
-				int[] termPos = vec.getTermPositions(i);
+				int[] termPos = positions[i];
 				assert tfreqs[i] == termPos.length;
 //				double count = idf(terms[i]) * count(termPos, position, winSize, docLen);
-				double count = count(termPos, position, winSize, docLen);
+				double count = count(termPos, position, windows, winSize, docLen);
 				fscore.adjustOrPutValue(terms[i], count, count);
 			}
 		}
@@ -305,10 +341,12 @@ public class ProxTermSelector extends TermSelector {
 		 * @param start
 		 * @return
 		 */
-		private double count(int[] tPos, int[][] queryPoss, int winSize, int docLen){
+		private double count(int[] tPos, int[][] queryPoss, int[][] queryWindows, int winSize, int docLen){
 			double retValue = 0;
 			for(int i=0; i < queryPoss.length; i++){
-				double count = getTimes(tPos, queryPoss[i], winSize, docLen);
+				double count = queryWindows != null ? Distance.noTimes(tPos,
+						0, tPos.length, queryWindows[i], winSize) : getTimes(
+						tPos, queryPoss[i], winSize, docLen);
 				retValue += idfs[i] * count;
 //				retValue += count;
 			}
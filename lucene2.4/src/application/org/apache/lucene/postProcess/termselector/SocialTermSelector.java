@@ -34,6 +34,7 @@ import org.apache.lucene.search.RBooleanClause.Occur;
 import org.apache.lucene.search.model.Idf;
 import org.dutir.lucene.ISManager;
 import org.dutir.lucene.IndexUtility;
+import org.dutir.lucene.TermAssociationIndex;
 import org.dutir.lucene.util.ApplicationSetup;
 import org.dutir.lucene.util.ExpansionTerms;
 import org.dutir.lucene.util.ExpansionTerms.ExpansionTerm;
@@ -63,6 +64,13 @@ public class SocialTermSelector extends TermSelector {
 			"SocialTermSelector.lambda", "0.5"));
 	static boolean combiningTag = Boolean.parseBoolean(ApplicationSetup
 			.getProperty("SocialTermSelector.combiningTag", "false"));
+	/**
+	 * co-document counts of the social index, built offline; the index of
+	 * TermAssociationIndex.path is that of the searched collection
+	 */
+	static TermAssociationIndex association = TermAssociationIndex
+			.get(ApplicationSetup.getProperty(
+					"SocialTermSelector.association.path", ""));
 	static FastCache<String, Float> conditinProbCache = null;
 	static String socialCondPath = ApplicationSetup.LUCENE_ETC + "/"
 			+ socialField + "_socialCondPro.cache";
@@ -540,6 +548,33 @@ public class SocialTermSelector extends TermSelector {
 					this.termMap.put(term, expTerms[i]);
 				}
 
+			} else if (strategy == 6) { // pmi of the offline association index
+				if (association == null)
+					logger.error("strategy 6 needs SocialTermSelector.association.path");
+				QueryExpansionModel socialQEModel = getSocialExpansionModel();
+				TermSelector selector = TermSelector.getTermSelector(
+						"DFRTermSelector", socialSearch);
+				selector.setResultSet(topdc);
+				selector.setOriginalQueryTerms(this.originalQueryTermidSet);
+				selector.setField(socialField);
+				selector.assignTermWeights(socialdocIDs, socialScores,
+						socialQEModel);
+				ExpansionTerm[] expTerms = selector
+						.getMostWeightedTerms(selector.getNumberOfUniqueTerms());
+				this.termMap = new HashMap<String, ExpansionTerm>(100);
+
+				String sq[] = this.originalQueryTermidSet.toArray(new String[0]);
+				for (int i = 0; i < expTerms.length; i++) {
+					String term = expTerms[i].getTerm();
+					float weight = 0;
+					for (int j = 0; j < sq.length; j++) {
+						double pmi = association == null ? 0 : association
+								.pmi(term, sq[j]);
+						weight += Math.max(0, pmi) + 0.0001;
+					}
+					expTerms[i].setWeightExpansion(weight);
+					this.termMap.put(term, expTerms[i]);
+				}
 			} else if (strategy == 5) { // RM or KL using socialTags
 				QueryExpansionModel socialQEModel = getSocialExpansionModel();
 				TermSelector selector = TermSelector.getTermSelector(
@@ -791,6 +826,8 @@ public class SocialTermSelector extends TermSelector {
 	}
 
 	public float conditionProb(String term1, String term2) {
+		if (association != null)
+			return (float) association.conditionProb(term1, term2);
 		return (float) ((indexUtil.getPhraseDF(toTerm(term1), toTerm(term2),
 				100) + 0.5) / (indexUtil.getDF(toTerm(term2)) + 0.5));
 	}
@@ -3,6 +3,8 @@
  */
 package org.apache.lucene.postProcess.termselector;
 
+import gnu.trove.TIntIntHashMap;
+
 import java.io.IOException;
 
 import org.apache.commons.math.distribution.NormalDistributionImpl;
@@ -11,6 +13,8 @@ import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TopDocCollector;
+import org.dutir.lucene.DocumentTokenStore;
+import org.dutir.lucene.TermAssociationIndex;
 import org.dutir.lucene.util.ApplicationSetup;
 import org.dutir.lucene.util.Distance;
 import org.dutir.math.matrix.DenseMatrix;
@@ -40,7 +44,6 @@ public class TermAssociation {
 		mSymbolTable = symbolTable;
 	}
 	
-	
 	public double conditionProb(int x, int givenY){
 		try {
 			return mMatrix.value(givenY, x);
@@ -64,14 +67,35 @@ public class TermAssociation {
 		int termFreq[][] = new int[scoreDocs.length][]; 
 		int positions[][][] = new int[scoreDocs.length][][]; 
 		int docLens[] = new int[scoreDocs.length];
+		// the tokens of a store are grouped by term without sorting them
+		DocumentTokenStore store = DocumentTokenStore.getFromPropertyFile(
+				searcher.getIndexReader(), field);
+		DocumentTokenStore.Tokens tokens = new DocumentTokenStore.Tokens();
 		for (int i = 0; i < scoreDocs.length; i++) {
 			int docid = scoreDocs[i].doc;
+			if (store != null) {
+				store.read(docid, tokens);
+				int n = tokens.byTerm();
+				termCache[i] = new String[n];
+				termFreq[i] = new int[n];
+				positions[i] = new int[n][];
+				docLens[i] = tokens.length;
+				for (int k = 0; k < n; k++) {
+					termCache[i][k] = store.term(tokens.terms[k]);
+					coTable.getOrAddSymbol(termCache[i][k]);
+					positions[i][k] = java.util.Arrays.copyOfRange(
+							tokens.termPositions, tokens.termStarts[k],
+							tokens.termStarts[k + 1]);
+					termFreq[i][k] = positions[i][k].length;
+				}
+				continue;
+			}
 			TermPositionVector vec = null;
 			try {
 //				vec = searcher.getIndexReader().getTermFreqVector(docid,
 //						field);
-				vec = (TermPositionVector) searcher
-				.getIndexReader().getTermFreqVector(docid, field);
+				vec = DocumentTokenStore.getTermPositionVector(searcher
+						.getIndexReader(), docid, field);
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -98,11 +122,13 @@ public class TermAssociation {
 				int id1 = coTable.symbolToID(termCache[i][j]); 
 				if(id1 == -1 ){
 					continue;
-				}else{
-					double time = getTimes(positions[i][j], positions[i][j],  winSize, docLens[i]);
-					double total = time + matrix.value(id1, id1);
-					matrix.setValue(id1, id1, total);
 				}
+				// the windows of the term, counted once for all the others
+				int windows[] = proxType == 2 ? Distance.windowCounts(
+						positions[i][j], 0, positions[i][j].length, winSize,
+						docLens[i]) : null;
+				double self = getTimes(positions[i][j], windows, positions[i][j],  winSize, docLens[i]);
+				matrix.setValue(id1, id1, self + matrix.value(id1, id1));
 				for(int k =1; k < termCache[i].length; k++){
 					int id2 = coTable.symbolToID(termCache[i][k]); 
 					if(id2 == -1 ){
@@ -110,7 +136,7 @@ public class TermAssociation {
 					}
 //					int time = Distance.noTimes(positions[i][j], positions[i][k], winSize, docLens[i]);
 //					int time = Distance.unorderHALTimes(positions[i][j], positions[i][k], winSize);
-					double time = getTimes(positions[i][j], positions[i][k], winSize, docLens[i]);
+					double time = getTimes(positions[i][j], windows, positions[i][k], winSize, docLens[i]);
 					if(time == 0){
 						continue;
 					}
@@ -129,6 +155,57 @@ public class TermAssociation {
 	}
 
 
+	/**
+	 * Fills the associations of the terms of the table from a term
+	 * association index instead of counting them in the feedback documents.
+	 * The probability changes meaning: p(x|y) is then the part of the
+	 * documents of the collection containing y that also contain x, smoothed
+	 * as (codf(x, y) + 0.5) / (df(y) + 0.5), not the windowed co-occurrence
+	 * counts of the feedback documents.
+	 */
+	public static TermAssociation built(TermAssociationIndex index,
+			SymbolTable coTable) {
+		int n = coTable.numSymbols();
+		DenseMatrix matrix = new DenseMatrix(n, n);
+		int ids[] = new int[n];
+		// the table id of each index term of the table
+		TIntIntHashMap symbols = new TIntIntHashMap();
+		for (int y = 0; y < n; y++) {
+			ids[y] = index.termId(coTable.idToSymbol(y));
+			int df = ids[y] < 0 ? 0 : index.df(ids[y]);
+			double unseen = 0.5 / (df + 0.5);
+			for (int x = 0; x < n; x++)
+				matrix.setValue(y, x, unseen);
+			if (ids[y] >= 0) {
+				symbols.put(ids[y], y);
+				matrix.setValue(y, y, 1);
+			}
+		}
+		for (int x = 0; x < n; x++) {
+			if (ids[x] < 0)
+				continue;
+			for (int i = 0; i < index.numNeighbours(ids[x]); i++) {
+				int neighbour = index.neighbour(ids[x], i);
+				if (!symbols.containsKey(neighbour))
+					continue;
+				int y = symbols.get(neighbour);
+				double codf = index.neighbourCoDocFreq(ids[x], i) + 0.5;
+				matrix.setValue(y, x, codf / (index.df(ids[y]) + 0.5));
+				matrix.setValue(x, y, codf / (index.df(ids[x]) + 0.5));
+			}
+		}
+		logger.debug("\tfilled the term associations from the index: " + n);
+		return new TermAssociation(matrix, coTable);
+	}
+
+	/** getTimes, from the windowCounts of p1 when they are given */
+	static double getTimes(int[] p1, int[] windows1, int[] p2, int winSize,
+			int docLen) {
+		if (windows1 != null)
+			return Distance.noTimes(p2, 0, p2.length, windows1, winSize);
+		return getTimes(p1, p2, winSize, docLen);
+	}
+
 	static double getTimes(int[] p1, int[] p2, int winSize, int docLen){
 		if(proxType == 1){//HAL
 			return Distance.unorderHALTimes(p1, p2, winSize);
@@ -16,6 +16,7 @@ import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.dutir.lucene.DocumentTokenStore;
 import org.dutir.lucene.ISManager;
 import org.dutir.lucene.evaluation.TRECQrelsInMemory;
 import org.dutir.lucene.util.ApplicationSetup;
@@ -70,6 +71,12 @@ public class GetSourceText {
 			} else {
 				int docid = topdocs.scoreDocs[0].doc;
 
+				// the tokens are already in reading order in a token store
+				DocumentTokenStore store = DocumentTokenStore
+						.getFromPropertyFile(searcher.getIndexReader(), field);
+				if (store != null)
+					return store.text(docid) + " ";
+
 				TermPositionVector tfv = null;
 
 				tfv = (TermPositionVector) searcher.getIndexReader()
@@ -90,8 +90,7 @@ public class FilterIndexReader extends IndexReader {
     public void close() throws IOException { in.close(); }
     
     @Override
-    public int termFreq() {
-    	// TODO Auto-generated method stub
+    public long termFreq() {
     	return in.termFreq();
     }
   }
@@ -199,11 +198,35 @@ public class FilterIndexReader extends IndexReader {
     return in.docFreq(t);
   }
   
-  public int termFreq(Term t) throws IOException {
+  public long termFreq(Term t) throws IOException {
 	    ensureOpen();
 	    return in.termFreq(t);
 	  }
 
+  void addTermStats(Term[] terms, int[] order, TermStats stats) throws IOException {
+    in.addTermStats(terms, order, stats);
+  }
+
+  public long getSumTotalTermFreq(String field) throws IOException {
+    ensureOpen();
+    return in.getSumTotalTermFreq(field);
+  }
+
+  public long getUniqueTermCount(String field) throws IOException {
+    ensureOpen();
+    return in.getUniqueTermCount(field);
+  }
+
+  public int getDocCount(String field) throws IOException {
+    ensureOpen();
+    return in.getDocCount(field);
+  }
+
+  public double getSumNormLength(String field) throws IOException {
+    ensureOpen();
+    return in.getSumNormLength(field);
+  }
+
   public TermDocs termDocs() throws IOException {
     ensureOpen();
     return in.termDocs();
@@ -0,0 +1,75 @@
+package org.apache.lucene.util.cache;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * Thread-safe LRU cache that splits its capacity over a number of
+ * independently locked {@link SimpleLRUCache} stripes. A key is always
+ * routed to the same stripe, so concurrent readers only contend when
+ * their keys hash to the same stripe. Eviction is LRU per stripe, which
+ * approximates a global LRU for well-distributed hash codes.
+ */
+public class StripedLRUCache extends Cache {
+
+  private final Cache[] stripes;
+  private final int mask;
+
+  /**
+   * Creates a cache holding roughly <code>cacheSize</code> entries in
+   * total, spread over <code>concurrency</code> stripes (rounded up to
+   * a power of two).
+   */
+  public StripedLRUCache(int cacheSize, int concurrency) {
+    int n = 1;
+    while (n < concurrency)
+      n <<= 1;
+    stripes = new Cache[n];
+    int perStripe = Math.max(1, (cacheSize + n - 1) / n);
+    for (int i = 0; i < n; i++)
+      stripes[i] = new SimpleLRUCache(perStripe).getSynchronizedCache();
+    mask = n - 1;
+  }
+
+  private Cache stripe(Object key) {
+    int h = key.hashCode();
+    h ^= (h >>> 16);
+    return stripes[h & mask];
+  }
+
+  public void put(Object key, Object value) {
+    stripe(key).put(key, value);
+  }
+
+  public Object get(Object key) {
+    return stripe(key).get(key);
+  }
+
+  public boolean containsKey(Object key) {
+    return stripe(key).containsKey(key);
+  }
+
+  public void close() {
+    for (int i = 0; i < stripes.length; i++)
+      stripes[i].close();
+  }
+
+  /** Already thread-safe; no wrapper is needed. */
+  Cache getSynchronizedCache() {
+    return this;
+  }
+}
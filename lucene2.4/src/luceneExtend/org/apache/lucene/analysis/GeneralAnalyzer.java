@@ -3,76 +3,109 @@ package org.apache.lucene.analysis;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.lang.reflect.Constructor;
 import java.util.ArrayList;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.queryParser.AnalyzerManager;
-import org.dutir.lucene.TRECQuerying;
 
+/**
+ * An analyzer made of a tokenizer and a list of filters named in the
+ * property file (see {@link AnalyzerManager}). Each thread gets its own
+ * tokenizer and filter chain, built on the first call of the thread and
+ * reset for every later document, so one GeneralAnalyzer can be shared by
+ * indexing and querying threads. The filter constructors are looked up once,
+ * when the filters are added.
+ * <p>
+ * {@link #tokenStream(String, Reader)} returns the chain of the calling
+ * thread as well, so a thread must consume a stream before asking for the
+ * next one.
+ */
 public class GeneralAnalyzer extends Analyzer {
 	protected static final Logger logger = Logger.getLogger(GeneralAnalyzer.class);
 	static String suffix = "org.apache.lucene.analysis";
+	/** the tokenizer of the first chain, null once it has been used */
 	Tokenizer tokenizer = null;
+	private final Class<? extends Tokenizer> tokenizerClass;
 	ArrayList<String> flist = new ArrayList<String>(4);
+	ArrayList<Constructor<? extends TokenFilter>> factories = new ArrayList<Constructor<? extends TokenFilter>>(4);
 
 	public void addFilter(String sfilter) {
 		if (sfilter.indexOf(".") == -1) {
-			flist.add(suffix + "." + sfilter);
-		} else {
+			sfilter = suffix + "." + sfilter;
+		}
+		try {
+			Class<? extends TokenFilter> filterClass = Class.forName(sfilter,
+					false, this.getClass().getClassLoader()).asSubclass(
+					TokenFilter.class);
+			factories.add(filterClass
+					.getConstructor(constructor_array_termpipeline));
 			flist.add(sfilter);
+		} catch (Exception e) {
+			logger.error("could not load filter " + sfilter, e);
 		}
 	}
 
 	public GeneralAnalyzer(Tokenizer tokenizer) {
 		this.tokenizer = tokenizer;
+		this.tokenizerClass = tokenizer.getClass();
 	}
 
 	private static Class[] constructor_array_termpipeline = new Class[] { TokenStream.class };
-	TokenFilter mfilter = null;
-	TokenFilter filterList[] = null;
 
-	public TokenStream tokenStream(String fieldName, Reader reader) {
+	/** The tokenizer and filters of one thread. */
+	static final class Chain {
+		final Tokenizer source;
+		final TokenStream result;
 
-		try {
-			this.tokenizer.reset(reader);
-			
-			if(filterList ==null){
-				filterList = new TokenFilter[flist.size()];
-				for (int i = 0; i < flist.size(); i++) {
-						Class filterClass = Class.forName(flist.get(i), false, this
-								.getClass().getClassLoader());
-						mfilter = (TokenFilter) filterClass.getConstructor(
-								constructor_array_termpipeline).newInstance(
-								new Object[] { this.tokenizer });
-						filterList[i] = mfilter;
-						if(i ==0){
-							mfilter.reset(this.tokenizer);
-						}else{
-							mfilter.reset(filterList[i-1]);
-						}
-				}
-				// problem
-				if(filterList.length >0){
-					return filterList[filterList.length -1];
-				}
-			}else{
-				for(int i=0; i < filterList.length; i++){
-					if(i ==0 ){
-						filterList[i].reset(this.tokenizer);
-					}else{
-						filterList[i].reset(filterList[i-1]);
-					}
-				}
-				if(filterList.length >0){
-					return filterList[filterList.length -1];
-				}
+		Chain(Tokenizer source, TokenStream result) {
+			this.source = source;
+			this.result = result;
+		}
+	}
+
+	/**
+	 * Builds a new chain. The tokenizer given to the constructor is used by
+	 * the first chain, the others get a new instance of its class.
+	 */
+	private synchronized Chain newChain() throws Exception {
+		Tokenizer source;
+		if (tokenizer != null) {
+			source = tokenizer;
+			tokenizer = null;
+		} else {
+			source = tokenizerClass.getDeclaredConstructor().newInstance();
+		}
+		TokenStream result = source;
+		for (int i = 0; i < factories.size(); i++) {
+			result = factories.get(i).newInstance(new Object[] { result });
+		}
+		return new Chain(source, result);
+	}
+
+	public TokenStream reusableTokenStream(String fieldName, Reader reader)
+			throws IOException {
+		Chain chain = (Chain) getPreviousTokenStream();
+		if (chain == null) {
+			try {
+				chain = newChain();
+			} catch (Exception e) {
+				logger.error("could not build the analyzer chain", e);
+				throw new IOException(e.toString());
 			}
+			setPreviousTokenStream(chain);
+		}
+		chain.source.reset(reader);
+		return chain.result;
+	}
 
-			
-		} catch (Exception e) {
+	public TokenStream tokenStream(String fieldName, Reader reader) {
+		try {
+			return reusableTokenStream(fieldName, reader);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
-		return tokenizer;
+		return null;
 	}
 
 	public static void main(String args[]) throws IOException {
@@ -40,18 +40,22 @@ package org.apache.lucene.analysis;
  * have seen is anything like as exact as this version, even with the 
  * points of DEPARTURE!".
  * <br>
- * This class is not thread safe.
+ * The working state is held per instance, so each thread needs its own
+ * stemmer; an instance is not thread safe. {@link #stem(char[], int)} stems
+ * a term buffer in place without allocating.
  * @author Gianni Amati, modified into a TermPipeline and (Java) optimised by Craig Macdonald
  * @version $Revision: 1.12 $
  */
 public class TerrierPorterStemmer {
 	/** A buffer for word to be stemmed.*/
-	public static char[] b;
-	protected static int k;
-	protected static int k0;
+	protected char[] b;
+	/** The buffer strings are copied into by {@link #stem(String)}.*/
+	private char[] word = new char[32];
+	protected int k;
+	protected int k0;
 	
 	/** A general offset into the string.*/
-	protected static int j; 
+	protected int j; 
 	
 	/**
 	 * Constructs an instance of the class, given the next
@@ -66,7 +70,7 @@ public class TerrierPorterStemmer {
 	/** 
 	 * cons(i) is TRUE <=> b[i] is a consonant. 
 	 */
-	protected static boolean cons(int i) {
+	protected boolean cons(int i) {
 		switch (b[i]) {
 			case 'a' :
 			case 'e' :
@@ -81,7 +85,7 @@ public class TerrierPorterStemmer {
 		}
 	}
 	
-	protected static boolean consonantinstem() {
+	protected boolean consonantinstem() {
 		int i;
 		for (i = k0; i <= j; i++)
 			if (cons(i))
@@ -102,7 +106,7 @@ public class TerrierPorterStemmer {
 	 * </ul>
 	 * but keep terms snow, box, tray as they are.	
 	 */
-	protected static boolean cvc(int i) {
+	protected boolean cvc(int i) {
 		if (i < k0 + 2 || !cons(i) || cons(i - 1) || !cons(i - 2))
 			return false;
 		{
@@ -113,16 +117,17 @@ public class TerrierPorterStemmer {
 		return true;
 	}
 	
-	protected static void defineBuffer(String s) {
+	protected void defineBuffer(String s) {
 		final int length = s.length();
-		b = new char[length];
-		s.getChars(0, length, b, 0);
+		if (word.length < length)
+			word = new char[length];
+		s.getChars(0, length, word, 0);
 	}
 	
 	/**
 	 * Returns true if j,(j-1) contain a double consonant. 
 	 */
-	protected static boolean doublec(int j) {
+	protected boolean doublec(int j) {
 		if (j < k0 + 1)
 			return false;
 		if (b[j] != b[j - 1])
@@ -133,7 +138,7 @@ public class TerrierPorterStemmer {
 	/**
 	 * Returns true if k0,...k ends with the string s. 
 	 */
-	protected static boolean ends(String s) 
+	protected boolean ends(String s) 
 	{  
 		final int length = s.length();
 		final int offset = k-length+1;
@@ -155,7 +160,7 @@ public class TerrierPorterStemmer {
 	 * <li><c>vcvcvc<v> gives 3</li>
 	 * </ul>
 	 */
-	protected static int m() {
+	protected int m() {
 		int n = 0;
 		int i = k0;
 		while (true) {
@@ -191,7 +196,7 @@ public class TerrierPorterStemmer {
 	 * Sets (j+1),...k to the characters in the string s, readjusting
 	 * k and j. 
 	 */
-	protected static void setto(int i1, int i2, String str) {
+	protected void setto(int i1, int i2, String str) {
 		/* b[k - i1 + 1 .. k - i1 + i2] = str[0.. k - i1 + i2 - (k - i1 + 1)];
 		  =>
 			b[k - i1 + 1 .. k - i1 + i2] = str[0.. i2 -1]; 
@@ -208,23 +213,38 @@ public class TerrierPorterStemmer {
 	 * @return String the stem of a given term.
 	 */
 	public String stem(String s) {
-		k = s.length() - 1;
-		k0 = 0;
-		j = k;
-		defineBuffer(s);
-		if (k <= k0 + 1)
+		if (s.length() <= 2)
 			return s; /*-DEPARTURE-*/
 		/* With this line, strings of length 1 or 2 don't go through the
 		stemming process, although no mention is made of this in the
 		published algorithm. Remove the line to match the published
 		algorithm. */
+		defineBuffer(s);
+		final int length = stem(word, s.length());
+		return new String(word, 0, length);
+	}
+	
+	/**
+	 * Stems the term held in <code>buffer[0..length)</code> in place. The
+	 * stem is never longer than the term.
+	 * @param buffer the term, e.g. a Token's term buffer
+	 * @param length the length of the term
+	 * @return the length of the stem, now in <code>buffer[0..length)</code>
+	 */
+	public int stem(char[] buffer, int length) {
+		if (length <= 2)
+			return length; /*-DEPARTURE-*/
+		b = buffer;
+		k = length - 1;
+		k0 = 0;
+		j = k;
 		step1ab();
 		step1c();
 		step2();
 		step3();
 		step4();
 		step5();
-		return new String(b, 0, k+1);
+		return k + 1;
 	}
 	
 	/**
@@ -249,7 +269,7 @@ public class TerrierPorterStemmer {
 	 *	  <li>meetings  becomes  meet</li>
 	 * </ul>
 	 */ 
-	protected static void step1ab() {
+	protected void step1ab() {
 		if (b[k] == 's') {
 			if (ends("sses"))
 				k -= 2;
@@ -290,7 +310,7 @@ public class TerrierPorterStemmer {
 	/** 
 	 * Turns terminal y to i when there is another vowel in the stem. 
 	 */
-	protected static void step1c() {
+	protected void step1c() {
 		if (ends("y") && vowelinstem())
 			b[k] = 'i';
 	}
@@ -299,7 +319,7 @@ public class TerrierPorterStemmer {
 	 * -ation) maps to -ize etc. note that the string before the suffix must give
 	 * m() > 0. 
 	 */
-	protected static void step2() {
+	protected void step2() {
 		switch (b[k - 1]) {
 			case 'a' :
 				if (ends("ational")) {
@@ -431,7 +451,7 @@ public class TerrierPorterStemmer {
 	/** 
 	 * Deals with -ic-, -full, -ness etc, similarly to the strategy of step2. 
 	 */
-	protected static void step3() {
+	protected void step3() {
 		switch (b[k]) {
 			case 'e' :
 				if (ends("icate")) {
@@ -482,7 +502,7 @@ public class TerrierPorterStemmer {
 	/**
 	 * Takes off -ant, -ence etc., in context <c>vcvc<v>. 
 	 */
-	protected static void step4() {
+	protected void step4() {
 		switch (b[k - 1]) {
 			case 'a' :
 				if (ends("al"))
@@ -564,7 +584,7 @@ public class TerrierPorterStemmer {
 	 * Removes a final -e if m() > 1, 
 	 * and changes -ll to -l if m() > 1.
 	 */
-	protected static void step5() {
+	protected void step5() {
 		j = k;
 		if (b[k] == 'e') {
 			int a = m();
@@ -579,7 +599,7 @@ public class TerrierPorterStemmer {
 	 * Returns TRUE if  k0,...j contains a vowel. 
 	 * @return true if k0,...,j contains a vowel.
 	 */
-	protected static boolean vowelinstem() {
+	protected boolean vowelinstem() {
 		int i;
 		for (i = k0; i <= j; i++)
 			if (!cons(i))
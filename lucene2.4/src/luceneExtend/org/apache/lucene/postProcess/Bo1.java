@@ -63,6 +63,15 @@ public class Bo1 extends QueryExpansionModel {
 		return (float) (withinDocumentFrequency * Idf.log((1f + f) / f)
 			+ Idf.log(1f + f));
 	}
+	public final void score(float withinDocumentFrequency[],
+			float termFrequency[], float weights[], int n) {
+		final long numberOfDocuments = this.numberOfDocuments;
+		for (int i = 0; i < n; i++) {
+			float f = termFrequency[i] / numberOfDocuments;
+			weights[i] = (float) (withinDocumentFrequency[i]
+					* Idf.log((1f + f) / f) + Idf.log(1f + f));
+		}
+	}
 	/**
 	 * This method implements the query expansion model.
 	 * @param withinDocumentFrequency float The term frequency 
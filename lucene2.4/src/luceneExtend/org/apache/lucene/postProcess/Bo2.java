@@ -58,6 +58,16 @@ public class Bo2 extends QueryExpansionModel {
 		return (float) ( withinDocumentFrequency * Idf.log((1f + f) / f)
 			+ Idf.log(1f + f) );
 	}
+	public final void score(float withinDocumentFrequency[],
+			float termFrequency[], float weights[], int n) {
+		final float totalDocumentLength = this.totalDocumentLength;
+		final float collectionLength = this.collectionLength;
+		for (int i = 0; i < n; i++) {
+			float tf = withinDocumentFrequency[i];
+			float f = tf * totalDocumentLength / collectionLength;
+			weights[i] = (float) (tf * Idf.log((1f + f) / f) + Idf.log(1f + f));
+		}
+	}
 	/**
 	 * This method implements the query expansion model.
 	 * @param withinDocumentFrequency float The term frequency 
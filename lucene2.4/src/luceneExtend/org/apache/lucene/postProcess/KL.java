@@ -75,6 +75,18 @@ public class KL extends QueryExpansionModel {
 			return (float) (docLevel * Idf.log(docLevel, colLevel));
 	}
 
+	public final void score(float withinDocumentFrequency[],
+			float termFrequency[], float weights[], int n) {
+		final float totalDocumentLength = this.totalDocumentLength;
+		final float collectionLength = this.collectionLength;
+		for (int i = 0; i < n; i++) {
+			float docLevel = withinDocumentFrequency[i] / totalDocumentLength;
+			float colLevel = termFrequency[i] / collectionLength;
+			weights[i] = docLevel < colLevel ? 0 : (float) (docLevel * Idf
+					.log(docLevel, colLevel));
+		}
+	}
+
 	/**
 	 * This method implements the query expansion model.
 	 * 
@@ -41,6 +41,19 @@ public class ModelBasedTermSelector extends QueryExpansionModel {
 	       - lambda * termFrequency /collectionLength) / (1 - lambda); 
 		return weight > 0.001 ? weight: 0;
 	}
+
+	@Override
+	public void score(float[] withinDocumentFrequency, float[] termFrequency,
+			float[] weights, int n) {
+		final float totalDocumentLength = this.totalDocumentLength;
+		final float collectionLength = this.collectionLength;
+		final float lambda = this.lambda;
+		for (int i = 0; i < n; i++) {
+			float weight = (withinDocumentFrequency[i] / totalDocumentLength
+					- lambda * termFrequency[i] / collectionLength) / (1 - lambda);
+			weights[i] = weight > 0.001 ? weight : 0;
+		}
+	}
 	
 	@Override
 	public float score(float withinDocumentFrequency, float termFrequency,
@@ -12,6 +12,7 @@ import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.search.FilterCache;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.RBooleanClause;
 import org.apache.lucene.search.RBooleanQuery;
@@ -183,7 +184,7 @@ public class QueryExpansion implements PostProcess {
 		cls.setInfo_add(this.getInfo());
 		cls.setInfo_add(QEModel.getInfo());
 		try {
-			this.searcher.search(fquery, cls);
+			this.searcher.search(fquery, FilterCache.getFromPropertyFile(), cls);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -11,6 +11,7 @@ import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.postProcess.termselector.TermSelector;
+import org.apache.lucene.search.FilterCache;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.RBooleanClause;
 import org.apache.lucene.search.RBooleanQuery;
@@ -166,7 +167,7 @@ public class QueryExpansionAdap extends QueryExpansion {
 		cls.setInfo_add(this.getInfo());
 		cls.setInfo_add(QEModel.getInfo());
 		try {
-			this.searcher.search(fquery, cls);
+			this.searcher.search(fquery, FilterCache.getFromPropertyFile(), cls);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
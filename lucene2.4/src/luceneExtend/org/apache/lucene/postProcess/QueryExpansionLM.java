@@ -14,6 +14,7 @@ import org.apache.lucene.postProcess.termselector.DFRTermSelector;
 import org.apache.lucene.postProcess.termselector.RMTermSelector;
 import org.apache.lucene.postProcess.termselector.RocchioTermSelector;
 import org.apache.lucene.postProcess.termselector.TermSelector;
+import org.apache.lucene.search.FilterCache;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.RBooleanClause;
 import org.apache.lucene.search.RBooleanQuery;
@@ -158,7 +159,7 @@ public class QueryExpansionLM extends QueryExpansion {
 			cls.setInfo_add(QEModel.getInfo());
 		}
 		try {
-			this.searcher.search(fquery, cls);
+			this.searcher.search(fquery, FilterCache.getFromPropertyFile(), cls);
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -150,6 +150,22 @@ public abstract class QueryExpansionModel {
 	 *         and other preset parameters
 	 */
 	public abstract float score(float withinDocumentFrequency, float termFrequency);
+
+	/**
+	 * Scores a batch of terms: <code>weights[i]</code> is set to
+	 * <code>score(withinDocumentFrequency[i], termFrequency[i])</code> for
+	 * the first <code>n</code> terms. The models override it with a loop
+	 * that reads the model's fields once for the whole batch.
+	 * @param withinDocumentFrequency the term frequencies in the X top-retrieved documents.
+	 * @param termFrequency the term frequencies in the collection.
+	 * @param weights receives the scores.
+	 * @param n the number of terms.
+	 */
+	public void score(float withinDocumentFrequency[], float termFrequency[],
+			float weights[], int n) {
+		for (int i = 0; i < n; i++)
+			weights[i] = score(withinDocumentFrequency[i], termFrequency[i]);
+	}
 	
 	/**
 	 * This method provides the contract for implementing query expansion models.
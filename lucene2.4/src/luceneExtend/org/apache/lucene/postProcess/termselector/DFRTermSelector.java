@@ -5,6 +5,7 @@ import java.io.IOException;
 import java.util.Arrays;
 
 import org.apache.log4j.Logger;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.postProcess.QueryExpansionModel;
 import org.dutir.lucene.util.ApplicationSetup;
@@ -63,37 +64,45 @@ public class DFRTermSelector extends TermSelector {
 		for(int i=0;i<len;i++)
 			allTerms[i] = (ExpansionTerm)arr[i];
 		boolean classicalFiltering = Boolean.parseBoolean(ApplicationSetup.getProperty("expansion.classical.filter", "true"));
-		float total =0;
+		// the terms to weight, laid out for one batch of QEModel.score
+		int eligible[] = new int[len];
+		int n = 0;
 		for (int i=0; i<len; i++){
-			try{
-				//only consider terms which occur in 2 or more documents. Alter using the expansion.mindocuments property.
-				
-				if (classicalFiltering && length > 1 && allTerms[i].getDocumentFrequency() < EXPANSION_MIN_DOCUMENTS &&
-						!originalQueryTermidSet.contains(allTerms[i].getTerm())){
-					allTerms[i].setWeightExpansion(0);
+			allTerms[i].setWeightExpansion(0);
+			//only consider terms which occur in 2 or more documents. Alter using the expansion.mindocuments property.
+			if (classicalFiltering && length > 1 && allTerms[i].getDocumentFrequency() < EXPANSION_MIN_DOCUMENTS &&
+					!originalQueryTermidSet.contains(allTerms[i].getTerm())){
+				continue;
+			}
+			/**
+			 * 17/02/2009 Ben: this condition is changed to: only consider terms which occur in at least half of the feedback documents. 
+			 */
+			else if (!classicalFiltering){
+				int minDocs = (length%2==0)?(length/2-1):(length/2);
+				if (length>1&&allTerms[i].getDocumentFrequency() < minDocs &&
+					!originalQueryTermidSet.contains(allTerms[i].getTerm())){
 					continue;
 				}
-				/**
-				 * 17/02/2009 Ben: this condition is changed to: only consider terms which occur in at least half of the feedback documents. 
-				 */
-				else if (!classicalFiltering){
-					int minDocs = (length%2==0)?(length/2-1):(length/2);
-					if (length>1&&allTerms[i].getDocumentFrequency() < minDocs &&
-						!originalQueryTermidSet.contains(allTerms[i].getTerm())){
-						allTerms[i].setWeightExpansion(0);
-						continue;
-					}
-				}
-				
-				
-				TermsCache.Item item = getItem(allTerms[i].getTerm());
-				float TF = item.ctf;
-				float weight = QEModel.score(allTerms[i].getWithinDocumentFrequency(), TF);
-				allTerms[i].setWeightExpansion(weight);		
-				total += weight;
-			} catch(NullPointerException npe) {
-				logger.fatal("A nullpointer exception occured while iterating over expansion terms at iteration number: "+"i = " + i,npe);
 			}
+			eligible[n++] = i;
+		}
+		Term lookup[] = new Term[n];
+		float withinDocumentFrequency[] = new float[n];
+		float termFrequency[] = new float[n];
+		float weights[] = new float[n];
+		Term prototype = new Term(field, "");
+		for (int j = 0; j < n; j++) {
+			lookup[j] = prototype.createTerm(allTerms[eligible[j]].getTerm());
+			withinDocumentFrequency[j] = allTerms[eligible[j]].getWithinDocumentFrequency();
+		}
+		TermsCache.Item items[] = tcache.getItems(lookup, searcher);
+		for (int j = 0; j < n; j++)
+			termFrequency[j] = items[j].ctf;
+		QEModel.score(withinDocumentFrequency, termFrequency, weights, n);
+		float total =0;
+		for (int j = 0; j < n; j++) {
+			allTerms[eligible[j]].setWeightExpansion(weights[j]);
+			total += weights[j];
 		}
 		
 		
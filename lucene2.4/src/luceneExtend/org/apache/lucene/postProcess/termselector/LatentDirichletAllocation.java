@@ -1251,6 +1251,7 @@ public class LatentDirichletAllocation {
 		private final int mNumWords;
 		private final int mNumTokens;
 		private double[][] mtopicWordProbs;
+		private boolean mFixedTopicWordProbs = false;
 
 		GibbsSample(int epoch, short[][] topicSample, int[][] docWords,
 				double docTopicPrior, double topicWordPrior,
@@ -1498,6 +1499,8 @@ public class LatentDirichletAllocation {
 		 *             (exclusive).
 		 */
 		public double topicWordProb(int topic, int word) {
+			if (mFixedTopicWordProbs)
+				return mtopicWordProbs[topic][word];
 			return (topicWordCount(topic, word) + topicWordPrior())
 					/ (topicCount(topic) + numWords() * topicWordPrior());
 		}
@@ -1654,6 +1657,9 @@ public class LatentDirichletAllocation {
 		 * @return The LDA model for this sample.
 		 */
 		public LatentDirichletAllocation lda() {
+			if (mFixedTopicWordProbs)
+				return new LatentDirichletAllocation(mDocTopicPrior,
+						mtopicWordProbs);
 			int numTopics = numTopics();
 			int numWords = numWords();
 			double topicWordPrior = topicWordPrior();
@@ -1668,6 +1674,17 @@ public class LatentDirichletAllocation {
 			this.mtopicWordProbs = topicWordProbs;
 			return new LatentDirichletAllocation(mDocTopicPrior, topicWordProbs);
 		}
+
+		/**
+		 * Fixes the topic-word probabilities of this sample, indexed by topic
+		 * and word, instead of estimating them from the topic assignments.
+		 * Used for samples folded in to a model trained beforehand, see
+		 * {@link TopicModel#foldIn(int[][], org.dutir.util.symbol.SymbolTable, int, Random)}.
+		 */
+		void setTopicWordProbs(double[][] topicWordProbs) {
+			mtopicWordProbs = topicWordProbs;
+			mFixedTopicWordProbs = true;
+		}
 		
 		public short[][] sampleTopics(int[] tokens, int numSamples, int burnin,
 				int sampleLag, Random random) {
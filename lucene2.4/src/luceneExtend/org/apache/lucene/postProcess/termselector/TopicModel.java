@@ -0,0 +1,226 @@
+/**
+ *
+ */
+package org.apache.lucene.postProcess.termselector;
+
+import gnu.trove.TObjectIntHashMap;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.FloatBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.postProcess.termselector.LatentDirichletAllocation.GibbsSample;
+import org.dutir.util.symbol.SymbolTable;
+
+import com.aliasi.stats.Statistics;
+
+/**
+ * A topic model of a whole collection, trained once by
+ * {@link TopicModelTrainer} and read from its file. The topic-word matrix is
+ * memory-mapped, so a model is shared by all selectors of a JVM and only the
+ * rows of the words actually looked up are paged in.
+ * <p>
+ * File layout, big-endian:
+ *
+ * <pre>
+ * int     MAGIC
+ * UTF     field
+ * int     numTopics
+ * int     numWords
+ * double  document-topic prior
+ * double  topic-word prior
+ * long    number of tokens assigned to each topic      [numTopics]
+ * float   p(word|topic), one row of topics per word    [numWords][numTopics]
+ * UTF     the words, in term order                     [numWords]
+ * </pre>
+ *
+ * @author yezheng
+ */
+public class TopicModel {
+	private static Logger logger = Logger.getLogger(TopicModel.class);
+
+	/** "LDA1" */
+	static final int MAGIC = 0x4C444131;
+
+	private static HashMap<String, TopicModel> models = new HashMap<String, TopicModel>();
+
+	final String field;
+	final int numTopics;
+	final int numWords;
+	final double docTopicPrior;
+	final double topicWordPrior;
+	final long topicCounts[];
+	/** p(word|topic) of a word the model has not seen */
+	final double unseenProbs[];
+
+	private final FloatBuffer probs;
+	/** word to id + 1 */
+	private final TObjectIntHashMap<String> wordIds;
+
+	/** Returns the model of the file, loading it on first use. */
+	public static synchronized TopicModel getModel(String path)
+			throws IOException {
+		TopicModel model = models.get(path);
+		if (model == null) {
+			model = new TopicModel(new File(path));
+			models.put(path, model);
+		}
+		return model;
+	}
+
+	public TopicModel(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.readInt() != MAGIC)
+				throw new IOException(file + " is not a topic model");
+			field = raf.readUTF();
+			numTopics = raf.readInt();
+			numWords = raf.readInt();
+			docTopicPrior = raf.readDouble();
+			topicWordPrior = raf.readDouble();
+			topicCounts = new long[numTopics];
+			unseenProbs = new double[numTopics];
+			for (int i = 0; i < numTopics; i++) {
+				topicCounts[i] = raf.readLong();
+				unseenProbs[i] = topicWordPrior
+						/ (topicCounts[i] + numWords * topicWordPrior);
+			}
+
+			long start = raf.getFilePointer();
+			long length = 4L * numWords * numTopics;
+			FileChannel channel = raf.getChannel();
+			// the mapping stays valid once the file is closed
+			probs = channel.map(FileChannel.MapMode.READ_ONLY, start, length)
+					.asFloatBuffer();
+
+			channel.position(start + length);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					Channels.newInputStream(channel), 1 << 16));
+			wordIds = new TObjectIntHashMap<String>(numWords);
+			for (int i = 0; i < numWords; i++)
+				wordIds.put(in.readUTF(), i + 1);
+		} finally {
+			raf.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("loaded topic model " + file + ": " + numTopics
+					+ " topics, " + numWords + " words of field " + field);
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public int numTopics() {
+		return numTopics;
+	}
+
+	public int numWords() {
+		return numWords;
+	}
+
+	public double documentTopicPrior() {
+		return docTopicPrior;
+	}
+
+	/** @return the id of the word, -1 if the model does not know it */
+	public int wordId(String word) {
+		return wordIds.get(word) - 1;
+	}
+
+	/**
+	 * @return p(word|topic); for an unknown word (id -1), the probability
+	 *         the topic-word prior leaves to it
+	 */
+	public double topicWordProb(int topic, int word) {
+		if (word < 0)
+			return unseenProbs[topic];
+		return probs.get(word * numTopics + topic);
+	}
+
+	/**
+	 * Returns the topic-word probabilities of the words of a symbol table,
+	 * indexed by topic and symbol id, as {@link LatentDirichletAllocation}
+	 * takes them.
+	 */
+	public double[][] topicWordProbs(SymbolTable symbols) {
+		int n = symbols.numSymbols();
+		double result[][] = new double[numTopics][n];
+		for (int w = 0; w < n; w++) {
+			int id = wordId(symbols.idToSymbol(w));
+			if (id < 0) {
+				for (int t = 0; t < numTopics; t++)
+					result[t][w] = unseenProbs[t];
+			} else {
+				int offset = id * numTopics;
+				for (int t = 0; t < numTopics; t++)
+					result[t][w] = probs.get(offset + t);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Infers the topics of documents whose words are ids of
+	 * <code>symbols</code>, keeping the topic-word probabilities of this
+	 * model fixed: each document is Gibbs sampled on its own for
+	 * <code>epochs</code> epochs and the last sample is returned. The
+	 * sample's topic-word probabilities, and the model of its
+	 * {@link GibbsSample#lda()}, are those of this model.
+	 */
+	public GibbsSample foldIn(int docWords[][], SymbolTable symbols,
+			int epochs, Random random) {
+		double phi[][] = topicWordProbs(symbols);
+		int numSymbols = symbols.numSymbols();
+		short topicSample[][] = new short[docWords.length][];
+		int docTopicCount[][] = new int[docWords.length][numTopics];
+		int wordTopicCount[][] = new int[numSymbols][numTopics];
+		int topicCount[] = new int[numTopics];
+		double topicDistro[] = new double[numTopics];
+		int numTokens = 0;
+
+		for (int d = 0; d < docWords.length; d++) {
+			int words[] = docWords[d];
+			short topics[] = topicSample[d] = new short[words.length];
+			int counts[] = docTopicCount[d];
+			for (int i = 0; i < words.length; i++) {
+				int topic = random.nextInt(numTopics);
+				topics[i] = (short) topic;
+				counts[topic]++;
+			}
+			for (int epoch = 0; epoch < epochs; epoch++) {
+				for (int i = 0; i < words.length; i++) {
+					int word = words[i];
+					counts[topics[i]]--;
+					double sum = 0;
+					for (int t = 0; t < numTopics; t++) {
+						sum += (counts[t] + docTopicPrior) * phi[t][word];
+						topicDistro[t] = sum;
+					}
+					int topic = Statistics.sample(topicDistro, random);
+					topics[i] = (short) topic;
+					counts[topic]++;
+				}
+			}
+			for (int i = 0; i < words.length; i++) {
+				wordTopicCount[words[i]][topics[i]]++;
+				topicCount[topics[i]]++;
+			}
+			numTokens += words.length;
+		}
+
+		GibbsSample sample = new GibbsSample(epochs, topicSample, docWords,
+				docTopicPrior, topicWordPrior, docTopicCount, wordTopicCount,
+				topicCount, 0, numSymbols, numTokens);
+		sample.setTopicWordProbs(phi);
+		return sample;
+	}
+}
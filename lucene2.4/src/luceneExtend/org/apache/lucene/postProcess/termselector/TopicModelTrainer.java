@@ -0,0 +1,466 @@
+/**
+ *
+ */
+package org.apache.lucene.postProcess.termselector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.search.Searcher;
+import org.dutir.lucene.ISManager;
+import org.dutir.lucene.util.ApplicationSetup;
+
+import com.aliasi.stats.Statistics;
+
+/**
+ * Trains the {@link TopicModel} of a whole collection once, so that
+ * {@link TopicTermSelector} only has to fold the feedback documents in
+ * instead of running LDA over them for every query.
+ * <p>
+ * The documents are read from the term vectors of one field. The topic
+ * assignments of their tokens never stay in memory: every Gibbs epoch
+ * streams them from a scratch file and writes the new ones to another, so
+ * memory holds only the word-topic counts. With more than one thread the
+ * documents are split into that many partitions, sampled concurrently
+ * against a private copy of the counts and merged after every epoch
+ * (approximate distributed LDA); each thread then costs a copy of the
+ * counts.
+ * <p>
+ * Properties:
+ * <ul>
+ * <li><tt>TopicModel.field</tt>: the field, by default the first of
+ * <tt>Lucene.SearchField</tt>;</li>
+ * <li><tt>TopicModel.numTopics</tt> (100), <tt>TopicModel.iterations</tt>
+ * (200);</li>
+ * <li><tt>TopicModel.docTopicPrior</tt> (2/numTopics, as
+ * TopicTermSelector), <tt>TopicModel.topicWordPrior</tt> (0.01);</li>
+ * <li><tt>TopicModel.minDocFreq</tt> (5) and
+ * <tt>TopicModel.maxVocabulary</tt> (100000): the words modelled, the
+ * most frequent ones with at least minDocFreq documents;</li>
+ * <li><tt>TopicModel.threads</tt> (1), <tt>TopicModel.tmpDir</tt>
+ * (java.io.tmpdir).</li>
+ * </ul>
+ *
+ * @author yezheng
+ */
+public class TopicModelTrainer {
+	private static Logger logger = Logger.getLogger(TopicModelTrainer.class);
+
+	protected String field = ApplicationSetup.getProperty("TopicModel.field",
+			ApplicationSetup.getProperty("Lucene.SearchField", "content")
+					.split("\\s*,\\s*")[0]);
+	protected int numTopics = Integer.parseInt(ApplicationSetup.getProperty(
+			"TopicModel.numTopics", "100"));
+	protected int iterations = Integer.parseInt(ApplicationSetup.getProperty(
+			"TopicModel.iterations", "200"));
+	protected double docTopicPrior = Double.parseDouble(ApplicationSetup
+			.getProperty("TopicModel.docTopicPrior", String
+					.valueOf(2d / numTopics)));
+	protected double topicWordPrior = Double.parseDouble(ApplicationSetup
+			.getProperty("TopicModel.topicWordPrior", "0.01"));
+	protected int minDocFreq = Integer.parseInt(ApplicationSetup.getProperty(
+			"TopicModel.minDocFreq", "5"));
+	protected int maxVocabulary = Integer.parseInt(ApplicationSetup
+			.getProperty("TopicModel.maxVocabulary", "100000"));
+	protected int numThreads = Integer.parseInt(ApplicationSetup.getProperty(
+			"TopicModel.threads", "1"));
+	protected File tmpDir = new File(ApplicationSetup.getProperty(
+			"TopicModel.tmpDir", System.getProperty("java.io.tmpdir")));
+	protected long seed = 43;
+
+	protected final IndexReader reader;
+
+	String words[];
+	HashMap<String, Integer> wordIds;
+	/** word-topic counts, one row of topics per word */
+	int wordTopicCount[];
+	int topicCount[];
+
+	public TopicModelTrainer(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	/** Trains the model and writes it to <code>output</code>. */
+	public void train(File output) throws IOException {
+		if (numTopics < 1 || numTopics > Short.MAX_VALUE)
+			throw new IllegalArgumentException("numTopics must be in 1.."
+					+ Short.MAX_VALUE + ", found " + numTopics);
+		selectVocabulary();
+		if (4L * words.length * numTopics > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("a topic-word matrix of "
+					+ words.length + " words and " + numTopics
+					+ " topics cannot be mapped; lower TopicModel.maxVocabulary");
+		wordTopicCount = new int[words.length * numTopics];
+		topicCount = new int[numTopics];
+
+		Partition partitions[] = initialise();
+		ExecutorService executor = numThreads > 1 ? Executors
+				.newFixedThreadPool(numThreads) : null;
+		try {
+			for (int epoch = 0; epoch < iterations; epoch++) {
+				long start = System.currentTimeMillis();
+				long changed = epoch(partitions, executor);
+				if (logger.isInfoEnabled())
+					logger.info("epoch " + epoch + ": " + changed
+							+ " topics changed, "
+							+ (System.currentTimeMillis() - start) + "ms");
+			}
+		} finally {
+			if (executor != null)
+				executor.shutdown();
+			for (int i = 0; i < partitions.length; i++)
+				partitions[i].delete();
+		}
+		write(output);
+	}
+
+	/** Keeps the maxVocabulary words of highest df, ids in term order. */
+	void selectVocabulary() throws IOException {
+		String field = this.field.intern();
+		final ArrayList<String> terms = new ArrayList<String>();
+		final ArrayList<Integer> dfs = new ArrayList<Integer>();
+		TermEnum te = reader.terms(new Term(field, ""));
+		try {
+			do {
+				Term t = te.term();
+				if (t == null || t.field() != field)
+					break;
+				if (te.docFreq() >= minDocFreq) {
+					terms.add(t.text());
+					dfs.add(te.docFreq());
+				}
+			} while (te.next());
+		} finally {
+			te.close();
+		}
+		Integer order[] = new Integer[terms.size()];
+		for (int i = 0; i < order.length; i++)
+			order[i] = i;
+		if (order.length > maxVocabulary) {
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return dfs.get(b).compareTo(dfs.get(a));
+				}
+			});
+			order = Arrays.copyOf(order, maxVocabulary);
+			Arrays.sort(order);
+		}
+		words = new String[order.length];
+		wordIds = new HashMap<String, Integer>(order.length * 2);
+		for (int i = 0; i < order.length; i++) {
+			words[i] = terms.get(order[i]);
+			wordIds.put(words[i], i);
+		}
+		if (logger.isInfoEnabled())
+			logger.info(words.length + " of " + terms.size()
+					+ " words of field " + field + " with df >= " + minDocFreq);
+	}
+
+	/**
+	 * Writes the documents with random topics to the scratch files of the
+	 * partitions, counting the assignments.
+	 */
+	Partition[] initialise() throws IOException {
+		Partition partitions[] = new Partition[Math.max(1, numThreads)];
+		int maxDoc = reader.maxDoc();
+		int docs = 0;
+		long tokens = 0;
+		for (int p = 0; p < partitions.length; p++) {
+			partitions[p] = new Partition(p);
+			Random random = partitions[p].random;
+			DataOutputStream out = partitions[p].openOutput();
+			try {
+				int from = (int) ((long) maxDoc * p / partitions.length);
+				int to = (int) ((long) maxDoc * (p + 1) / partitions.length);
+				int tokenWords[] = new int[256];
+				for (int d = from; d < to; d++) {
+					if (reader.isDeleted(d))
+						continue;
+					TermFreqVector tfv = reader.getTermFreqVector(d, field);
+					if (tfv == null)
+						continue;
+					String terms[] = tfv.getTerms();
+					int freqs[] = tfv.getTermFrequencies();
+					int n = 0;
+					for (int i = 0; i < terms.length; i++) {
+						Integer id = wordIds.get(terms[i]);
+						if (id == null)
+							continue;
+						if (n + freqs[i] > tokenWords.length)
+							tokenWords = Arrays.copyOf(tokenWords, Math.max(
+									n + freqs[i], 2 * tokenWords.length));
+						for (int k = 0; k < freqs[i]; k++)
+							tokenWords[n++] = id.intValue();
+					}
+					if (n == 0)
+						continue;
+					writeVInt(out, n);
+					for (int i = 0; i < n; i++) {
+						int topic = random.nextInt(numTopics);
+						wordTopicCount[tokenWords[i] * numTopics + topic]++;
+						topicCount[topic]++;
+						writeVInt(out, tokenWords[i]);
+						writeVInt(out, topic);
+					}
+					docs++;
+					tokens += n;
+				}
+			} finally {
+				out.close();
+			}
+			partitions[p].swap();
+		}
+		if (logger.isInfoEnabled())
+			logger.info(docs + " documents, " + tokens + " tokens in "
+					+ partitions.length + " partition(s)");
+		return partitions;
+	}
+
+	/** One Gibbs epoch over all partitions; returns the number of changes. */
+	long epoch(Partition partitions[], ExecutorService executor)
+			throws IOException {
+		if (executor == null) {
+			long changed = 0;
+			for (int p = 0; p < partitions.length; p++)
+				changed += partitions[p].sample(wordTopicCount, topicCount);
+			return changed;
+		}
+
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		for (int p = 0; p < partitions.length; p++) {
+			final Partition partition = partitions[p];
+			partition.copyCounts(wordTopicCount, topicCount);
+			futures.add(executor.submit(new Callable<Long>() {
+				public Long call() throws IOException {
+					return partition.sample(partition.wordTopicCount,
+							partition.topicCount);
+				}
+			}));
+		}
+		long changed = 0;
+		try {
+			for (int p = 0; p < futures.size(); p++)
+				changed += futures.get(p).get().longValue();
+		} catch (InterruptedException e) {
+			throw new IOException("interrupted: " + e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+		// global += sum of the partitions' changes
+		merge(wordTopicCount, partitions, true);
+		merge(topicCount, partitions, false);
+		return changed;
+	}
+
+	private static void merge(int global[], Partition partitions[],
+			boolean words) {
+		int n = partitions.length;
+		for (int i = 0; i < global.length; i++) {
+			int sum = 0;
+			for (int p = 0; p < n; p++)
+				sum += words ? partitions[p].wordTopicCount[i]
+						: partitions[p].topicCount[i];
+			global[i] = sum - (n - 1) * global[i];
+		}
+	}
+
+	/** Writes the model in the format {@link TopicModel} reads. */
+	void write(File output) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 1 << 16));
+		try {
+			out.writeInt(TopicModel.MAGIC);
+			out.writeUTF(field);
+			out.writeInt(numTopics);
+			out.writeInt(words.length);
+			out.writeDouble(docTopicPrior);
+			out.writeDouble(topicWordPrior);
+			double denominators[] = new double[numTopics];
+			for (int t = 0; t < numTopics; t++) {
+				out.writeLong(topicCount[t]);
+				denominators[t] = topicCount[t] + words.length
+						* topicWordPrior;
+			}
+			for (int w = 0, offset = 0; w < words.length; w++)
+				for (int t = 0; t < numTopics; t++)
+					out.writeFloat((float) ((wordTopicCount[offset++] + topicWordPrior) / denominators[t]));
+			for (int w = 0; w < words.length; w++)
+				out.writeUTF(words[w]);
+		} finally {
+			out.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("wrote topic model " + output + ", " + output.length()
+					+ " bytes");
+	}
+
+	/**
+	 * The documents of one partition: the word and topic of every token,
+	 * read from one scratch file and rewritten to the other every epoch.
+	 */
+	class Partition {
+		File current;
+		File next;
+		final Random random;
+		/** private counts, when partitions are sampled concurrently */
+		int wordTopicCount[];
+		int topicCount[];
+
+		Partition(int id) throws IOException {
+			current = File.createTempFile("lda" + id + "-", ".a", tmpDir);
+			next = File.createTempFile("lda" + id + "-", ".b", tmpDir);
+			random = new Random(seed + id);
+		}
+
+		DataOutputStream openOutput() throws IOException {
+			return new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(next), 1 << 16));
+		}
+
+		void swap() {
+			File f = current;
+			current = next;
+			next = f;
+		}
+
+		void copyCounts(int words[], int topics[]) {
+			if (wordTopicCount == null) {
+				wordTopicCount = new int[words.length];
+				topicCount = new int[topics.length];
+			}
+			System.arraycopy(words, 0, wordTopicCount, 0, words.length);
+			System.arraycopy(topics, 0, topicCount, 0, topics.length);
+		}
+
+		/** Resamples every token of the partition, updating the counts. */
+		long sample(int wordTopicCount[], int topicCount[]) throws IOException {
+			final int K = numTopics;
+			final double vBeta = words.length * topicWordPrior;
+			int docTopicCount[] = new int[K];
+			double topicDistro[] = new double[K];
+			int tokenWords[] = new int[256];
+			int tokenTopics[] = new int[256];
+			long changed = 0;
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(current), 1 << 16));
+			DataOutputStream out = openOutput();
+			try {
+				while (true) {
+					int n;
+					try {
+						n = readVInt(in);
+					} catch (EOFException e) {
+						break;
+					}
+					if (n > tokenWords.length) {
+						tokenWords = new int[n];
+						tokenTopics = new int[n];
+					}
+					Arrays.fill(docTopicCount, 0);
+					for (int i = 0; i < n; i++) {
+						tokenWords[i] = readVInt(in);
+						tokenTopics[i] = readVInt(in);
+						docTopicCount[tokenTopics[i]]++;
+					}
+					for (int i = 0; i < n; i++) {
+						int row = tokenWords[i] * K;
+						int old = tokenTopics[i];
+						docTopicCount[old]--;
+						wordTopicCount[row + old]--;
+						topicCount[old]--;
+						double sum = 0;
+						for (int t = 0; t < K; t++) {
+							sum += (docTopicCount[t] + docTopicPrior)
+									* (wordTopicCount[row + t] + topicWordPrior)
+									/ (topicCount[t] + vBeta);
+							topicDistro[t] = sum;
+						}
+						int topic = Statistics.sample(topicDistro, random);
+						docTopicCount[topic]++;
+						wordTopicCount[row + topic]++;
+						topicCount[topic]++;
+						if (topic != old) {
+							tokenTopics[i] = topic;
+							changed++;
+						}
+					}
+					writeVInt(out, n);
+					for (int i = 0; i < n; i++) {
+						writeVInt(out, tokenWords[i]);
+						writeVInt(out, tokenTopics[i]);
+					}
+				}
+			} finally {
+				in.close();
+				out.close();
+			}
+			swap();
+			return changed;
+		}
+
+		void delete() {
+			current.delete();
+			next.delete();
+		}
+	}
+
+	static void writeVInt(DataOutputStream out, int i) throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.writeByte((i & 0x7f) | 0x80);
+			i >>>= 7;
+		}
+		out.writeByte(i);
+	}
+
+	static int readVInt(DataInputStream in) throws IOException {
+		byte b = in.readByte();
+		int i = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = in.readByte();
+			i |= (b & 0x7F) << shift;
+		}
+		return i;
+	}
+
+	/**
+	 * Usage: TopicModelTrainer output [indexPath]<br>
+	 * without indexPath the index is Lucene.indexDirectory
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: TopicModelTrainer output [indexPath]");
+			System.exit(1);
+		}
+		Searcher searcher = args.length > 1 ? ISManager
+				.getSearcheFromPath(args[1]) : ISManager
+				.getSearcheFromPropertyFile();
+		new TopicModelTrainer(searcher.getIndexReader()).train(new File(
+				args[0]));
+	}
+}
@@ -18,6 +18,7 @@ import org.apache.lucene.index.TermPositionVector;
 import org.apache.lucene.postProcess.QueryExpansionModel;
 import org.apache.lucene.postProcess.termselector.LatentDirichletAllocation.GibbsSample;
 import org.apache.lucene.search.model.Idf;
+import org.dutir.lucene.TermAssociationIndex;
 import org.dutir.lucene.util.ApplicationSetup;
 import org.dutir.lucene.util.Rounding;
 import org.dutir.lucene.util.TermsCache;
@@ -47,6 +48,12 @@ public class TopicTermSelector extends TermSelector {
 
 	static boolean associationTag = Boolean.parseBoolean(ApplicationSetup
 			.getProperty("TopicTermSelector.associationTag", "false"));
+	/**
+	 * co-document counts of the collection, built offline, used instead of
+	 * the windowed co-occurrences of the feedback documents if set
+	 */
+	static String associationPath = ApplicationSetup.getProperty(
+			"TopicTermSelector.association.path", "");
 
 	static float threshold = Float.parseFloat(ApplicationSetup.getProperty(
 			"TopicTermSelector.threshold", "0.2"));
@@ -68,6 +75,14 @@ public class TopicTermSelector extends TermSelector {
 	static int burnin = 30;
 	static int sampleLag = 10;
 
+	/**
+	 * a collection topic model written by {@link TopicModelTrainer}; when
+	 * set, feedback documents are folded in to it instead of training LDA on
+	 * them
+	 */
+	static String modelPath = ApplicationSetup.getProperty(
+			"TopicTermSelector.model", "");
+
 	static int BURNIN_EPOCHS = 10;
 	static int SAMPLE_LAG = 30;
 	static int NUM_SAMPLES = 30;
@@ -209,8 +224,13 @@ public class TopicTermSelector extends TermSelector {
 		MapSymbolTable coTable = SYMBOL_TABLE.clone();
 		TermAssociation tAss = null;
 		if (associationTag) {
-			tAss = TermAssociation.built(this.searcher, this.topDoc, coTable,
-					this.field, winSize);
+			TermAssociationIndex index = TermAssociationIndex
+					.get(associationPath);
+			if (index != null)
+				tAss = TermAssociation.built(index, coTable);
+			else
+				tAss = TermAssociation.built(this.searcher, this.topDoc,
+						coTable, this.field, winSize);
 		}
 
 		// ////////////////////////////////////////////
@@ -220,16 +240,23 @@ public class TopicTermSelector extends TermSelector {
 		// .gibbsSampler(DOC_WORDS, NUM_TOPICS, DOC_TOPIC_PRIOR,
 		// TOPIC_WORD_PRIOR, BURNIN_EPOCHS, SAMPLE_LAG,
 		// NUM_SAMPLES, RANDOM, querytermid, backids, null, tAss);
-		LatentDirichletAllocation.GibbsSample sample = LatentDirichletAllocation
-				.gibbsSampler(DOC_WORDS, NUM_TOPICS, DOC_TOPIC_PRIOR,
-						TOPIC_WORD_PRIOR, BURNIN_EPOCHS, SAMPLE_LAG,
-						NUM_SAMPLES, RANDOM, querytermid, backids, null);
+		TopicModel model = topicModel();
+		LatentDirichletAllocation.GibbsSample sample;
+		if (model != null) {
+			sample = model.foldIn(DOC_WORDS, SYMBOL_TABLE, BURNIN_EPOCHS,
+					RANDOM);
+		} else {
+			sample = LatentDirichletAllocation.gibbsSampler(DOC_WORDS,
+					NUM_TOPICS, DOC_TOPIC_PRIOR, TOPIC_WORD_PRIOR,
+					BURNIN_EPOCHS, SAMPLE_LAG, NUM_SAMPLES, RANDOM,
+					querytermid, backids, null);
+		}
 
 		LatentDirichletAllocation lda = sample.lda();
 		short[][] qsamples = lda.sampleTopics(querytermid, numSamples, burnin,
 				sampleLag, RANDOM);
 
-		float theta[] = new float[NUM_TOPICS];
+		float theta[] = new float[lda.numTopics()];
 		java.util.Arrays.fill(theta, 0);
 		for (int i = 0; i < qsamples.length; i++) {
 			for (int j = 0; j < qsamples[i].length; j++) {
@@ -248,6 +275,26 @@ public class TopicTermSelector extends TermSelector {
 //		logger.info( " feedback term: " + this.termMap.size());
 	}
 
+	/**
+	 * @return the topic model of <tt>TopicTermSelector.model</tt> if it
+	 *         models the field expanded, null to train LDA on the feedback
+	 *         documents
+	 */
+	private TopicModel topicModel() {
+		if (modelPath.length() == 0)
+			return null;
+		try {
+			TopicModel model = TopicModel.getModel(modelPath);
+			if (model.getField().equals(field))
+				return model;
+			logger.warn("topic model " + modelPath + " is of field "
+					+ model.getField() + ", not " + field);
+		} catch (IOException e) {
+			logger.error("cannot load topic model " + modelPath, e);
+		}
+		return null;
+	}
+
 	float[] sampleTheta(int numTopics, LatentDirichletAllocation lda,
 			int[] words) {
 		short[][] qsamples = lda.sampleTopics(words, numSamples, burnin,
@@ -422,7 +469,8 @@ public class TopicTermSelector extends TermSelector {
 			float totalweight = 0;
 			int feedbackNum = sample.numDocuments();
 			int times = 10;
-			float thetas[][] = sampleThetas(times, NUM_TOPICS, lda, querytermid);
+			float thetas[][] = sampleThetas(times, sample.numTopics(), lda,
+					querytermid);
 
 			for (int i = 0; i < len; i++) {
 				String term = SYMBOL_TABLE.idToSymbol(i);
@@ -469,7 +517,8 @@ public class TopicTermSelector extends TermSelector {
 			float totalweight = 0;
 			int feedbackNum = sample.numDocuments();
 			int times = 10;
-			float thetas[][] = sampleThetas(times, NUM_TOPICS, lda, querytermid);
+			float thetas[][] = sampleThetas(times, sample.numTopics(), lda,
+					querytermid);
 
 			for (int i = 0; i < len; i++) {
 				String term = SYMBOL_TABLE.idToSymbol(i);
@@ -483,7 +532,7 @@ public class TopicTermSelector extends TermSelector {
 				float weight = pt;
 				for (int qi = 0; qi < querytermid.length; qi++) {
 
-					for (int ti = 0; ti < NUM_TOPICS; ti++) {
+					for (int ti = 0; ti < sample.numTopics(); ti++) {
 
 					}
 				}
@@ -604,12 +653,13 @@ public class TopicTermSelector extends TermSelector {
 			float totalweight = 0;
 			int feedbackNum = sample.numDocuments();
 			int times = 10;
-			float thetas[] = sampleThetasAver(times, NUM_TOPICS, lda,
+			int numTopics = sample.numTopics();
+			float thetas[] = sampleThetasAver(times, numTopics, lda,
 					querytermid);
 
-			float doctopics[][] = new float[feedbackNum][NUM_TOPICS];
+			float doctopics[][] = new float[feedbackNum][numTopics];
 			for (int d = 0; d < feedbackNum; d++) {
-				for(int ti=0; ti < NUM_TOPICS; ti++){
+				for(int ti=0; ti < numTopics; ti++){
 					doctopics[d][ti] =  (float) sample.documentTopicProb(d, ti);
 				}
 			}
@@ -698,7 +748,7 @@ public class TopicTermSelector extends TermSelector {
 	@Override
 	public String getInfo() {
 		return "TopicSel_s=" + strategy + "t=" + NUM_TOPICS + "beta=" + beta
-				+ "expTag=" + expTag;
+				+ "expTag=" + expTag + (modelPath.length() > 0 ? "global" : "");
 	}
 
 	/**
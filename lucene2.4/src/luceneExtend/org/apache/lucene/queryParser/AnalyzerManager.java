@@ -27,7 +27,7 @@ public class AnalyzerManager {
 
 	//return a general analyzer from property file
 	static GeneralAnalyzer analyzer = null;
-	public static Analyzer getFromPropertyFile() {
+	public static synchronized Analyzer getFromPropertyFile() {
 		try {
 			if (analyzer == null) {
 				Tokenizer tokenizer = (Tokenizer) Class.forName(analyzerName)
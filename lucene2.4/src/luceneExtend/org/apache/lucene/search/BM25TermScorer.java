@@ -49,6 +49,8 @@ public class BM25TermScorer extends Scorer {
 	private byte[] norm;
 	private float b;
 	private float k1;
+	/** -1 before the first next(), Integer.MAX_VALUE once exhausted */
+	private int doc = -1;
 
 	public BM25TermScorer(IndexReader reader, TermQuery term, Similarity similarity)
 			throws IOException {
@@ -66,7 +68,7 @@ public class BM25TermScorer extends Scorer {
 
 	@Override
 	public int doc() {
-		return this.termDocs.doc();
+		return this.doc;
 	}
 
 	/*
@@ -80,10 +82,11 @@ public class BM25TermScorer extends Scorer {
 		if (this.termDocs != null)
 			this.termDocs.close();
 		this.termDocs = this.reader.termDocs(this.term.getTerm());
+		this.doc = -1;
 		// skipTo doc
 
 		//
-		if (!this.skipTo(doc))
+		if (!this.skipTo(doc) || this.doc() != doc)
 			return null;
 		float length = 0f;
 		byte[] norm = this.reader.norms(this.term.getTerm().field());
@@ -118,8 +121,12 @@ public class BM25TermScorer extends Scorer {
 	public boolean next() throws IOException {
 
 		boolean result = this.termDocs.next();
-		if (!result)
+		if (result) {
+			this.doc = this.termDocs.doc();
+		} else {
 			this.termDocs.close();
+			this.doc = Integer.MAX_VALUE;
+		}
 		return result;
 
 	}
@@ -145,16 +152,26 @@ public class BM25TermScorer extends Scorer {
 
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Moves to the first document at or after <code>target</code> with the
+	 * skip list of the postings; stays on the current document if it is not
+	 * before the target.
 	 * 
 	 * @see org.apache.lucene.search.Scorer#skipTo(int)
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		while (this.next() && this.doc() < target) {
+		if (this.doc == Integer.MAX_VALUE)
+			return false;
+		if (this.doc >= target)
+			return true;
+		boolean result = this.termDocs.skipTo(target);
+		if (result) {
+			this.doc = this.termDocs.doc();
+		} else {
+			this.termDocs.close();
+			this.doc = Integer.MAX_VALUE;
 		}
-
-		return this.doc() == target;
+		return result;
 	}
 }
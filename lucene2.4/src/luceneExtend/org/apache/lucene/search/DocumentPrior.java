@@ -0,0 +1,232 @@
+/**
+ *
+ */
+package org.apache.lucene.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * A query-independent score of every document of an index (spam
+ * percentile, PageRank, URL depth, ...), added to the score of the top-level
+ * {@link RBooleanScorer} or {@link GeneralTermScorer} of a query, so that it
+ * affects the whole ranking rather than a reranked top. The column is built
+ * by {@link DocumentPriorBuilder} and memory-mapped; it holds either one
+ * float per document or one byte quantising the values between the minimum
+ * and the maximum in 256 levels.
+ * <p>
+ * A value <i>v</i> is combined with a score as set by
+ * <tt>Lucene.DocumentPrior.combine</tt>:
+ * <ul>
+ * <li><tt>loglinear</tt> (default): score + weight * v</li>
+ * <li><tt>lmprior</tt>: score + weight * log(v), the document prior of a
+ * language model, for v a probability</li>
+ * </ul>
+ * where weight is <tt>Lucene.DocumentPrior.weight</tt> (1). No prior is
+ * applied unless <tt>Lucene.DocumentPrior.path</tt> names a column, nor to
+ * an index whose number of documents differs from the column's. A column
+ * with values of 0 or less is refused under <tt>lmprior</tt>, rather than
+ * giving those documents a log of about -103.
+ * <p>
+ * File layout, big-endian:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     format, FLOAT or BYTE
+ * int     maxDoc
+ * float   minimum value
+ * float   maximum value
+ * float or byte   value of each document   [maxDoc]
+ * </pre>
+ *
+ * @author yezheng
+ */
+public class DocumentPrior {
+	private static Logger logger = Logger.getLogger(DocumentPrior.class);
+
+	/** "PRI1" */
+	static final int MAGIC = 0x50524931;
+	static final int HEADER_LENGTH = 20;
+	public static final int FLOAT = 0;
+	public static final int BYTE = 1;
+
+	static final int LOGLINEAR = 0;
+	static final int LMPRIOR = 1;
+
+	/** A weight that can add a prior to the scores of its scorer. */
+	interface Applicable {
+		void setDocumentPrior(DocumentPrior prior);
+	}
+
+	private static HashMap<String, DocumentPrior> priors = new HashMap<String, DocumentPrior>();
+
+	final int format;
+	final int maxDoc;
+	final float min;
+	final float max;
+	final int combine;
+	final float weight;
+
+	private final FloatBuffer floats;
+	private final ByteBuffer bytes;
+	/** the addend of each byte value */
+	private final float addends[];
+	private boolean warned = false;
+
+	/**
+	 * @return the prior of <tt>Lucene.DocumentPrior.path</tt>, loaded on
+	 *         first use; null if none is configured or it cannot be read,
+	 *         in which case it is tried again by the next query
+	 */
+	public static DocumentPrior getFromPropertyFile() {
+		String path = ApplicationSetup.getProperty("Lucene.DocumentPrior.path",
+				"");
+		if (path.length() == 0)
+			return null;
+		synchronized (priors) {
+			DocumentPrior prior = priors.get(path);
+			if (prior != null)
+				return prior;
+			try {
+				prior = new DocumentPrior(new File(path), ApplicationSetup
+						.getProperty("Lucene.DocumentPrior.combine",
+								"loglinear"), Float.parseFloat(ApplicationSetup
+						.getProperty("Lucene.DocumentPrior.weight", "1")));
+			} catch (IOException e) {
+				logger.error("cannot read the document prior " + path, e);
+				return null;
+			}
+			priors.put(path, prior);
+			return prior;
+		}
+	}
+
+	public DocumentPrior(File file, String combine, float weight)
+			throws IOException {
+		if (combine.equalsIgnoreCase("loglinear"))
+			this.combine = LOGLINEAR;
+		else if (combine.equalsIgnoreCase("lmprior"))
+			this.combine = LMPRIOR;
+		else
+			throw new IllegalArgumentException(
+					"unknown document prior combination: " + combine);
+		this.weight = weight;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.readInt() != MAGIC)
+				throw new IOException(file + " is not a document prior");
+			format = raf.readInt();
+			maxDoc = raf.readInt();
+			min = raf.readFloat();
+			max = raf.readFloat();
+			if (format != FLOAT && format != BYTE)
+				throw new IOException(file + ": unknown format " + format);
+			if (this.combine == LMPRIOR && min <= 0 && maxDoc > 0)
+				throw new IOException(file + " has values down to " + min
+						+ ", which lmprior cannot take the log of; rebuild it"
+						+ " with a positive Lucene.DocumentPrior.missing");
+			long length = format == FLOAT ? 4L * maxDoc : maxDoc;
+			if (raf.length() < HEADER_LENGTH + length)
+				throw new IOException(file + " is truncated");
+			// the mapping stays valid once the file is closed
+			ByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, HEADER_LENGTH, length);
+			if (format == FLOAT) {
+				floats = buffer.asFloatBuffer();
+				bytes = null;
+				addends = null;
+			} else {
+				floats = null;
+				bytes = buffer;
+				addends = new float[256];
+				for (int i = 0; i < 256; i++)
+					addends[i] = addend(dequantise(i, min, max));
+			}
+		} finally {
+			raf.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("loaded document prior " + file + ": " + maxDoc
+					+ " documents, " + (format == FLOAT ? "float" : "byte")
+					+ ", " + combine + " weight " + weight);
+	}
+
+	static float dequantise(int level, float min, float max) {
+		return min + level * (max - min) / 255f;
+	}
+
+	static int quantise(float value, float min, float max) {
+		if (max <= min)
+			return 0;
+		return Math.round((value - min) * 255f / (max - min));
+	}
+
+	private float addend(float value) {
+		if (combine == LMPRIOR)
+			return weight * (float) Math.log(Math.max(value, Float.MIN_VALUE));
+		return weight * value;
+	}
+
+	public int maxDoc() {
+		return maxDoc;
+	}
+
+	/** @return the value of a document, as stored */
+	public float value(int doc) {
+		if (format == FLOAT)
+			return floats.get(doc);
+		return dequantise(bytes.get(doc) & 0xFF, min, max);
+	}
+
+	/** @return what the prior adds to the score of a document */
+	public float addend(int doc) {
+		if (format == BYTE)
+			return addends[bytes.get(doc) & 0xFF];
+		return addend(floats.get(doc));
+	}
+
+	/**
+	 * @return the explanation of a score the prior was added to, or
+	 *         <code>score</code> itself when the document does not match or
+	 *         the prior does not apply to the reader
+	 */
+	public Explanation explain(IndexReader reader, int doc, Explanation score) {
+		if (!score.isMatch() || !covers(reader))
+			return score;
+		float addend = addend(doc);
+		ComplexExplanation result = new ComplexExplanation(true,
+				score.getValue() + addend, "sum of:");
+		result.addDetail(score);
+		result.addDetail(new Explanation(addend, "document prior, "
+				+ (combine == LMPRIOR ? "weight * log(value)"
+						: "weight * value") + ", of value " + value(doc)
+				+ " and weight " + weight));
+		return result;
+	}
+
+	/**
+	 * @return whether the column was built for the documents of the reader;
+	 *         warns once when it was not
+	 */
+	public boolean covers(IndexReader reader) {
+		if (reader.maxDoc() == maxDoc)
+			return true;
+		if (!warned) {
+			warned = true;
+			logger.warn("document prior of " + maxDoc
+					+ " documents not applied to an index of "
+					+ reader.maxDoc());
+		}
+		return false;
+	}
+}
@@ -0,0 +1,169 @@
+/**
+ *
+ */
+package org.apache.lucene.search;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.dutir.lucene.ISManager;
+import org.dutir.lucene.util.ApplicationSetup;
+import org.dutir.lucene.util.Files;
+
+/**
+ * Builds the {@link DocumentPrior} column of an index from a file of
+ * <tt>docno value</tt> lines, mapping each docno to its document through the
+ * <tt>TrecDocTags.idtag</tt> field. Documents the file does not list get
+ * <tt>Lucene.DocumentPrior.missing</tt>, by default the value that adds
+ * nothing to their scores: 0, or 1 when <tt>Lucene.DocumentPrior.combine</tt>
+ * is <tt>lmprior</tt>, which takes its log. <tt>Lucene.DocumentPrior.format</tt>
+ * is <tt>float</tt> (default) or <tt>byte</tt>.
+ * <p>
+ * The values are written straight into a mapped file, so the column of a
+ * large collection is built without holding it on the heap.
+ *
+ * @author yezheng
+ */
+public class DocumentPriorBuilder {
+	private static Logger logger = Logger.getLogger(DocumentPriorBuilder.class);
+
+	final IndexReader reader;
+	final String idField = ApplicationSetup.getProperty("TrecDocTags.idtag",
+			"DOCNO");
+	final float missing = Float.parseFloat(ApplicationSetup.getProperty(
+			"Lucene.DocumentPrior.missing", ApplicationSetup.getProperty(
+					"Lucene.DocumentPrior.combine", "loglinear")
+					.equalsIgnoreCase("lmprior") ? "1" : "0"));
+	final int format = ApplicationSetup.getProperty(
+			"Lucene.DocumentPrior.format", "float").equalsIgnoreCase("byte") ? DocumentPrior.BYTE
+			: DocumentPrior.FLOAT;
+
+	public DocumentPriorBuilder(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	public void build(String input, File output) throws IOException {
+		int maxDoc = reader.maxDoc();
+		File floatFile = format == DocumentPrior.FLOAT ? output : new File(
+				output.getPath() + ".tmp");
+		RandomAccessFile raf = new RandomAccessFile(floatFile, "rw");
+		try {
+			raf.setLength(DocumentPrior.HEADER_LENGTH + 4L * maxDoc);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0,
+					DocumentPrior.HEADER_LENGTH + 4L * maxDoc);
+			buffer.position(DocumentPrior.HEADER_LENGTH);
+			FloatBuffer values = buffer.slice().asFloatBuffer();
+			for (int i = 0; i < maxDoc; i++)
+				values.put(i, missing);
+
+			int read = 0, unknown = 0;
+			Term prototype = new Term(idField, "");
+			TermDocs termDocs = reader.termDocs();
+			BufferedReader br = Files.openFileReader(input);
+			try {
+				String line;
+				while ((line = br.readLine()) != null) {
+					line = line.trim();
+					if (line.length() == 0 || line.startsWith("#"))
+						continue;
+					String parts[] = line.split("\\s+");
+					if (parts.length < 2) {
+						logger.warn("skipping line: " + line);
+						continue;
+					}
+					read++;
+					float value = Float.parseFloat(parts[1]);
+					termDocs.seek(prototype.createTerm(parts[0]));
+					if (termDocs.next())
+						values.put(termDocs.doc(), value);
+					else
+						unknown++;
+				}
+			} finally {
+				br.close();
+				termDocs.close();
+			}
+			if (unknown > 0)
+				logger.warn(unknown + " of " + read
+						+ " docnos are not in the index");
+
+			float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+			for (int i = 0; i < maxDoc; i++) {
+				float v = values.get(i);
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			if (maxDoc == 0)
+				min = max = 0;
+
+			if (format == DocumentPrior.FLOAT) {
+				writeHeader(buffer, maxDoc, min, max);
+				buffer.force();
+			} else {
+				writeBytes(values, output, maxDoc, min, max);
+			}
+			if (logger.isInfoEnabled())
+				logger.info("document prior " + output + ": " + read
+						+ " values read, range [" + min + ", " + max + "]");
+		} finally {
+			raf.close();
+			if (floatFile != output)
+				floatFile.delete();
+		}
+	}
+
+	private void writeHeader(ByteBuffer buffer, int maxDoc, float min,
+			float max) {
+		buffer.putInt(0, DocumentPrior.MAGIC);
+		buffer.putInt(4, format);
+		buffer.putInt(8, maxDoc);
+		buffer.putFloat(12, min);
+		buffer.putFloat(16, max);
+	}
+
+	private void writeBytes(FloatBuffer values, File output, int maxDoc,
+			float min, float max) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(output, "rw");
+		try {
+			raf.setLength(DocumentPrior.HEADER_LENGTH + (long) maxDoc);
+			MappedByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_WRITE, 0,
+					DocumentPrior.HEADER_LENGTH + (long) maxDoc);
+			writeHeader(buffer, maxDoc, min, max);
+			for (int i = 0; i < maxDoc; i++)
+				buffer.put(DocumentPrior.HEADER_LENGTH + i,
+						(byte) DocumentPrior.quantise(values.get(i), min, max));
+			buffer.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	/**
+	 * Usage: DocumentPriorBuilder input output [indexPath]<br>
+	 * without indexPath the index is Lucene.indexDirectory
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err
+					.println("Usage: DocumentPriorBuilder input output [indexPath]");
+			System.exit(1);
+		}
+		Searcher searcher = args.length > 2 ? ISManager
+				.getSearcheFromPath(args[2]) : ISManager
+				.getSearcheFromPropertyFile();
+		new DocumentPriorBuilder(searcher.getIndexReader()).build(args[0],
+				new File(args[1]));
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ *
+ */
+package org.apache.lucene.search;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.OpenBitSet;
+import org.apache.lucene.util.OpenBitSetDISI;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Caches the documents filters allow as {@link OpenBitSet}s, keyed by the
+ * filter, compared with <code>equals</code>, and by the index generation
+ * of the reader, so that equal filters built per topic share one set and a
+ * reopened reader on an unchanged index finds it again. Readers that do not
+ * know their directory and version are keyed by identity. The
+ * <tt>Lucene.FilterCache.size</tt> (64) most recently used sets are kept.
+ * <p>
+ * A filtered search through {@link IndexSearcher} advances the scorer with
+ * <code>skipTo</code> from one allowed document to the next, so with
+ * {@link RBooleanScorer} a filter narrows the documents scored.
+ *
+ * @author yezheng
+ */
+public class FilterCache {
+	private static Logger logger = Logger.getLogger(FilterCache.class);
+
+	static int SIZE = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.FilterCache.size", "64"));
+
+	private static Map<Key, OpenBitSet> cache = new LinkedHashMap<Key, OpenBitSet>(
+			16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry<Key, OpenBitSet> eldest) {
+			return size() > SIZE;
+		}
+	};
+
+	private static final class Key {
+		final Filter filter;
+		/** the directory, or the reader itself */
+		final Object index;
+		final long version;
+
+		Key(Filter filter, IndexReader reader) {
+			this.filter = filter;
+			Object index = reader;
+			long version = 0;
+			try {
+				version = reader.getVersion();
+				index = reader.directory();
+			} catch (UnsupportedOperationException e) {
+				index = reader;
+				version = 0;
+			}
+			this.index = index;
+			this.version = version;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key))
+				return false;
+			Key other = (Key) o;
+			return index == other.index && version == other.version
+					&& filter.equals(other.filter);
+		}
+
+		public int hashCode() {
+			return filter.hashCode() ^ System.identityHashCode(index)
+					^ (int) (version ^ (version >>> 32));
+		}
+	}
+
+	/** A filter whose documents are kept in the cache. */
+	public static class CachedFilter extends Filter {
+		private static final long serialVersionUID = 1L;
+		final Filter filter;
+
+		public CachedFilter(Filter filter) {
+			this.filter = filter;
+		}
+
+		public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+			return FilterCache.getDocIdSet(filter, reader);
+		}
+
+		public String toString() {
+			return "CachedFilter(" + filter + ")";
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof CachedFilter
+					&& filter.equals(((CachedFilter) o).filter);
+		}
+
+		public int hashCode() {
+			return filter.hashCode() ^ 0x2F1A6C3B;
+		}
+	}
+
+	/** @return the filter with its documents cached */
+	public static Filter cached(Filter filter) {
+		if (filter == null || filter instanceof CachedFilter)
+			return filter;
+		return new CachedFilter(filter);
+	}
+
+	/**
+	 * @return the documents the filter allows in the reader, computed on
+	 *         first use
+	 */
+	public static OpenBitSet getDocIdSet(Filter filter, IndexReader reader)
+			throws IOException {
+		Key key = new Key(filter, reader);
+		synchronized (cache) {
+			OpenBitSet bits = cache.get(key);
+			if (bits != null)
+				return bits;
+		}
+		DocIdSet set = filter.getDocIdSet(reader);
+		OpenBitSet bits = set instanceof OpenBitSet ? (OpenBitSet) set
+				: new OpenBitSetDISI(set.iterator(), reader.maxDoc());
+		synchronized (cache) {
+			cache.put(key, bits);
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("cached " + filter + ": " + bits.cardinality()
+					+ " of " + reader.maxDoc() + " documents");
+		return bits;
+	}
+
+	/**
+	 * @return the filter of <tt>Lucene.Filter.range</tt>, "field lower
+	 *         upper" with both bounds included, cached; null if it is not
+	 *         set
+	 */
+	public static Filter getFromPropertyFile() {
+		String range = ApplicationSetup.getProperty("Lucene.Filter.range", "")
+				.trim();
+		if (range.length() == 0)
+			return null;
+		String parts[] = range.split("\\s+");
+		if (parts.length != 3)
+			throw new IllegalArgumentException(
+					"Lucene.Filter.range must be \"field lower upper\": "
+							+ range);
+		return cached(new RangeFilter(parts[0], parts[1], parts[2], true, true));
+	}
+}
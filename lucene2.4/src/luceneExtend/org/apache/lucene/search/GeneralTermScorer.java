@@ -29,6 +29,13 @@ final class GeneralTermScorer extends RScorer {
 
 	IndexReader reader = null;
 
+	/** added by {@link #score()} only, for a single-term query */
+	private DocumentPrior prior = null;
+
+	void setDocumentPrior(DocumentPrior prior) {
+		this.prior = prior;
+	}
+
 	public void setSearcher(IndexReader reader) {
 		this.reader = reader;
 	}
@@ -95,6 +102,8 @@ final class GeneralTermScorer extends RScorer {
 	}
 
 	public float score() {
+		if (prior != null)
+			return score(docs[pointer]) + prior.addend(doc);
 		return score(docs[pointer]);
 		// float length = 0f;
 		// float norm = Similarity.decodeNorm(this.norms[docs[pointer]]);
@@ -147,6 +156,16 @@ final class GeneralTermScorer extends RScorer {
 		return rscore;
 	}
 
+	/**
+	 * @return the weight of the term times its idf, to read the terms of a
+	 *         long query heaviest first
+	 */
+	float weightEstimate() {
+		float df = Math.max(weightModel.documentFrequency, 1);
+		return weightValue * weightModel.keyFrequency
+				* (float) Math.log(1 + weightModel.numberOfDocuments / df);
+	}
+
 	/**
 	 * Skips to the first match beyond the current whose document number is
 	 * greater than or equal to a given target. <br>
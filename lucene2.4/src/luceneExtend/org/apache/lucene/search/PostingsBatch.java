@@ -0,0 +1,268 @@
+/**
+ *
+ */
+package org.apache.lucene.search;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * The posting lists of a batch of queries run one after another, such as a
+ * window of the topics of <tt>TRECQuerying</tt>: the terms of the batch are
+ * grouped when it is opened, and the posting list of a term that several
+ * queries of the batch hold is decoded once, when {@link RTermWeight#scorer}
+ * first asks for it, into arrays that the scorers of every later query of the
+ * batch read, instead of decoding it again for each query. Other terms, held
+ * by one query or added on the way such as expansion terms, are streamed from
+ * the index the first time and decoded when asked for again. The list of a
+ * term of the batch queries is released once the last of them has
+ * {@link #finished}; lists of terms added on the way are kept until the batch
+ * is closed. At most
+ * <tt>Lucene.PostingsBatch.maxPostings</tt> (16777216) postings are held;
+ * beyond it, the lists are read from the index as without a batch.
+ * <p>
+ * A batch belongs to the thread that opened it.
+ *
+ * @author yezheng
+ */
+public class PostingsBatch {
+	private static Logger logger = Logger.getLogger(PostingsBatch.class);
+
+	private static final ThreadLocal<PostingsBatch> current = new ThreadLocal<PostingsBatch>();
+
+	private static long maxPostings = Long.parseLong(ApplicationSetup
+			.getProperty("Lucene.PostingsBatch.maxPostings", "16777216"));
+
+	/** the decoded postings of a term */
+	private static final class Postings {
+		final int docs[];
+		final int freqs[];
+
+		Postings(int docs[], int freqs[]) {
+			this.docs = docs;
+			this.freqs = freqs;
+		}
+	}
+
+	/** the number of batch queries not finished yet that hold each term */
+	private final HashMap<Term, int[]> pending = new HashMap<Term, int[]>();
+	private final IdentityHashMap<IndexReader, HashMap<Term, Postings>> postings = new IdentityHashMap<IndexReader, HashMap<Term, Postings>>();
+	/** the terms no other query shares that were streamed once, by reader */
+	private final IdentityHashMap<IndexReader, HashSet<Term>> streamed = new IdentityHashMap<IndexReader, HashSet<Term>>();
+	private long held = 0;
+	private int decoded = 0, shared = 0;
+
+	/**
+	 * Opens the batch of the queries for the current thread, closing the one
+	 * it had open.
+	 */
+	public static PostingsBatch open(List<? extends Query> queries) {
+		PostingsBatch batch = current.get();
+		if (batch != null)
+			batch.close();
+		batch = new PostingsBatch();
+		for (Query query : queries) {
+			HashSet<Term> terms = new HashSet<Term>();
+			try {
+				query.extractTerms(terms);
+			} catch (UnsupportedOperationException e) {
+				continue;
+			}
+			for (Term term : terms) {
+				int count[] = batch.pending.get(term);
+				if (count == null)
+					batch.pending.put(term, new int[] { 1 });
+				else
+					count[0]++;
+			}
+		}
+		current.set(batch);
+		return batch;
+	}
+
+	/**
+	 * @return the postings of the term in the reader from the batch of the
+	 *         current thread, null without a batch, when the batch is full or
+	 *         when the term is better streamed from the index
+	 */
+	public static TermDocs termDocs(IndexReader reader, Term term)
+			throws IOException {
+		PostingsBatch batch = current.get();
+		return batch == null ? null : batch.get(reader, term);
+	}
+
+	private TermDocs get(IndexReader reader, Term term) throws IOException {
+		HashMap<Term, Postings> lists = postings.get(reader);
+		if (lists == null) {
+			lists = new HashMap<Term, Postings>();
+			postings.put(reader, lists);
+		}
+		Postings p = lists.get(term);
+		if (p != null) {
+			shared++;
+			return new ArrayTermDocs(p);
+		}
+		// a list no later query reads is streamed, unless it is read again
+		int count[] = pending.get(term);
+		if (count == null || count[0] < 2) {
+			HashSet<Term> once = streamed.get(reader);
+			if (once == null) {
+				once = new HashSet<Term>();
+				streamed.put(reader, once);
+			}
+			if (once.add(term))
+				return null;
+		}
+		int df = reader.docFreq(term);
+		if (held + df > maxPostings)
+			return null;
+		int docs[] = new int[df], freqs[] = new int[df];
+		int bufDocs[] = new int[Math.min(df, 1024)];
+		int bufFreqs[] = new int[bufDocs.length];
+		int n = 0;
+		TermDocs td = reader.termDocs(term);
+		try {
+			// the document frequency counts deleted documents, so it bounds n
+			for (int k; n < df && (k = td.read(bufDocs, bufFreqs)) > 0; n += k) {
+				k = Math.min(k, df - n);
+				System.arraycopy(bufDocs, 0, docs, n, k);
+				System.arraycopy(bufFreqs, 0, freqs, n, k);
+			}
+		} finally {
+			td.close();
+		}
+		if (n < df) {
+			int d[] = new int[n], f[] = new int[n];
+			System.arraycopy(docs, 0, d, 0, n);
+			System.arraycopy(freqs, 0, f, 0, n);
+			docs = d;
+			freqs = f;
+		}
+		p = new Postings(docs, freqs);
+		lists.put(term, p);
+		held += n;
+		decoded++;
+		return new ArrayTermDocs(p);
+	}
+
+	/**
+	 * Releases the lists no other query of the batch holds once the query
+	 * has run.
+	 */
+	public void finished(Query query) {
+		HashSet<Term> terms = new HashSet<Term>();
+		try {
+			query.extractTerms(terms);
+		} catch (UnsupportedOperationException e) {
+			return;
+		}
+		for (Term term : terms) {
+			int count[] = pending.get(term);
+			if (count == null || --count[0] > 0)
+				continue;
+			pending.remove(term);
+			for (Iterator<HashMap<Term, Postings>> it = postings.values()
+					.iterator(); it.hasNext();) {
+				Postings p = it.next().remove(term);
+				if (p != null)
+					held -= p.docs.length;
+			}
+			for (HashSet<Term> once : streamed.values())
+				once.remove(term);
+		}
+	}
+
+	/** Releases all the lists of the batch. */
+	public void close() {
+		if (logger.isDebugEnabled())
+			logger.debug("postings batch: " + decoded + " lists decoded, "
+					+ shared + " shared");
+		postings.clear();
+		streamed.clear();
+		pending.clear();
+		held = 0;
+		if (current.get() == this)
+			current.remove();
+	}
+
+	/** A cursor over decoded postings; every scorer has its own. */
+	private static final class ArrayTermDocs implements TermDocs {
+		final int docs[];
+		final int freqs[];
+		/** the current posting */
+		int p = -1;
+
+		ArrayTermDocs(Postings postings) {
+			docs = postings.docs;
+			freqs = postings.freqs;
+		}
+
+		public void seek(Term term) {
+			throw new UnsupportedOperationException();
+		}
+
+		public void seek(TermEnum termEnum) {
+			throw new UnsupportedOperationException();
+		}
+
+		public int doc() {
+			return docs[p];
+		}
+
+		public int freq() {
+			return freqs[p];
+		}
+
+		public boolean next() {
+			if (p >= docs.length)
+				return false;
+			return ++p < docs.length;
+		}
+
+		public int read(int[] docs, int[] freqs) {
+			int start = p + 1;
+			int n = Math.min(docs.length, this.docs.length - start);
+			if (n <= 0)
+				return 0;
+			System.arraycopy(this.docs, start, docs, 0, n);
+			System.arraycopy(this.freqs, start, freqs, 0, n);
+			p += n;
+			return n;
+		}
+
+		public boolean skipTo(int target) {
+			// gallop from the next posting, then search the last step
+			int lo = p + 1, step = 1, hi = lo;
+			while (hi < docs.length && docs[hi] < target) {
+				lo = hi + 1;
+				hi += step;
+				step <<= 1;
+			}
+			if (hi > docs.length)
+				hi = docs.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (docs[mid] < target)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			p = lo;
+			return p < docs.length;
+		}
+
+		public void close() {
+		}
+	}
+}
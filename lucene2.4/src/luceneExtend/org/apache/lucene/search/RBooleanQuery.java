@@ -1,8 +1,9 @@
 package org.apache.lucene.search;
 
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.util.ToStringUtils;
-import org.apache.lucene.search.BooleanClause.Occur;
+import org.dutir.lucene.util.TermsCache;
 
 import java.awt.PageAttributes.OriginType;
 import java.io.IOException;
@@ -198,12 +199,24 @@ public class RBooleanQuery extends RQuery {
 		return clauses;
 	}
 
-	private class RBooleanWeight implements Weight {
+	private class RBooleanWeight implements Weight, DocumentPrior.Applicable {
 		protected Similarity similarity;
 		protected ArrayList weights = new ArrayList();
+		protected DocumentPrior prior;
 
 		public RBooleanWeight(Searcher searcher) throws IOException {
 			this.similarity = getSimilarity(searcher);
+			// fetch the statistics of all term clauses at once, so the
+			// clause weights below find them in the cache
+			ArrayList<Term> terms = new ArrayList<Term>();
+			for (int i = 0; i < clauses.size(); i++) {
+				RQuery q = ((RBooleanClause) clauses.get(i)).getQuery();
+				if (q instanceof RTermQuery)
+					terms.add(((RTermQuery) q).getTerm());
+			}
+			if (terms.size() > 1)
+				TermsCache.getInstance().getItems(
+						terms.toArray(new Term[terms.size()]), searcher);
 			for (int i = 0; i < clauses.size(); i++) {
 				RBooleanClause c = (RBooleanClause) clauses.get(i);
 				weights.add(c.getQuery().createWeight(searcher));
@@ -247,9 +260,19 @@ public class RBooleanQuery extends RQuery {
 
 		/**
 		 * @return Returns BooleanScorer2 that uses and provides skipTo(), and
-		 *         scores documents in document number order.
+		 *         scores documents in document number order; a
+		 *         {@link TermAtATimeScorer} for a long query of optional terms.
 		 */
 		public RScorer scorer(IndexReader reader) throws IOException {
+			if (minNrShouldMatch == 0) {
+				TermAtATimeScorer taat = TermAtATimeScorer.create(similarity,
+						reader, clauses, weights);
+				if (taat != null) {
+					if (prior != null && prior.covers(reader))
+						taat.setDocumentPrior(prior);
+					return taat;
+				}
+			}
 			RBooleanScorer result = new RBooleanScorer(similarity,
 					minNrShouldMatch, allowDocsOutOfOrder);
 
@@ -263,9 +286,15 @@ public class RBooleanQuery extends RQuery {
 					return null;
 			}
 
+			if (prior != null && prior.covers(reader))
+				result.setDocumentPrior(prior);
 			return result;
 		}
 
+		public void setDocumentPrior(DocumentPrior prior) {
+			this.prior = prior;
+		}
+
 		public Explanation explain(IndexReader reader, int doc)
 				throws IOException {
 			final int minShouldMatch = RBooleanQuery.this
@@ -278,7 +307,7 @@ public class RBooleanQuery extends RQuery {
 			boolean fail = false;
 			int shouldMatchCount = 0;
 			for (int i = 0; i < weights.size(); i++) {
-				BooleanClause c = (BooleanClause) clauses.get(i);
+				RBooleanClause c = (RBooleanClause) clauses.get(i);
 				Weight w = (Weight) weights.get(i);
 				Explanation e = w.explain(reader, doc);
 				if (!c.isProhibited())
@@ -296,7 +325,7 @@ public class RBooleanQuery extends RQuery {
 						sumExpl.addDetail(r);
 						fail = true;
 					}
-					if (c.getOccur().equals(Occur.SHOULD))
+					if (c.getOccur().equals(RBooleanClause.Occur.SHOULD))
 						shouldMatchCount++;
 				} else if (c.isRequired()) {
 					Explanation r = new Explanation(0.0f,
@@ -325,16 +354,18 @@ public class RBooleanQuery extends RQuery {
 			sumExpl.setValue(sum);
 
 			float coordFactor = similarity.coord(coord, maxCoord);
+			Explanation result;
 			if (coordFactor == 1.0f) // coord is no-op
-				return sumExpl; // eliminate wrapper
+				result = sumExpl; // eliminate wrapper
 			else {
-				ComplexExplanation result = new ComplexExplanation(sumExpl
+				ComplexExplanation product = new ComplexExplanation(sumExpl
 						.isMatch(), sum * coordFactor, "product of:");
-				result.addDetail(sumExpl);
-				result.addDetail(new Explanation(coordFactor, "coord(" + coord
+				product.addDetail(sumExpl);
+				product.addDetail(new Explanation(coordFactor, "coord(" + coord
 						+ "/" + maxCoord + ")"));
-				return result;
+				result = product;
 			}
+			return prior == null ? result : prior.explain(reader, doc, result);
 		}
 	}
 
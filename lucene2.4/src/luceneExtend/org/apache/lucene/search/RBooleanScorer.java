@@ -36,6 +36,8 @@ class RBooleanScorer extends RScorer {
 	private ArrayList optionalScorers = new ArrayList();
 	private ArrayList prohibitedScorers = new ArrayList();
 	TreeSet<Integer> docSet = null;
+	/** whether each optional scorer has documents left */
+	private boolean more[] = null;
 
 	private class Coordinator {
 		int maxCoord = 0; // to be increased for each non prohibited scorer
@@ -73,6 +75,8 @@ class RBooleanScorer extends RScorer {
 	private boolean allowDocsOutOfOrder;
 	private int doc;
 	private float score;
+	/** the prior of the documents, when this scores the whole query */
+	private DocumentPrior prior = null;
 
 	/**
 	 * Create a BooleanScorer2.
@@ -127,6 +131,10 @@ class RBooleanScorer extends RScorer {
 		this(similarity, 0, false);
 	}
 
+	void setDocumentPrior(DocumentPrior prior) {
+		this.prior = prior;
+	}
+
 	public void add(final RScorer scorer, boolean required, boolean prohibited) {
 		if (!prohibited) {
 			coordinator.maxCoord++;
@@ -236,6 +244,13 @@ class RBooleanScorer extends RScorer {
 		if (docSet == null) {
 			initial();
 		}
+		return scoreFirst();
+	}
+
+	/**
+	 * Scores the first document of docSet and advances the scorers on it.
+	 */
+	private boolean scoreFirst() throws IOException {
 		if(docSet.size() > 0){
 			doc = docSet.pollFirst();
 			int len = this.optionalScorers.size();
@@ -247,9 +262,13 @@ class RBooleanScorer extends RScorer {
 				if(doc == scorer.doc()){
 					if(scorer.next()){
 						docSet.add(scorer.doc());
+					} else {
+						more[i] = false;
 					}
 				}
 			}
+			if (prior != null)
+				score += prior.addend(doc);
 			return true;
 		}
 		score =0;
@@ -259,12 +278,14 @@ class RBooleanScorer extends RScorer {
 	private void initial() {
 		docSet = new TreeSet<Integer>();
 		int len = this.optionalScorers.size();
+		more = new boolean[len];
 		RScorer scorer = null;
 		for(int i=0; i < len; i++){
 			scorer = (RScorer)this.optionalScorers.get(i);
 			try {
 				if(scorer.next()){
 					docSet.add(scorer.doc());
+					more[i] = true;
 				}
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -289,12 +310,31 @@ class RBooleanScorer extends RScorer {
 	 * When this method is used the {@link #explain(int)} method should not be
 	 * used.
 	 * 
+	 * <p>
+	 * Only the optional scorers behind the target are skipped, so a filter
+	 * that allows few documents spares the scoring of all the others.
+	 * 
 	 * @param target
 	 *            The target document number.
 	 * @return true iff there is such a match.
 	 */
 	public boolean skipTo(int target) throws IOException {
-		throw new UnsupportedOperationException();
+		if (docSet == null) {
+			initial();
+		}
+		docSet.headSet(target).clear();
+		int len = this.optionalScorers.size();
+		for (int i = 0; i < len; i++) {
+			RScorer scorer = (RScorer) this.optionalScorers.get(i);
+			if (more[i] && scorer.doc() < target) {
+				if (scorer.skipTo(target)) {
+					docSet.add(scorer.doc());
+				} else {
+					more[i] = false;
+				}
+			}
+		}
+		return scoreFirst();
 	}
 
 	public Explanation explain(int doc) {
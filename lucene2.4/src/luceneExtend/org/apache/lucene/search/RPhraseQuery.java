@@ -27,6 +27,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.model.WeightModelManager;
 import org.apache.lucene.search.model.WeightingModel;
 import org.apache.lucene.util.ToStringUtils;
+import org.dutir.lucene.ProximityIndex;
 import org.dutir.lucene.util.ApplicationSetup;
 
 /** A Query that matches documents containing a particular sequence of terms.
@@ -148,8 +149,12 @@ public class RPhraseQuery extends RQuery {
       if (terms.size() == 0)			  // optimize zero-term case
         return null;
 
-      TermPositions[] tps = new TermPositions[terms.size()];
-      for (int i = 0; i < terms.size(); i++) {
+      String pModel = ApplicationSetup.getProperty("proximity.model", "DFR");
+      boolean dependence = pModel.equalsIgnoreCase("DFR") || pModel.equalsIgnoreCase("BiL2");
+      ProximityIndex.PairPostings pairs = dependence ? pairPostings(reader) : null;
+      // the positions are not read when the pair postings are
+      TermPositions[] tps = new TermPositions[pairs != null ? 0 : terms.size()];
+      for (int i = 0; i < tps.length; i++) {
         TermPositions p = reader.termPositions((Term)terms.get(i));
         if (p == null)
           return null;
@@ -158,11 +163,12 @@ public class RPhraseQuery extends RQuery {
 
       RPhraseScorer scorer = null; 
       
-      String pModel = ApplicationSetup.getProperty("proximity.model", "DFR");
       if(pModel.equalsIgnoreCase("DFR")){
     	  scorer = new DFRRPhraseScorer(this, tps, getPositions(), similarity, slop, reader.norms(field));
+    	  scorer.setPairPostings(pairs);
       }else if(pModel.equalsIgnoreCase("BiL2")){
     	  scorer = new BiL2RPhraseScorner(this, tps, getPositions(), similarity, slop, reader.norms(field));
+    	  scorer.setPairPostings(pairs);
       }
       else{
     	  if (slop == 0)				  // optimize exact case
@@ -182,6 +188,20 @@ public class RPhraseQuery extends RQuery {
 
     }
 
+    /**
+     * Returns the precomputed unordered window counts of a two-term phrase,
+     * which the DFR and BiL2 scorers count from positions otherwise, or null
+     * if the index has none for the terms and the slop.
+     */
+    private ProximityIndex.PairPostings pairPostings(IndexReader reader) throws IOException {
+      if (terms.size() != 2)
+        return null;
+      ProximityIndex index = ProximityIndex.get(reader);
+      if (index == null)
+        return null;
+      return index.unordered((Term)terms.get(0), (Term)terms.get(1), slop);
+    }
+
     public Explanation explain(IndexReader reader, int doc)
       throws IOException {
 
@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.model.WeightModelManager;
 import org.apache.lucene.search.model.WeightingModel;
+import org.dutir.lucene.ProximityIndex;
 
 /** Expert: Scoring functionality for phrase queries.
  * <br>A document is considered matching if it contains the phrase-query terms  
@@ -44,6 +45,7 @@ abstract class RPhraseScorer extends RScorer {
   protected PhrasePositions first, last;
   protected WeightingModel weightmodel;
   protected float freq; //prhase frequency in current doc as computed by phraseFreq().
+  private ProximityIndex.PairPostings pairs; //precomputed phrase frequencies, if any
 
   
   public void setWeightingModel(WeightingModel weightmodel){
@@ -74,10 +76,25 @@ abstract class RPhraseScorer extends RScorer {
     pq = new PhraseQueue(tps.length);             // construct empty pq
   }
 
-  public int doc() { return first.doc; }
+  /**
+   * Reads the phrase frequency of each document from the proximity postings
+   * of the two terms instead of computing it from their positions; the
+   * postings must count what {@link #phraseFreq()} counts. The scorer may
+   * then be built without term positions.
+   */
+  void setPairPostings(ProximityIndex.PairPostings pairs) {
+    this.pairs = pairs;
+  }
+
+  public int doc() { return pairs != null ? pairs.doc() : first.doc; }
 
   public boolean next() throws IOException {
 //	System.out.println("begin next:" + this.doc());
+    if (pairs != null) {
+      boolean tag = pairs.next();
+      freq = tag ? pairs.count() : 0;
+      return tag;
+    }
     if (firstTime) {
       init();
       firstTime = false;
@@ -138,6 +155,11 @@ abstract class RPhraseScorer extends RScorer {
 	}
 
   public boolean skipTo(int target) throws IOException {
+    if (pairs != null) {
+      boolean tag = pairs.skipTo(target);
+      freq = tag ? pairs.count() : 0;
+      return tag;
+    }
     firstTime = false;
     for (PhrasePositions pp = first; more && pp != null; pp = pp.next) {
       more = pp.skipTo(target);
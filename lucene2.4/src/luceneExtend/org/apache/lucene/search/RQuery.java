@@ -120,6 +120,11 @@ public abstract class RQuery  extends Query{
     float sum = weight.sumOfSquaredWeights();
     float norm = getSimilarity(searcher).queryNorm(sum);
     weight.normalize(norm);
+    if (weight instanceof DocumentPrior.Applicable) {
+      DocumentPrior prior = DocumentPrior.getFromPropertyFile();
+      if (prior != null)
+        ((DocumentPrior.Applicable) weight).setDocumentPrior(prior);
+    }
 //    System.out.println(weight.getValue());
     return weight;
   }
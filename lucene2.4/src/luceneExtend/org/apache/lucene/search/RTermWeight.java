@@ -15,7 +15,7 @@ import org.dutir.lucene.util.TermsCache;
  * @author yezheng
  *
  */
-public class RTermWeight implements Weight {
+public class RTermWeight implements Weight, DocumentPrior.Applicable {
 	String description = "";
 	static TermsCache tcache = TermsCache.getInstance();
 //	static TermDocsCache termDocsCache = TermDocsCache.getInstance();
@@ -38,6 +38,8 @@ public class RTermWeight implements Weight {
 	protected WeightingModel weightModel = null;
 	protected RTermQuery query;
 	protected Term term;
+	/** added to the scores when this is the weight of the whole query */
+	protected DocumentPrior prior;
 
 	public RTermWeight() {
 
@@ -76,6 +78,10 @@ public class RTermWeight implements Weight {
 		}
 	}
 
+	public void setDocumentPrior(DocumentPrior prior) {
+		this.prior = prior;
+	}
+
 	public WeightingModel getweightModel() {
 		return weightModel;
 	}
@@ -104,7 +110,9 @@ public class RTermWeight implements Weight {
 	
 	
 	public Scorer scorer(IndexReader reader) throws IOException {
-		TermDocs termDocs = reader.termDocs(term);
+		TermDocs termDocs = PostingsBatch.termDocs(reader, term);
+		if (termDocs == null)
+			termDocs = reader.termDocs(term);
 //		TermDocs termDocs = termDocsCache.termDocs(term, reader);
 		//The corresponding RTermQuery is not in the index vocabulary. 
 		
@@ -117,6 +125,8 @@ public class RTermWeight implements Weight {
 		GeneralTermScorer gts = new GeneralTermScorer(this, termDocs,
 				similarity, reader.norms(term.field()));
 		gts.setSearcher(reader);
+		if (prior != null && prior.covers(reader))
+			gts.setDocumentPrior(prior);
 		return gts;
 	}
 
@@ -167,7 +177,7 @@ public class RTermWeight implements Weight {
 		result.setMatch(true);
 		result.addDetail(scorerExpl);
 		
-		return result;
+		return prior == null ? result : prior.explain(reader, doc, result);
 	}
 
 }
@@ -0,0 +1,220 @@
+/**
+ *
+ */
+package org.apache.lucene.search;
+
+import gnu.trove.TIntFloatHashMap;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.OpenBitSet;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Scores an {@link RBooleanQuery} of many optional term clauses a term at a
+ * time, such as the second pass of query expansion with hundreds of weighted
+ * terms: the posting list of each term is read through to the end into one
+ * accumulator per document, instead of merging hundreds of lists document
+ * by document. Documents are then returned in document order with the score
+ * the {@link RBooleanScorer} gives them, so collectors see the same hits.
+ * <p>
+ * It is used for queries of at least <tt>Lucene.TermAtATime.minClauses</tt>
+ * (50) clauses, 0 never, when all of them are optional terms whose
+ * weighting model gives no score to the documents a term is missing from.
+ * The accumulators are an array over the documents when the lists hold more
+ * postings than an eighth of the documents, a hash table otherwise.
+ * <p>
+ * With <tt>Lucene.TermAtATime.maxAccumulators</tt> (0, unlimited) set, the
+ * terms are read by decreasing weight and at most that many documents are
+ * scored, following <tt>Lucene.TermAtATime.pruning</tt> (continue): once
+ * the accumulators run out, <tt>continue</tt> only adds the later terms to
+ * the documents already scored, and <tt>quit</tt> stops reading. Pruned
+ * scores are approximate.
+ *
+ * @author yezheng
+ */
+class TermAtATimeScorer extends RScorer {
+	private static Logger logger = Logger.getLogger(TermAtATimeScorer.class);
+
+	static int minClauses = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.TermAtATime.minClauses", "50"));
+	static int maxAccumulators = Integer.parseInt(ApplicationSetup
+			.getProperty("Lucene.TermAtATime.maxAccumulators", "0"));
+	static boolean quit = "quit".equals(ApplicationSetup.getProperty(
+			"Lucene.TermAtATime.pruning", "continue"));
+
+	private final GeneralTermScorer scorers[];
+	private final int maxDoc;
+	private final long postings;
+	private DocumentPrior prior = null;
+
+	/** the documents scored, in order, and their scores */
+	private int docs[] = null;
+	private float scores[];
+	private int current = -1;
+
+	/**
+	 * @return the scorer of the clauses, or null when they are not all
+	 *         optional terms that it can score
+	 */
+	static TermAtATimeScorer create(Similarity similarity,
+			IndexReader reader, List clauses, List weights) throws IOException {
+		if (minClauses <= 0 || clauses.size() < minClauses)
+			return null;
+		for (int i = 0; i < clauses.size(); i++) {
+			RBooleanClause c = (RBooleanClause) clauses.get(i);
+			Object w = weights.get(i);
+			// subclasses may score otherwise
+			if (c.isRequired() || c.isProhibited()
+					|| w.getClass() != RTermWeight.class
+					|| ((RTermWeight) w).getweightModel().scoresUnseen())
+				return null;
+		}
+		GeneralTermScorer scorers[] = new GeneralTermScorer[weights.size()];
+		int n = 0;
+		long postings = 0;
+		for (int i = 0; i < weights.size(); i++) {
+			RTermWeight w = (RTermWeight) weights.get(i);
+			GeneralTermScorer scorer = (GeneralTermScorer) w.scorer(reader);
+			if (scorer == null)
+				continue;
+			scorers[n++] = scorer;
+			postings += reader.docFreq(w.getTerm());
+		}
+		if (n < scorers.length) {
+			GeneralTermScorer all[] = scorers;
+			scorers = new GeneralTermScorer[n];
+			System.arraycopy(all, 0, scorers, 0, n);
+		}
+		return new TermAtATimeScorer(similarity, scorers, reader.maxDoc(),
+				postings);
+	}
+
+	private TermAtATimeScorer(Similarity similarity,
+			GeneralTermScorer scorers[], int maxDoc, long postings) {
+		super(similarity);
+		this.scorers = scorers;
+		this.maxDoc = maxDoc;
+		this.postings = postings;
+	}
+
+	void setDocumentPrior(DocumentPrior prior) {
+		this.prior = prior;
+	}
+
+	/** Reads all the lists into the accumulators. */
+	private void accumulate() throws IOException {
+		GeneralTermScorer order[] = scorers;
+		int limit = maxAccumulators > 0 ? maxAccumulators : Integer.MAX_VALUE;
+		if (maxAccumulators > 0) {
+			// pruning keeps the documents of the heaviest terms
+			order = scorers.clone();
+			Arrays.sort(order, new Comparator<GeneralTermScorer>() {
+				public int compare(GeneralTermScorer a, GeneralTermScorer b) {
+					return Float.compare(b.weightEstimate(), a.weightEstimate());
+				}
+			});
+		}
+		// without pruning the terms are added in the order of the clauses,
+		// so the sums are those of RBooleanScorer to the bit
+		int count = 0;
+		if (postings * 8 >= maxDoc) {
+			float acc[] = new float[maxDoc];
+			OpenBitSet scored = new OpenBitSet(maxDoc);
+			terms: for (int t = 0; t < order.length; t++) {
+				GeneralTermScorer scorer = order[t];
+				while (scorer.next()) {
+					int doc = scorer.doc();
+					if (scored.fastGet(doc)) {
+						acc[doc] += scorer.score(doc);
+					} else if (count < limit) {
+						scored.fastSet(doc);
+						acc[doc] += scorer.score(doc);
+						count++;
+					} else if (quit) {
+						break terms;
+					}
+				}
+			}
+			docs = new int[count];
+			scores = new float[count];
+			int n = 0;
+			for (int doc = scored.nextSetBit(0); doc >= 0; doc = scored
+					.nextSetBit(doc + 1)) {
+				docs[n] = doc;
+				scores[n++] = acc[doc];
+			}
+		} else {
+			TIntFloatHashMap acc = new TIntFloatHashMap();
+			terms: for (int t = 0; t < order.length; t++) {
+				GeneralTermScorer scorer = order[t];
+				while (scorer.next()) {
+					int doc = scorer.doc();
+					if (acc.containsKey(doc)) {
+						acc.adjustValue(doc, scorer.score(doc));
+					} else if (count < limit) {
+						acc.put(doc, scorer.score(doc));
+						count++;
+					} else if (quit) {
+						break terms;
+					}
+				}
+			}
+			docs = acc.keys();
+			Arrays.sort(docs);
+			scores = new float[docs.length];
+			for (int i = 0; i < docs.length; i++)
+				scores[i] = acc.get(docs[i]);
+		}
+		if (logger.isDebugEnabled())
+			logger.debug(scorers.length + " terms, " + postings
+					+ " postings, " + docs.length + " documents scored");
+	}
+
+	public int doc() {
+		return docs[current];
+	}
+
+	public boolean next() throws IOException {
+		if (docs == null)
+			accumulate();
+		if (current < docs.length)
+			current++;
+		return current < docs.length;
+	}
+
+	public boolean skipTo(int target) throws IOException {
+		if (docs == null)
+			accumulate();
+		int lo = current + 1, hi = docs.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (docs[mid] < target)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		current = lo;
+		return current < docs.length;
+	}
+
+	public float score() throws IOException {
+		float score = scores[current];
+		if (prior != null)
+			score += prior.addend(docs[current]);
+		return score;
+	}
+
+	public float score(int doc) throws IOException {
+		throw new UnsupportedOperationException();
+	}
+
+	public Explanation explain(int doc) {
+		throw new UnsupportedOperationException();
+	}
+}
@@ -51,6 +51,9 @@ public class BM25 extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	 * Uses BM25 to compute a weight for a term in a document.
 	 * @param tf The term frequency in the document
@@ -75,4 +75,7 @@ public class DFR_BM25 extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 }
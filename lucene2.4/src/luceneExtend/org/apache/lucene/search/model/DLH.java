@@ -41,6 +41,9 @@ public class DLH extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	 * Uses DLH to compute a weight for a term in a document.
 	 * @param tf The term frequency in the document
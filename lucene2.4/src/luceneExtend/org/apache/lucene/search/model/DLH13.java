@@ -40,6 +40,9 @@ public class DLH13 extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	 * Uses DLH13 to compute a weight for a term in a document.
 	 * @param tf The term frequency in the document
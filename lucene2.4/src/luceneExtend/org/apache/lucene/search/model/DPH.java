@@ -36,6 +36,9 @@ public class DPH extends WeightingModel {
 	public float unseenScore(float docLength){
  		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/* (non-Javadoc)
 	 * @see org.apache.lucene.search.model.WeightingModel#score(float, float, float, float, float)
 	 */
@@ -46,6 +46,9 @@ public class In_expB2 extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	*This method provides the contract for implementing weighting models.
 	* @param tf The term frequency in the document
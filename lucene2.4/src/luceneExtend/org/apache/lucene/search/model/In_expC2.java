@@ -46,6 +46,9 @@ public class In_expC2 extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	* Computes the score according to the weighting models In_expC2.
 	* @param tf The term frequency in the document
@@ -39,6 +39,9 @@ public class LemurTF_IDF extends WeightingModel {
 	public float unseenScore(float length){
 		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	 * Uses LemurTF_IDF to compute a weight for a term in a document.
 	 * @param tf The term frequency in the document
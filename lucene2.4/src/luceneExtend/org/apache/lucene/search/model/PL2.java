@@ -53,6 +53,9 @@ public class PL2 extends WeightingModel {
 	public float unseenScore(float docLength){
  		return 0;
 	}
+	public boolean scoresUnseen(){
+		return false;
+	}
 	/**
 	 * Uses PL2 to compute a weight for a term in a document.
 	 * @param tf The term frequency in the document
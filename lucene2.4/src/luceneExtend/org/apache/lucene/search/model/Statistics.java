@@ -9,7 +9,9 @@ import gnu.trove.TObjectIntIterator;
 
 import java.io.IOException;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
@@ -18,12 +20,12 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.index.IndexReader.FieldOption;
 import org.apache.lucene.search.Searcher;
-import org.apache.lucene.search.Similarity;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.IndexInput;
 import org.apache.lucene.store.IndexOutput;
 import org.apache.lucene.util.BitUtil;
 import org.dutir.lucene.ISManager;
+import org.dutir.lucene.IndexUtility;
 import org.dutir.util.NumConversions;
 
 /**
@@ -32,6 +34,8 @@ import org.dutir.util.NumConversions;
  */
 public class Statistics {
 	static String filename = "index.stats";
+	/** signature of the index state index.stats was computed from */
+	static String versionFilename = "index.stats.version";
 
 	/** The term frequency in the query. */
 	protected float numberOfDocuments;
@@ -83,24 +87,60 @@ public class Statistics {
 			Directory directory = null;
 
 			numberOfDocuments = reader.maxDoc();
+			if (readSegmentStats(reader)) {
+				return;
+			}
 			if(reader instanceof MultiReader){
 				IndexReader[] readers = ((MultiReader)reader).getSubReaders();
+				// per field: sum of averDocLen * numDocs, sum of numDocs,
+				// numTokens and numUniqueTokens of the sub-indexes
+				HashMap<String, double[]> totals = new HashMap<String, double[]>();
 				for(int i=0; i < readers.length; i++){
 					directory = readers[i].directory();
-					if (directory.fileExists(filename)) {
+					Map<String, float[]> sub;
+					if (isCurrent(readers[i], directory)) {
 						IndexInput in = directory.openInput(filename);
-						read(in);
+						sub = read(in);
 					} else {
-						write(reader, directory);
+						sub = write(readers[i], directory);
+					}
+					int numDocs = readers[i].numDocs();
+					for (Map.Entry<String, float[]> e : sub.entrySet()) {
+						double total[] = totals.get(e.getKey());
+						if (total == null) {
+							total = new double[4];
+							totals.put(e.getKey(), total);
+						}
+						float values[] = e.getValue();
+						total[0] += (double) values[0] * numDocs;
+						total[1] += numDocs;
+						total[2] += values[1];
+						// an upper bound: the terms shared by sub-indexes
+						// are counted in each
+						total[3] += values[2];
 					}
 				}
+				for (Map.Entry<String, double[]> e : totals.entrySet()) {
+					double total[] = e.getValue();
+					this.averDocLen.put(e.getKey(), total[1] == 0 ? 0
+							: (float) (total[0] / total[1]));
+					this.numTokens.put(e.getKey(), (float) total[2]);
+					this.numUniqueTokens.put(e.getKey(), (float) total[3]);
+				}
 			}else{
 				directory = reader.directory();
-				if (directory.fileExists(filename)) {
+				Map<String, float[]> stats;
+				if (isCurrent(reader, directory)) {
 					IndexInput in = directory.openInput(filename);
-					read(in);
+					stats = read(in);
 				} else {
-					write(reader, directory);
+					stats = write(reader, directory);
+				}
+				for (Map.Entry<String, float[]> e : stats.entrySet()) {
+					float values[] = e.getValue();
+					this.averDocLen.put(e.getKey(), values[0]);
+					this.numTokens.put(e.getKey(), values[1]);
+					this.numUniqueTokens.put(e.getKey(), values[2]);
 				}
 			}
 
@@ -138,7 +178,71 @@ public class Statistics {
 	public void printTerms() {
 		printTerms(Integer.MAX_VALUE);
 	}
-	void read(IndexInput in) {
+
+	/**
+	 * Fills the statistics from the per-field totals that the segments
+	 * store in their term dictionaries, which stay correct as segments are
+	 * added or merged. The average length is that of the norms, the length
+	 * the scorers give a document, summed by each segment once while it is
+	 * unchanged. With several segments the number of unique terms is an
+	 * upper bound, the terms they share being counted in each.
+	 * 
+	 * @return false if some segment was written without field statistics,
+	 *         in which case the index.stats file is used instead
+	 */
+	boolean readSegmentStats(IndexReader reader) throws IOException {
+		Collection coll = reader.getFieldNames(FieldOption.INDEXED);
+		Iterator iter = coll.iterator();
+		while (iter.hasNext()) {
+			String field = (String) iter.next();
+			long numToken = reader.getSumTotalTermFreq(field);
+			long numUniqueToken = reader.getUniqueTermCount(field);
+			if (numToken < 0 || numUniqueToken < 0) {
+				this.averDocLen.clear();
+				this.numTokens.clear();
+				this.numUniqueTokens.clear();
+				return false;
+			}
+			this.averDocLen.put(field, averageNormLength(reader, field));
+			this.numTokens.put(field, numToken);
+			this.numUniqueTokens.put(field, numUniqueToken);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the mean of the lengths 1 / norm^2 of the documents not
+	 *         deleted, as the scorers decode them
+	 */
+	static float averageNormLength(IndexReader reader, String field)
+			throws IOException {
+		int docs = reader.numDocs();
+		return docs == 0 ? 0
+				: (float) (reader.getSumNormLength(field) / docs);
+	}
+
+	/**
+	 * Whether the index.stats file in the directory was computed from the
+	 * index state the reader sees. Files without a version (written before
+	 * versions were recorded) are recomputed once.
+	 */
+	boolean isCurrent(IndexReader reader, Directory directory)
+			throws IOException {
+		if (!directory.fileExists(filename)
+				|| !directory.fileExists(versionFilename)) {
+			return false;
+		}
+		IndexInput in = directory.openInput(versionFilename);
+		try {
+			return in.readLong() == IndexUtility.indexSignature(reader);
+		} finally {
+			in.close();
+		}
+	}
+
+	/** @return the averDocLen, numTokens and numUniqueTokens of each field */
+	Map<String, float[]> read(IndexInput in) {
+		HashMap<String, float[]> stats = new HashMap<String, float[]>();
 		try {
 			while (true) {
 				String field = in.readString();
@@ -150,34 +254,35 @@ public class Statistics {
 				in.readBytes(buf, 0, 8);
 				float numUniqueToken = (float) NumConversions
 						.bytesToDouble(buf);
-//				this.averDocLen.put(field, averDlen);
-				this.averDocLen.adjustOrPutValue(field, averDlen, averDlen);
-//				this.numTokens.put(field, numToken);
-				this.numTokens.adjustOrPutValue(field, numToken, numToken);
-//				this.numUniqueTokens.put(field, numUniqueToken);
-				this.numUniqueTokens.adjustOrPutValue(field, numUniqueToken, numUniqueToken);
+				stats.put(field, new float[] { averDlen, numToken,
+						numUniqueToken });
 			}
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			// e.printStackTrace();
 		} finally {
-			in.clone();
+			try {
+				in.close();
+			} catch (IOException e) {
+			}
 		}
+		return stats;
 	}
 
-	void write(IndexReader reader, Directory director) throws IOException {
+	/**
+	 * Computes and saves the statistics of the index.
+	 * 
+	 * @return the averDocLen, numTokens and numUniqueTokens of each field
+	 */
+	Map<String, float[]> write(IndexReader reader, Directory director)
+			throws IOException {
+		HashMap<String, float[]> stats = new HashMap<String, float[]>();
 		Collection coll = reader.getFieldNames(FieldOption.INDEXED);
 		Iterator iter = coll.iterator();
 		IndexOutput out = director.createOutput(filename);
 		while (iter.hasNext()) {
 			String field = (String) iter.next();
-			float averDlen = 0;
-			byte[] norms = reader.norms(field);
-			for (int i = 0; i < norms.length; i++) {
-				float norm = Similarity.decodeNorm(norms[i]);
-				averDlen += 1 / (norm * norm);
-			}
-			averDlen = averDlen / norms.length;
+			float averDlen = averageNormLength(reader, field);
 			float numToken = 0;
 			float numUniqueToken = 0;
 			TermEnum te = reader.terms(new Term(field));
@@ -190,9 +295,7 @@ public class Statistics {
 				numUniqueToken++;
 				// System.out.println(te.term().text() + ", " + te.termFreq());
 			} while (te.next());
-			this.averDocLen.put(field, averDlen);
-			this.numTokens.put(field, numToken);
-			this.numUniqueTokens.put(field, numUniqueToken);
+			stats.put(field, new float[] { averDlen, numToken, numUniqueToken });
 			out.writeString(field);
 			out.writeBytes(NumConversions.doubleToBytes((double) averDlen), 8);
 			out.writeBytes(NumConversions.doubleToBytes((double) numToken), 8);
@@ -200,6 +303,10 @@ public class Statistics {
 					.doubleToBytes((double) numUniqueToken), 8);
 		}
 		out.close();
+		out = director.createOutput(versionFilename);
+		out.writeLong(IndexUtility.indexSignature(reader));
+		out.close();
+		return stats;
 	}
 
 	public float getNumTokens(String field) {
@@ -3,6 +3,7 @@ package org.apache.lucene.search.model;
 import java.io.Serializable;
 
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.apache.lucene.search.RTermQuery;
 import org.apache.lucene.search.Searcher;
 import org.dutir.lucene.util.ApplicationSetup;
@@ -62,9 +63,10 @@ public abstract class WeightingModel implements Serializable,Cloneable {
 			averageDocumentLength = searcher.getAverageLength(field);
 			numberOfTokens = searcher.getNumTokens(field);
 			numberOfUniqueTerms = searcher.getNumUniqTokens(field);
-			documentFrequency = searcher.docFreq(term);
+			TermStats stats = searcher.termStats(new Term[] { term });
+			documentFrequency = stats.docFreqs[0];
 			this.keyFrequency = query.getOccurNum();
-			this.termFrequency = searcher.termFreq(term);
+			this.termFrequency = stats.termFreqs[0];
 			i = new Idf(numberOfDocuments);
 //			System.out.println(term.text() + ": " + documentFrequency);
 		} catch (Exception e) {
@@ -216,4 +218,12 @@ public abstract class WeightingModel implements Serializable,Cloneable {
 	public float unseenScore(float length){
 		return score(0, length);
 	}
+
+	/**
+	 * @return whether {@link #unseenScore} may be non-zero, so that a document
+	 *         a term is missing from scores for it
+	 */
+	public boolean scoresUnseen(){
+		return true;
+	}
 }
@@ -2,12 +2,17 @@
 package org.dutir.lucene;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -25,6 +30,13 @@ import com.ice.tar.TarInputStream;
  * A <code>DiskCorpus</code> reads data from a specified directory 
  * or a list of directory from a file containing directory path per line.
  * and then use a specified parser to process the data.
+ * <p>
+ * With <tt>DisCorpus.threads</tt> (1) above 1, files are parsed by that many
+ * threads into the shared IndexWriter, each thread with its own
+ * instance of the parser class, which then needs a public constructor without
+ * arguments and no mutable static state. The entries of tar and zip archives
+ * are read one by one and handed to the threads in memory. Documents are then
+ * not added in the order of the files.
  */
 
 public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
@@ -44,6 +56,24 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 	// revised
 	private File specifiedFile = null;
 
+	private int threads = Integer.parseInt(ApplicationSetup.getProperty(
+			"DisCorpus.threads", "1"));
+	/** the parsing threads, null when the files are parsed in turn */
+	private ThreadPoolExecutor pool = null;
+	/** the parser of each parsing thread */
+	private final ThreadLocal<P> parsers = new ThreadLocal<P>() {
+		@SuppressWarnings("unchecked")
+		protected P initialValue() {
+			try {
+				return (P) mParser.getClass().getDeclaredConstructor()
+						.newInstance();
+			} catch (Exception e) {
+				throw new RuntimeException("cannot create a "
+						+ mParser.getClass().getName(), e);
+			}
+		}
+	};
+
 	/**
 	 * Construct a corpus from the specified parser and training and test
 	 * directories. If either directory is <code>null</code>, the corresponding
@@ -70,6 +100,14 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 	}
 
 	public void visitCorpus() {
+		if (threads > 1) {
+			if(logger.isInfoEnabled()) logger.info("parsing with " + threads + " threads");
+			// a full queue makes the reading thread parse the next file itself
+			pool = new ThreadPoolExecutor(threads, threads, 0L,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(
+							2 * threads),
+					new ThreadPoolExecutor.CallerRunsPolicy());
+		}
 		try {
 			if (CorpusTag) {
 				if(logger.isInfoEnabled()) logger.info("indexing Directory");
@@ -90,6 +128,16 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
+		} finally {
+			if (pool != null) {
+				pool.shutdown();
+				try {
+					pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				pool = null;
+			}
 		}
 	}
 
@@ -134,12 +182,28 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 			visitDir(parser, file);
 		else if (file.getName().endsWith(".tar.gz")) {
 			visitTARGZ(parser, file);
-		} else if (file.getName().endsWith(".gz"))
-			visitGzip(parser, file);
-		 else if (file.getName().endsWith(".tgz"))
+		} else if (file.getName().endsWith(".tgz"))
 			 visitTARGZ(parser, file);
 		else if (file.getName().endsWith(".zip"))
 			visitZip(parser, file);
+		else if (pool != null) {
+			final File f = file;
+			pool.execute(new Runnable() {
+				public void run() {
+					try {
+						visitFile(parsers.get(), f);
+					} catch (Exception e) {
+						logger.warn("cannot parse " + f, e);
+					}
+				}
+			});
+		} else
+			visitFile(parser, file);
+	}
+
+	private void visitFile(P parser, File file) throws IOException {
+		if (file.getName().endsWith(".gz"))
+			visitGzip(parser, file);
 		else if (file.getName().endsWith(".bz2")) {
 			// System.out.println(file.getAbsolutePath());
 			visitBZ2(parser, file);
@@ -164,7 +228,7 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 			fileIn = new FileInputStream(gzipFile);
 			bufIn = new BufferedInputStream(fileIn);
 			gzipIn = new GZIPInputStream(bufIn);
-			configure(gzipIn, gzipFile);
+			configure(parser, gzipIn, gzipFile);
 		} finally {
 			gzipIn.close();
 			bufIn.close();
@@ -198,7 +262,7 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 			fileIn = new FileInputStream(bz2File);
 			bufIn = new BufferedInputStream(fileIn);
 			bz2In = new CBZip2InputStream(bufIn);
-			configure(bz2In, bz2File);
+			configure(parser, bz2In, bz2File);
 		} finally {
 			bz2In.close();
 			bufIn.close();
@@ -226,7 +290,7 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 					System.out.println(entry.getName());
 					continue;
 				}
-				configure(taris, entry.getFile());
+				configure(parser, taris, entry.getFile());
 //				System.out.println(taris.available() + ", " + entry.getName());
 			}
 		} catch(Exception e){
@@ -260,7 +324,7 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 				}
 				
 //				System.out.println(entry.getName());
-				configure(zipIn, zipFile);
+				configure(parser, zipIn, zipFile);
 				
 			}
 		} finally {
@@ -275,18 +339,35 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 		// InputSource in = new InputSource(file.getCanonicalPath());
 		BufferedInputStream bis = new BufferedInputStream(new FileInputStream(
 				file), 1024 * 1024 * 2);
-		configure(bis, file);
+		try {
+			configure(parser, bis, file);
+		} finally {
+			bis.close();
+		}
 		// System.out.println(file.getCanonicalPath());
 	}
 
-	private void configure(InputStream inSource, File file) throws IOException {
-		try {
-			mParser.setup(inSource, file, this.mCharEncoding);
-			mParser.setIndexWriter(this.writer);
-			mParser.indexAll();
-		} catch (Exception e) {
-			
+	/**
+	 * Parses a file or archive entry; with parsing threads an archive entry is
+	 * read into memory and parsed by one of them.
+	 */
+	private void configure(P parser, InputStream inSource, final File file) throws IOException {
+		if (pool != null && (inSource instanceof TarInputStream || inSource instanceof ZipInputStream)) {
+			ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			byte buf[] = new byte[1 << 16];
+			int len;
+			while ((len = inSource.read(buf)) != -1) {
+				bos.write(buf, 0, len);
+			}
+			final byte entry[] = bos.toByteArray();
+			pool.execute(new Runnable() {
+				public void run() {
+					parse(parsers.get(), new ByteArrayInputStream(entry), file);
+				}
+			});
+			return;
 		}
+		parse(parser, inSource, file);
 //		BufferedReader br = new BufferedReader(new InputStreamReader(inSource));
 //		String line = null;
 //		int count =0;
@@ -298,6 +379,16 @@ public class DiskCorpus<P extends DocumentParser> extends Corpus<P> {
 //		}
 	}
 	
+	private void parse(P parser, InputStream inSource, File file) {
+		try {
+			parser.setup(inSource, file, this.mCharEncoding);
+			parser.setIndexWriter(this.writer);
+			parser.indexAll();
+		} catch (Exception e) {
+			logger.warn("cannot parse " + file, e);
+		}
+	}
+	
 	public static void main(String args[]){
 		String path = "/home/yezheng/corpus/TREC/chemistry2009/data/RSC.tgz";
 		path = "US-RE28681-E.xml";
@@ -0,0 +1,456 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.queryParser.AnalyzerManager;
+import org.apache.lucene.store.FSDirectory;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Copies an index with its documents renumbered, so that similar documents
+ * get close numbers: the gaps of the postings get smaller, the index
+ * compresses better and postings are read with better locality. The copy
+ * is written by <tt>IndexWriter.addIndexes</tt> from a
+ * {@link PermutedIndexReader}, so postings, norms, term vectors, stored
+ * fields and field statistics are rewritten consistently; deleted documents
+ * are dropped. The DOCNO and every other stored field go with their
+ * document; the file {@link #MAP_FILE} of the copy holds, as big-endian
+ * ints, the old number of every new document, for the side-car files keyed
+ * by document number, which must be rebuilt or remapped.
+ * <p>
+ * The order, <tt>DocidReorderTool.order</tt> (url), is one of:
+ * <ul>
+ * <li><tt>url</tt>: by the URL stored in <tt>DocidReorderTool.urlField</tt>
+ * (url), its host name reversed so that the pages of a site and the sites
+ * of a domain are together, such as the WARC-Target-URI of ClueWeb;
+ * documents without one keep their order, at the end</li>
+ * <li><tt>cluster</tt>: by min-hash signatures of the terms of the field
+ * <tt>DocidReorderTool.field</tt> (Lucene.SearchField), which puts
+ * documents sharing rare terms together</li>
+ * <li><tt>bisection</tt>: by recursive graph bisection of the documents and
+ * terms of that field, each split improved by
+ * <tt>DocidReorderTool.iterations</tt> (20) rounds of swaps that lower the
+ * estimated cost of the gaps, down to <tt>DocidReorderTool.leafSize</tt>
+ * (16) documents</li>
+ * </ul>
+ * Terms in a single document or in more than
+ * <tt>DocidReorderTool.maxDfRatio</tt> (0.5) of them are ignored by the
+ * last two; the postings of the other terms are held in memory.
+ *
+ * @author yezheng
+ */
+public class DocidReorderTool {
+	private static Logger logger = Logger.getLogger(DocidReorderTool.class);
+
+	/** the old number of every new document */
+	public static final String MAP_FILE = "docid.map";
+
+	final IndexReader reader;
+	final String urlField = ApplicationSetup.getProperty(
+			"DocidReorderTool.urlField", "url");
+	final String field = ApplicationSetup.getProperty("DocidReorderTool.field",
+			ApplicationSetup.getProperty("Lucene.SearchField", "content"));
+	final int iterations = Integer.parseInt(ApplicationSetup.getProperty(
+			"DocidReorderTool.iterations", "20"));
+	final int leafSize = Integer.parseInt(ApplicationSetup.getProperty(
+			"DocidReorderTool.leafSize", "16"));
+	final float maxDfRatio = Float.parseFloat(ApplicationSetup.getProperty(
+			"DocidReorderTool.maxDfRatio", "0.5"));
+
+	public DocidReorderTool(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	/** @return the documents not deleted, in their order */
+	int[] liveDocs() {
+		int docs[] = new int[reader.numDocs()];
+		int n = 0;
+		for (int doc = 0; doc < reader.maxDoc(); doc++)
+			if (!reader.isDeleted(doc))
+				docs[n++] = doc;
+		return docs;
+	}
+
+	/** @return the documents by reversed host name, then the rest of the URL */
+	public int[] urlOrder() throws IOException {
+		final int docs[] = liveDocs();
+		final String keys[] = new String[docs.length];
+		FieldSelector selector = new MapFieldSelector(new String[] { urlField });
+		int missing = 0;
+		for (int i = 0; i < docs.length; i++) {
+			Document document = reader.document(docs[i], selector);
+			String url = document.get(urlField);
+			if (url == null || (keys[i] = urlKey(url.trim())) == null)
+				missing++;
+		}
+		if (missing > 0)
+			logger.warn(missing + " documents have no url in the field "
+					+ urlField);
+		Integer index[] = new Integer[docs.length];
+		for (int i = 0; i < index.length; i++)
+			index[i] = i;
+		Arrays.sort(index, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				String x = keys[a], y = keys[b];
+				if (x == null || y == null)
+					return x != null ? -1 : y != null ? 1 : a - b;
+				int c = x.compareTo(y);
+				return c != 0 ? c : a - b;
+			}
+		});
+		int order[] = new int[docs.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = docs[index[i]];
+		return order;
+	}
+
+	/**
+	 * @return "com.example.www/path?query" for
+	 *         "http://www.example.com/path?query", null if it is not a URL
+	 */
+	static String urlKey(String url) {
+		String host, rest;
+		try {
+			URI uri = new URI(url);
+			host = uri.getHost();
+			rest = uri.getRawPath();
+			if (uri.getRawQuery() != null)
+				rest += "?" + uri.getRawQuery();
+		} catch (Exception e) {
+			return null;
+		}
+		if (host == null)
+			return null;
+		String labels[] = host.toLowerCase().split("\\.");
+		StringBuilder key = new StringBuilder(url.length());
+		for (int i = labels.length - 1; i >= 0; i--) {
+			key.append(labels[i]);
+			if (i > 0)
+				key.append('.');
+		}
+		return key.append(rest == null ? "" : rest).toString();
+	}
+
+	/**
+	 * The terms of the documents, as lists of term ids in the arrays
+	 * <code>terms[starts[i]]..terms[starts[i+1]-1]</code> of the live
+	 * document <code>i</code>.
+	 */
+	class ForwardIndex {
+		final int docs[] = liveDocs();
+		final int starts[] = new int[docs.length + 1];
+		int terms[];
+		int numTerms = 0;
+
+		ForwardIndex() throws IOException {
+			int live[] = new int[reader.maxDoc()];
+			Arrays.fill(live, -1);
+			for (int i = 0; i < docs.length; i++)
+				live[docs[i]] = i;
+			int maxDf = (int) (maxDfRatio * docs.length);
+			// count, then fill
+			int counts[] = new int[docs.length + 1];
+			for (int pass = 0; pass < 2; pass++) {
+				int id = 0;
+				TermEnum te = reader.terms(new Term(field, ""));
+				TermDocs td = reader.termDocs();
+				try {
+					do {
+						Term term = te.term();
+						if (term == null || !term.field().equals(field))
+							break;
+						if (te.docFreq() < 2 || te.docFreq() > maxDf)
+							continue;
+						td.seek(te);
+						while (td.next()) {
+							int doc = live[td.doc()];
+							if (doc < 0)
+								continue;
+							if (pass == 0)
+								counts[doc + 1]++;
+							else
+								terms[counts[doc]++] = id;
+						}
+						id++;
+					} while (te.next());
+				} finally {
+					td.close();
+					te.close();
+				}
+				if (pass == 0) {
+					for (int i = 0; i < docs.length; i++)
+						counts[i + 1] += counts[i];
+					System.arraycopy(counts, 0, starts, 0, starts.length);
+					terms = new int[counts[docs.length]];
+					numTerms = id;
+				}
+			}
+			if (logger.isInfoEnabled())
+				logger.info("forward index of " + field + ": " + docs.length
+						+ " documents, " + numTerms + " terms, " + terms.length
+						+ " postings");
+		}
+	}
+
+	private static final int HASHES = 4;
+
+	/** @return the documents by the min-hashes of their terms */
+	public int[] clusterOrder() throws IOException {
+		ForwardIndex fwd = new ForwardIndex();
+		int n = fwd.docs.length;
+		final int signatures[][] = new int[n][HASHES];
+		for (int i = 0; i < n; i++) {
+			int s[] = signatures[i];
+			Arrays.fill(s, Integer.MAX_VALUE);
+			for (int p = fwd.starts[i]; p < fwd.starts[i + 1]; p++)
+				for (int k = 0; k < HASHES; k++) {
+					// non-negative, so documents without terms sort last
+					int h = hash(fwd.terms[p], k) >>> 1;
+					if (h < s[k])
+						s[k] = h;
+				}
+		}
+		Integer index[] = new Integer[n];
+		for (int i = 0; i < n; i++)
+			index[i] = i;
+		Arrays.sort(index, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int x[] = signatures[a], y[] = signatures[b];
+				for (int k = 0; k < HASHES; k++)
+					if (x[k] != y[k])
+						return x[k] < y[k] ? -1 : 1;
+				return a - b;
+			}
+		});
+		int order[] = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = fwd.docs[index[i]];
+		return order;
+	}
+
+	private static int hash(int x, int k) {
+		x = (x + k) * 0x9E3779B9;
+		x ^= x >>> 16;
+		x *= 0x85EBCA6B;
+		x ^= x >>> 13;
+		x *= 0xC2B2AE35;
+		return x ^ (x >>> 16);
+	}
+
+	/** @return the documents by recursive graph bisection */
+	public int[] bisectionOrder() throws IOException {
+		ForwardIndex fwd = new ForwardIndex();
+		Bisection bisection = new Bisection(fwd);
+		int local[] = new int[fwd.docs.length];
+		for (int i = 0; i < local.length; i++)
+			local[i] = i;
+		bisection.bisect(local, 0, local.length, 0);
+		int order[] = new int[local.length];
+		for (int i = 0; i < order.length; i++)
+			order[i] = fwd.docs[local[i]];
+		return order;
+	}
+
+	/**
+	 * Splits a range of documents in two halves, swapping the documents
+	 * whose move lowers the estimated cost of the gaps of the two halves
+	 * most, then splits each half. The cost of a term in <code>d</code> of
+	 * the <code>n</code> documents of a half is
+	 * <code>d log2(n / (d + 1))</code>.
+	 */
+	private class Bisection {
+		final ForwardIndex fwd;
+		final int left[], right[];
+		final float leftGains[], rightGains[];
+		final float gain[];
+		long swaps = 0;
+
+		Bisection(ForwardIndex fwd) {
+			this.fwd = fwd;
+			left = new int[fwd.numTerms];
+			right = new int[fwd.numTerms];
+			leftGains = new float[fwd.numTerms];
+			rightGains = new float[fwd.numTerms];
+			gain = new float[fwd.docs.length];
+		}
+
+		void bisect(int docs[], int lo, int hi, int depth) {
+			if (hi - lo <= leafSize)
+				return;
+			int mid = (lo + hi) >>> 1;
+			int n1 = mid - lo, n2 = hi - mid;
+			for (int iter = 0; iter < iterations; iter++) {
+				degrees(docs, lo, mid, left, 1);
+				degrees(docs, mid, hi, right, 1);
+				// the gain of moving a document of a term to the other half
+				for (int i = lo; i < hi; i++) {
+					int d = docs[i];
+					for (int p = fwd.starts[d]; p < fwd.starts[d + 1]; p++) {
+						int t = fwd.terms[p];
+						int d1 = left[t], d2 = right[t];
+						float c = cost(d1, n1) + cost(d2, n2);
+						leftGains[t] = c - cost(d1 - 1, n1) - cost(d2 + 1, n2);
+						rightGains[t] = c - cost(d1 + 1, n1) - cost(d2 - 1, n2);
+					}
+				}
+				for (int i = lo; i < hi; i++) {
+					int d = docs[i];
+					float g[] = i < mid ? leftGains : rightGains;
+					float sum = 0;
+					for (int p = fwd.starts[d]; p < fwd.starts[d + 1]; p++)
+						sum += g[fwd.terms[p]];
+					gain[d] = sum;
+				}
+				int moved = swap(docs, lo, mid, hi);
+				degrees(docs, lo, mid, left, 0);
+				degrees(docs, mid, hi, right, 0);
+				if (moved == 0)
+					break;
+				swaps += moved;
+			}
+			if (depth == 0 && logger.isInfoEnabled())
+				logger.info("first split: " + swaps + " documents swapped");
+			bisect(docs, lo, mid, depth + 1);
+			bisect(docs, mid, hi, depth + 1);
+		}
+
+		/**
+		 * Counts the documents of every term in a range, or resets the
+		 * counts of its terms.
+		 */
+		private void degrees(int docs[], int from, int to, int counts[],
+				int count) {
+			for (int i = from; i < to; i++) {
+				int d = docs[i];
+				for (int p = fwd.starts[d]; p < fwd.starts[d + 1]; p++)
+					if (count == 0)
+						counts[fwd.terms[p]] = 0;
+					else
+						counts[fwd.terms[p]]++;
+			}
+		}
+
+		/**
+		 * Swaps the documents of the halves in decreasing gain while the sum
+		 * of the gains of a pair is positive.
+		 *
+		 * @return the number of pairs swapped
+		 */
+		private int swap(int docs[], int lo, int mid, int hi) {
+			long l[] = byGain(docs, lo, mid), r[] = byGain(docs, mid, hi);
+			int moved = 0;
+			for (int k = 0; k < l.length && k < r.length; k++) {
+				int i = (int) l[k], j = (int) r[k];
+				if (gain[docs[i]] + gain[docs[j]] <= 0)
+					break;
+				int d = docs[i];
+				docs[i] = docs[j];
+				docs[j] = d;
+				moved++;
+			}
+			return moved;
+		}
+
+		/** @return the positions of a range, by decreasing gain */
+		private long[] byGain(int docs[], int from, int to) {
+			long keys[] = new long[to - from];
+			for (int i = from; i < to; i++) {
+				int bits = Float.floatToIntBits(-gain[docs[i]]);
+				// the order of the ints is that of the floats
+				bits ^= (bits >> 31) & 0x7FFFFFFF;
+				keys[i - from] = (long) bits << 32 | i;
+			}
+			Arrays.sort(keys);
+			return keys;
+		}
+	}
+
+	private static float cost(int d, int n) {
+		if (d <= 0)
+			return 0;
+		return (float) (d * Math.log((double) n / (d + 1)) / Math.log(2));
+	}
+
+	/** @return the order named by DocidReorderTool.order */
+	public int[] order(String name) throws IOException {
+		if (name.equals("url"))
+			return urlOrder();
+		if (name.equals("cluster"))
+			return clusterOrder();
+		if (name.equals("bisection"))
+			return bisectionOrder();
+		throw new IllegalArgumentException("unknown order " + name
+				+ ", use url, cluster or bisection");
+	}
+
+	/** Writes the documents in the order to a new index in the directory. */
+	public void write(int order[], File output) throws IOException {
+		output.mkdirs();
+		IndexWriter writer = new IndexWriter(FSDirectory.getDirectory(output),
+				AnalyzerManager.getFromPropertyFile(), true,
+				IndexWriter.MaxFieldLength.UNLIMITED);
+		try {
+			writer.addIndexes(new IndexReader[] { new PermutedIndexReader(
+					reader, order) });
+		} finally {
+			writer.close();
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(new File(output, MAP_FILE)), 1 << 16));
+		try {
+			for (int i = 0; i < order.length; i++)
+				out.writeInt(order[i]);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Usage: DocidReorderTool input output [url|cluster|bisection]<br>
+	 * the order defaults to DocidReorderTool.order
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 2) {
+			System.err
+					.println("Usage: DocidReorderTool input output [url|cluster|bisection]");
+			System.exit(1);
+		}
+		String name = args.length > 2 ? args[2] : ApplicationSetup.getProperty(
+				"DocidReorderTool.order", "url");
+		long start = System.currentTimeMillis();
+		IndexReader reader = IndexReader.open(FSDirectory.getDirectory(args[0]),
+				true);
+		try {
+			DocidReorderTool tool = new DocidReorderTool(reader);
+			int order[] = tool.order(name);
+			long ordered = System.currentTimeMillis();
+			tool.write(order, new File(args[1]));
+			if (logger.isInfoEnabled())
+				logger.info(order.length + " documents ordered by " + name
+						+ " in " + (ordered - start) / 1000 + " s, written to "
+						+ args[1] + " in "
+						+ (System.currentTimeMillis() - ordered) / 1000 + " s");
+		} finally {
+			reader.close();
+		}
+	}
+}
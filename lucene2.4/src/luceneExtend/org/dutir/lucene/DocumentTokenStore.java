@@ -0,0 +1,436 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import gnu.trove.TIntIntHashMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.index.TermPositionVector;
+import org.apache.lucene.index.TermVectorOffsetInfo;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * The tokens of one field of every document in reading order, so that
+ * windowed co-occurrence, passage scoring and the text of a document are
+ * linear scans instead of sorting the positions of a
+ * {@link TermPositionVector}. A token is stored as the id of its term, the
+ * rank of the term among the terms of the field in the index, so the term
+ * dictionary is the one of the index and is read from it when the store is
+ * opened. The file is built by {@link DocumentTokenStoreBuilder} and
+ * memory-mapped.
+ * <p>
+ * The store of field <i>f</i> is <tt>Lucene.DocumentTokenStore.path</tt>/<i>f</i>.tokens;
+ * it is not used when the path is not set, nor for an index whose documents
+ * or terms differ from those it was built for.
+ * <p>
+ * File layout, big-endian:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     maxDoc
+ * int     number of terms of the field
+ * long    start of the offsets
+ * tokens of each document   [maxDoc]
+ *     vint    number of tokens
+ *     vint    termId &lt;&lt; 1 | 1 if the position does not follow the previous one
+ *     vint    position - previous position, if flagged; the previous position of the first token is -1
+ * long    start of the tokens of each document, and the end of the last   [maxDoc + 1]
+ * </pre>
+ *
+ * @author yezheng
+ */
+public class DocumentTokenStore {
+	private static Logger logger = Logger.getLogger(DocumentTokenStore.class);
+
+	/** "TOK1" */
+	static final int MAGIC = 0x544F4B31;
+	static final int HEADER_LENGTH = 20;
+	private static final int CHUNK_BITS = 30;
+	private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+
+	/**
+	 * the stores opened for each reader, by file; null for a version of a
+	 * file that could not be used
+	 */
+	private static WeakHashMap<IndexReader, HashMap<String, DocumentTokenStore>> stores = new WeakHashMap<IndexReader, HashMap<String, DocumentTokenStore>>();
+
+	final String field;
+	final int maxDoc;
+	/** the terms of the field, in the order of the index */
+	private final String terms[];
+	private final ByteBuffer chunks[];
+	private final LongBuffer offsets;
+
+	/** The tokens of a document: term ids and positions in reading order. */
+	public static class Tokens {
+		public int length = 0;
+		public int ids[] = new int[64];
+		public int positions[] = new int[64];
+
+		/** the distinct terms of the tokens, by first occurrence, after byTerm */
+		public int terms[] = new int[64];
+		/** the start of the positions of each term, and the end of the last */
+		public int termStarts[] = new int[65];
+		/** the positions of the tokens by term, increasing for each term */
+		public int termPositions[] = new int[64];
+		private int slots[] = new int[64];
+		private final TIntIntHashMap slotOfTerm = new TIntIntHashMap();
+
+		void ensureCapacity(int n) {
+			if (ids.length < n) {
+				int size = Math.max(n, ids.length * 2);
+				ids = new int[size];
+				positions = new int[size];
+			}
+		}
+
+		/**
+		 * Groups the positions of the tokens by term in one pass over them;
+		 * the positions of a term stay in reading order.
+		 *
+		 * @return the number of distinct terms
+		 */
+		public int byTerm() {
+			if (terms.length < length) {
+				terms = new int[ids.length];
+				termStarts = new int[ids.length + 1];
+				termPositions = new int[ids.length];
+				slots = new int[ids.length];
+			}
+			slotOfTerm.clear();
+			int numTerms = 0;
+			for (int i = 0; i < length; i++) {
+				// slots are stored plus one, as 0 means no entry
+				int slot = slotOfTerm.get(ids[i]) - 1;
+				if (slot < 0) {
+					slot = numTerms++;
+					slotOfTerm.put(ids[i], slot + 1);
+					terms[slot] = ids[i];
+					termStarts[slot + 1] = 0;
+				}
+				slots[i] = slot;
+				termStarts[slot + 1]++;
+			}
+			termStarts[0] = 0;
+			for (int k = 0; k < numTerms; k++)
+				termStarts[k + 1] += termStarts[k];
+			// the next free place of each term, moved back to its start
+			for (int i = 0; i < length; i++)
+				termPositions[termStarts[slots[i]]++] = positions[i];
+			for (int k = numTerms; k > 0; k--)
+				termStarts[k] = termStarts[k - 1];
+			termStarts[0] = 0;
+			return numTerms;
+		}
+	}
+
+	/**
+	 * @return the store of the field for the reader, opened on its first use
+	 *         by the reader; null if <tt>Lucene.DocumentTokenStore.path</tt>
+	 *         is not set or there is no usable store of the field; a store
+	 *         that cannot be used is not tried again until its file changes
+	 */
+	public static DocumentTokenStore getFromPropertyFile(IndexReader reader,
+			String field) {
+		String path = ApplicationSetup.getProperty(
+				"Lucene.DocumentTokenStore.path", "");
+		if (path.length() == 0)
+			return null;
+		File file = new File(path, field + ".tokens");
+		String key = file.getPath();
+		synchronized (stores) {
+			HashMap<String, DocumentTokenStore> opened = stores.get(reader);
+			if (opened == null) {
+				opened = new HashMap<String, DocumentTokenStore>();
+				stores.put(reader, opened);
+			}
+			DocumentTokenStore store = opened.get(key);
+			if (store != null)
+				return store;
+			if (!file.exists()) {
+				if (logger.isDebugEnabled())
+					logger.debug("no token store " + file);
+				return null;
+			}
+			String version = key + '\u0000' + file.lastModified() + '\u0000'
+					+ file.length();
+			if (opened.containsKey(version))
+				return null;
+			try {
+				store = new DocumentTokenStore(file, reader, field);
+			} catch (IOException e) {
+				logger.error("cannot read the token store " + file, e);
+				opened.put(version, null);
+				return null;
+			}
+			opened.put(key, store);
+			return store;
+		}
+	}
+
+	public DocumentTokenStore(File file, IndexReader reader, String field)
+			throws IOException {
+		this.field = field;
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			if (raf.readInt() != MAGIC)
+				throw new IOException(file + " is not a token store");
+			maxDoc = raf.readInt();
+			int numTerms = raf.readInt();
+			long indexStart = raf.readLong();
+			if (raf.length() < indexStart + 8L * (maxDoc + 1))
+				throw new IOException(file + " is truncated");
+			// checked before the terms are read, when the index can tell;
+			// the count of an index of several segments is an upper bound
+			long uniqueTerms = reader.getUniqueTermCount(field);
+			if (maxDoc != reader.maxDoc() || uniqueTerms >= 0
+					&& numTerms > uniqueTerms)
+				throw new IOException(file + " was built for " + maxDoc
+						+ " documents and " + numTerms
+						+ " terms, the index has " + reader.maxDoc()
+						+ " and " + uniqueTerms);
+			this.terms = loadTerms(reader, field);
+			if (numTerms != terms.length)
+				throw new IOException(file + " was built for " + numTerms
+						+ " terms, the index has " + terms.length);
+			// the mappings stay valid once the file is closed
+			FileChannel channel = raf.getChannel();
+			offsets = channel.map(FileChannel.MapMode.READ_ONLY, indexStart,
+					8L * (maxDoc + 1)).asLongBuffer();
+			ArrayList<ByteBuffer> list = new ArrayList<ByteBuffer>();
+			for (long start = 0; start < indexStart; start += 1L << CHUNK_BITS)
+				list.add(channel.map(FileChannel.MapMode.READ_ONLY, start, Math
+						.min(1L << CHUNK_BITS, indexStart - start)));
+			chunks = list.toArray(new ByteBuffer[list.size()]);
+		} finally {
+			raf.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("opened token store " + file + ": " + maxDoc
+					+ " documents, " + terms.length + " terms");
+	}
+
+	/** @return the terms of the field in the order of the index */
+	static String[] loadTerms(IndexReader reader, String field)
+			throws IOException {
+		ArrayList<String> list = new ArrayList<String>();
+		TermEnum te = reader.terms(new Term(field, ""));
+		try {
+			do {
+				Term term = te.term();
+				if (term == null || !term.field().equals(field))
+					break;
+				list.add(term.text());
+			} while (te.next());
+		} finally {
+			te.close();
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public int maxDoc() {
+		return maxDoc;
+	}
+
+	public int numTerms() {
+		return terms.length;
+	}
+
+	public String term(int id) {
+		return terms[id];
+	}
+
+	/** @return the id of the term, or a negative number if it is unknown */
+	public int termId(String term) {
+		return Arrays.binarySearch(terms, term);
+	}
+
+	private byte get(long p) {
+		return chunks[(int) (p >>> CHUNK_BITS)].get((int) (p & CHUNK_MASK));
+	}
+
+	/**
+	 * Reads the vint at <code>at[0]</code> and moves <code>at[0]</code> after
+	 * it.
+	 */
+	private int readVInt(long at[]) {
+		long p = at[0];
+		byte b = get(p++);
+		int i = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = get(p++);
+			i |= (b & 0x7F) << shift;
+		}
+		at[0] = p;
+		return i;
+	}
+
+	/**
+	 * Reads the tokens of a document in reading order.
+	 *
+	 * @return the number of tokens
+	 */
+	public int read(int doc, Tokens tokens) {
+		long at[] = { offsets.get(doc) };
+		int n = readVInt(at);
+		tokens.ensureCapacity(n);
+		int pos = -1;
+		for (int i = 0; i < n; i++) {
+			int code = readVInt(at);
+			pos += (code & 1) == 0 ? 1 : readVInt(at);
+			tokens.ids[i] = code >>> 1;
+			tokens.positions[i] = pos;
+		}
+		return tokens.length = n;
+	}
+
+	/** @return the number of tokens of a document */
+	public int length(int doc) {
+		long at[] = { offsets.get(doc) };
+		return readVInt(at);
+	}
+
+	/** @return the tokens of a document in reading order, space separated */
+	public String text(int doc) {
+		Tokens tokens = new Tokens();
+		read(doc, tokens);
+		StringBuilder buf = new StringBuilder(tokens.length * 8);
+		for (int i = 0; i < tokens.length; i++) {
+			if (i > 0)
+				buf.append(' ');
+			buf.append(terms[tokens.ids[i]]);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * @return the tokens of a document as the term vector with positions the
+	 *         index would return, without offsets; null for a document without
+	 *         tokens
+	 */
+	public TermPositionVector getTermPositionVector(int doc) {
+		Tokens tokens = new Tokens();
+		int n = read(doc, tokens);
+		if (n == 0)
+			return null;
+		// order the tokens by term, and by position within a term
+		long keys[] = new long[n];
+		for (int i = 0; i < n; i++)
+			keys[i] = (long) tokens.ids[i] << 32 | tokens.positions[i];
+		Arrays.sort(keys);
+		int size = 0;
+		for (int i = 0; i < n; i++)
+			if (i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32)
+				size++;
+		String vterms[] = new String[size];
+		int positions[][] = new int[size][];
+		for (int i = 0, t = 0; i < n; t++) {
+			int j = i;
+			while (j < n && keys[j] >>> 32 == keys[i] >>> 32)
+				j++;
+			vterms[t] = terms[(int) (keys[i] >>> 32)];
+			positions[t] = new int[j - i];
+			for (int k = i; k < j; k++)
+				positions[t][k - i] = (int) keys[k];
+			i = j;
+		}
+		return new PositionVector(field, vterms, positions);
+	}
+
+	/**
+	 * @return the term vector with positions of the field of a document, read
+	 *         from the token store of the field if there is one, else from
+	 *         the index
+	 */
+	public static TermPositionVector getTermPositionVector(
+			IndexReader reader, int doc, String field) throws IOException {
+		DocumentTokenStore store = getFromPropertyFile(reader, field);
+		if (store != null)
+			return store.getTermPositionVector(doc);
+		TermFreqVector tfv = reader.getTermFreqVector(doc, field);
+		return tfv instanceof TermPositionVector ? (TermPositionVector) tfv
+				: null;
+	}
+
+	private static class PositionVector implements TermPositionVector {
+		final String field;
+		final String terms[];
+		final int positions[][];
+
+		PositionVector(String field, String terms[], int positions[][]) {
+			this.field = field;
+			this.terms = terms;
+			this.positions = positions;
+		}
+
+		public String getField() {
+			return field;
+		}
+
+		public int size() {
+			return terms.length;
+		}
+
+		public String[] getTerms() {
+			return terms;
+		}
+
+		public int[] getTermFrequencies() {
+			int freqs[] = new int[terms.length];
+			for (int i = 0; i < terms.length; i++)
+				freqs[i] = positions[i].length;
+			return freqs;
+		}
+
+		public int indexOf(String term) {
+			int i = Arrays.binarySearch(terms, term);
+			return i >= 0 ? i : -1;
+		}
+
+		public int[] indexesOf(String[] terms, int start, int len) {
+			int res[] = new int[len];
+			for (int i = 0; i < len; i++)
+				res[i] = indexOf(terms[start + i]);
+			return res;
+		}
+
+		public int[] getTermPositions(int index) {
+			return positions[index];
+		}
+
+		public TermVectorOffsetInfo[] getOffsets(int index) {
+			return null;
+		}
+
+		public String toString() {
+			StringBuilder buf = new StringBuilder("{").append(field).append(
+					": ");
+			for (int i = 0; i < terms.length; i++) {
+				if (i > 0)
+					buf.append(", ");
+				buf.append(terms[i]).append('/').append(positions[i].length);
+			}
+			return buf.append('}').toString();
+		}
+	}
+}
@@ -0,0 +1,155 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.index.TermPositionVector;
+import org.apache.lucene.search.Searcher;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Builds the {@link DocumentTokenStore} of a field from the term vectors with
+ * positions of the index. Deleted documents and documents without a vector
+ * of the field get no tokens.
+ *
+ * @author yezheng
+ */
+public class DocumentTokenStoreBuilder {
+	private static Logger logger = Logger
+			.getLogger(DocumentTokenStoreBuilder.class);
+
+	final IndexReader reader;
+	final String field;
+
+	public DocumentTokenStoreBuilder(IndexReader reader, String field) {
+		this.reader = reader;
+		this.field = field;
+	}
+
+	public void build(File output) throws IOException {
+		String terms[] = DocumentTokenStore.loadTerms(reader, field);
+		int maxDoc = reader.maxDoc();
+		long offsets[] = new long[maxDoc + 1];
+		long keys[] = new long[1024];
+		int missing = 0;
+		long tokens = 0;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 1 << 16));
+		long p = DocumentTokenStore.HEADER_LENGTH;
+		try {
+			out.writeInt(DocumentTokenStore.MAGIC);
+			out.writeInt(maxDoc);
+			out.writeInt(terms.length);
+			out.writeLong(0);
+			for (int doc = 0; doc < maxDoc; doc++) {
+				offsets[doc] = p;
+				TermFreqVector tfv = reader.isDeleted(doc) ? null : reader
+						.getTermFreqVector(doc, field);
+				if (!(tfv instanceof TermPositionVector)) {
+					if (!reader.isDeleted(doc))
+						missing++;
+					p += writeVInt(out, 0);
+					continue;
+				}
+				TermPositionVector vec = (TermPositionVector) tfv;
+				String vterms[] = vec.getTerms();
+				int n = 0;
+				for (int k = 0; k < vterms.length; k++) {
+					int id = Arrays.binarySearch(terms, vterms[k]);
+					if (id < 0)
+						throw new IOException("term " + vterms[k]
+								+ " of document " + doc
+								+ " is not in the index");
+					int pos[] = vec.getTermPositions(k);
+					if (n + pos.length > keys.length)
+						keys = Arrays.copyOf(keys, Math.max(n + pos.length,
+								keys.length * 2));
+					for (int j = 0; j < pos.length; j++)
+						keys[n++] = (long) pos[j] << 32 | id;
+				}
+				// reading order
+				Arrays.sort(keys, 0, n);
+				p += writeVInt(out, n);
+				int prev = -1;
+				for (int i = 0; i < n; i++) {
+					int pos = (int) (keys[i] >>> 32);
+					int id = (int) keys[i];
+					if (pos == prev + 1)
+						p += writeVInt(out, id << 1);
+					else {
+						p += writeVInt(out, id << 1 | 1);
+						p += writeVInt(out, pos - prev);
+					}
+					prev = pos;
+				}
+				tokens += n;
+			}
+			offsets[maxDoc] = p;
+			for (int doc = 0; doc <= maxDoc; doc++)
+				out.writeLong(offsets[doc]);
+		} finally {
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(output, "rw");
+		try {
+			raf.seek(12);
+			raf.writeLong(p);
+		} finally {
+			raf.close();
+		}
+		if (missing > 0)
+			logger.warn(missing + " of " + reader.numDocs()
+					+ " documents have no term vector with positions of "
+					+ field);
+		if (logger.isInfoEnabled())
+			logger.info("token store " + output + ": " + tokens + " tokens, "
+					+ terms.length + " terms, " + p + " bytes");
+	}
+
+	/** @return the number of bytes written */
+	private static int writeVInt(DataOutputStream out, int i)
+			throws IOException {
+		int n = 1;
+		while ((i & ~0x7F) != 0) {
+			out.writeByte((i & 0x7F) | 0x80);
+			i >>>= 7;
+			n++;
+		}
+		out.writeByte(i);
+		return n;
+	}
+
+	/**
+	 * Usage: DocumentTokenStoreBuilder outputDir [field [indexPath]]<br>
+	 * the field defaults to Lucene.SearchField, the index to
+	 * Lucene.indexDirectory; the store is written to outputDir/field.tokens
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err
+					.println("Usage: DocumentTokenStoreBuilder outputDir [field [indexPath]]");
+			System.exit(1);
+		}
+		String field = args.length > 1 ? args[1] : ApplicationSetup
+				.getProperty("Lucene.SearchField", "content");
+		Searcher searcher = args.length > 2 ? ISManager
+				.getSearcheFromPath(args[2]) : ISManager
+				.getSearcheFromPropertyFile();
+		File dir = new File(args[0]);
+		dir.mkdirs();
+		new DocumentTokenStoreBuilder(searcher.getIndexReader(), field)
+				.build(new File(dir, field + ".tokens"));
+	}
+}
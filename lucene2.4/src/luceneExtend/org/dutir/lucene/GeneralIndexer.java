@@ -54,6 +54,12 @@ public class GeneralIndexer {
 			boolean create = Boolean.parseBoolean(ApplicationSetup.getProperty(
 					"Lucene.create", "true"));
 			
+			// when appending a batch (Lucene.create=false) leave the new
+			// documents in their own segments, so running searchers only
+			// reopen those instead of the whole rewritten index
+			boolean optimize = Boolean.parseBoolean(ApplicationSetup.getProperty(
+					"Lucene.optimize", "true"));
+			
 			String encoding = ApplicationSetup.getProperty(
 					"corpus.encoding", "utf8");
 			
@@ -107,7 +113,9 @@ public class GeneralIndexer {
 			corpus.setIndexWriter(writer);
 			corpus.visitCorpus();
 			
-			writer.optimize();
+			if(optimize){
+				writer.optimize();
+			}
 			int count = writer.docCount();
 			
 			writer.close();
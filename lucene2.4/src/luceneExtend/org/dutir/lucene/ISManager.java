@@ -7,28 +7,45 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.AnalyzerManager;
 import org.apache.lucene.queryParser.RMultiFieldQueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MultiSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.RDefaultSimilarity;
+import org.apache.lucene.search.Searchable;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.Similarity;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
-import org.apache.lucene.store.NIOFSDirectory;
+import org.dutir.lucene.io.PreloadDirectory;
 import org.dutir.lucene.util.ApplicationSetup;
 import org.dutir.util.stream.StreamGenerator;
 
 
 /**
+ * Opens the searchers of the indexes of <tt>Lucene.indexDirectory</tt>.
+ * <p>
+ * The files of an index are read by the policy per file extension of
+ * <tt>Lucene.ISManager.directory.policy</tt>, for instance
+ * <tt>tis:ram,tii:ram,nrm:ram,frq:mmap,*:nio</tt> (see
+ * {@link PreloadDirectory}), with nio buffers of
+ * <tt>Lucene.ISManager.directory.bufferSize</tt> (16384) bytes; without a
+ * policy they are read by the FSDirectory. The norms and postings of the
+ * fields of <tt>Lucene.ISManager.warmFields</tt> are read through when an
+ * index is opened, so that the first queries do not wait for the disk.
+ * 
  * @author yezheng
  *
  */
@@ -39,6 +56,75 @@ public class ISManager {
 	static int SearcherPathType_MULTIPATH = 0;
 	static int SearcherPathType_Intelligence = 1;
 	static int SearcherPathType = Integer.parseInt(ApplicationSetup.getProperty("Lucene.ISManager.SearcherPathType", "0"));
+	static String directoryPolicy = ApplicationSetup.getProperty("Lucene.ISManager.directory.policy", "");
+	static int directoryBufferSize = Integer.parseInt(ApplicationSetup.getProperty("Lucene.ISManager.directory.bufferSize", "16384"));
+	static String warmFields = ApplicationSetup.getProperty("Lucene.ISManager.warmFields", "");
+	
+	/**
+	 * @return the directory of an index, read by the configured file policy if
+	 *         there is one
+	 */
+	public static Directory getDirectory(File file) throws IOException {
+		FSDirectory dir = FSDirectory.getDirectory(file);
+		if (directoryPolicy.trim().length() == 0) {
+			return dir;
+		}
+		return new PreloadDirectory(dir, directoryPolicy, directoryBufferSize);
+	}
+	
+	/**
+	 * Opens a read-only reader of an index and warms the configured fields.
+	 */
+	public static IndexReader openReader(Directory dir) throws IOException {
+		IndexReader reader = IndexReader.open(dir, true);
+		if (warmFields.trim().length() > 0) {
+			warm(reader, warmFields.trim().split("\\s*,\\s*"));
+		}
+		if (dir instanceof PreloadDirectory && logger.isInfoEnabled()) {
+			logger.info("index files resident: " + dir);
+		}
+		return reader;
+	}
+	
+	/**
+	 * Loads the norms of the fields and reads all their postings, so that the
+	 * term dictionary and the postings are in memory, or in the page cache,
+	 * before the first query.
+	 */
+	public static void warm(IndexReader reader, String fields[]) throws IOException {
+		long start = System.currentTimeMillis();
+		long postings = 0;
+		int docs[] = new int[256];
+		int freqs[] = new int[256];
+		TermDocs td = reader.termDocs();
+		try {
+			for (int i = 0; i < fields.length; i++) {
+				if (reader.hasNorms(fields[i])) {
+					reader.norms(fields[i]);
+				}
+				TermEnum te = reader.terms(new Term(fields[i], ""));
+				try {
+					do {
+						Term term = te.term();
+						if (term == null || !term.field().equals(fields[i])) {
+							break;
+						}
+						td.seek(te);
+						int n;
+						while ((n = td.read(docs, freqs)) > 0) {
+							postings += n;
+						}
+					} while (te.next());
+				} finally {
+					te.close();
+				}
+			}
+		} finally {
+			td.close();
+		}
+		if (logger.isInfoEnabled()) logger.info("warmed " + Arrays.toString(fields) + ": " + postings
+				+ " postings in " + (System.currentTimeMillis() - start) + " ms");
+	}
 	
 	public static void getSearcherList(ArrayList<Searcher> list) throws IOException{
 		String indexPaths = ApplicationSetup.getProperty(
@@ -52,11 +138,11 @@ public class ISManager {
 	
 	private static void getSearcherList(ArrayList<Searcher> list, File file) throws IOException{
 		if(file.isDirectory()){
-			FSDirectory dir = NIOFSDirectory.getDirectory(file);
+			Directory dir = getDirectory(file);
 //				FSDirectory.getDirectory(file);
 			if(dir.fileExists("segments.gen")){
 				try {
-					IndexReader reader = IndexReader.open(dir, true);
+					IndexReader reader = openReader(dir);
 					
 					list.add(new IndexSearcher(reader));
 					if(logger.isInfoEnabled()) logger.info("loading subIndex from: " + file.getAbsolutePath());
@@ -113,11 +199,11 @@ public class ISManager {
 							"Lucene.indexDirectory", "./index");
 					String indexps[] = indexPaths.split("\\s*,\\s*");
 					if (indexps.length == 1) {
-						searcher = new IndexSearcher(indexPaths);
+						searcher = new IndexSearcher(openReader(getDirectory(new File(indexPaths))));
 					} else {
 						IndexSearcher seachers[] = new IndexSearcher[indexps.length];
 						for (int i = 0; i < indexps.length; i++) {
-							seachers[i] = new IndexSearcher(IndexReader.open(NIOFSDirectory.getDirectory(indexps[i]), true));
+							seachers[i] = new IndexSearcher(openReader(getDirectory(new File(indexps[i]))));
 							seachers[i].setSimilarity(similarity);
 						}
 						searcher = new MultiSearcher(seachers);
@@ -153,6 +239,59 @@ public class ISManager {
 		
 	}
 	
+	/**
+	 * Reopens the readers behind the searcher returned by
+	 * {@link #getSearcheFromPropertyFile()}, so that documents appended to
+	 * the index by an IndexWriter since it was opened become searchable.
+	 * Unchanged segments are shared with the old readers rather than loaded
+	 * again. Collection statistics follow the new segments: IndexSearcher
+	 * recomputes them from the segment metadata and the TermsCache is
+	 * dropped when it sees the new index signature.
+	 * <p>
+	 * The old readers are closed, so searches still running on the previous
+	 * searcher must be finished before this is called.
+	 * 
+	 * @return the current searcher, a new instance if any index has changed
+	 */
+	public static synchronized Searcher reopenSearcher() throws IOException {
+		if (searcher == null) {
+			return getSearcheFromPropertyFile();
+		}
+		Searchable subs[] = searcher instanceof MultiSearcher ? ((MultiSearcher) searcher)
+				.getSearchables()
+				: new Searchable[] { searcher };
+		Similarity similarity = searcher.getSimilarity();
+		Searchable reopened[] = new Searchable[subs.length];
+		ArrayList<IndexReader> oldReaders = new ArrayList<IndexReader>();
+		for (int i = 0; i < subs.length; i++) {
+			IndexReader reader = subs[i].getIndexReader();
+			IndexReader newReader = reader.reopen();
+			if (newReader != reader) {
+				oldReaders.add(reader);
+				IndexSearcher s = new IndexSearcher(newReader);
+				s.setSimilarity(similarity);
+				reopened[i] = s;
+			} else {
+				reopened[i] = subs[i];
+			}
+		}
+		if (oldReaders.size() == 0) {
+			return searcher;
+		}
+		Searcher newSearcher = searcher instanceof MultiSearcher ? new MultiSearcher(
+				reopened)
+				: (Searcher) reopened[0];
+		newSearcher.setSimilarity(similarity);
+		searcher = newSearcher;
+		for (int i = 0; i < oldReaders.size(); i++) {
+			oldReaders.get(i).close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("reopened " + oldReaders.size() + " of " + subs.length
+					+ " sub-indexes");
+		return searcher;
+	}
+
 	static String docidField = null;
 	static private String getIdFieldName() {
 		if(docidField ==null){
@@ -4,6 +4,7 @@ import java.io.IOException;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.search.PhraseQuery;
 import org.apache.lucene.search.Searcher;
@@ -48,6 +49,29 @@ public class IndexUtility {
 		return getDF(new Term(field, sterm));
 	}
 	
+	/**
+	 * Returns a value that changes whenever the content visible through the
+	 * reader changes, i.e. whenever a commit added or merged segments. It
+	 * combines the commit version and maxDoc of every sub-index, so caches of
+	 * collection statistics can be keyed on it.
+	 */
+	public static long indexSignature(IndexReader reader) {
+		long signature = 17;
+		if (reader instanceof MultiReader) {
+			IndexReader[] readers = ((MultiReader) reader).getSubReaders();
+			for (int i = 0; i < readers.length; i++) {
+				signature = 31 * signature + indexSignature(readers[i]);
+			}
+			return signature;
+		}
+		try {
+			signature = 31 * signature + reader.getVersion();
+		} catch (UnsupportedOperationException e) {
+			// not backed by a directory: fall back to the document count
+		}
+		return 31 * signature + reader.maxDoc();
+	}
+
 	public float getPhraseDF(Term term1, Term term2, int slop){
 		float df = 0;
 		try {
@@ -0,0 +1,524 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import gnu.trove.TLongArrayList;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.FilterIndexReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.index.TermVectorMapper;
+import org.apache.lucene.search.DefaultSimilarity;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * An index whose documents are those of another one that are not deleted,
+ * in a given order: document <code>i</code> is the document
+ * <code>order[i]</code> of the index read. Stored fields, norms, term
+ * vectors and postings are all read in the new order, so that
+ * <code>IndexWriter.addIndexes</code> writes a copy of the index with its
+ * documents renumbered. The documents and frequencies of a term are loaded
+ * and sorted as it is sought; its positions and payloads are read as they
+ * are asked for. At most <tt>PermutedIndexReader.maxPositions</tt>
+ * (4194304) positions are held at a time: the positions of a term that has
+ * more are copied once, in blocks of documents of the new order, to a
+ * temporary file of <tt>PermutedIndexReader.tmpDir</tt> (java.io.tmpdir),
+ * from which each block is read when it is reached. The reader is
+ * read-only.
+ *
+ * @author yezheng
+ */
+public class PermutedIndexReader extends FilterIndexReader {
+	/** the old number of every new document */
+	private final int order[];
+	/** the new number of every old document, -1 if deleted */
+	private final int map[];
+	private final HashMap<String, byte[]> norms = new HashMap<String, byte[]>();
+	/** the positions loaded at a time, unless a document has more */
+	private final int maxPositions = Integer.parseInt(ApplicationSetup
+			.getProperty("PermutedIndexReader.maxPositions", "4194304"));
+	private final File tmpDir = new File(ApplicationSetup.getProperty(
+			"PermutedIndexReader.tmpDir", System.getProperty("java.io.tmpdir")));
+	/** the bytes of a block buffered before they are written to the file */
+	private static final int SPILL_BUFFER = 1 << 14;
+
+	/**
+	 * @param order
+	 *            the documents of the index in their new order; every
+	 *            document not deleted appears once
+	 */
+	public PermutedIndexReader(IndexReader in, int order[]) {
+		super(in);
+		this.order = order;
+		map = new int[in.maxDoc()];
+		Arrays.fill(map, -1);
+		for (int i = 0; i < order.length; i++) {
+			if (in.isDeleted(order[i]) || map[order[i]] != -1)
+				throw new IllegalArgumentException("document " + order[i]
+						+ " is deleted or appears twice in the order");
+			map[order[i]] = i;
+		}
+		if (order.length != in.numDocs())
+			throw new IllegalArgumentException("the order has " + order.length
+					+ " documents, the index " + in.numDocs());
+	}
+
+	public int numDocs() {
+		return order.length;
+	}
+
+	public int maxDoc() {
+		return order.length;
+	}
+
+	public boolean isDeleted(int n) {
+		return false;
+	}
+
+	public boolean hasDeletions() {
+		return false;
+	}
+
+	public Document document(int n, FieldSelector fieldSelector)
+			throws CorruptIndexException, IOException {
+		return in.document(order[n], fieldSelector);
+	}
+
+	public TermFreqVector[] getTermFreqVectors(int docNumber)
+			throws IOException {
+		return in.getTermFreqVectors(order[docNumber]);
+	}
+
+	public TermFreqVector getTermFreqVector(int docNumber, String field)
+			throws IOException {
+		return in.getTermFreqVector(order[docNumber], field);
+	}
+
+	public void getTermFreqVector(int docNumber, String field,
+			TermVectorMapper mapper) throws IOException {
+		in.getTermFreqVector(order[docNumber], field, mapper);
+	}
+
+	public void getTermFreqVector(int docNumber, TermVectorMapper mapper)
+			throws IOException {
+		in.getTermFreqVector(order[docNumber], mapper);
+	}
+
+	public synchronized byte[] norms(String field) throws IOException {
+		if (norms.containsKey(field))
+			return norms.get(field);
+		byte old[] = in.norms(field);
+		byte bytes[] = null;
+		if (old != null) {
+			bytes = new byte[order.length];
+			for (int i = 0; i < order.length; i++)
+				bytes[i] = old[order[i]];
+		}
+		norms.put(field, bytes);
+		return bytes;
+	}
+
+	public void norms(String field, byte[] bytes, int offset)
+			throws IOException {
+		byte permuted[] = norms(field);
+		if (permuted == null)
+			// as SegmentReader does for a field without norms
+			Arrays.fill(bytes, offset, offset + order.length, DefaultSimilarity
+					.encodeNorm(1.0f));
+		else
+			System.arraycopy(permuted, 0, bytes, offset, order.length);
+	}
+
+	public TermDocs termDocs() throws IOException {
+		return new PermutedTermPositions();
+	}
+
+	public TermPositions termPositions() throws IOException {
+		return new PermutedTermPositions();
+	}
+
+	protected void doSetNorm(int d, String f, byte b) {
+		throw new UnsupportedOperationException();
+	}
+
+	protected void doDelete(int n) {
+		throw new UnsupportedOperationException();
+	}
+
+	protected void doUndeleteAll() {
+		throw new UnsupportedOperationException();
+	}
+
+	protected void doCommit() {
+	}
+
+	/**
+	 * The postings of a term sorted by new document number, their positions
+	 * loaded a block of postings at a time.
+	 */
+	private class PermutedTermPositions implements TermPositions {
+		Term term;
+		int count = 0;
+		long numPositions;
+		/** new document number and frequency of each posting */
+		long keys[] = new long[16];
+		int docs[] = new int[16];
+		int freqs[] = new int[16];
+
+		/** the postings whose positions are loaded */
+		int blockStart = 0, blockEnd = 0;
+		/** the start of the positions of each posting of the block, and their end */
+		int starts[] = new int[17];
+		int positions[] = new int[64];
+		int payloadLengths[] = new int[64];
+		/** the start of the payload of each position */
+		int payloadStarts[] = new int[64];
+		byte payloads[] = new byte[0];
+		int numPayloadBytes;
+
+		/** the first posting of each block of the file, and the end of the last */
+		int bounds[];
+		int numBlocks;
+		/** the start of the chunks of each block in the file */
+		TLongArrayList chunks[];
+		File spillFile;
+		RandomAccessFile spill;
+		byte chunk[] = new byte[SPILL_BUFFER];
+		int chunkAt;
+
+		/** the current posting, position and its payload */
+		int p, pos, posEnd;
+		boolean positioned, payloadRead;
+
+		public void seek(Term term) throws IOException {
+			closeSpill();
+			this.term = term;
+			count = 0;
+			numPositions = 0;
+			TermDocs td = in.termDocs(term);
+			try {
+				while (td.next()) {
+					int doc = map[td.doc()];
+					if (doc < 0)
+						continue;
+					if (count == keys.length) {
+						long more[] = new long[2 * keys.length];
+						System.arraycopy(keys, 0, more, 0, count);
+						keys = more;
+					}
+					keys[count++] = (long) doc << 32 | td.freq();
+					numPositions += td.freq();
+				}
+			} finally {
+				td.close();
+			}
+			Arrays.sort(keys, 0, count);
+			if (docs.length < count) {
+				docs = new int[keys.length];
+				freqs = new int[keys.length];
+			}
+			for (int i = 0; i < count; i++) {
+				docs[i] = (int) (keys[i] >>> 32);
+				freqs[i] = (int) keys[i];
+			}
+			blockStart = blockEnd = 0;
+			p = -1;
+		}
+
+		/** Loads the positions of the block holding the posting. */
+		private void load(int posting) throws IOException {
+			if (numPositions <= maxPositions) {
+				readPostings();
+				return;
+			}
+			if (spill == null)
+				spill();
+			int block = Arrays.binarySearch(bounds, 0, numBlocks + 1, posting);
+			if (block < 0)
+				block = -block - 2;
+			readBlock(block);
+		}
+
+		/** Makes room for the positions of the postings. */
+		private void prepare(int first, int end) {
+			if (starts.length < end - first + 1)
+				starts = grow(starts, end - first + 1);
+			starts[0] = 0;
+			for (int i = first; i < end; i++)
+				starts[i - first + 1] = starts[i - first] + freqs[i];
+			int size = starts[end - first];
+			if (positions.length < size) {
+				positions = grow(positions, size);
+				payloadLengths = grow(payloadLengths, size);
+				payloadStarts = grow(payloadStarts, size);
+			}
+			numPayloadBytes = 0;
+			blockStart = first;
+			blockEnd = end;
+		}
+
+		/** @return the payload buffer, with room for length more bytes */
+		private byte[] payloadSpace(int length) {
+			if (payloads.length < numPayloadBytes + length) {
+				byte more[] = new byte[Math.max(numPayloadBytes + length,
+						2 * payloads.length)];
+				System.arraycopy(payloads, 0, more, 0, numPayloadBytes);
+				payloads = more;
+			}
+			return payloads;
+		}
+
+		/** Loads all the positions of the term, which fit in one block. */
+		private void readPostings() throws IOException {
+			prepare(0, count);
+			TermPositions tp = in.termPositions(term);
+			try {
+				while (tp.next()) {
+					int doc = map[tp.doc()];
+					if (doc < 0)
+						continue;
+					int at = starts[Arrays.binarySearch(docs, 0, count, doc)];
+					for (int i = 0; i < tp.freq(); i++, at++) {
+						positions[at] = tp.nextPosition();
+						payloadStarts[at] = numPayloadBytes;
+						int length = tp.isPayloadAvailable() ? tp
+								.getPayloadLength() : 0;
+						payloadLengths[at] = length;
+						if (length > 0) {
+							tp.getPayload(payloadSpace(length), numPayloadBytes);
+							numPayloadBytes += length;
+						}
+					}
+				}
+			} finally {
+				tp.close();
+			}
+		}
+
+		/**
+		 * Copies the positions and payloads of the term to the file in one
+		 * pass, each posting to the chunks of its block of the new order.
+		 */
+		private void spill() throws IOException {
+			if (bounds == null || bounds.length < count + 1)
+				bounds = new int[count + 1];
+			numBlocks = 0;
+			long size = 0;
+			for (int i = 0; i < count; i++) {
+				if (i == 0 || size + freqs[i] > maxPositions) {
+					bounds[numBlocks++] = i;
+					size = 0;
+				}
+				size += freqs[i];
+			}
+			bounds[numBlocks] = count;
+			chunks = new TLongArrayList[numBlocks];
+			ByteArrayOutputStream buffers[] = new ByteArrayOutputStream[numBlocks];
+			for (int b = 0; b < numBlocks; b++) {
+				chunks[b] = new TLongArrayList();
+				buffers[b] = new ByteArrayOutputStream();
+			}
+			spillFile = File.createTempFile("permuted", ".prx", tmpDir);
+			spillFile.deleteOnExit();
+			spill = new RandomAccessFile(spillFile, "rw");
+			byte payload[] = new byte[16];
+			TermPositions tp = in.termPositions(term);
+			try {
+				while (tp.next()) {
+					int doc = map[tp.doc()];
+					if (doc < 0)
+						continue;
+					int i = Arrays.binarySearch(docs, 0, count, doc);
+					int b = Arrays.binarySearch(bounds, 0, numBlocks + 1, i);
+					if (b < 0)
+						b = -b - 2;
+					ByteArrayOutputStream buffer = buffers[b];
+					writeVInt(buffer, i - bounds[b]);
+					int last = 0;
+					for (int k = 0; k < tp.freq(); k++) {
+						int position = tp.nextPosition();
+						writeVInt(buffer, position - last);
+						last = position;
+						int length = tp.isPayloadAvailable() ? tp
+								.getPayloadLength() : 0;
+						writeVInt(buffer, length);
+						if (length > 0) {
+							payload = tp.getPayload(payload, 0);
+							buffer.write(payload, 0, length);
+						}
+					}
+					if (buffer.size() >= SPILL_BUFFER)
+						flush(b, buffer);
+				}
+			} finally {
+				tp.close();
+			}
+			for (int b = 0; b < numBlocks; b++)
+				if (buffers[b].size() > 0)
+					flush(b, buffers[b]);
+		}
+
+		private void flush(int block, ByteArrayOutputStream buffer)
+				throws IOException {
+			chunks[block].add(spill.getFilePointer());
+			spill.writeInt(buffer.size());
+			spill.write(buffer.toByteArray());
+			buffer.reset();
+		}
+
+		/** Loads the positions of a block from the file. */
+		private void readBlock(int block) throws IOException {
+			int first = bounds[block];
+			prepare(first, bounds[block + 1]);
+			for (int c = 0; c < chunks[block].size(); c++) {
+				spill.seek(chunks[block].get(c));
+				int length = spill.readInt();
+				if (chunk.length < length)
+					chunk = new byte[length];
+				spill.readFully(chunk, 0, length);
+				chunkAt = 0;
+				while (chunkAt < length) {
+					int i = first + readVInt();
+					int start = starts[i - first];
+					int position = 0;
+					for (int k = 0; k < freqs[i]; k++) {
+						position += readVInt();
+						positions[start + k] = position;
+						payloadStarts[start + k] = numPayloadBytes;
+						int payloadLength = readVInt();
+						payloadLengths[start + k] = payloadLength;
+						if (payloadLength > 0) {
+							System.arraycopy(chunk, chunkAt,
+									payloadSpace(payloadLength),
+									numPayloadBytes, payloadLength);
+							chunkAt += payloadLength;
+							numPayloadBytes += payloadLength;
+						}
+					}
+				}
+			}
+		}
+
+		private int readVInt() {
+			byte b = chunk[chunkAt++];
+			int i = b & 0x7F;
+			for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+				b = chunk[chunkAt++];
+				i |= (b & 0x7F) << shift;
+			}
+			return i;
+		}
+
+		private void closeSpill() throws IOException {
+			if (spill == null)
+				return;
+			spill.close();
+			spill = null;
+			chunks = null;
+			if (!spillFile.delete())
+				spillFile.deleteOnExit();
+		}
+
+		public void seek(TermEnum termEnum) throws IOException {
+			seek(termEnum.term());
+		}
+
+		public int doc() {
+			return docs[p];
+		}
+
+		public int freq() {
+			return freqs[p];
+		}
+
+		public boolean next() {
+			if (p >= count)
+				return false;
+			positioned = false;
+			return ++p < count;
+		}
+
+		public int read(int[] docs, int[] freqs) {
+			int n = 0;
+			while (n < docs.length && next()) {
+				docs[n] = doc();
+				freqs[n] = freq();
+				n++;
+			}
+			return n;
+		}
+
+		public boolean skipTo(int target) {
+			while (next())
+				if (doc() >= target)
+					return true;
+			return false;
+		}
+
+		public int nextPosition() throws IOException {
+			if (!positioned) {
+				if (p < blockStart || p >= blockEnd)
+					load(p);
+				pos = starts[p - blockStart] - 1;
+				posEnd = starts[p - blockStart + 1];
+				positioned = true;
+			}
+			if (pos + 1 < posEnd)
+				pos++;
+			payloadRead = false;
+			return positions[pos];
+		}
+
+		public int getPayloadLength() {
+			return payloadLengths[pos];
+		}
+
+		public byte[] getPayload(byte[] data, int offset) {
+			int length = payloadLengths[pos];
+			if (data == null || data.length - offset < length) {
+				data = new byte[length];
+				offset = 0;
+			}
+			System.arraycopy(payloads, payloadStarts[pos], data, offset, length);
+			payloadRead = true;
+			return data;
+		}
+
+		public boolean isPayloadAvailable() {
+			return positioned && !payloadRead && payloadLengths[pos] > 0;
+		}
+
+		public void close() throws IOException {
+			closeSpill();
+		}
+	}
+
+	private static void writeVInt(ByteArrayOutputStream out, int i) {
+		while ((i & ~0x7F) != 0) {
+			out.write((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.write(i);
+	}
+
+	private static int[] grow(int array[], int length) {
+		int more[] = new int[Math.max(length, 2 * array.length)];
+		System.arraycopy(array, 0, more, 0, array.length);
+		return more;
+	}
+}
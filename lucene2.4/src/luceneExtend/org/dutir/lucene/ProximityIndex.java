@@ -0,0 +1,302 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Proximity postings of term pairs, so that the dependence model phrase
+ * scorers read the number of windows two terms share in a document instead
+ * of merging the positions of both terms for every document that holds
+ * them. For each pair and each window size <i>w</i> built, a posting holds
+ * the number of windows of <i>w</i> tokens of the document where the first
+ * term comes before the second one, and the number of windows holding both
+ * terms in any order, which is the count <tt>Distance.noTimes</tt> gives
+ * from the positions, for the document length the norms give.
+ * <p>
+ * The postings are the file {@link #FILE_NAME} of the index directory,
+ * built by {@link ProximityIndexBuilder}. They are used when they were built
+ * from the version of the index the reader has open, unless
+ * <tt>Lucene.ProximityIndex.enabled</tt> is false; the unordered count of a
+ * pair serves both orders of its terms. Pairs or windows not built are
+ * scored from positions.
+ * <p>
+ * File layout, big-endian:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     maxDoc
+ * long    version of the index
+ * long    start of the pair dictionary
+ * int     number of window sizes
+ * int     window sizes   [windows]
+ * postings of each pair, the documents where the terms share a window
+ *     vint    docid - previous docid, the previous docid of the first being -1
+ *     vint    unordered count, vint ordered count   [windows]
+ * int     number of pairs
+ * pairs
+ *     UTF     field, UTF first term, UTF second term
+ *     int     number of documents
+ *     long    start of the postings, long end of the postings
+ * </pre>
+ *
+ * @author yezheng
+ */
+public class ProximityIndex {
+	private static Logger logger = Logger.getLogger(ProximityIndex.class);
+
+	/** "PRX1" */
+	static final int MAGIC = 0x50525831;
+	public static final String FILE_NAME = "proximity.pairs";
+
+	private static boolean enabled = Boolean.parseBoolean(ApplicationSetup
+			.getProperty("Lucene.ProximityIndex.enabled", "true"));
+
+	private static HashMap<String, ProximityIndex> indexes = new HashMap<String, ProximityIndex>();
+
+	final int maxDoc;
+	final long version;
+	final long lastModified;
+	final int windows[];
+	private final RandomAccessFile raf;
+	private final FileChannel channel;
+	/** the documents, start and end of the postings of each pair */
+	private final HashMap<String, long[]> pairs = new HashMap<String, long[]>();
+
+	/**
+	 * @return the proximity postings of the index of the reader if there are
+	 *         some built for the version the reader has open, null otherwise
+	 */
+	public static ProximityIndex get(IndexReader reader) {
+		if (!enabled)
+			return null;
+		File dir;
+		try {
+			dir = StoredDocumentStore.getFile(reader.directory());
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+		if (dir == null)
+			return null;
+		File file = new File(dir, FILE_NAME);
+		String key = file.getPath();
+		if (!file.exists())
+			return null;
+		long version;
+		try {
+			version = reader.getVersion();
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+		synchronized (indexes) {
+			ProximityIndex index = indexes.get(key);
+			// rebuilt postings replace the ones opened
+			if (index == null || index.lastModified != file.lastModified()) {
+				if (index != null) {
+					indexes.remove(key);
+					try {
+						index.close();
+					} catch (IOException e) {
+						logger.warn("cannot close the proximity postings " + file, e);
+					}
+				}
+				try {
+					index = new ProximityIndex(file);
+				} catch (IOException e) {
+					logger.error("cannot read the proximity postings " + file, e);
+					return null;
+				}
+				indexes.put(key, index);
+			}
+			if (index.version != version || index.maxDoc != reader.maxDoc()) {
+				if (logger.isDebugEnabled())
+					logger.debug(file + " was built for another version of the index");
+				return null;
+			}
+			return index;
+		}
+	}
+
+	public ProximityIndex(File file) throws IOException {
+		lastModified = file.lastModified();
+		raf = new RandomAccessFile(file, "r");
+		boolean success = false;
+		try {
+			if (raf.readInt() != MAGIC)
+				throw new IOException(file + " does not hold proximity postings");
+			maxDoc = raf.readInt();
+			version = raf.readLong();
+			long dictionaryStart = raf.readLong();
+			windows = new int[raf.readInt()];
+			for (int i = 0; i < windows.length; i++)
+				windows[i] = raf.readInt();
+			byte tail[] = new byte[(int) (raf.length() - dictionaryStart)];
+			raf.seek(dictionaryStart);
+			raf.readFully(tail);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					tail));
+			int numPairs = in.readInt();
+			for (int i = 0; i < numPairs; i++) {
+				String key = key(in.readUTF(), in.readUTF(), in.readUTF());
+				pairs.put(key, new long[] { in.readInt(), in.readLong(),
+						in.readLong() });
+			}
+			channel = raf.getChannel();
+			success = true;
+		} finally {
+			if (!success)
+				raf.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("opened proximity postings " + file + ": "
+					+ pairs.size() + " pairs, windows "
+					+ Arrays.toString(windows));
+	}
+
+	/** Closes the file; the postings already read stay usable. */
+	public void close() throws IOException {
+		raf.close();
+	}
+
+	static String key(String field, String first, String second) {
+		return field + '\u0000' + first + '\u0000' + second;
+	}
+
+	/** @return the window sizes built */
+	public int[] windows() {
+		return windows.clone();
+	}
+
+	/** @return the number of pairs built */
+	public int numPairs() {
+		return pairs.size();
+	}
+
+	/**
+	 * @return the postings of the two terms for unordered windows of the
+	 *         size, in either order of the terms, null if they were not built
+	 */
+	public PairPostings unordered(Term first, Term second, int window)
+			throws IOException {
+		PairPostings postings = postings(first, second, window, false);
+		return postings != null ? postings : postings(second, first, window,
+				false);
+	}
+
+	/**
+	 * @return the postings of the first term before the second one in
+	 *         windows of the size, null if they were not built
+	 */
+	public PairPostings ordered(Term first, Term second, int window)
+			throws IOException {
+		return postings(first, second, window, true);
+	}
+
+	private PairPostings postings(Term first, Term second, int window,
+			boolean ordered) throws IOException {
+		if (!first.field().equals(second.field()))
+			return null;
+		int w = 0;
+		while (w < windows.length && windows[w] != window)
+			w++;
+		if (w == windows.length)
+			return null;
+		long entry[] = pairs.get(key(first.field(), first.text(), second
+				.text()));
+		if (entry == null)
+			return null;
+		ByteBuffer data = ByteBuffer.allocate((int) (entry[2] - entry[1]));
+		while (data.hasRemaining())
+			if (channel.read(data, entry[1] + data.position()) < 0)
+				throw new IOException("read past EOF");
+		return new PairPostings(data.array(), (int) entry[0], windows.length,
+				w, ordered);
+	}
+
+	/**
+	 * A cursor over the documents of a pair with a non-zero count for one
+	 * window size, in docid order.
+	 */
+	public static final class PairPostings {
+		private final byte data[];
+		private final int docs, numWindows, window;
+		private final boolean ordered;
+		private int at = 0, read = 0;
+		private int doc = -1, count = 0;
+
+		PairPostings(byte data[], int docs, int numWindows, int window,
+				boolean ordered) {
+			this.data = data;
+			this.docs = docs;
+			this.numWindows = numWindows;
+			this.window = window;
+			this.ordered = ordered;
+		}
+
+		/** @return the number of documents of the pair, for any window */
+		public int size() {
+			return docs;
+		}
+
+		/** @return the current document, Integer.MAX_VALUE past the last */
+		public int doc() {
+			return doc;
+		}
+
+		/** @return the count of the current document */
+		public int count() {
+			return count;
+		}
+
+		public boolean next() {
+			while (read < docs) {
+				doc += readVInt();
+				read++;
+				count = 0;
+				for (int w = 0; w < numWindows; w++) {
+					int unordered = readVInt(), inOrder = readVInt();
+					if (w == window)
+						count = ordered ? inOrder : unordered;
+				}
+				if (count > 0)
+					return true;
+			}
+			doc = Integer.MAX_VALUE;
+			count = 0;
+			return false;
+		}
+
+		public boolean skipTo(int target) {
+			// the gaps must be read through anyway
+			do {
+				if (!next())
+					return false;
+			} while (doc < target);
+			return true;
+		}
+
+		private int readVInt() {
+			byte b = data[at++];
+			int i = b & 0x7F;
+			for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+				b = data[at++];
+				i |= (b & 0x7F) << shift;
+			}
+			return i;
+		}
+	}
+}
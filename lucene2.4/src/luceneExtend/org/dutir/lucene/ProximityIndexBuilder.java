@@ -0,0 +1,330 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongIntIterator;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermPositions;
+import org.apache.lucene.search.Similarity;
+import org.apache.lucene.store.FSDirectory;
+import org.dutir.lucene.util.ApplicationSetup;
+import org.dutir.lucene.util.Distance;
+
+/**
+ * Builds the {@link ProximityIndex} of an index for the term pairs of the
+ * field <tt>Lucene.ProximityIndex.field</tt> (Lucene.SearchField) and the
+ * window sizes <tt>Lucene.ProximityIndex.windows</tt> (proximity.slop),
+ * comma separated. The pairs are:
+ * <ul>
+ * <li>those of the file <tt>Lucene.ProximityIndex.pairs</tt>, two index
+ * terms a line, such as the adjacent query terms of a topic set;</li>
+ * <li>the <tt>Lucene.ProximityIndex.frequentPairs</tt> (0) pairs of
+ * adjacent tokens found in most documents, counted from the
+ * {@link DocumentTokenStore} of the field; the rarest pairs are dropped
+ * whenever more than <tt>Lucene.ProximityIndex.maxCandidates</tt> (4194304)
+ * are counted, so the counts of rare pairs are approximate.</li>
+ * </ul>
+ *
+ * @author yezheng
+ */
+public class ProximityIndexBuilder {
+	private static Logger logger = Logger.getLogger(ProximityIndexBuilder.class);
+
+	final IndexReader reader;
+	final String field = ApplicationSetup.getProperty(
+			"Lucene.ProximityIndex.field", ApplicationSetup.getProperty(
+					"Lucene.SearchField", "content"));
+	final int windows[];
+	final String pairsFile = ApplicationSetup.getProperty(
+			"Lucene.ProximityIndex.pairs", "");
+	final int frequentPairs = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.ProximityIndex.frequentPairs", "0"));
+	final int maxCandidates = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.ProximityIndex.maxCandidates", "4194304"));
+
+	public ProximityIndexBuilder(IndexReader reader) {
+		this.reader = reader;
+		String sizes[] = ApplicationSetup.getProperty(
+				"Lucene.ProximityIndex.windows",
+				ApplicationSetup.getProperty("proximity.slop", "1")).split(
+				"\\s*,\\s*");
+		windows = new int[sizes.length];
+		for (int i = 0; i < sizes.length; i++)
+			windows[i] = Integer.parseInt(sizes[i].trim());
+	}
+
+	/** @return the pairs to build, as "first second" */
+	LinkedHashSet<String> pairs() throws IOException {
+		LinkedHashSet<String> pairs = new LinkedHashSet<String>();
+		if (pairsFile.length() > 0) {
+			BufferedReader in = new BufferedReader(new FileReader(pairsFile));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					String terms[] = line.trim().split("\\s+");
+					if (terms.length == 2)
+						pairs.add(terms[0] + " " + terms[1]);
+					else if (line.trim().length() > 0)
+						logger.warn("not a term pair: " + line);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		if (frequentPairs > 0)
+			frequentPairs(pairs);
+		return pairs;
+	}
+
+	/** Adds the adjacent pairs of tokens found in most documents. */
+	private void frequentPairs(LinkedHashSet<String> pairs) {
+		DocumentTokenStore store = DocumentTokenStore.getFromPropertyFile(
+				reader, field);
+		if (store == null) {
+			logger.warn("no token store of " + field
+					+ ", frequent pairs are not counted");
+			return;
+		}
+		TLongIntHashMap counts = new TLongIntHashMap();
+		TLongIntHashMap seen = new TLongIntHashMap();
+		DocumentTokenStore.Tokens tokens = new DocumentTokenStore.Tokens();
+		int floor = 1;
+		for (int doc = 0; doc < reader.maxDoc(); doc++) {
+			if (reader.isDeleted(doc))
+				continue;
+			int n = store.read(doc, tokens);
+			seen.clear();
+			for (int i = 1; i < n; i++) {
+				if (tokens.positions[i] != tokens.positions[i - 1] + 1)
+					continue;
+				long pair = (long) tokens.ids[i - 1] << 32 | tokens.ids[i];
+				// once a document
+				if (seen.put(pair, 1) == 0)
+					counts.adjustOrPutValue(pair, 1, 1);
+			}
+			if (counts.size() > maxCandidates) {
+				for (TLongIntIterator it = counts.iterator(); it.hasNext();) {
+					it.advance();
+					if (it.value() <= floor)
+						it.remove();
+				}
+				if (counts.size() > maxCandidates / 2)
+					floor++;
+			}
+		}
+		long candidates[] = new long[counts.size()];
+		long top[] = new long[counts.size()];
+		int n = 0;
+		for (TLongIntIterator it = counts.iterator(); it.hasNext(); n++) {
+			it.advance();
+			candidates[n] = it.key();
+			// by decreasing count
+			top[n] = (long) -it.value() << 32 | n;
+		}
+		Arrays.sort(top);
+		int added = 0;
+		for (int i = 0; i < top.length && added < frequentPairs; i++) {
+			long pair = candidates[(int) top[i]];
+			String first = store.term((int) (pair >>> 32));
+			String second = store.term((int) pair);
+			if (pairs.add(first + " " + second))
+				added++;
+		}
+		if (logger.isInfoEnabled())
+			logger.info(added + " frequent pairs of " + counts.size()
+					+ " counted");
+	}
+
+	public void build(File output) throws IOException {
+		byte norms[] = reader.norms(field);
+		if (norms == null)
+			throw new IllegalStateException("field " + field
+					+ " has no norms, the phrase scorers cannot score it");
+		ArrayList<String> pairs = new ArrayList<String>(pairs());
+		ByteArrayOutputStream buf = new ByteArrayOutputStream(1 << 16);
+		DataOutputStream postings = new DataOutputStream(buf);
+		ArrayList<long[]> entries = new ArrayList<long[]>();
+		int p1[] = new int[16], p2[] = new int[16];
+		int counts[] = new int[2 * windows.length];
+		long total = 0;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 1 << 16));
+		long p = 24 + 4 * (windows.length + 1);
+		try {
+			out.writeInt(ProximityIndex.MAGIC);
+			out.writeInt(reader.maxDoc());
+			out.writeLong(reader.getVersion());
+			out.writeLong(0);
+			out.writeInt(windows.length);
+			for (int w = 0; w < windows.length; w++)
+				out.writeInt(windows[w]);
+			for (int i = 0; i < pairs.size(); i++) {
+				String terms[] = pairs.get(i).split(" ");
+				TermPositions tp1 = reader.termPositions(new Term(field,
+						terms[0]));
+				TermPositions tp2 = reader.termPositions(new Term(field,
+						terms[1]));
+				buf.reset();
+				int docs = 0, last = -1;
+				try {
+					boolean more = tp1.next() && tp2.next();
+					while (more) {
+						if (tp1.doc() < tp2.doc()) {
+							more = tp1.skipTo(tp2.doc());
+							continue;
+						}
+						if (tp2.doc() < tp1.doc()) {
+							more = tp2.skipTo(tp1.doc());
+							continue;
+						}
+						int doc = tp1.doc();
+						p1 = positions(tp1, p1);
+						p2 = positions(tp2, p2);
+						// the length RPhraseScorer gives the document
+						float norm = Similarity.decodeNorm(norms[doc]);
+						float length = 1 / (norm * norm);
+						boolean any = false;
+						for (int w = 0; w < windows.length; w++) {
+							int unordered = Distance.noTimes(p1, 0,
+									tp1.freq(), p2, 0, tp2.freq(), windows[w],
+									(int) length);
+							counts[2 * w] = unordered;
+							counts[2 * w + 1] = unordered == 0 ? 0 : inOrder(
+									p1, tp1.freq(), p2, tp2.freq(),
+									windows[w], (int) length);
+							any |= unordered > 0;
+						}
+						if (any) {
+							writeVInt(postings, doc - last);
+							for (int k = 0; k < counts.length; k++)
+								writeVInt(postings, counts[k]);
+							last = doc;
+							docs++;
+						}
+						more = tp1.next() && tp2.next();
+					}
+				} finally {
+					tp1.close();
+					tp2.close();
+				}
+				buf.writeTo(out);
+				entries.add(new long[] { docs, p, p + buf.size() });
+				p += buf.size();
+				total += docs;
+			}
+			out.writeInt(pairs.size());
+			for (int i = 0; i < pairs.size(); i++) {
+				String terms[] = pairs.get(i).split(" ");
+				long entry[] = entries.get(i);
+				out.writeUTF(field);
+				out.writeUTF(terms[0]);
+				out.writeUTF(terms[1]);
+				out.writeInt((int) entry[0]);
+				out.writeLong(entry[1]);
+				out.writeLong(entry[2]);
+			}
+		} finally {
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(output, "rw");
+		try {
+			raf.seek(16);
+			raf.writeLong(p);
+		} finally {
+			raf.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("proximity postings " + output + ": " + pairs.size()
+					+ " pairs, " + total + " postings, windows "
+					+ Arrays.toString(windows));
+	}
+
+	/** @return the positions of the current document */
+	private static int[] positions(TermPositions tp, int positions[])
+			throws IOException {
+		int freq = tp.freq();
+		if (positions.length < freq)
+			positions = new int[Math.max(freq, 2 * positions.length)];
+		for (int i = 0; i < freq; i++)
+			positions[i] = tp.nextPosition();
+		return positions;
+	}
+
+	/**
+	 * @return the number of the windows of a document, as counted by
+	 *         <tt>Distance.noTimes</tt>, where the first term comes before the
+	 *         second one
+	 */
+	static int inOrder(int p1[], int n1, int p2[], int n2, int windowSize,
+			int length) {
+		int numberOfNGrams = length < windowSize ? 1 : length - windowSize + 1;
+		boolean matching[] = new boolean[numberOfNGrams];
+		int count = 0;
+		for (int i = 0, j = 0; i < n1; i++) {
+			// the nearest occurrence of the second term after the first
+			while (j < n2 && p2[j] <= p1[i])
+				j++;
+			if (j == n2)
+				break;
+			if (p2[j] - p1[i] >= windowSize)
+				continue;
+			for (int start = Math.max(0, p2[j] - windowSize + 1); start <= p1[i]
+					&& start < numberOfNGrams; start++)
+				if (!matching[start]) {
+					matching[start] = true;
+					count++;
+				}
+		}
+		return count;
+	}
+
+	private static void writeVInt(DataOutputStream out, int i)
+			throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.writeByte((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.writeByte(i);
+	}
+
+	/**
+	 * Usage: ProximityIndexBuilder [indexPath]<br>
+	 * the index defaults to Lucene.indexDirectory; the postings are written
+	 * to its directory
+	 */
+	public static void main(String[] args) throws IOException {
+		String path = args.length > 0 ? args[0] : ApplicationSetup.getProperty(
+				"Lucene.indexDirectory", "./index");
+		File dir = new File(path);
+		IndexReader reader = IndexReader.open(FSDirectory.getDirectory(dir),
+				true);
+		try {
+			File tmp = new File(dir, ProximityIndex.FILE_NAME + ".tmp");
+			new ProximityIndexBuilder(reader).build(tmp);
+			File file = new File(dir, ProximityIndex.FILE_NAME);
+			if (file.exists() && !file.delete() || !tmp.renameTo(file))
+				throw new IOException("cannot replace " + file);
+		} finally {
+			reader.close();
+		}
+	}
+}
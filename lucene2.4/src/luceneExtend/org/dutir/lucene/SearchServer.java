@@ -0,0 +1,498 @@
+package org.dutir.lucene;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.OutputFormat;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.postProcess.PostProcess;
+import org.apache.lucene.queryParser.AnalyzerManager;
+import org.apache.lucene.queryParser.RMultiFieldQueryParser;
+import org.apache.lucene.search.RBooleanQuery;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.TopDocCollector;
+import org.dutir.lucene.query.LuceneQueryParser;
+import org.dutir.lucene.util.ApplicationSetup;
+import org.dutir.lucene.util.TermsCache;
+
+/**
+ * A long-running search daemon. The searcher (with its collection
+ * statistics), the TermsCache and the analyzer are loaded once and stay warm
+ * between requests, so clients such as <tt>bin/search_client.sh</tt> do not
+ * pay the index start-up cost of {@link TrecLucene} for every run.
+ * <p>
+ * The server listens on <tt>Lucene.SearchServer.host</tt> (default
+ * 127.0.0.1) and <tt>Lucene.SearchServer.port</tt> (default 7070) and speaks
+ * a line-based UTF-8 protocol. A request is a sequence of lines terminated
+ * by <tt>RUN</tt>:
+ *
+ * <pre>
+ * SET Lucene.Search.WeightingModel PL2
+ * SET Lucene.PostProcess QueryExpansion
+ * QUERY 401 foreign minorities germany
+ * TOPICS /data/topics/topics.401-450
+ * RUN
+ * </pre>
+ *
+ * <tt>SET</tt> overrides a property for this request only (e.g. the
+ * weighting model, its parameters, <tt>Lucene.SearchField</tt> or
+ * <tt>TRECQuerying.end</tt>), <tt>QUERY</tt> adds one query and
+ * <tt>TOPICS</tt> adds every topic of a topics file on the server, read with
+ * <tt>Lucene.topics.parser</tt>. The results are streamed back in TREC
+ * format, in the order of the queries, followed by a line <tt>END</tt>.
+ * Problems are reported by a line starting with <tt>ERROR</tt>. Besides
+ * requests, a client may send <tt>REOPEN</tt> (pick up documents added to
+ * the index), <tt>SAVE</tt> (write the TermsCache to disk) and
+ * <tt>SHUTDOWN</tt>. A connection may carry any number of requests.
+ * <p>
+ * Requests from all connections are queued and handled by a single
+ * dispatcher. Many properties are read from {@link ApplicationSetup} when a
+ * weight or post processor is created, so the dispatcher takes every pending
+ * request, groups the requests with identical overrides, applies the
+ * overrides of one group at a time and runs all queries of the group on a
+ * shared pool of <tt>Lucene.SearchServer.threads</tt> workers. Post
+ * processors keep static state, so queries that are post processed run one
+ * after the other unless <tt>Lucene.SearchServer.parallelPostProcess</tt>
+ * is set.
+ *
+ * @author yezheng
+ */
+public class SearchServer {
+	static Logger logger = Logger.getLogger(SearchServer.class);
+
+	static final String END = "END";
+	static final String ERROR = "ERROR";
+
+	protected String host = ApplicationSetup.getProperty(
+			"Lucene.SearchServer.host", "127.0.0.1");
+	protected int port = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.SearchServer.port", "7070"));
+	protected int threads = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.SearchServer.threads", ""
+					+ Runtime.getRuntime().availableProcessors()));
+	/** how long (ms) the dispatcher waits for more requests to batch */
+	protected long batchWait = Long.parseLong(ApplicationSetup.getProperty(
+			"Lucene.SearchServer.batchWait", "10"));
+	/** whether post processing is applied when a request does not ask for it */
+	protected boolean postProcess = Boolean.parseBoolean(ApplicationSetup
+			.getProperty("Lucene.SearchServer.postProcess", "false"));
+	protected boolean parallelPostProcess = Boolean
+			.parseBoolean(ApplicationSetup.getProperty(
+					"Lucene.SearchServer.parallelPostProcess", "false"));
+
+	protected Searcher searcher;
+	protected OutputFormat printer;
+	protected Analyzer analyzer;
+	protected TermsCache termCache = TermsCache.getInstance();
+
+	protected ExecutorService workers;
+	protected ExecutorService connections = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					// idle connections must not keep the server alive
+					Thread t = new Thread(r, "SearchServer-connection");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+	protected BlockingQueue<Request> pending = new LinkedBlockingQueue<Request>();
+	protected ServerSocket serverSocket;
+	protected volatile boolean running = true;
+
+	/** One batch of queries sent by a client, with its property overrides. */
+	static class Request {
+		static final int SEARCH = 0, REOPEN = 1, SAVE = 2, SHUTDOWN = 3;
+
+		final int type;
+		final PrintWriter out;
+		final TreeMap<String, String> properties = new TreeMap<String, String>();
+		final ArrayList<String[]> queries = new ArrayList<String[]>();
+		final CountDownLatch done = new CountDownLatch(1);
+
+		Request(int type, PrintWriter out) {
+			this.type = type;
+			this.out = out;
+		}
+
+		/** requests with the same key can share one batch */
+		String key() {
+			return properties.toString();
+		}
+	}
+
+	public SearchServer() {
+		this.searcher = ISManager.getSearcheFromPropertyFile();
+		this.printer = TRECQuerying.getOutputFormat(searcher);
+		this.analyzer = AnalyzerManager.getFromPropertyFile();
+		this.workers = Executors.newFixedThreadPool(Math.max(1, threads));
+		termCache.validate(searcher);
+	}
+
+	/**
+	 * Accepts connections until a client sends <tt>SHUTDOWN</tt>.
+	 */
+	public void serve() throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+		Thread dispatcher = new Thread(new Runnable() {
+			public void run() {
+				dispatch();
+			}
+		}, "SearchServer-dispatcher");
+		dispatcher.start();
+		if (logger.isInfoEnabled())
+			logger.info("search server listening on " + host + ":" + port
+					+ " with " + threads + " workers");
+		while (running) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (IOException e) {
+				if (running)
+					logger.error("accept failed", e);
+				continue;
+			}
+			connections.execute(new Runnable() {
+				public void run() {
+					handle(socket);
+				}
+			});
+		}
+		workers.shutdown();
+		connections.shutdown();
+		try {
+			// let the client that sent SHUTDOWN get its reply
+			connections.awaitTermination(1, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+		}
+		termCache.save();
+		if (logger.isInfoEnabled())
+			logger.info("search server stopped");
+	}
+
+	/** Reads the requests of one connection and waits for their results. */
+	protected void handle(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					socket.getInputStream(), "UTF-8"));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(socket
+					.getOutputStream(), "UTF-8"));
+			Request request = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.length() == 0 || line.startsWith("#"))
+					continue;
+				String parts[] = line.split("\\s+", 3);
+				String command = parts[0].toUpperCase();
+				if (command.equals("REOPEN") || command.equals("SAVE")
+						|| command.equals("SHUTDOWN")) {
+					int type = command.equals("REOPEN") ? Request.REOPEN
+							: command.equals("SAVE") ? Request.SAVE
+									: Request.SHUTDOWN;
+					submit(new Request(type, out));
+					continue;
+				}
+				if (request == null)
+					request = new Request(Request.SEARCH, out);
+				if (command.equals("SET") && parts.length == 3) {
+					request.properties.put(parts[1], parts[2]);
+				} else if (command.equals("QUERY") && parts.length == 3) {
+					request.queries.add(new String[] { parts[1], parts[2] });
+				} else if (command.equals("TOPICS") && parts.length >= 2) {
+					String file = line.substring(parts[0].length()).trim();
+					if (!readTopics(file, request)) {
+						out.println(ERROR + " cannot read topics " + file);
+						out.flush();
+					}
+				} else if (command.equals("RUN")) {
+					submit(request);
+					request = null;
+				} else {
+					out.println(ERROR + " unknown command: " + line);
+					out.flush();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			logger.warn("connection closed: " + e.getMessage());
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	private void submit(Request request) throws InterruptedException {
+		pending.put(request);
+		request.done.await();
+		request.out.println(END);
+		request.out.flush();
+	}
+
+	/**
+	 * Adds the topics of a file on the server to the request, using the
+	 * parser named by <tt>Lucene.topics.parser</tt> (which the request may
+	 * override).
+	 */
+	protected boolean readTopics(String file, Request request) {
+		String parserName = request.properties.get("Lucene.topics.parser");
+		if (parserName == null)
+			parserName = ApplicationSetup.getProperty("Lucene.topics.parser",
+					"TRECQuery");
+		try {
+			LuceneQueryParser topics = (LuceneQueryParser) Class.forName(
+					parserName.indexOf('.') > 0 ? parserName
+							: "org.dutir.lucene.query." + parserName)
+					.getConstructor(String.class).newInstance(file);
+			while (topics.hasMoreQueries()) {
+				String query = topics.nextQuery();
+				request.queries
+						.add(new String[] { topics.getQueryId(), query });
+			}
+			return true;
+		} catch (Exception e) {
+			logger.error("could not read topics from " + file, e);
+			return false;
+		}
+	}
+
+	/** Takes the queued requests batch by batch until shutdown. */
+	protected void dispatch() {
+		while (running) {
+			try {
+				ArrayList<Request> batch = new ArrayList<Request>();
+				batch.add(pending.take());
+				if (batchWait > 0)
+					Thread.sleep(batchWait);
+				pending.drainTo(batch);
+
+				LinkedHashMap<String, ArrayList<Request>> groups = new LinkedHashMap<String, ArrayList<Request>>();
+				for (int i = 0; i < batch.size(); i++) {
+					Request request = batch.get(i);
+					if (request.type != Request.SEARCH) {
+						// control requests see every search queued before them
+						// finished
+						runGroups(groups);
+						groups.clear();
+						control(request);
+						continue;
+					}
+					ArrayList<Request> group = groups.get(request.key());
+					if (group == null) {
+						group = new ArrayList<Request>();
+						groups.put(request.key(), group);
+					}
+					group.add(request);
+				}
+				runGroups(groups);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+	}
+
+	private void runGroups(Map<String, ArrayList<Request>> groups)
+			throws InterruptedException {
+		for (Iterator<ArrayList<Request>> it = groups.values().iterator(); it
+				.hasNext();) {
+			ArrayList<Request> group = it.next();
+			Map<String, String> saved = apply(group.get(0).properties);
+			try {
+				runGroup(group);
+			} finally {
+				restore(saved);
+				for (int i = 0; i < group.size(); i++)
+					group.get(i).done.countDown();
+			}
+		}
+	}
+
+	private void control(Request request) {
+		try {
+			if (request.type == Request.REOPEN) {
+				Searcher current = ISManager.reopenSearcher();
+				if (current != searcher) {
+					searcher = current;
+					printer = TRECQuerying.getOutputFormat(searcher);
+					termCache.validate(searcher);
+				}
+			} else if (request.type == Request.SAVE) {
+				termCache.save();
+			} else if (request.type == Request.SHUTDOWN) {
+				running = false;
+				request.done.countDown();
+				serverSocket.close();
+			}
+		} catch (IOException e) {
+			logger.error("control request failed", e);
+			request.out.println(ERROR + " " + e.getMessage());
+		} finally {
+			request.done.countDown();
+		}
+	}
+
+	/**
+	 * Runs the queries of requests sharing the same overrides, which are
+	 * already applied, and streams each request's results in query order.
+	 */
+	protected void runGroup(ArrayList<Request> group)
+			throws InterruptedException {
+		String fields[] = ApplicationSetup.getProperty("Lucene.SearchField",
+				"title,content").split("\\s*,\\s*");
+		int rank = Integer.parseInt(ApplicationSetup.getProperty(
+				"TRECQuerying.end", "1000"));
+		String postProcesses[] = getPostProcesses(group.get(0).properties);
+		boolean sequential = postProcesses.length > 0 && !parallelPostProcess;
+
+		ArrayList<ArrayList<Future<String>>> results = new ArrayList<ArrayList<Future<String>>>();
+		for (int i = 0; i < group.size(); i++) {
+			Request request = group.get(i);
+			ArrayList<Future<String>> futures = new ArrayList<Future<String>>();
+			for (int j = 0; j < request.queries.size(); j++) {
+				String query[] = request.queries.get(j);
+				futures.add(workers.submit(new QueryTask(query[0], query[1],
+						fields, rank, postProcesses)));
+				if (sequential)
+					waitFor(futures.get(futures.size() - 1));
+			}
+			results.add(futures);
+		}
+		for (int i = 0; i < group.size(); i++) {
+			PrintWriter out = group.get(i).out;
+			ArrayList<Future<String>> futures = results.get(i);
+			for (int j = 0; j < futures.size(); j++) {
+				String result = waitFor(futures.get(j));
+				out.write(result);
+				out.flush();
+			}
+		}
+	}
+
+	private String waitFor(Future<String> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			logger.error("query failed", e.getCause());
+			return ERROR + " " + e.getCause() + ApplicationSetup.EOL;
+		}
+	}
+
+	private String[] getPostProcesses(Map<String, String> properties) {
+		if (!postProcess && !ApplicationSetup.PostProcessTag
+				&& !properties.containsKey("Lucene.PostProcess"))
+			return new String[0];
+		ArrayList<String> list = new ArrayList<String>();
+		String names[] = ApplicationSetup.getProperty("Lucene.PostProcess", "")
+				.split("\\s*,\\s*");
+		for (int i = 0; i < names.length; i++) {
+			String pp = names[i];
+			if (pp.length() > 0) {
+				if (pp.indexOf(".") == -1)
+					pp = "org.apache.lucene.postProcess." + pp;
+				list.add(pp);
+			}
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	/** Sets the overrides, returning the values they replaced (null if unset). */
+	private Map<String, String> apply(Map<String, String> properties) {
+		Map<String, String> saved = new HashMap<String, String>();
+		Properties app = ApplicationSetup.getProperties();
+		for (Iterator<Map.Entry<String, String>> it = properties.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, String> e = it.next();
+			saved.put(e.getKey(), app.getProperty(e.getKey()));
+			app.setProperty(e.getKey(), e.getValue());
+		}
+		return saved;
+	}
+
+	private void restore(Map<String, String> saved) {
+		Properties app = ApplicationSetup.getProperties();
+		for (Iterator<Map.Entry<String, String>> it = saved.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, String> e = it.next();
+			if (e.getValue() == null)
+				app.remove(e.getKey());
+			else
+				app.setProperty(e.getKey(), e.getValue());
+		}
+	}
+
+	/** Parses, runs, post processes and formats one query. */
+	class QueryTask implements Callable<String> {
+		final String id;
+		final String text;
+		final String fields[];
+		final int rank;
+		final String postProcesses[];
+
+		QueryTask(String id, String text, String fields[], int rank,
+				String postProcesses[]) {
+			this.id = id;
+			this.text = text;
+			this.fields = fields;
+			this.rank = rank;
+			this.postProcesses = postProcesses;
+		}
+
+		public String call() throws Exception {
+			long start = System.currentTimeMillis();
+			RBooleanQuery query = RMultiFieldQueryParser.parse(text, fields,
+					analyzer);
+			query.setID(id);
+			if (TRECQuerying.normalizeTage || TRECQuerying.LanguageModel)
+				TRECQuerying.normalise(query);
+			TopDocCollector collector = new TopDocCollector(rank);
+			searcher.search(query, collector);
+			for (int i = 0; i < postProcesses.length; i++) {
+				PostProcess pp = (PostProcess) Class.forName(postProcesses[i])
+						.getDeclaredConstructor().newInstance();
+				collector = pp.postProcess(query, collector, searcher);
+			}
+			StringWriter buffer = new StringWriter();
+			PrintWriter pw = new PrintWriter(buffer);
+			printer.printResults(id, pw, collector);
+			pw.flush();
+			if (logger.isDebugEnabled())
+				logger.debug("query " + id + " processed in "
+						+ (System.currentTimeMillis() - start) + " ms");
+			return buffer.toString();
+		}
+	}
+
+	/**
+	 * @param args
+	 */
+	public static void main(String[] args) throws IOException {
+		new SearchServer().serve();
+	}
+}
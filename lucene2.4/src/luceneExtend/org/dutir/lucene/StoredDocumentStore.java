@@ -0,0 +1,344 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.dutir.lucene.io.PreloadDirectory;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * The stored fields of an index compressed in blocks of documents, so that
+ * fetching the stored fields of the hits of a query inflates a block once
+ * for its neighbouring documents, instead of seeking and inflating every
+ * compressed field of every document. Blocks are deflated at the fastest
+ * level; the last <tt>Lucene.StoredDocumentStore.cacheBlocks</tt> (256)
+ * blocks inflated are kept, and a {@link FieldSelector} only decodes the
+ * fields it loads.
+ * <p>
+ * The store is the file {@link #FILE_NAME} of the index directory, built by
+ * {@link StoredDocumentStoreBuilder}. <tt>IndexSearcher</tt> reads stored
+ * fields from it when it was built from the version of the index the reader
+ * has open, unless <tt>Lucene.StoredDocumentStore.enabled</tt> is false.
+ * Documents rebuilt from the store have the fields, values and index flags
+ * of the stored ones, without their term vector flags.
+ * <p>
+ * File layout, big-endian:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     maxDoc
+ * int     documents per block
+ * long    version of the index
+ * long    start of the block index
+ * deflated blocks
+ * long    start of each block, and the end of the last   [blocks + 1]
+ * int     inflated length of each block   [blocks]
+ * int     number of fields
+ * UTF     field names; the number of a field is its rank   [fields]
+ * </pre>
+ *
+ * An inflated block holds the int offsets of its documents within it and of
+ * its end, then the documents, each a vint number of fields followed by the
+ * fields: vint field number, byte flags, vint length and the bytes of the
+ * value, UTF-8 for text.
+ *
+ * @author yezheng
+ */
+public class StoredDocumentStore {
+	private static Logger logger = Logger.getLogger(StoredDocumentStore.class);
+
+	/** "BDC1" */
+	static final int MAGIC = 0x42444331;
+	static final int HEADER_LENGTH = 28;
+	public static final String FILE_NAME = "stored.bdoc";
+
+	static final int BINARY = 1;
+	static final int INDEXED = 2;
+	static final int TOKENIZED = 4;
+	static final int OMIT_NORMS = 8;
+
+	private static boolean enabled = Boolean.parseBoolean(ApplicationSetup
+			.getProperty("Lucene.StoredDocumentStore.enabled", "true"));
+	private static int cacheBlocks = Integer.parseInt(ApplicationSetup
+			.getProperty("Lucene.StoredDocumentStore.cacheBlocks", "256"));
+
+	private static HashMap<String, StoredDocumentStore> stores = new HashMap<String, StoredDocumentStore>();
+
+	final int maxDoc;
+	final int blockDocs;
+	final long version;
+	final long lastModified;
+	private final FileChannel channel;
+	private final long blockStarts[];
+	private final int blockLengths[];
+	private final String fields[];
+
+	/** inflated blocks, least recently used first */
+	private final LinkedHashMap<Integer, byte[]> cache;
+
+	private final ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>() {
+		protected Inflater initialValue() {
+			return new Inflater();
+		}
+	};
+
+	/**
+	 * @return the store of the index of the reader if there is one built for
+	 *         the version the reader has open, null otherwise
+	 */
+	public static StoredDocumentStore get(IndexReader reader) {
+		if (!enabled)
+			return null;
+		File dir;
+		try {
+			dir = getFile(reader.directory());
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+		if (dir == null)
+			return null;
+		File file = new File(dir, FILE_NAME);
+		String key = file.getPath();
+		if (!file.exists())
+			return null;
+		long version;
+		try {
+			version = reader.getVersion();
+		} catch (UnsupportedOperationException e) {
+			return null;
+		}
+		synchronized (stores) {
+			StoredDocumentStore store = stores.get(key);
+			// a rebuilt store replaces the one opened
+			if (store == null || store.lastModified != file.lastModified()) {
+				if (store != null) {
+					stores.remove(key);
+					try {
+						store.close();
+					} catch (IOException e) {
+						logger.warn("cannot close the stored document store " + file, e);
+					}
+				}
+				try {
+					store = new StoredDocumentStore(file);
+				} catch (IOException e) {
+					logger.error("cannot read the stored document store "
+							+ file, e);
+					return null;
+				}
+				stores.put(key, store);
+			}
+			if (store.version != version || store.maxDoc != reader.maxDoc()) {
+				if (logger.isDebugEnabled())
+					logger.debug(file + " was built for another version of the index");
+				return null;
+			}
+			return store;
+		}
+	}
+
+	/** @return the file system directory of an index, null if it has none */
+	static File getFile(Directory dir) {
+		if (dir instanceof PreloadDirectory)
+			dir = ((PreloadDirectory) dir).getDelegate();
+		return dir instanceof FSDirectory ? ((FSDirectory) dir).getFile()
+				: null;
+	}
+
+	public StoredDocumentStore(File file) throws IOException {
+		lastModified = file.lastModified();
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		boolean success = false;
+		try {
+			if (raf.readInt() != MAGIC)
+				throw new IOException(file + " is not a stored document store");
+			maxDoc = raf.readInt();
+			blockDocs = raf.readInt();
+			version = raf.readLong();
+			long indexStart = raf.readLong();
+			int numBlocks = (maxDoc + blockDocs - 1) / blockDocs;
+			byte tail[] = new byte[(int) (raf.length() - indexStart)];
+			raf.seek(indexStart);
+			raf.readFully(tail);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+					tail));
+			blockStarts = new long[numBlocks + 1];
+			for (int i = 0; i <= numBlocks; i++)
+				blockStarts[i] = in.readLong();
+			blockLengths = new int[numBlocks];
+			for (int i = 0; i < numBlocks; i++)
+				blockLengths[i] = in.readInt();
+			fields = new String[in.readInt()];
+			for (int i = 0; i < fields.length; i++)
+				fields[i] = in.readUTF();
+			channel = raf.getChannel();
+			success = true;
+		} finally {
+			if (!success)
+				raf.close();
+		}
+		final int capacity = cacheBlocks;
+		cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Integer, byte[]> eldest) {
+				return size() > capacity;
+			}
+		};
+		if (logger.isInfoEnabled())
+			logger.info("opened stored document store " + file + ": " + maxDoc
+					+ " documents in " + blockLengths.length + " blocks");
+	}
+
+	public int maxDoc() {
+		return maxDoc;
+	}
+
+	/** @return the inflated block */
+	private byte[] block(int b) throws IOException {
+		synchronized (cache) {
+			byte data[] = cache.get(b);
+			if (data != null)
+				return data;
+		}
+		ByteBuffer deflated = ByteBuffer
+				.allocate((int) (blockStarts[b + 1] - blockStarts[b]));
+		while (deflated.hasRemaining())
+			if (channel.read(deflated, blockStarts[b] + deflated.position()) < 0)
+				throw new IOException("read past EOF");
+		byte data[] = new byte[blockLengths[b]];
+		Inflater inflater = inflaters.get();
+		inflater.reset();
+		inflater.setInput(deflated.array());
+		try {
+			int n = 0;
+			while (n < data.length && !inflater.finished())
+				n += inflater.inflate(data, n, data.length - n);
+			if (n != data.length)
+				throw new IOException("block " + b + " is truncated");
+		} catch (DataFormatException e) {
+			throw new IOException("block " + b + " is corrupt: " + e);
+		}
+		synchronized (cache) {
+			cache.put(b, data);
+		}
+		return data;
+	}
+
+	public Document document(int doc) throws IOException {
+		return document(doc, null);
+	}
+
+	/**
+	 * @return the stored fields of a document that the selector loads, all of
+	 *         them if it is null
+	 */
+	public Document document(int doc, FieldSelector selector)
+			throws IOException {
+		if (doc < 0 || doc >= maxDoc)
+			throw new IllegalArgumentException("docid " + doc
+					+ " out of range [0, " + maxDoc + ")");
+		byte data[] = block(doc / blockDocs);
+		int at[] = { readInt(data, 4 * (doc % blockDocs)) };
+		Document document = new Document();
+		int numFields = readVInt(data, at);
+		for (int i = 0; i < numFields; i++) {
+			String name = fields[readVInt(data, at)];
+			int flags = data[at[0]++];
+			int length = readVInt(data, at);
+			int start = at[0];
+			at[0] += length;
+			FieldSelectorResult accept = selector == null ? FieldSelectorResult.LOAD
+					: selector.accept(name);
+			if (accept.equals(FieldSelectorResult.NO_LOAD))
+				continue;
+			if (accept.equals(FieldSelectorResult.SIZE)
+					|| accept.equals(FieldSelectorResult.SIZE_AND_BREAK)) {
+				int size = (flags & BINARY) != 0 ? length : 2 * utf8(data,
+						start, length).length();
+				document.add(new Field(name, new byte[] { (byte) (size >>> 24),
+						(byte) (size >>> 16), (byte) (size >>> 8), (byte) size },
+						Field.Store.YES));
+				if (accept.equals(FieldSelectorResult.SIZE_AND_BREAK))
+					break;
+				continue;
+			}
+			if ((flags & BINARY) != 0) {
+				byte value[] = new byte[length];
+				System.arraycopy(data, start, value, 0, length);
+				document.add(new Field(name, value, Field.Store.YES));
+			} else {
+				document.add(new Field(name, utf8(data, start, length),
+						Field.Store.YES, index(flags)));
+			}
+			if (accept.equals(FieldSelectorResult.LOAD_AND_BREAK))
+				break;
+		}
+		return document;
+	}
+
+	private static Field.Index index(int flags) {
+		if ((flags & INDEXED) == 0)
+			return Field.Index.NO;
+		if ((flags & TOKENIZED) != 0)
+			return (flags & OMIT_NORMS) != 0 ? Field.Index.ANALYZED_NO_NORMS
+					: Field.Index.ANALYZED;
+		return (flags & OMIT_NORMS) != 0 ? Field.Index.NOT_ANALYZED_NO_NORMS
+				: Field.Index.NOT_ANALYZED;
+	}
+
+	private static String utf8(byte data[], int start, int length) {
+		try {
+			return new String(data, start, length, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static int readInt(byte data[], int p) {
+		return (data[p] & 0xFF) << 24 | (data[p + 1] & 0xFF) << 16
+				| (data[p + 2] & 0xFF) << 8 | (data[p + 3] & 0xFF);
+	}
+
+	/**
+	 * Reads the vint at <code>at[0]</code> and moves <code>at[0]</code> after
+	 * it.
+	 */
+	private static int readVInt(byte data[], int at[]) {
+		int p = at[0];
+		byte b = data[p++];
+		int i = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = data[p++];
+			i |= (b & 0x7F) << shift;
+		}
+		at[0] = p;
+		return i;
+	}
+
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,200 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.zip.Deflater;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.FSDirectory;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Builds the {@link StoredDocumentStore} of an index from its stored fields,
+ * in blocks of <tt>Lucene.StoredDocumentStore.blockDocs</tt> (16) documents.
+ * Deleted documents are stored without fields.
+ *
+ * @author yezheng
+ */
+public class StoredDocumentStoreBuilder {
+	private static Logger logger = Logger
+			.getLogger(StoredDocumentStoreBuilder.class);
+
+	final IndexReader reader;
+	final int blockDocs = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.StoredDocumentStore.blockDocs", "16"));
+
+	public StoredDocumentStoreBuilder(IndexReader reader) {
+		this.reader = reader;
+	}
+
+	public void build(File output) throws IOException {
+		int maxDoc = reader.maxDoc();
+		int numBlocks = (maxDoc + blockDocs - 1) / blockDocs;
+		long blockStarts[] = new long[numBlocks + 1];
+		int blockLengths[] = new int[numBlocks];
+		HashMap<String, Integer> fieldNumbers = new HashMap<String, Integer>();
+		ArrayList<String> fields = new ArrayList<String>();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		ByteArrayOutputStream docs = new ByteArrayOutputStream(1 << 16);
+		DataOutputStream docsOut = new DataOutputStream(docs);
+		ByteArrayOutputStream block = new ByteArrayOutputStream(1 << 16);
+		DataOutputStream blockOut = new DataOutputStream(block);
+		byte buf[] = new byte[1 << 16];
+		long inflated = 0;
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 1 << 16));
+		long p = StoredDocumentStore.HEADER_LENGTH;
+		try {
+			out.writeInt(StoredDocumentStore.MAGIC);
+			out.writeInt(maxDoc);
+			out.writeInt(blockDocs);
+			out.writeLong(reader.getVersion());
+			out.writeLong(0);
+			for (int b = 0; b < numBlocks; b++) {
+				int first = b * blockDocs;
+				int n = Math.min(blockDocs, maxDoc - first);
+				docs.reset();
+				block.reset();
+				for (int i = 0; i < n; i++) {
+					// the offsets come before the documents
+					blockOut.writeInt(4 * (n + 1) + docs.size());
+					int doc = first + i;
+					if (reader.isDeleted(doc)) {
+						writeVInt(docsOut, 0);
+						continue;
+					}
+					Document document = reader.document(doc);
+					writeVInt(docsOut, document.getFields().size());
+					for (Iterator<?> it = document.getFields().iterator(); it
+							.hasNext();) {
+						Fieldable field = (Fieldable) it.next();
+						Integer number = fieldNumbers.get(field.name());
+						if (number == null) {
+							number = fields.size();
+							fieldNumbers.put(field.name(), number);
+							fields.add(field.name());
+						}
+						writeVInt(docsOut, number);
+						int flags = (field.isBinary() ? StoredDocumentStore.BINARY
+								: 0)
+								| (field.isIndexed() ? StoredDocumentStore.INDEXED
+										: 0)
+								| (field.isTokenized() ? StoredDocumentStore.TOKENIZED
+										: 0)
+								| (field.getOmitNorms() ? StoredDocumentStore.OMIT_NORMS
+										: 0);
+						docsOut.writeByte(flags);
+						if (field.isBinary()) {
+							writeVInt(docsOut, field.getBinaryLength());
+							docsOut.write(field.getBinaryValue(), field
+									.getBinaryOffset(), field.getBinaryLength());
+						} else {
+							byte value[] = field.stringValue().getBytes("UTF-8");
+							writeVInt(docsOut, value.length);
+							docsOut.write(value);
+						}
+					}
+				}
+				blockOut.writeInt(4 * (n + 1) + docs.size());
+				docs.writeTo(block);
+				byte data[] = block.toByteArray();
+				blockLengths[b] = data.length;
+				inflated += data.length;
+
+				blockStarts[b] = p;
+				deflater.reset();
+				deflater.setInput(data);
+				deflater.finish();
+				while (!deflater.finished()) {
+					int len = deflater.deflate(buf);
+					out.write(buf, 0, len);
+					p += len;
+				}
+			}
+			blockStarts[numBlocks] = p;
+			for (int b = 0; b <= numBlocks; b++)
+				out.writeLong(blockStarts[b]);
+			for (int b = 0; b < numBlocks; b++)
+				out.writeInt(blockLengths[b]);
+			out.writeInt(fields.size());
+			for (int i = 0; i < fields.size(); i++)
+				out.writeUTF(fields.get(i));
+		} finally {
+			deflater.end();
+			out.close();
+		}
+		RandomAccessFile raf = new RandomAccessFile(output, "rw");
+		try {
+			raf.seek(20);
+			raf.writeLong(p);
+		} finally {
+			raf.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("stored document store " + output + ": " + maxDoc
+					+ " documents, " + inflated + " bytes deflated to " + p);
+	}
+
+	private static void writeVInt(DataOutputStream out, int i)
+			throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.writeByte((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		out.writeByte(i);
+	}
+
+	/**
+	 * Builds the store of the index in a directory, or of every index below
+	 * it.
+	 */
+	public static void buildAll(File dir) throws IOException {
+		if (!dir.isDirectory())
+			return;
+		if (new File(dir, "segments.gen").exists()) {
+			IndexReader reader = IndexReader.open(FSDirectory
+					.getDirectory(dir), true);
+			try {
+				File tmp = new File(dir, StoredDocumentStore.FILE_NAME + ".tmp");
+				new StoredDocumentStoreBuilder(reader).build(tmp);
+				File file = new File(dir, StoredDocumentStore.FILE_NAME);
+				if (file.exists() && !file.delete() || !tmp.renameTo(file))
+					throw new IOException("cannot replace " + file);
+			} finally {
+				reader.close();
+			}
+			return;
+		}
+		File files[] = dir.listFiles();
+		for (int i = 0; i < files.length; i++)
+			buildAll(files[i]);
+	}
+
+	/**
+	 * Usage: StoredDocumentStoreBuilder [indexPath]<br>
+	 * the index defaults to Lucene.indexDirectory; the store of every index
+	 * found below the path is written to its directory
+	 */
+	public static void main(String[] args) throws IOException {
+		String paths = args.length > 0 ? args[0] : ApplicationSetup
+				.getProperty("Lucene.indexDirectory", "./index");
+		String indexps[] = paths.split("\\s*,\\s*");
+		for (int i = 0; i < indexps.length; i++)
+			buildAll(new File(indexps[i]));
+	}
+}
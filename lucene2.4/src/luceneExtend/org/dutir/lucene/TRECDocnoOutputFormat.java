@@ -5,6 +5,8 @@ import java.io.PrintWriter;
 import org.apache.log4j.Logger;
 import org.apache.lucene.OutputFormat;
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.MapFieldSelector;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TopDocCollector;
 import org.apache.lucene.search.TopDocs;
@@ -18,15 +20,11 @@ public class TRECDocnoOutputFormat implements OutputFormat {
 		this.searcher = searcher;
 	}
 
-	String docidField = null;
-
-	private String getIdFieldName() {
-		if (docidField == null) {
-			docidField = ApplicationSetup.getProperty("TrecDocTags.idtag",
-					"DOCNO");
-		}
-		return docidField;
-	}
+	final String docidField = ApplicationSetup.getProperty(
+			"TrecDocTags.idtag", "DOCNO");
+	/** loads the docno only, not the whole stored document */
+	final FieldSelector docidSelector = new MapFieldSelector(
+			new String[] { docidField });
 
 	/**
 	 * Prints the results for the given search request, using the specified
@@ -48,7 +46,9 @@ public class TRECDocnoOutputFormat implements OutputFormat {
 		final String queryIdExpanded = queryID + " " + iteration + " ";
 		final String methodExpanded = " " + "LabLucene"
 				+ ApplicationSetup.EOL;
-		StringBuilder sbuffer = new StringBuilder();
+		// sized for the whole topic, so it never grows
+		StringBuilder sbuffer = new StringBuilder(64 * Math.max(0, maximum
+				- start));
 		// the results are ordered in descending order
 		// with respect to the score.
 		int limit = 10000;
@@ -59,8 +59,8 @@ public class TRECDocnoOutputFormat implements OutputFormat {
 			Document doc = null;
 			String filename = null;
 			try {
-				doc = searcher.doc(docid);
-				filename = doc.get(getIdFieldName());
+				doc = searcher.doc(docid, docidSelector);
+				filename = doc.get(docidField);
 			} catch (Exception e) {
 				e.printStackTrace();
 			}
@@ -93,6 +93,6 @@ public class TRECDocnoOutputFormat implements OutputFormat {
 
 			sbuffer.append(methodExpanded);
 		}
-		pw.write(sbuffer.toString());
+		pw.append(sbuffer);
 	}
 }
@@ -2,7 +2,6 @@ package org.dutir.lucene;
 
 import gnu.trove.THashSet;
 
-import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -11,12 +10,15 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.Properties;
 import java.util.Random;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
 import org.apache.log4j.Logger;
@@ -27,6 +29,8 @@ import org.apache.lucene.postProcess.PostProcess;
 import org.apache.lucene.queryParser.AnalyzerManager;
 import org.apache.lucene.search.BooleanClause;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FilterCache;
+import org.apache.lucene.search.PostingsBatch;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.RBooleanClause;
 import org.apache.lucene.search.RBooleanQuery;
@@ -35,6 +39,7 @@ import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TopDocCollector;
 import org.apache.lucene.search.TopDocs;
 import org.dutir.lucene.evaluation.TRECQrelsInMemory;
+import org.dutir.lucene.io.AsyncOutputStream;
 import org.dutir.lucene.query.LuceneQueryParser;
 import org.dutir.lucene.util.ApplicationSetup;
 import org.dutir.lucene.util.TermsCache;
@@ -73,6 +78,13 @@ public class TRECQuerying {
 	private boolean firstRound = Boolean.parseBoolean(ApplicationSetup
 			.getProperty("Lucene.TRECQuerying.firstRound", "true"));
 
+	/**
+	 * The number of topics run as one {@link PostingsBatch}, which decodes the
+	 * posting lists they share once; 1 runs every topic on its own.
+	 */
+	static int batchSize = Integer.parseInt(ApplicationSetup.getProperty(
+			"TRECQuerying.batchSize", "1"));
+
 	public String retrievalPara = "";
 	protected OutputFormat printer;
 
@@ -156,7 +168,7 @@ public class TRECQuerying {
 		this.printer = getOutputFormat(this.searcher);
 	}
 
-	protected OutputFormat getOutputFormat(Searcher searcher) {
+	protected static OutputFormat getOutputFormat(Searcher searcher) {
 		OutputFormat rtr = null;
 		try {
 			String className = ApplicationSetup.getProperty(
@@ -288,9 +300,10 @@ public class TRECQuerying {
 					+ ApplicationSetup.TREC_GZ_RESULTS_SUFFIX;
 			// resultFile = new PrintWriter(new BufferedWriter(new FileWriter(
 			// new File(resultsFilename))));
-			resultFile = new PrintWriter(new GZIPOutputStream(
-					new BufferedOutputStream(new FileOutputStream(new File(
-							resultsFilename)), buf_size)));
+			resultFile = new PrintWriter(new OutputStreamWriter(
+					new AsyncOutputStream(new LeveledGZIPOutputStream(
+							new FileOutputStream(new File(resultsFilename)),
+							buf_size), buf_size)));
 
 			// ***********write setting file *************//
 			String settingFileName = ApplicationSetup.TREC_RESULTS + "/"
@@ -303,9 +316,12 @@ public class TRECQuerying {
 					.write("Retrieval Paras: " + this.retrievalPara + "\n");
 			settingWriter.write("*****************************************\n");
 			list(settingWriter, ApplicationSetup.getProperties());
-			settingWriter
-					.write("******************System Properties***********************\n");
-			list(settingWriter, System.getProperties());
+			if (Boolean.parseBoolean(ApplicationSetup.getProperty(
+					"trec.results.setting.system", "true"))) {
+				settingWriter
+						.write("******************System Properties***********************\n");
+				list(settingWriter, System.getProperties());
+			}
 			settingWriter.close();
 			if (logger.isInfoEnabled())
 				logger.info("Writing results to " + resultsFilename);
@@ -318,6 +334,20 @@ public class TRECQuerying {
 		return resultFile;
 	}
 
+	/**
+	 * A gzip stream compressing at the level of
+	 * <tt>trec.results.compression.level</tt>, from 0 (stored) to 9 (best);
+	 * -1 (default) is the default of {@link Deflater}. The result files stay
+	 * gzip whatever the level, so the evaluation reads them all alike.
+	 */
+	static class LeveledGZIPOutputStream extends GZIPOutputStream {
+		LeveledGZIPOutputStream(OutputStream out, int size) throws IOException {
+			super(out, size);
+			def.setLevel(Integer.parseInt(ApplicationSetup.getProperty(
+					"trec.results.compression.level", "-1")));
+		}
+	}
+
 	private void list(PrintWriter out, Properties properties) {
 		Hashtable h = new Hashtable();
 		for (Enumeration e = properties.keys(); e.hasMoreElements();) {
@@ -378,7 +408,8 @@ public class TRECQuerying {
 						+ bquery.toString());
 			long start = System.currentTimeMillis();
 			if (firstRound) {
-				searcher.search(bquery, collector);
+				searcher.search(bquery, FilterCache.getFromPropertyFile(),
+						collector);
 				if (logger.isDebugEnabled())
 					logger.debug("first round time: "
 							+ (System.currentTimeMillis() - start) / 1000f
@@ -516,7 +547,17 @@ public class TRECQuerying {
 		return rtr;
 	}
 
-	protected void normalise(RBooleanQuery query) {
+	/**
+	 * Normalises the query if <tt>Lucene.TRECQuerying.NormalizeQueryTag</tt>
+	 * or <tt>Lucene.Search.LanguageModel</tt> is set, as done before
+	 * searching.
+	 */
+	public static void normaliseIfConfigured(RBooleanQuery query) {
+		if (normalizeTage || LanguageModel)
+			normalise(query);
+	}
+
+	protected static void normalise(RBooleanQuery query) {
 		RBooleanClause[] bclause = query.getClauses();
 		if (bclause.length == 1) {
 			RBooleanClause bc = bclause[0];
@@ -592,26 +633,32 @@ public class TRECQuerying {
 					"Lucene.Search.WeightingModel", null)) != null) {
 				wModel = methodName;
 				// iterating through the queries
-				while (querySource.hasMoreQueries()) {
-
-					// process the query
-					long processingStart = System.currentTimeMillis();
-					RBooleanQuery bquery = querySource.getNextQuery(
-							this.searchFeilds, analyzer);
-					if (bquery == null)
-						break;
-					if (normalizeTage || LanguageModel) {
-						normalise(bquery);
+				ArrayList<RBooleanQuery> batch;
+				while (!(batch = nextQueries()).isEmpty()) {
+					PostingsBatch postings = openBatch(batch);
+					try {
+						for (RBooleanQuery bquery : batch) {
+							// process the query
+							long processingStart = System.currentTimeMillis();
+							if (normalizeTage || LanguageModel) {
+								normalise(bquery);
+							}
+							processQueryAndWrite(bquery);
+							if (postings != null)
+								postings.finished(bquery);
+							matchingCount++;
+							long processingEnd = System.currentTimeMillis();
+							if (logger.isInfoEnabled())
+								logger.info("Time to process query: "
+										+ bquery.getTopicId() + " -- "
+										+ ((processingEnd - processingStart) / 1000.0D)
+										+ " S");
+							doneSomeTopics = true;
+						}
+					} finally {
+						if (postings != null)
+							postings.close();
 					}
-					processQueryAndWrite(bquery);
-					matchingCount++;
-					long processingEnd = System.currentTimeMillis();
-					if (logger.isInfoEnabled())
-						logger.info("Time to process query: "
-								+ bquery.getTopicId() + " -- "
-								+ ((processingEnd - processingStart) / 1000.0D)
-								+ " S");
-					doneSomeTopics = true;
 				}
 				querySource.reset();
 				this.finishedQueries();
@@ -628,22 +675,29 @@ public class TRECQuerying {
 						continue;
 					wModel = methodName;
 					// iterating through the queries
-					while (querySource.hasMoreQueries()) {
-						// process the query
-						long processingStart = System.currentTimeMillis();
-						RBooleanQuery bquery = querySource.getNextQuery(
-								this.searchFeilds, analyzer);
-						if (bquery == null)
-							break;
-						processQueryAndWrite(bquery);
-						long processingEnd = System.currentTimeMillis();
-						if (logger.isInfoEnabled())
-							logger
-									.info("Time to process query: "
-											+ bquery.getTopicId()
-											+ " -- "
-											+ +((processingEnd - processingStart) / 1000.0D));
-						doneSomeTopics = true;
+					ArrayList<RBooleanQuery> batch;
+					while (!(batch = nextQueries()).isEmpty()) {
+						PostingsBatch postings = openBatch(batch);
+						try {
+							for (RBooleanQuery bquery : batch) {
+								// process the query
+								long processingStart = System.currentTimeMillis();
+								processQueryAndWrite(bquery);
+								if (postings != null)
+									postings.finished(bquery);
+								long processingEnd = System.currentTimeMillis();
+								if (logger.isInfoEnabled())
+									logger
+											.info("Time to process query: "
+													+ bquery.getTopicId()
+													+ " -- "
+													+ +((processingEnd - processingStart) / 1000.0D));
+								doneSomeTopics = true;
+							}
+						} finally {
+							if (postings != null)
+								postings.close();
+						}
 					}
 					querySource.reset();
 					this.finishedQueries();
@@ -673,6 +727,33 @@ public class TRECQuerying {
 		return resultsFilename;
 	}
 
+	/**
+	 * @return the next {@link #batchSize} queries of the topics, fewer at the
+	 *         end of the topics
+	 */
+	protected ArrayList<RBooleanQuery> nextQueries() {
+		ArrayList<RBooleanQuery> batch = new ArrayList<RBooleanQuery>();
+		while (batch.size() < Math.max(batchSize, 1)
+				&& querySource.hasMoreQueries()) {
+			RBooleanQuery bquery = querySource.getNextQuery(this.searchFeilds,
+					analyzer);
+			if (bquery == null)
+				break;
+			batch.add(bquery);
+		}
+		return batch;
+	}
+
+	/** @return the postings batch of the queries, null for a single query */
+	private PostingsBatch openBatch(ArrayList<RBooleanQuery> batch) {
+		if (batch.size() < 2)
+			return null;
+		PostingsBatch postings = PostingsBatch.open(batch);
+		if (logger.isDebugEnabled())
+			logger.debug("running " + batch.size() + " topics as a batch");
+		return postings;
+	}
+
 	/**
 	 * After finishing with a batch of queries, close the result file
 	 * 
@@ -681,6 +762,10 @@ public class TRECQuerying {
 		if (resultFile != null) {
 			resultFile.flush();
 			resultFile.close();
+			// the writer does not throw the errors of the file
+			if (resultFile.checkError())
+				logger.error("could not write the results to "
+						+ resultsFilename);
 		}
 
 		resultFile = null;
@@ -0,0 +1,270 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * How often terms of an index occur in the same documents, built offline by
+ * {@link TermAssociationIndexBuilder} from one pass over the index, so that
+ * association measures between terms are lookups instead of searches and
+ * term vector scans per query. For every term the index keeps its document
+ * frequency and the co-document frequencies of its neighbours with the
+ * highest pointwise mutual information,
+ * <pre>
+ * pmi(x, y) = log(codf(x, y) * N / (df(x) * df(y)))
+ * </pre>
+ * The co-document frequency of two terms that are not neighbours of each
+ * other is taken as 0. The file is memory-mapped except for its terms.
+ * <p>
+ * File layout, big-endian:
+ *
+ * <pre>
+ * int     MAGIC
+ * int     number of documents N
+ * int     number of terms
+ * int     number of neighbour entries
+ * int     document frequency of each term   [terms]
+ * int     first neighbour entry of each term, and the end of the last   [terms + 1]
+ * int,int neighbour term id and co-document frequency, by term and by id   [entries]
+ * UTF     terms, in increasing order; the id of a term is its rank   [terms]
+ * </pre>
+ *
+ * @author yezheng
+ */
+public class TermAssociationIndex {
+	private static Logger logger = Logger.getLogger(TermAssociationIndex.class);
+
+	/** "ASC1" */
+	static final int MAGIC = 0x41534331;
+	static final int HEADER_LENGTH = 16;
+
+	private static HashMap<String, TermAssociationIndex> indexes = new HashMap<String, TermAssociationIndex>();
+
+	final int numDocs;
+	private final String terms[];
+	private final IntBuffer dfs;
+	private final IntBuffer offsets;
+	private final IntBuffer entries;
+
+	/**
+	 * @return the index of <tt>TermAssociationIndex.path</tt>, loaded on first
+	 *         use; null if none is configured or it cannot be read
+	 */
+	public static TermAssociationIndex getFromPropertyFile() {
+		return get(ApplicationSetup.getProperty("TermAssociationIndex.path", ""));
+	}
+
+	/**
+	 * @return the index at the path, loaded on first use; null if the path is
+	 *         empty or the index cannot be read
+	 */
+	public static TermAssociationIndex get(String path) {
+		if (path == null || path.length() == 0)
+			return null;
+		synchronized (indexes) {
+			if (indexes.containsKey(path))
+				return indexes.get(path);
+			TermAssociationIndex index = null;
+			try {
+				index = new TermAssociationIndex(new File(path));
+			} catch (IOException e) {
+				logger.error("cannot read the term association index " + path,
+						e);
+			}
+			indexes.put(path, index);
+			return index;
+		}
+	}
+
+	public TermAssociationIndex(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		long termsStart;
+		try {
+			if (raf.readInt() != MAGIC)
+				throw new IOException(file
+						+ " is not a term association index");
+			numDocs = raf.readInt();
+			int numTerms = raf.readInt();
+			int numEntries = raf.readInt();
+			termsStart = HEADER_LENGTH + 4L * numTerms + 4L * (numTerms + 1)
+					+ 8L * numEntries;
+			if (raf.length() < termsStart)
+				throw new IOException(file + " is truncated");
+			// the mapping stays valid once the file is closed
+			ByteBuffer buffer = raf.getChannel().map(
+					FileChannel.MapMode.READ_ONLY, HEADER_LENGTH,
+					termsStart - HEADER_LENGTH);
+			IntBuffer ints = buffer.asIntBuffer();
+			ints.limit(numTerms);
+			dfs = ints.slice();
+			ints.limit(2 * numTerms + 1).position(numTerms);
+			offsets = ints.slice();
+			ints.limit(ints.capacity()).position(2 * numTerms + 1);
+			entries = ints.slice();
+			terms = new String[numTerms];
+		} finally {
+			raf.close();
+		}
+		FileInputStream in = new FileInputStream(file);
+		try {
+			in.getChannel().position(termsStart);
+			DataInputStream din = new DataInputStream(new BufferedInputStream(
+					in, 1 << 16));
+			for (int i = 0; i < terms.length; i++)
+				terms[i] = din.readUTF();
+		} finally {
+			in.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("loaded term association index " + file + ": "
+					+ terms.length + " terms, " + entries.capacity() / 2
+					+ " neighbours, " + numDocs + " documents");
+	}
+
+	public int numDocs() {
+		return numDocs;
+	}
+
+	public int numTerms() {
+		return terms.length;
+	}
+
+	public String term(int id) {
+		return terms[id];
+	}
+
+	/** @return the id of the term, or a negative number if it is unknown */
+	public int termId(String term) {
+		return Arrays.binarySearch(terms, term);
+	}
+
+	public int df(int id) {
+		return dfs.get(id);
+	}
+
+	/** @return the document frequency of the term, 0 if it is unknown */
+	public int df(String term) {
+		int id = termId(term);
+		return id < 0 ? 0 : dfs.get(id);
+	}
+
+	/** @return the number of neighbours of the term */
+	public int numNeighbours(int x) {
+		return offsets.get(x + 1) - offsets.get(x);
+	}
+
+	/** @return the id of the i-th neighbour of the term, by increasing id */
+	public int neighbour(int x, int i) {
+		return entries.get(2 * (offsets.get(x) + i));
+	}
+
+	/** @return the co-document frequency of the term and its i-th neighbour */
+	public int neighbourCoDocFreq(int x, int i) {
+		return entries.get(2 * (offsets.get(x) + i) + 1);
+	}
+
+	/** @return the co-document frequency of y if it is a neighbour of x */
+	private int find(int x, int y) {
+		int lo = offsets.get(x), hi = offsets.get(x + 1) - 1;
+		while (lo <= hi) {
+			int mid = (lo + hi) >>> 1;
+			int id = entries.get(2 * mid);
+			if (id < y)
+				lo = mid + 1;
+			else if (id > y)
+				hi = mid - 1;
+			else
+				return entries.get(2 * mid + 1);
+		}
+		return 0;
+	}
+
+	/** @return the number of documents containing both terms */
+	public int coDocFreq(int x, int y) {
+		if (x == y)
+			return dfs.get(x);
+		int codf = find(x, y);
+		return codf > 0 ? codf : find(y, x);
+	}
+
+	/** @return the number of documents containing both terms */
+	public int coDocFreq(String x, String y) {
+		int idX = termId(x), idY = termId(y);
+		if (idX < 0 || idY < 0)
+			return 0;
+		return coDocFreq(idX, idY);
+	}
+
+	/**
+	 * @return the pointwise mutual information of the terms, negative infinity
+	 *         if they do not occur together
+	 */
+	public double pmi(int x, int y) {
+		int codf = coDocFreq(x, y);
+		if (codf == 0)
+			return Double.NEGATIVE_INFINITY;
+		return Math.log((double) codf * numDocs
+				/ ((double) dfs.get(x) * dfs.get(y)));
+	}
+
+	/**
+	 * @return the pointwise mutual information of the terms, negative infinity
+	 *         if they do not occur together
+	 */
+	public double pmi(String x, String y) {
+		int idX = termId(x), idY = termId(y);
+		if (idX < 0 || idY < 0)
+			return Double.NEGATIVE_INFINITY;
+		return pmi(idX, idY);
+	}
+
+	/**
+	 * @return p(x|y), the part of the documents containing y that contain x,
+	 *         smoothed as (codf(x, y) + 0.5) / (df(y) + 0.5)
+	 */
+	public double conditionProb(String x, String givenY) {
+		int idX = termId(x), idY = termId(givenY);
+		int codf = idX < 0 || idY < 0 ? 0 : coDocFreq(idX, idY);
+		int df = idY < 0 ? 0 : dfs.get(idY);
+		return (codf + 0.5) / (df + 0.5);
+	}
+
+	/** @return the neighbours of a term, by decreasing mutual information */
+	public String[] neighbours(String term) {
+		int x = termId(term);
+		if (x < 0)
+			return new String[0];
+		int start = offsets.get(x), n = offsets.get(x + 1) - start;
+		final double pmis[] = new double[n];
+		Integer order[] = new Integer[n];
+		for (int i = 0; i < n; i++) {
+			pmis[i] = pmi(x, entries.get(2 * (start + i)));
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(pmis[b], pmis[a]);
+			}
+		});
+		String result[] = new String[n];
+		for (int i = 0; i < n; i++)
+			result[i] = terms[entries.get(2 * (start + order[i]))];
+		return result;
+	}
+}
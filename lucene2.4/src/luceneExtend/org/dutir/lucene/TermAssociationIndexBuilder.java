@@ -0,0 +1,210 @@
+/**
+ *
+ */
+package org.dutir.lucene;
+
+import gnu.trove.TLongIntHashMap;
+import gnu.trove.TLongIntIterator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermEnum;
+import org.apache.lucene.index.TermFreqVector;
+import org.apache.lucene.search.Searcher;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Builds the {@link TermAssociationIndex} of a field of an index, such as
+ * the social tag index of <tt>SocialTermSelector</tt>, from its term vectors
+ * in one pass. Only terms in at least <tt>TermAssociationIndex.minDf</tt> (2)
+ * documents are kept, each with its <tt>TermAssociationIndex.topN</tt> (100)
+ * neighbours of highest mutual information; documents with more than
+ * <tt>TermAssociationIndex.maxDocTerms</tt> (1000) kept terms are skipped.
+ * The co-document frequencies of all pairs are counted in memory.
+ *
+ * @author yezheng
+ */
+public class TermAssociationIndexBuilder {
+	private static Logger logger = Logger
+			.getLogger(TermAssociationIndexBuilder.class);
+
+	final IndexReader reader;
+	final String field;
+	final int minDf = Integer.parseInt(ApplicationSetup.getProperty(
+			"TermAssociationIndex.minDf", "2"));
+	final int topN = Integer.parseInt(ApplicationSetup.getProperty(
+			"TermAssociationIndex.topN", "100"));
+	final int maxDocTerms = Integer.parseInt(ApplicationSetup.getProperty(
+			"TermAssociationIndex.maxDocTerms", "1000"));
+
+	public TermAssociationIndexBuilder(IndexReader reader, String field) {
+		this.reader = reader;
+		this.field = field;
+	}
+
+	/** @return the terms of the field in at least minDf documents, in order */
+	private String[] loadTerms() throws IOException {
+		ArrayList<String> list = new ArrayList<String>();
+		TermEnum te = reader.terms(new Term(field, ""));
+		try {
+			do {
+				Term term = te.term();
+				if (term == null || !term.field().equals(field))
+					break;
+				if (te.docFreq() >= minDf)
+					list.add(term.text());
+			} while (te.next());
+		} finally {
+			te.close();
+		}
+		return list.toArray(new String[list.size()]);
+	}
+
+	public void build(File output) throws IOException {
+		String terms[] = loadTerms();
+		int df[] = new int[terms.length];
+		TLongIntHashMap pairs = new TLongIntHashMap();
+		int numDocs = 0, skipped = 0;
+		int ids[] = new int[64];
+		for (int doc = 0; doc < reader.maxDoc(); doc++) {
+			if (reader.isDeleted(doc))
+				continue;
+			TermFreqVector tfv = reader.getTermFreqVector(doc, field);
+			if (tfv == null)
+				continue;
+			numDocs++;
+			String vterms[] = tfv.getTerms();
+			int n = 0;
+			if (ids.length < vterms.length)
+				ids = new int[vterms.length];
+			// the terms of a vector are sorted, so are their ids
+			for (int k = 0; k < vterms.length; k++) {
+				int id = Arrays.binarySearch(terms, vterms[k]);
+				if (id >= 0)
+					ids[n++] = id;
+			}
+			if (n > maxDocTerms) {
+				skipped++;
+				continue;
+			}
+			for (int i = 0; i < n; i++) {
+				df[ids[i]]++;
+				for (int j = i + 1; j < n; j++)
+					pairs.adjustOrPutValue((long) ids[i] << 32 | ids[j], 1, 1);
+			}
+		}
+		if (skipped > 0)
+			logger.warn(skipped + " documents with more than " + maxDocTerms
+					+ " terms were skipped");
+		if (logger.isInfoEnabled())
+			logger.info(numDocs + " documents, " + terms.length + " terms, "
+					+ pairs.size() + " co-occurring pairs");
+
+		// the candidate neighbours of every term
+		int counts[] = new int[terms.length];
+		for (TLongIntIterator it = pairs.iterator(); it.hasNext();) {
+			it.advance();
+			counts[(int) (it.key() >>> 32)]++;
+			counts[(int) it.key()]++;
+		}
+		int starts[] = new int[terms.length + 1];
+		for (int i = 0; i < terms.length; i++)
+			starts[i + 1] = starts[i] + counts[i];
+		int neighbours[] = new int[starts[terms.length]];
+		int codfs[] = new int[neighbours.length];
+		Arrays.fill(counts, 0);
+		for (TLongIntIterator it = pairs.iterator(); it.hasNext();) {
+			it.advance();
+			int x = (int) (it.key() >>> 32), y = (int) it.key();
+			int p = starts[x] + counts[x]++;
+			neighbours[p] = y;
+			codfs[p] = it.value();
+			p = starts[y] + counts[y]++;
+			neighbours[p] = x;
+			codfs[p] = it.value();
+		}
+		pairs = null;
+
+		// keep the topN of highest pmi, ordered by id
+		int offsets[] = new int[terms.length + 1];
+		int kept[][] = new int[terms.length][];
+		for (int x = 0; x < terms.length; x++) {
+			int n = counts[x];
+			long keys[] = new long[n];
+			for (int i = 0; i < n; i++) {
+				int p = starts[x] + i;
+				double pmi = Math.log((double) codfs[p] * numDocs
+						/ ((double) df[x] * df[neighbours[p]]));
+				// by decreasing pmi: the bits of a positive float sort as ints
+				keys[i] = (long) Float.floatToIntBits((float) (100 - pmi)) << 32
+						| i;
+			}
+			Arrays.sort(keys);
+			int m = Math.min(n, topN);
+			long entries[] = new long[m];
+			for (int i = 0; i < m; i++) {
+				int p = starts[x] + (int) keys[i];
+				entries[i] = (long) neighbours[p] << 32 | codfs[p];
+			}
+			Arrays.sort(entries);
+			kept[x] = new int[2 * m];
+			for (int i = 0; i < m; i++) {
+				kept[x][2 * i] = (int) (entries[i] >>> 32);
+				kept[x][2 * i + 1] = (int) entries[i];
+			}
+			offsets[x + 1] = offsets[x] + m;
+		}
+
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(output), 1 << 16));
+		try {
+			out.writeInt(TermAssociationIndex.MAGIC);
+			out.writeInt(numDocs);
+			out.writeInt(terms.length);
+			out.writeInt(offsets[terms.length]);
+			for (int x = 0; x < terms.length; x++)
+				out.writeInt(df[x]);
+			for (int x = 0; x <= terms.length; x++)
+				out.writeInt(offsets[x]);
+			for (int x = 0; x < terms.length; x++)
+				for (int v : kept[x])
+					out.writeInt(v);
+			for (int x = 0; x < terms.length; x++)
+				out.writeUTF(terms[x]);
+		} finally {
+			out.close();
+		}
+		if (logger.isInfoEnabled())
+			logger.info("term association index " + output + ": "
+					+ offsets[terms.length] + " neighbours");
+	}
+
+	/**
+	 * Usage: TermAssociationIndexBuilder output [field [indexPath]]<br>
+	 * the field defaults to Lucene.SearchField, the index to
+	 * Lucene.indexDirectory
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err
+					.println("Usage: TermAssociationIndexBuilder output [field [indexPath]]");
+			System.exit(1);
+		}
+		String field = args.length > 1 ? args[1] : ApplicationSetup
+				.getProperty("Lucene.SearchField", "content");
+		Searcher searcher = args.length > 2 ? ISManager
+				.getSearcheFromPath(args[2]) : ISManager
+				.getSearcheFromPropertyFile();
+		new TermAssociationIndexBuilder(searcher.getIndexReader(), field)
+				.build(new File(args[0]));
+	}
+}
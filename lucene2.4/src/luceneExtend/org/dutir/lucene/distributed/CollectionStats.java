@@ -0,0 +1,231 @@
+/**
+ *
+ */
+package org.dutir.lucene.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
+import org.apache.lucene.search.Searcher;
+
+/**
+ * The statistics a weighting model needs for one query: the number of
+ * documents, per field the number of tokens, of unique terms and the summed
+ * length of the documents not deleted, and per term the document frequency
+ * and the collection frequency. A node computes
+ * them for its own index; the coordinator sums the answers of all nodes
+ * with {@link #add(CollectionStats)} and ships the totals back with the
+ * query, so every node scores with the statistics of the whole collection.
+ *
+ * @author yezheng
+ */
+public class CollectionStats {
+
+	int numDocs;
+	/** the documents not deleted, over which the lengths are summed */
+	int numLiveDocs;
+	final String fields[];
+	final long numTokens[];
+	final long numUniqueTerms[];
+	/** the sums of the norm lengths, see {@link IndexReader#getSumNormLength(String)} */
+	final double lengthSums[];
+	final Term terms[];
+	final int docFreqs[];
+	final long termFreqs[];
+
+	private HashMap<Term, Integer> termIds;
+
+	public CollectionStats(String fields[], Term terms[]) {
+		this.fields = fields;
+		this.numTokens = new long[fields.length];
+		this.numUniqueTerms = new long[fields.length];
+		this.lengthSums = new double[fields.length];
+		this.terms = terms;
+		this.docFreqs = new int[terms.length];
+		this.termFreqs = new long[terms.length];
+	}
+
+	/** Computes the statistics of a local index. */
+	public static CollectionStats compute(Searcher searcher, String fields[],
+			Term terms[]) throws IOException {
+		CollectionStats stats = new CollectionStats(fields, terms);
+		IndexReader reader = searcher.getIndexReader();
+		stats.numDocs = searcher.maxDoc();
+		stats.numLiveDocs = reader.numDocs();
+		for (int i = 0; i < fields.length; i++) {
+			stats.numTokens[i] = (long) searcher.getNumTokens(fields[i]);
+			stats.numUniqueTerms[i] = (long) searcher.getNumUniqTokens(fields[i]);
+			stats.lengthSums[i] = reader.getSumNormLength(fields[i]);
+		}
+		TermStats termStats = reader.termStats(terms);
+		System.arraycopy(termStats.docFreqs, 0, stats.docFreqs, 0, terms.length);
+		System.arraycopy(termStats.termFreqs, 0, stats.termFreqs, 0,
+				terms.length);
+		return stats;
+	}
+
+	/**
+	 * Adds the statistics of another part of the collection, computed for
+	 * the same fields and terms. Unique term counts cannot be summed across
+	 * parts; the largest one is kept, as {@link org.apache.lucene.search.MultiSearcher} does.
+	 */
+	public void add(CollectionStats other) {
+		if (other.fields.length != fields.length
+				|| other.terms.length != terms.length)
+			throw new IllegalArgumentException(
+					"statistics are for different fields or terms");
+		numDocs += other.numDocs;
+		numLiveDocs += other.numLiveDocs;
+		for (int i = 0; i < fields.length; i++) {
+			numTokens[i] += other.numTokens[i];
+			lengthSums[i] += other.lengthSums[i];
+			numUniqueTerms[i] = Math.max(numUniqueTerms[i],
+					other.numUniqueTerms[i]);
+		}
+		for (int i = 0; i < terms.length; i++) {
+			docFreqs[i] += other.docFreqs[i];
+			termFreqs[i] += other.termFreqs[i];
+		}
+	}
+
+	/**
+	 * Returns the statistics restricted to some of the terms, with all
+	 * fields. Terms that were not requested get a df and ctf of 0.
+	 */
+	public CollectionStats select(Term terms[]) {
+		CollectionStats stats = new CollectionStats(fields, terms);
+		stats.numDocs = numDocs;
+		stats.numLiveDocs = numLiveDocs;
+		System.arraycopy(numTokens, 0, stats.numTokens, 0, fields.length);
+		System.arraycopy(lengthSums, 0, stats.lengthSums, 0, fields.length);
+		System.arraycopy(numUniqueTerms, 0, stats.numUniqueTerms, 0,
+				fields.length);
+		for (int i = 0; i < terms.length; i++) {
+			int id = termIndex(terms[i]);
+			if (id >= 0) {
+				stats.docFreqs[i] = docFreqs[id];
+				stats.termFreqs[i] = termFreqs[id];
+			}
+		}
+		return stats;
+	}
+
+	public int getNumDocs() {
+		return numDocs;
+	}
+
+	public Term[] getTerms() {
+		return terms;
+	}
+
+	public String[] getFields() {
+		return fields;
+	}
+
+	/** @return the position of the field, -1 if it was not requested */
+	public int fieldIndex(String field) {
+		for (int i = 0; i < fields.length; i++)
+			if (fields[i].equals(field))
+				return i;
+		return -1;
+	}
+
+	/** @return the position of the term, -1 if it was not requested */
+	public synchronized int termIndex(Term term) {
+		if (termIds == null) {
+			termIds = new HashMap<Term, Integer>();
+			for (int i = 0; i < terms.length; i++)
+				termIds.put(terms[i], i);
+		}
+		Integer id = termIds.get(term);
+		return id == null ? -1 : id.intValue();
+	}
+
+	public long getNumTokens(int field) {
+		return numTokens[field];
+	}
+
+	public long getNumUniqueTerms(int field) {
+		return numUniqueTerms[field];
+	}
+
+	/**
+	 * The average document length, as {@link org.apache.lucene.search.model.Statistics}
+	 * defines it: the mean norm length of the documents not deleted, over
+	 * all the nodes.
+	 */
+	public float getAverageLength(int field) {
+		return numLiveDocs == 0 ? 0 : (float) (lengthSums[field] / numLiveDocs);
+	}
+
+	public int getDocFreq(int term) {
+		return docFreqs[term];
+	}
+
+	public long getTermFreq(int term) {
+		return termFreqs[term];
+	}
+
+	/** Writes the values only; the reader must know the fields and terms. */
+	void writeValues(DataOutput out) throws IOException {
+		NodeProtocol.writeVInt(out, numDocs);
+		NodeProtocol.writeVInt(out, numLiveDocs);
+		for (int i = 0; i < fields.length; i++) {
+			NodeProtocol.writeVLong(out, numTokens[i]);
+			NodeProtocol.writeVLong(out, numUniqueTerms[i]);
+			out.writeDouble(lengthSums[i]);
+		}
+		for (int i = 0; i < terms.length; i++) {
+			NodeProtocol.writeVInt(out, docFreqs[i]);
+			NodeProtocol.writeVLong(out, termFreqs[i]);
+		}
+	}
+
+	void readValues(DataInput in) throws IOException {
+		numDocs = NodeProtocol.readVInt(in);
+		numLiveDocs = NodeProtocol.readVInt(in);
+		for (int i = 0; i < fields.length; i++) {
+			numTokens[i] = NodeProtocol.readVLong(in);
+			numUniqueTerms[i] = NodeProtocol.readVLong(in);
+			lengthSums[i] = in.readDouble();
+		}
+		for (int i = 0; i < terms.length; i++) {
+			docFreqs[i] = NodeProtocol.readVInt(in);
+			termFreqs[i] = NodeProtocol.readVLong(in);
+		}
+	}
+
+	static void writeFields(DataOutput out, String fields[])
+			throws IOException {
+		NodeProtocol.writeVInt(out, fields.length);
+		for (int i = 0; i < fields.length; i++)
+			out.writeUTF(fields[i]);
+	}
+
+	static String[] readFields(DataInput in) throws IOException {
+		String fields[] = new String[NodeProtocol.readVInt(in)];
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = in.readUTF();
+		return fields;
+	}
+
+	/** Writes the fields, the terms and the values. */
+	void write(DataOutput out) throws IOException {
+		writeFields(out, fields);
+		NodeProtocol.writeTerms(out, terms);
+		writeValues(out);
+	}
+
+	static CollectionStats read(DataInput in) throws IOException {
+		String fields[] = readFields(in);
+		CollectionStats stats = new CollectionStats(fields, NodeProtocol
+				.readTerms(in));
+		stats.readValues(in);
+		return stats;
+	}
+}
@@ -0,0 +1,356 @@
+/**
+ *
+ */
+package org.dutir.lucene.distributed;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryParser.AnalyzerManager;
+import org.apache.lucene.queryParser.RMultiFieldQueryParser;
+import org.apache.lucene.search.RBooleanQuery;
+import org.apache.lucene.search.RQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.dutir.lucene.TRECQuerying;
+import org.dutir.lucene.distributed.NodeConnection.NodeScoreDoc;
+import org.dutir.lucene.util.ApplicationSetup;
+
+/**
+ * Searches a collection split over several {@link SearchNode}s. Unlike a
+ * {@link org.apache.lucene.search.MultiSearcher} over RemoteSearchables,
+ * which makes a remote call per term, per statistic and per shard while the
+ * weights are created, a batch of queries costs two round trips per node:
+ * <ol>
+ * <li>the terms of all queries are sent to every node in one stats request,
+ * and the answers are summed into the statistics of the whole collection;</li>
+ * <li>every query is sent to every node with the collection statistics of
+ * its terms and the weighting model settings, and the top-k lists of the
+ * nodes are merged.</li>
+ * </ol>
+ * The requests to all nodes are written before any response is read, and
+ * the queries of a batch are pipelined on one connection per node, at most
+ * <tt>Lucene.Distributed.pipelineDepth</tt> (default 8) at a time.
+ * Connections are kept open and reused by later batches.
+ * <p>
+ * The settings sent with a query are the properties named by
+ * <tt>Lucene.Distributed.forwardProperties</tt> which are set on the
+ * coordinator, so the nodes score with the same weighting model and
+ * parameters.
+ * <p>
+ * Document numbers of the returned hits are offset by the sizes of the
+ * preceding nodes, as in MultiSearcher; the score docs are
+ * {@link NodeScoreDoc}s carrying the node and the docno.
+ *
+ * @author yezheng
+ */
+public class DistributedSearcher {
+	static Logger logger = Logger.getLogger(DistributedSearcher.class);
+
+	protected int pipelineDepth = Integer.parseInt(ApplicationSetup
+			.getProperty("Lucene.Distributed.pipelineDepth", "8"));
+	protected String forwardProperties[] = ApplicationSetup.getProperty(
+			"Lucene.Distributed.forwardProperties",
+			"Lucene.Search.WeightingModel,wm.c,bm25.b,dlm.mu,"
+					+ "default.after.effect,default.normalisation,"
+					+ "proximity.model,Lucene.BM25F.K1,Lucene.BM25F.Fields")
+			.split("\\s*,\\s*");
+
+	private final String hosts[];
+	private final int ports[];
+	/** idle connections of each node */
+	private final LinkedList<NodeConnection> idle[];
+
+	/**
+	 * @param nodes
+	 *            the nodes, as <tt>host:port</tt>
+	 */
+	@SuppressWarnings("unchecked")
+	public DistributedSearcher(String nodes[]) {
+		hosts = new String[nodes.length];
+		ports = new int[nodes.length];
+		idle = new LinkedList[nodes.length];
+		for (int i = 0; i < nodes.length; i++) {
+			int colon = nodes[i].lastIndexOf(':');
+			if (colon < 0)
+				throw new IllegalArgumentException("expected host:port, got "
+						+ nodes[i]);
+			hosts[i] = nodes[i].substring(0, colon);
+			ports[i] = Integer.parseInt(nodes[i].substring(colon + 1));
+			idle[i] = new LinkedList<NodeConnection>();
+		}
+	}
+
+	public int getNumNodes() {
+		return hosts.length;
+	}
+
+	/**
+	 * Returns the statistics of the whole collection for the fields and
+	 * terms, in one round trip to every node.
+	 */
+	public CollectionStats collectionStats(String fields[], Term terms[])
+			throws IOException {
+		CollectionStats nodeStats[] = nodeStats(fields, terms);
+		CollectionStats stats = new CollectionStats(fields, terms);
+		for (int i = 0; i < nodeStats.length; i++)
+			stats.add(nodeStats[i]);
+		return stats;
+	}
+
+	private CollectionStats[] nodeStats(String fields[], Term terms[])
+			throws IOException {
+		NodeConnection conns[] = borrowAll();
+		boolean ok = false;
+		try {
+			for (int i = 0; i < conns.length; i++) {
+				conns[i].sendStats(fields, terms);
+				conns[i].flush();
+			}
+			CollectionStats stats[] = new CollectionStats[conns.length];
+			for (int i = 0; i < conns.length; i++)
+				stats[i] = conns[i].receiveStats(fields, terms);
+			ok = true;
+			return stats;
+		} finally {
+			releaseAll(conns, ok);
+		}
+	}
+
+	public TopDocs search(RQuery query, int k) throws IOException {
+		return search(new RQuery[] { query }, k)[0];
+	}
+
+	/** Runs a batch of queries and returns the top <code>k</code> of each. */
+	public TopDocs[] search(RQuery queries[], int k) throws IOException {
+		// 1. statistics of all terms of the batch
+		Term queryTerms[][] = new Term[queries.length][];
+		LinkedHashSet<Term> all = new LinkedHashSet<Term>();
+		for (int q = 0; q < queries.length; q++) {
+			Set<Term> terms = new LinkedHashSet<Term>();
+			queries[q].extractTerms(terms);
+			queryTerms[q] = terms.toArray(new Term[terms.size()]);
+			all.addAll(terms);
+		}
+		Term allTerms[] = all.toArray(new Term[all.size()]);
+		LinkedHashSet<String> fieldSet = new LinkedHashSet<String>();
+		for (int i = 0; i < allTerms.length; i++)
+			fieldSet.add(allTerms[i].field());
+		String fields[] = fieldSet.toArray(new String[fieldSet.size()]);
+
+		CollectionStats nodeStats[] = nodeStats(fields, allTerms);
+		CollectionStats global = new CollectionStats(fields, allTerms);
+		int starts[] = new int[nodeStats.length];
+		for (int i = 0; i < nodeStats.length; i++) {
+			starts[i] = global.getNumDocs();
+			global.add(nodeStats[i]);
+		}
+
+		// 2. the queries, pipelined on one connection per node
+		Map<String, String> settings = getSettings();
+		TopDocs nodeDocs[][] = new TopDocs[queries.length][hosts.length];
+		NodeConnection conns[] = borrowAll();
+		boolean ok = false;
+		try {
+			for (int from = 0; from < queries.length; from += pipelineDepth) {
+				int to = Math.min(queries.length, from + pipelineDepth);
+				for (int i = 0; i < conns.length; i++) {
+					for (int q = from; q < to; q++)
+						conns[i].sendSearch(queries[q], k, settings, global
+								.select(queryTerms[q]));
+					conns[i].flush();
+				}
+				for (int i = 0; i < conns.length; i++)
+					for (int q = from; q < to; q++)
+						nodeDocs[q][i] = conns[i].receiveSearch();
+			}
+			ok = true;
+		} finally {
+			releaseAll(conns, ok);
+		}
+
+		TopDocs results[] = new TopDocs[queries.length];
+		for (int q = 0; q < queries.length; q++)
+			results[q] = merge(nodeDocs[q], starts, k);
+		return results;
+	}
+
+	static final Comparator<ScoreDoc> BY_SCORE = new Comparator<ScoreDoc>() {
+		public int compare(ScoreDoc a, ScoreDoc b) {
+			if (a.score != b.score)
+				return a.score > b.score ? -1 : 1;
+			return a.doc - b.doc;
+		}
+	};
+
+	private TopDocs merge(TopDocs nodeDocs[], int starts[], int k) {
+		int totalHits = 0;
+		float maxScore = Float.NEGATIVE_INFINITY;
+		ArrayList<ScoreDoc> hits = new ArrayList<ScoreDoc>();
+		for (int i = 0; i < nodeDocs.length; i++) {
+			totalHits += nodeDocs[i].totalHits;
+			if (nodeDocs[i].totalHits > 0)
+				maxScore = Math.max(maxScore, nodeDocs[i].getMaxScore());
+			ScoreDoc scoreDocs[] = nodeDocs[i].scoreDocs;
+			for (int j = 0; j < scoreDocs.length; j++) {
+				NodeScoreDoc sd = (NodeScoreDoc) scoreDocs[j];
+				sd.node = i;
+				sd.doc += starts[i];
+				hits.add(sd);
+			}
+		}
+		ScoreDoc scoreDocs[] = hits.toArray(new ScoreDoc[hits.size()]);
+		Arrays.sort(scoreDocs, BY_SCORE);
+		if (scoreDocs.length > k) {
+			ScoreDoc top[] = new ScoreDoc[k];
+			System.arraycopy(scoreDocs, 0, top, 0, k);
+			scoreDocs = top;
+		}
+		return new TopDocs(totalHits, scoreDocs, maxScore);
+	}
+
+	/** the forwarded properties which are set on this side */
+	protected Map<String, String> getSettings() {
+		Map<String, String> settings = new HashMap<String, String>();
+		for (int i = 0; i < forwardProperties.length; i++) {
+			String value = ApplicationSetup.getProperty(forwardProperties[i],
+					null);
+			if (value != null)
+				settings.put(forwardProperties[i], value);
+		}
+		return settings;
+	}
+
+	private NodeConnection[] borrowAll() throws IOException {
+		NodeConnection conns[] = new NodeConnection[hosts.length];
+		try {
+			for (int i = 0; i < hosts.length; i++)
+				conns[i] = borrow(i);
+		} catch (IOException e) {
+			releaseAll(conns, true);
+			throw e;
+		}
+		return conns;
+	}
+
+	private NodeConnection borrow(int node) throws IOException {
+		synchronized (idle[node]) {
+			if (!idle[node].isEmpty())
+				return idle[node].removeFirst();
+		}
+		return new NodeConnection(hosts[node], ports[node]);
+	}
+
+	/**
+	 * Returns the connections to the pool. After a failure, connections
+	 * with unread responses are out of step and are closed instead.
+	 */
+	private void releaseAll(NodeConnection conns[], boolean ok) {
+		for (int i = 0; i < conns.length; i++) {
+			if (conns[i] == null)
+				continue;
+			if (ok || conns[i].pending() == 0) {
+				synchronized (idle[i]) {
+					idle[i].add(conns[i]);
+				}
+			} else {
+				try {
+					conns[i].close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/** Closes the idle connections. */
+	public void close() {
+		for (int i = 0; i < idle.length; i++) {
+			synchronized (idle[i]) {
+				for (Iterator<NodeConnection> it = idle[i].iterator(); it
+						.hasNext();) {
+					try {
+						it.next().close();
+					} catch (IOException e) {
+					}
+				}
+				idle[i].clear();
+			}
+		}
+	}
+
+	/**
+	 * Usage: DistributedSearcher host:port[,host:port...] [k] &lt; queries
+	 * <p>
+	 * Reads queries, one "id text" per line, from standard input, parses
+	 * them on <tt>Lucene.SearchField</tt>, runs them as one batch and prints
+	 * the results in TREC format.
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.err.println("Usage: DistributedSearcher host:port[,host:port...] [k] < queries");
+			return;
+		}
+		DistributedSearcher searcher = new DistributedSearcher(args[0]
+				.split("\\s*,\\s*"));
+		int k = args.length > 1 ? Integer.parseInt(args[1]) : Integer
+				.parseInt(ApplicationSetup.getProperty("TRECQuerying.end",
+						"1000"));
+		String fields[] = ApplicationSetup.getProperty("Lucene.SearchField",
+				"title,content").split("\\s*,\\s*");
+		Analyzer analyzer = AnalyzerManager.getFromPropertyFile();
+
+		ArrayList<String> ids = new ArrayList<String>();
+		ArrayList<RQuery> queries = new ArrayList<RQuery>();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				System.in, "UTF-8"));
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			int space = line.indexOf(' ');
+			if (space < 0)
+				continue;
+			String id = line.substring(0, space);
+			RBooleanQuery query = RMultiFieldQueryParser.parse(line
+					.substring(space + 1), fields, analyzer);
+			query.setID(id);
+			TRECQuerying.normaliseIfConfigured(query);
+			ids.add(id);
+			queries.add(query);
+		}
+
+		long start = System.currentTimeMillis();
+		TopDocs results[] = searcher.search(queries
+				.toArray(new RQuery[queries.size()]), k);
+		if (logger.isInfoEnabled())
+			logger.info(queries.size() + " queries on "
+					+ searcher.getNumNodes() + " nodes in "
+					+ (System.currentTimeMillis() - start) + " ms");
+
+		PrintWriter out = new PrintWriter(System.out);
+		for (int q = 0; q < results.length; q++) {
+			ScoreDoc scoreDocs[] = results[q].scoreDocs;
+			for (int i = 0; i < scoreDocs.length; i++) {
+				out.print(ids.get(q) + " Q0 "
+						+ ((NodeScoreDoc) scoreDocs[i]).docno + " " + i + " "
+						+ scoreDocs[i].score + " LabLucene");
+				out.print(ApplicationSetup.EOL);
+			}
+		}
+		out.flush();
+		searcher.close();
+	}
+}
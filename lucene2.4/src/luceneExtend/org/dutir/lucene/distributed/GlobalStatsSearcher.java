@@ -0,0 +1,124 @@
+/**
+ *
+ */
+package org.dutir.lucene.distributed;
+
+import java.io.IOException;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.Explanation;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.search.HitCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.Weight;
+
+/**
+ * Searches the local index of a node, but answers the statistics asked for
+ * while weights are created from the statistics of the whole collection
+ * sent by the coordinator. Terms and fields the coordinator did not send
+ * (e.g. phrase statistics) are answered by the local index. Like the
+ * CachedDfSource of {@link org.apache.lucene.search.MultiSearcher}, it does
+ * not own the local searcher and {@link #close()} leaves it open.
+ *
+ * @author yezheng
+ */
+class GlobalStatsSearcher extends Searcher {
+
+	private final Searcher local;
+	private final CollectionStats stats;
+
+	GlobalStatsSearcher(Searcher local, CollectionStats stats) {
+		this.local = local;
+		this.stats = stats;
+		setSimilarity(local.getSimilarity());
+	}
+
+	public int docFreq(Term term) throws IOException {
+		int i = stats.termIndex(term);
+		return i < 0 ? local.docFreq(term) : stats.getDocFreq(i);
+	}
+
+	public long termFreq(Term term) throws IOException {
+		int i = stats.termIndex(term);
+		return i < 0 ? local.termFreq(term) : stats.getTermFreq(i);
+	}
+
+	public float[] termFreqs(Term[] terms) throws IOException {
+		float result[] = new float[terms.length];
+		for (int i = 0; i < terms.length; i++)
+			result[i] = termFreq(terms[i]);
+		return result;
+	}
+
+	public int maxDoc() throws IOException {
+		return stats.getNumDocs();
+	}
+
+	public float getAverageLength(String field) {
+		int i = stats.fieldIndex(field);
+		return i < 0 ? local.getAverageLength(field) : stats
+				.getAverageLength(i);
+	}
+
+	public float getNumTokens(String field) {
+		int i = stats.fieldIndex(field);
+		return i < 0 ? local.getNumTokens(field) : stats.getNumTokens(i);
+	}
+
+	public float getNumUniqTokens(String field) {
+		int i = stats.fieldIndex(field);
+		return i < 0 ? local.getNumUniqTokens(field) : stats
+				.getNumUniqueTerms(i);
+	}
+
+	public float getFieldLength(String fieldName, int docid) {
+		return local.getFieldLength(fieldName, docid);
+	}
+
+	public IndexReader getIndexReader() {
+		return local.getIndexReader();
+	}
+
+	public void search(Weight weight, Filter filter, HitCollector results)
+			throws IOException {
+		local.search(weight, filter, results);
+	}
+
+	public TopDocs search(Weight weight, Filter filter, int n)
+			throws IOException {
+		return local.search(weight, filter, n);
+	}
+
+	public TopFieldDocs search(Weight weight, Filter filter, int n, Sort sort)
+			throws IOException {
+		return local.search(weight, filter, n, sort);
+	}
+
+	public Document doc(int i) throws CorruptIndexException, IOException {
+		return local.doc(i);
+	}
+
+	public Document doc(int n, FieldSelector fieldSelector)
+			throws CorruptIndexException, IOException {
+		return local.doc(n, fieldSelector);
+	}
+
+	public Query rewrite(Query query) throws IOException {
+		return local.rewrite(query);
+	}
+
+	public Explanation explain(Weight weight, int doc) throws IOException {
+		return local.explain(weight, doc);
+	}
+
+	public void close() {
+	}
+}
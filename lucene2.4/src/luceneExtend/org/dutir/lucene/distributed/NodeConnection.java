@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package org.dutir.lucene.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.RQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+
+/**
+ * A client connection to one {@link SearchNode}. Requests are written with
+ * the <code>send</code> methods and their responses read back, in the same
+ * order, with the <code>receive</code> methods; any number of requests may
+ * be sent before the first response is read. Nothing is written to the
+ * socket before {@link #flush()}, so a batch of requests to several nodes
+ * costs one round trip.
+ * <p>
+ * A connection is not thread-safe; {@link DistributedSearcher} pools them.
+ *
+ * @author yezheng
+ */
+public class NodeConnection {
+
+	final String host;
+	final int port;
+	private final Socket socket;
+	private final DataInputStream in;
+	private final DataOutputStream out;
+
+	private int nextId = 0;
+	/** ids and ops of the requests sent but not yet received */
+	private final LinkedList<int[]> outstanding = new LinkedList<int[]>();
+
+	public NodeConnection(String host, int port) throws IOException {
+		this.host = host;
+		this.port = port;
+		socket = new Socket(host, port);
+		socket.setTcpNoDelay(true);
+		in = new DataInputStream(new BufferedInputStream(socket
+				.getInputStream()));
+		out = new DataOutputStream(new BufferedOutputStream(socket
+				.getOutputStream()));
+	}
+
+	/** Requests the statistics of the node's index for the fields and terms. */
+	public void sendStats(String fields[], Term terms[]) throws IOException {
+		begin(NodeProtocol.OP_STATS);
+		CollectionStats.writeFields(out, fields);
+		NodeProtocol.writeTerms(out, terms);
+	}
+
+	/**
+	 * Requests the top <code>k</code> documents of the node for the query,
+	 * scored with the collection statistics <code>stats</code>, which must
+	 * cover the terms of the query, and with the given settings.
+	 */
+	public void sendSearch(RQuery query, int k, Map<String, String> settings,
+			CollectionStats stats) throws IOException {
+		begin(NodeProtocol.OP_SEARCH);
+		NodeProtocol.writeVInt(out, k);
+		NodeProtocol.writeVInt(out, settings.size());
+		for (Iterator<Map.Entry<String, String>> it = settings.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, String> e = it.next();
+			out.writeUTF(e.getKey());
+			out.writeUTF(e.getValue());
+		}
+		stats.write(out);
+		NodeProtocol.writeQuery(out, query);
+	}
+
+	private void begin(byte op) throws IOException {
+		int id = nextId++;
+		outstanding.add(new int[] { id, op });
+		out.writeInt(id);
+		out.writeByte(op);
+	}
+
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+	/** the number of requests whose response has not been received */
+	public int pending() {
+		return outstanding.size();
+	}
+
+	/**
+	 * Reads the response to the oldest outstanding request, which must be a
+	 * stats request for these fields and terms.
+	 */
+	public CollectionStats receiveStats(String fields[], Term terms[])
+			throws IOException {
+		expect(NodeProtocol.OP_STATS);
+		CollectionStats stats = new CollectionStats(fields, terms);
+		stats.readValues(in);
+		return stats;
+	}
+
+	/**
+	 * Reads the response to the oldest outstanding request, which must be a
+	 * search request. The score docs are {@link NodeScoreDoc}s with the
+	 * node's document numbers.
+	 */
+	public TopDocs receiveSearch() throws IOException {
+		expect(NodeProtocol.OP_SEARCH);
+		int totalHits = NodeProtocol.readVInt(in);
+		float maxScore = in.readFloat();
+		ScoreDoc scoreDocs[] = new ScoreDoc[NodeProtocol.readVInt(in)];
+		for (int i = 0; i < scoreDocs.length; i++) {
+			int doc = NodeProtocol.readVInt(in);
+			float score = in.readFloat();
+			scoreDocs[i] = new NodeScoreDoc(doc, score, in.readUTF());
+		}
+		return new TopDocs(totalHits, scoreDocs, maxScore);
+	}
+
+	private void expect(byte op) throws IOException {
+		if (outstanding.isEmpty())
+			throw new IllegalStateException("no request outstanding");
+		int request[] = outstanding.removeFirst();
+		if (request[1] != op)
+			throw new IllegalStateException("next response is for request "
+					+ request[0] + " of type " + request[1]);
+		out.flush();
+		int id = in.readInt();
+		if (id != request[0])
+			throw new IOException("response " + id + " from " + this
+					+ " while expecting " + request[0]);
+		if (in.readByte() != NodeProtocol.STATUS_OK)
+			throw new NodeException(this + ": " + in.readUTF());
+	}
+
+	public void close() throws IOException {
+		socket.close();
+	}
+
+	public String toString() {
+		return host + ":" + port;
+	}
+
+	/** A failure reported by a node; the connection stays usable. */
+	public static class NodeException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public NodeException(String message) {
+			super(message);
+		}
+	}
+
+	/** A hit of a node, with the document's docno. */
+	public static class NodeScoreDoc extends ScoreDoc {
+		private static final long serialVersionUID = 1L;
+
+		/** the value of the node's id field, empty if the document has none */
+		public String docno;
+		/** the position of the node in the {@link DistributedSearcher} */
+		public int node;
+
+		public NodeScoreDoc(int doc, float score, String docno) {
+			super(doc, score);
+			this.docno = docno;
+		}
+	}
+}
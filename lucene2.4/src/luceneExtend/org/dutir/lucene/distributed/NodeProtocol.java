@@ -0,0 +1,223 @@
+/**
+ *
+ */
+package org.dutir.lucene.distributed;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.RBooleanClause;
+import org.apache.lucene.search.RBooleanQuery;
+import org.apache.lucene.search.RPhraseQuery;
+import org.apache.lucene.search.RQuery;
+import org.apache.lucene.search.RTermQuery;
+
+/**
+ * The wire format spoken between a {@link DistributedSearcher} and its
+ * {@link SearchNode}s. Every message is a frame
+ *
+ * <pre>
+ * request:  [int id][byte op][payload]
+ * response: [int id][byte status][payload | UTF error message]
+ * </pre>
+ *
+ * A node answers the frames of one connection in the order they were sent,
+ * so a client may write several requests before reading the first response
+ * (pipelining), and a connection is kept open for any number of requests.
+ * <p>
+ * Integers are written as variable-length ints/longs. Terms are written as
+ * an index into a table of field names followed by the text, and queries
+ * made of {@link RBooleanQuery}, {@link RTermQuery} and {@link RPhraseQuery}
+ * are written in a compact form. Other queries cannot be sent: nodes never
+ * deserialize objects from the network.
+ *
+ * @author yezheng
+ */
+public final class NodeProtocol {
+
+	/** collection and term statistics for a term array */
+	public static final byte OP_STATS = 1;
+	/** top-k of a query, scored with the given collection statistics */
+	public static final byte OP_SEARCH = 2;
+
+	public static final byte STATUS_OK = 0;
+	public static final byte STATUS_ERROR = 1;
+
+	static final byte QUERY_TERM = 1;
+	static final byte QUERY_BOOLEAN = 2;
+	static final byte QUERY_PHRASE = 3;
+
+	private NodeProtocol() {
+	}
+
+	public static void writeVInt(DataOutput out, int i) throws IOException {
+		while ((i & ~0x7F) != 0) {
+			out.writeByte((byte) ((i & 0x7f) | 0x80));
+			i >>>= 7;
+		}
+		out.writeByte((byte) i);
+	}
+
+	public static int readVInt(DataInput in) throws IOException {
+		byte b = in.readByte();
+		int i = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = in.readByte();
+			i |= (b & 0x7F) << shift;
+		}
+		return i;
+	}
+
+	public static void writeVLong(DataOutput out, long i) throws IOException {
+		while ((i & ~0x7FL) != 0) {
+			out.writeByte((byte) ((i & 0x7f) | 0x80));
+			i >>>= 7;
+		}
+		out.writeByte((byte) i);
+	}
+
+	public static long readVLong(DataInput in) throws IOException {
+		byte b = in.readByte();
+		long i = b & 0x7F;
+		for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+			b = in.readByte();
+			i |= (b & 0x7FL) << shift;
+		}
+		return i;
+	}
+
+	/**
+	 * Writes the terms as a field table followed by (field index, text)
+	 * pairs.
+	 */
+	public static void writeTerms(DataOutput out, Term terms[])
+			throws IOException {
+		HashMap<String, Integer> fieldIds = new HashMap<String, Integer>();
+		ArrayList<String> fields = new ArrayList<String>();
+		for (int i = 0; i < terms.length; i++) {
+			if (!fieldIds.containsKey(terms[i].field())) {
+				fieldIds.put(terms[i].field(), fields.size());
+				fields.add(terms[i].field());
+			}
+		}
+		writeVInt(out, fields.size());
+		for (int i = 0; i < fields.size(); i++)
+			out.writeUTF(fields.get(i));
+		writeVInt(out, terms.length);
+		for (int i = 0; i < terms.length; i++) {
+			writeVInt(out, fieldIds.get(terms[i].field()).intValue());
+			out.writeUTF(terms[i].text());
+		}
+	}
+
+	public static Term[] readTerms(DataInput in) throws IOException {
+		// one prototype per field, so the field name is interned only once
+		Term fields[] = new Term[readVInt(in)];
+		for (int i = 0; i < fields.length; i++)
+			fields[i] = new Term(in.readUTF(), "");
+		Term terms[] = new Term[readVInt(in)];
+		for (int i = 0; i < terms.length; i++) {
+			Term field = fields[readVInt(in)];
+			terms[i] = field.createTerm(in.readUTF());
+		}
+		return terms;
+	}
+
+	public static void writeQuery(DataOutput out, RQuery query)
+			throws IOException {
+		if (query instanceof RTermQuery) {
+			RTermQuery tq = (RTermQuery) query;
+			out.writeByte(QUERY_TERM);
+			out.writeUTF(tq.getTerm().field());
+			out.writeUTF(tq.getTerm().text());
+			out.writeFloat(tq.getBoost());
+			out.writeFloat(tq.getOccurNum());
+		} else if (query instanceof RBooleanQuery
+				&& query.getClass() == RBooleanQuery.class) {
+			RBooleanQuery bq = (RBooleanQuery) query;
+			out.writeByte(QUERY_BOOLEAN);
+			out.writeBoolean(bq.isCoordDisabled());
+			writeVInt(out, bq.getMinimumNumberShouldMatch());
+			out.writeFloat(bq.getBoost());
+			out.writeFloat(bq.getOccurNum());
+			String terms[] = bq.getOirginalQueryTerms();
+			writeVInt(out, terms == null ? 0 : terms.length + 1);
+			for (int i = 0; terms != null && i < terms.length; i++)
+				out.writeUTF(terms[i]);
+			RBooleanClause clauses[] = bq.getClauses();
+			writeVInt(out, clauses.length);
+			for (int i = 0; i < clauses.length; i++) {
+				RBooleanClause.Occur occur = clauses[i].getOccur();
+				out.writeByte(occur == RBooleanClause.Occur.MUST ? 1
+						: occur == RBooleanClause.Occur.MUST_NOT ? 2 : 0);
+				writeQuery(out, clauses[i].getQuery());
+			}
+		} else if (query.getClass() == RPhraseQuery.class) {
+			RPhraseQuery pq = (RPhraseQuery) query;
+			out.writeByte(QUERY_PHRASE);
+			writeVInt(out, pq.getSlop());
+			out.writeFloat(pq.getBoost());
+			out.writeFloat(pq.getOccurNum());
+			Term terms[] = pq.getTerms();
+			int positions[] = pq.getPositions();
+			writeVInt(out, terms.length);
+			for (int i = 0; i < terms.length; i++) {
+				out.writeUTF(terms[i].field());
+				out.writeUTF(terms[i].text());
+				writeVInt(out, positions[i]);
+			}
+		} else {
+			throw new IOException("unsupported query class "
+					+ query.getClass().getName());
+		}
+	}
+
+	public static RQuery readQuery(DataInput in) throws IOException {
+		byte type = in.readByte();
+		if (type == QUERY_TERM) {
+			String field = in.readUTF();
+			RTermQuery tq = new RTermQuery(new Term(field, in.readUTF()));
+			tq.setBoost(in.readFloat());
+			tq.setOccurNum(in.readFloat());
+			return tq;
+		} else if (type == QUERY_BOOLEAN) {
+			RBooleanQuery bq = new RBooleanQuery(in.readBoolean());
+			bq.setMinimumNumberShouldMatch(readVInt(in));
+			bq.setBoost(in.readFloat());
+			bq.setOccurNum(in.readFloat());
+			int numTerms = readVInt(in);
+			if (numTerms > 0) {
+				String terms[] = new String[numTerms - 1];
+				for (int i = 0; i < terms.length; i++)
+					terms[i] = in.readUTF();
+				bq.setOriginalQueryTerms(terms);
+			}
+			int numClauses = readVInt(in);
+			for (int i = 0; i < numClauses; i++) {
+				byte occur = in.readByte();
+				RQuery sub = readQuery(in);
+				bq.add(sub, occur == 1 ? RBooleanClause.Occur.MUST
+						: occur == 2 ? RBooleanClause.Occur.MUST_NOT
+								: RBooleanClause.Occur.SHOULD);
+			}
+			return bq;
+		} else if (type == QUERY_PHRASE) {
+			RPhraseQuery pq = new RPhraseQuery();
+			pq.setSlop(readVInt(in));
+			pq.setBoost(in.readFloat());
+			pq.setOccurNum(in.readFloat());
+			int numTerms = readVInt(in);
+			for (int i = 0; i < numTerms; i++) {
+				String field = in.readUTF();
+				Term term = new Term(field, in.readUTF());
+				pq.add(term, readVInt(in));
+			}
+			return pq;
+		}
+		throw new IOException("unknown query type " + type);
+	}
+}
@@ -0,0 +1,318 @@
+/**
+ *
+ */
+package org.dutir.lucene.distributed;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.RQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Searcher;
+import org.apache.lucene.search.TopDocs;
+import org.dutir.lucene.ISManager;
+import org.dutir.lucene.util.ApplicationSetup;
+import org.dutir.lucene.util.TermsCache;
+
+/**
+ * Serves one shard of a collection to {@link DistributedSearcher}s over the
+ * binary {@link NodeProtocol}. A node answers two requests:
+ * <ul>
+ * <li>{@link NodeProtocol#OP_STATS}: the number of documents, the token and
+ * unique term counts of some fields and the df and ctf of a whole array of
+ * terms, in one round trip;</li>
+ * <li>{@link NodeProtocol#OP_SEARCH}: runs a query with the statistics of
+ * the whole collection and the weighting model settings of the coordinator,
+ * and returns the top-k documents of the shard with their docnos.</li>
+ * </ul>
+ * Each connection is served by its own thread, which answers the requests
+ * in the order they arrive and flushes only when no further request is
+ * waiting, so pipelined requests are answered in one write.
+ * <p>
+ * The node listens on <tt>Lucene.SearchNode.host</tt> (default 127.0.0.1)
+ * and <tt>Lucene.SearchNode.port</tt> (default 7171) and searches the index
+ * given on the command line, or the one configured with
+ * <tt>Lucene.indexDirectory</tt>. Settings sent with a query are applied to
+ * {@link ApplicationSetup} while the query runs; queries whose settings are
+ * already in effect run concurrently, the others one at a time.
+ *
+ * @author yezheng
+ */
+public class SearchNode {
+	static Logger logger = Logger.getLogger(SearchNode.class);
+
+	protected String host = ApplicationSetup.getProperty(
+			"Lucene.SearchNode.host", "127.0.0.1");
+	protected int port = Integer.parseInt(ApplicationSetup.getProperty(
+			"Lucene.SearchNode.port", "7171"));
+	protected String idField = ApplicationSetup.getProperty(
+			"TrecDocTags.idtag", "DOCNO");
+
+	protected Searcher searcher;
+	protected ServerSocket serverSocket;
+	protected volatile boolean running = true;
+
+	/** held for reading by queries using the current settings */
+	private final ReentrantReadWriteLock settingsLock = new ReentrantReadWriteLock();
+
+	protected ExecutorService connections = Executors
+			.newCachedThreadPool(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "SearchNode-connection");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+
+	public SearchNode(Searcher searcher) {
+		this.searcher = searcher;
+	}
+
+	public SearchNode(Searcher searcher, int port) {
+		this.searcher = searcher;
+		this.port = port;
+	}
+
+	/** Binds the server socket; returns the port actually bound. */
+	public int bind() throws IOException {
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName(host));
+		port = serverSocket.getLocalPort();
+		if (logger.isInfoEnabled())
+			logger.info("search node listening on " + host + ":" + port
+					+ ", " + searcher.maxDoc() + " documents");
+		return port;
+	}
+
+	/** Accepts connections until {@link #close()} is called. */
+	public void serve() throws IOException {
+		if (serverSocket == null)
+			bind();
+		while (running) {
+			final Socket socket;
+			try {
+				socket = serverSocket.accept();
+			} catch (SocketException e) {
+				if (!running)
+					break;
+				throw e;
+			}
+			socket.setTcpNoDelay(true);
+			connections.execute(new Runnable() {
+				public void run() {
+					handle(socket);
+				}
+			});
+		}
+	}
+
+	public void close() throws IOException {
+		running = false;
+		if (serverSocket != null)
+			serverSocket.close();
+		connections.shutdownNow();
+	}
+
+	protected void handle(Socket socket) {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+			while (running) {
+				int id;
+				try {
+					id = in.readInt();
+				} catch (EOFException e) {
+					break;
+				}
+				byte op = in.readByte();
+				// read the whole request first: a failure while it runs must
+				// not leave the rest of the frame in the stream
+				Object request = read(op, in);
+				out.writeInt(id);
+				try {
+					execute(op, request, out);
+				} catch (Exception e) {
+					logger.error("request " + id + " failed", e);
+					out.writeByte(NodeProtocol.STATUS_ERROR);
+					out.writeUTF(String.valueOf(e));
+				}
+				if (in.available() == 0)
+					out.flush();
+			}
+			out.flush();
+		} catch (IOException e) {
+			if (running)
+				logger.warn("connection closed: " + e);
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	static class StatsRequest {
+		String fields[];
+		Term terms[];
+	}
+
+	static class SearchRequest {
+		int k;
+		Map<String, String> settings;
+		CollectionStats stats;
+		RQuery query;
+	}
+
+	private Object read(byte op, DataInputStream in) throws IOException {
+		if (op == NodeProtocol.OP_STATS) {
+			StatsRequest request = new StatsRequest();
+			request.fields = CollectionStats.readFields(in);
+			request.terms = NodeProtocol.readTerms(in);
+			return request;
+		} else if (op == NodeProtocol.OP_SEARCH) {
+			SearchRequest request = new SearchRequest();
+			request.k = NodeProtocol.readVInt(in);
+			int numSettings = NodeProtocol.readVInt(in);
+			request.settings = new HashMap<String, String>();
+			for (int i = 0; i < numSettings; i++)
+				request.settings.put(in.readUTF(), in.readUTF());
+			request.stats = CollectionStats.read(in);
+			request.query = NodeProtocol.readQuery(in);
+			return request;
+		}
+		throw new IOException("unknown request " + op);
+	}
+
+	/** Runs a request and writes the status byte and the payload. */
+	private void execute(byte op, Object request, DataOutputStream out)
+			throws IOException {
+		if (op == NodeProtocol.OP_STATS) {
+			StatsRequest r = (StatsRequest) request;
+			CollectionStats stats = CollectionStats.compute(searcher,
+					r.fields, r.terms);
+			out.writeByte(NodeProtocol.STATUS_OK);
+			stats.writeValues(out);
+		} else {
+			TopDocs topDocs = search((SearchRequest) request);
+			ScoreDoc scoreDocs[] = topDocs.scoreDocs;
+			String docnos[] = new String[scoreDocs.length];
+			MapFieldSelector selector = new MapFieldSelector(
+					new String[] { idField });
+			for (int i = 0; i < scoreDocs.length; i++) {
+				Document doc = searcher.doc(scoreDocs[i].doc, selector);
+				docnos[i] = doc.get(idField);
+			}
+			out.writeByte(NodeProtocol.STATUS_OK);
+			NodeProtocol.writeVInt(out, topDocs.totalHits);
+			out.writeFloat(topDocs.getMaxScore());
+			NodeProtocol.writeVInt(out, scoreDocs.length);
+			for (int i = 0; i < scoreDocs.length; i++) {
+				NodeProtocol.writeVInt(out, scoreDocs[i].doc);
+				out.writeFloat(scoreDocs[i].score);
+				out.writeUTF(docnos[i] == null ? "" : docnos[i].trim());
+			}
+		}
+	}
+
+	protected TopDocs search(SearchRequest request) throws IOException {
+		CollectionStats stats = request.stats;
+		// weights read df and ctf through the TermsCache; the global values
+		// are seen by this request only, not written into the shared cache
+		Term terms[] = stats.getTerms();
+		Map<Term, TermsCache.Item> items = new HashMap<Term, TermsCache.Item>();
+		for (int i = 0; i < terms.length; i++)
+			items.put(terms[i], new TermsCache.Item(stats.getDocFreq(i),
+					stats.getTermFreq(i)));
+		Searcher global = new GlobalStatsSearcher(searcher, stats);
+
+		Lock lock = settingsLock.readLock();
+		lock.lock();
+		Map<String, String> saved = null;
+		try {
+			if (!isCurrent(request.settings)) {
+				lock.unlock();
+				lock = settingsLock.writeLock();
+				lock.lock();
+				saved = apply(request.settings);
+			}
+			TermsCache.setOverrides(items);
+			return global.search(request.query, null, Math.max(1, request.k));
+		} finally {
+			TermsCache.setOverrides(null);
+			if (saved != null)
+				restore(saved);
+			lock.unlock();
+		}
+	}
+
+	private boolean isCurrent(Map<String, String> settings) {
+		Properties app = ApplicationSetup.getProperties();
+		for (Iterator<Map.Entry<String, String>> it = settings.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, String> e = it.next();
+			if (!e.getValue().equals(app.getProperty(e.getKey())))
+				return false;
+		}
+		return true;
+	}
+
+	/** Sets the settings, returning the values they replaced (null if unset). */
+	private Map<String, String> apply(Map<String, String> settings) {
+		Map<String, String> saved = new HashMap<String, String>();
+		Properties app = ApplicationSetup.getProperties();
+		for (Iterator<Map.Entry<String, String>> it = settings.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, String> e = it.next();
+			saved.put(e.getKey(), app.getProperty(e.getKey()));
+			app.setProperty(e.getKey(), e.getValue());
+		}
+		return saved;
+	}
+
+	private void restore(Map<String, String> saved) {
+		Properties app = ApplicationSetup.getProperties();
+		for (Iterator<Map.Entry<String, String>> it = saved.entrySet()
+				.iterator(); it.hasNext();) {
+			Map.Entry<String, String> e = it.next();
+			if (e.getValue() == null)
+				app.remove(e.getKey());
+			else
+				app.setProperty(e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * Usage: SearchNode [port [indexPath]]
+	 */
+	public static void main(String[] args) throws IOException {
+		Searcher searcher = args.length > 1 ? ISManager
+				.getSearcheFromPath(args[1]) : ISManager
+				.getSearcheFromPropertyFile();
+		SearchNode node = new SearchNode(searcher);
+		if (args.length > 0)
+			node.port = Integer.parseInt(args[0]);
+		node.serve();
+	}
+}
@@ -0,0 +1,173 @@
+/**
+ *
+ */
+package org.dutir.lucene.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * An output stream whose writes to the underlying stream, and so any
+ * compression the underlying stream does, happen on a background thread.
+ * Bytes are gathered in one of a few reusable buffers; a full buffer is
+ * handed to the writer thread and the caller goes on filling the next one,
+ * so it only waits when all buffers are queued. An error of the writer
+ * thread is thrown by the next write, flush or close; a
+ * {@link java.io.PrintWriter} over the stream keeps it to itself, to be
+ * read with <code>checkError()</code>.
+ *
+ * @author yezheng
+ */
+public class AsyncOutputStream extends OutputStream {
+
+	private static final class Chunk {
+		final byte data[];
+		int length;
+
+		Chunk(int size) {
+			data = new byte[size];
+		}
+	}
+
+	/** queued after the last chunk */
+	private static final Chunk END = new Chunk(0);
+	/** asks the writer to flush the underlying stream */
+	private static final Chunk FLUSH = new Chunk(0);
+
+	private final OutputStream out;
+	private final BlockingQueue<Chunk> free;
+	private final BlockingQueue<Chunk> full;
+	private final Thread writer;
+	private final Semaphore flushed = new Semaphore(0);
+	private volatile IOException error = null;
+	private Chunk current;
+	private boolean closed = false;
+
+	public AsyncOutputStream(OutputStream out, int bufferSize) {
+		this(out, bufferSize, 4);
+	}
+
+	public AsyncOutputStream(OutputStream out, int bufferSize, int numBuffers) {
+		this.out = out;
+		free = new ArrayBlockingQueue<Chunk>(numBuffers);
+		full = new ArrayBlockingQueue<Chunk>(numBuffers + 1);
+		for (int i = 1; i < numBuffers; i++)
+			free.add(new Chunk(bufferSize));
+		current = new Chunk(bufferSize);
+		writer = new Thread("AsyncOutputStream") {
+			public void run() {
+				drain();
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private void drain() {
+		try {
+			while (true) {
+				Chunk chunk = full.take();
+				if (chunk == END)
+					return;
+				if (chunk == FLUSH) {
+					try {
+						if (error == null)
+							out.flush();
+					} catch (IOException e) {
+						error = e;
+					}
+					flushed.release();
+					continue;
+				}
+				try {
+					if (error == null)
+						out.write(chunk.data, 0, chunk.length);
+				} catch (IOException e) {
+					error = e;
+				}
+				chunk.length = 0;
+				free.put(chunk);
+			}
+		} catch (InterruptedException e) {
+			error = new WrappedIOException(e);
+		}
+	}
+
+	private void check() throws IOException {
+		if (closed)
+			throw new IOException("stream closed");
+		if (error != null)
+			throw error;
+	}
+
+	/** hands the current buffer to the writer and takes a free one */
+	private void handOff() throws IOException {
+		if (current.length == 0)
+			return;
+		try {
+			full.put(current);
+			current = free.take();
+		} catch (InterruptedException e) {
+			throw new WrappedIOException(e);
+		}
+	}
+
+	public void write(int b) throws IOException {
+		check();
+		if (current.length == current.data.length)
+			handOff();
+		current.data[current.length++] = (byte) b;
+	}
+
+	public void write(byte b[], int off, int len) throws IOException {
+		check();
+		while (len > 0) {
+			if (current.length == current.data.length)
+				handOff();
+			int n = Math.min(len, current.data.length - current.length);
+			System.arraycopy(b, off, current.data, current.length, n);
+			current.length += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/**
+	 * Waits until the writer thread has written everything written so far
+	 * and flushed the underlying stream.
+	 */
+	public void flush() throws IOException {
+		check();
+		handOff();
+		try {
+			full.put(FLUSH);
+			flushed.acquire();
+		} catch (InterruptedException e) {
+			throw new WrappedIOException(e);
+		}
+		check();
+	}
+
+	public void close() throws IOException {
+		if (closed)
+			return;
+		try {
+			handOff();
+			full.put(END);
+			writer.join();
+		} catch (InterruptedException e) {
+			throw new WrappedIOException(e);
+		} finally {
+			closed = true;
+		}
+		try {
+			if (error != null)
+				throw error;
+		} finally {
+			out.close();
+		}
+	}
+}
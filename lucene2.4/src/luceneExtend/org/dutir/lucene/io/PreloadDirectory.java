@@ -0,0 +1,454 @@
+/**
+ *
+ */
+package org.dutir.lucene.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.apache.log4j.Logger;
+import org.apache.lucene.store.BufferedIndexInput;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.store.Lock;
+import org.apache.lucene.store.LockFactory;
+
+/**
+ * A directory that reads the files of an {@link FSDirectory} by a policy
+ * chosen per file extension, such as
+ *
+ * <pre>
+ * tis:ram, tii:ram, nrm:ram, frq:mmap, prx:mmap, *:nio
+ * </pre>
+ *
+ * <ul>
+ * <li><tt>ram</tt>: the file is copied to the heap when it is first opened
+ * and kept until it is deleted, so it is never read from disk again unless
+ * its length or modification time change;</li>
+ * <li><tt>mmap</tt>: the file is memory-mapped in chunks of 1 GB;</li>
+ * <li><tt>nio</tt>: positional reads through a FileChannel, which do not
+ * synchronise concurrent searches, with a buffer of at least the buffer size
+ * of the directory instead of 1 KB;</li>
+ * <li><tt>fs</tt>: the file is opened by the wrapped directory, the default for
+ * extensions not listed and without a <tt>*</tt> policy.</li>
+ * </ul>
+ * The files of a compound index are all within its <tt>cfs</tt> file, which
+ * is then the one to give a policy. Writes, locks and file operations go to
+ * the wrapped directory.
+ *
+ * @author yezheng
+ */
+public class PreloadDirectory extends Directory {
+	private static Logger logger = Logger.getLogger(PreloadDirectory.class);
+
+	public static final String RAM = "ram";
+	public static final String MMAP = "mmap";
+	public static final String NIO = "nio";
+	public static final String FS = "fs";
+
+	/** the chunks of ram and mmap files are 2^chunkBits bytes */
+	int chunkBits = 30;
+
+	private final FSDirectory dir;
+	private final HashMap<String, String> policies = new HashMap<String, String>();
+	private final String defaultPolicy;
+	private final int bufferSize;
+
+	/** the copies of the ram files, by name */
+	private final HashMap<String, Resident> resident = new HashMap<String, Resident>();
+	/** the lengths of the files mapped, by name */
+	private final HashMap<String, Long> mapped = new HashMap<String, Long>();
+
+	/**
+	 * @param policy
+	 *            comma separated <i>extension</i>:<i>policy</i> pairs, the
+	 *            extension <tt>*</tt> standing for all others
+	 * @param bufferSize
+	 *            the least buffer size of nio files
+	 */
+	public PreloadDirectory(FSDirectory dir, String policy, int bufferSize) {
+		this.dir = dir;
+		this.bufferSize = bufferSize;
+		String defaultPolicy = FS;
+		String pairs[] = policy.trim().split("\\s*,\\s*");
+		for (int i = 0; i < pairs.length; i++) {
+			if (pairs[i].length() == 0)
+				continue;
+			String pair[] = pairs[i].split("\\s*:\\s*");
+			if (pair.length != 2)
+				throw new IllegalArgumentException("bad file policy: "
+						+ pairs[i]);
+			String p = pair[1].toLowerCase();
+			if (!p.equals(RAM) && !p.equals(MMAP) && !p.equals(NIO)
+					&& !p.equals(FS))
+				throw new IllegalArgumentException("unknown file policy: "
+						+ pairs[i]);
+			if (pair[0].equals("*"))
+				defaultPolicy = p;
+			else
+				policies.put(pair[0], p);
+		}
+		this.defaultPolicy = defaultPolicy;
+		this.lockFactory = dir.getLockFactory();
+	}
+
+	/** @return the policy of a file */
+	public String policy(String name) {
+		int dot = name.lastIndexOf('.');
+		String p = dot < 0 ? null : policies.get(name.substring(dot + 1));
+		return p == null ? defaultPolicy : p;
+	}
+
+	public FSDirectory getDelegate() {
+		return dir;
+	}
+
+	public IndexInput openInput(String name) throws IOException {
+		return openInput(name, BufferedIndexInput.BUFFER_SIZE);
+	}
+
+	public IndexInput openInput(String name, int bufferSize) throws IOException {
+		String p = policy(name);
+		if (p.equals(RAM))
+			return new ByteBufferInput(load(name), chunkBits);
+		else if (p.equals(MMAP))
+			return new ByteBufferInput(map(name), chunkBits);
+		else if (p.equals(NIO))
+			return new ChannelInput(new RandomAccessFile(file(name), "r"),
+					Math.max(bufferSize, this.bufferSize));
+		return dir.openInput(name, bufferSize);
+	}
+
+	private File file(String name) {
+		return new File(dir.getFile(), name);
+	}
+
+	/** A heap copy of a file, with the version of the file it was read from. */
+	private static class Resident {
+		final long length;
+		final long modified;
+		final ByteBuffer chunks[];
+
+		Resident(long length, long modified, ByteBuffer chunks[]) {
+			this.length = length;
+			this.modified = modified;
+			this.chunks = chunks;
+		}
+	}
+
+	/**
+	 * @return the heap copy of a file, read on first use and again when the
+	 *         file is rewritten under the same name
+	 */
+	private ByteBuffer[] load(String name) throws IOException {
+		File file = file(name);
+		long modified = file.lastModified();
+		synchronized (resident) {
+			Resident copy = resident.get(name);
+			if (copy != null && copy.length == file.length()
+					&& copy.modified == modified)
+				return copy.chunks;
+			purge();
+			ByteBuffer chunks[];
+			RandomAccessFile raf = new RandomAccessFile(file, "r");
+			try {
+				FileChannel channel = raf.getChannel();
+				long length = channel.size();
+				chunks = new ByteBuffer[numChunks(length)];
+				for (int i = 0; i < chunks.length; i++) {
+					long start = (long) i << chunkBits;
+					ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(
+							1L << chunkBits, length - start));
+					while (chunk.hasRemaining())
+						if (channel.read(chunk, start + chunk.position()) < 0)
+							throw new IOException("read past EOF: " + name);
+					chunk.flip();
+					chunks[i] = chunk;
+				}
+				copy = new Resident(length, modified, chunks);
+			} finally {
+				raf.close();
+			}
+			resident.put(name, copy);
+			if (logger.isDebugEnabled())
+				logger.debug("loaded " + name + " of " + dir.getFile());
+			return chunks;
+		}
+	}
+
+	/** Drops the copies of files deleted from the directory. */
+	private void purge() {
+		if (resident.size() == 0)
+			return;
+		HashSet<String> names = new HashSet<String>(Arrays.asList(dir.list()));
+		for (Iterator<String> it = resident.keySet().iterator(); it.hasNext();)
+			if (!names.contains(it.next()))
+				it.remove();
+	}
+
+	/** @return the mapped chunks of a file */
+	private ByteBuffer[] map(String name) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file(name), "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			ByteBuffer chunks[] = new ByteBuffer[numChunks(length)];
+			for (int i = 0; i < chunks.length; i++) {
+				long start = (long) i << chunkBits;
+				chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+						Math.min(1L << chunkBits, length - start));
+			}
+			synchronized (mapped) {
+				mapped.put(name, length);
+			}
+			return chunks;
+		} finally {
+			// the mappings stay valid once the file is closed
+			raf.close();
+		}
+	}
+
+	private int numChunks(long length) {
+		return Math.max(1, (int) ((length + (1L << chunkBits) - 1) >>> chunkBits));
+	}
+
+	/** @return the bytes of the files copied to the heap */
+	public long residentBytes() {
+		synchronized (resident) {
+			long bytes = 0;
+			for (Resident copy : resident.values())
+				for (ByteBuffer chunk : copy.chunks)
+					bytes += chunk.capacity();
+			return bytes;
+		}
+	}
+
+	/** @return the bytes of the files memory-mapped */
+	public long mappedBytes() {
+		synchronized (mapped) {
+			long bytes = 0;
+			for (Long length : mapped.values())
+				bytes += length;
+			return bytes;
+		}
+	}
+
+	public String toString() {
+		int residentFiles, mappedFiles;
+		synchronized (resident) {
+			residentFiles = resident.size();
+		}
+		synchronized (mapped) {
+			mappedFiles = mapped.size();
+		}
+		return dir.getFile() + ": " + residentFiles + " files in ram, "
+				+ (residentBytes() >> 10) + " KB; " + mappedFiles
+				+ " files mapped, " + (mappedBytes() >> 10) + " KB";
+	}
+
+	public String[] list() throws IOException {
+		return dir.list();
+	}
+
+	public boolean fileExists(String name) throws IOException {
+		return dir.fileExists(name);
+	}
+
+	public long fileModified(String name) throws IOException {
+		return dir.fileModified(name);
+	}
+
+	public void touchFile(String name) throws IOException {
+		dir.touchFile(name);
+	}
+
+	public void deleteFile(String name) throws IOException {
+		dir.deleteFile(name);
+		synchronized (resident) {
+			resident.remove(name);
+		}
+		synchronized (mapped) {
+			mapped.remove(name);
+		}
+	}
+
+	/**
+	 * Not implemented: index files are never renamed.
+	 * @deprecated
+	 * @throws UnsupportedOperationException
+	 */
+	@Deprecated
+	public void renameFile(String from, String to) {
+		throw new UnsupportedOperationException();
+	}
+
+	public long fileLength(String name) throws IOException {
+		return dir.fileLength(name);
+	}
+
+	public IndexOutput createOutput(String name) throws IOException {
+		return dir.createOutput(name);
+	}
+
+	public void sync(String name) throws IOException {
+		dir.sync(name);
+	}
+
+	public Lock makeLock(String name) {
+		return dir.makeLock(name);
+	}
+
+	public void clearLock(String name) throws IOException {
+		dir.clearLock(name);
+	}
+
+	public void setLockFactory(LockFactory lockFactory) {
+		dir.setLockFactory(lockFactory);
+		this.lockFactory = lockFactory;
+	}
+
+	public String getLockID() {
+		return dir.getLockID();
+	}
+
+	public void close() throws IOException {
+		synchronized (resident) {
+			resident.clear();
+		}
+		synchronized (mapped) {
+			mapped.clear();
+		}
+		dir.close();
+	}
+
+	/** An input over the chunks of a file in memory, mapped or on the heap. */
+	private static class ByteBufferInput extends IndexInput {
+		private ByteBuffer chunks[];
+		private final int chunkBits;
+		private final long length;
+		private int index;
+		private ByteBuffer chunk;
+
+		/** @param shared the chunks, whose positions are not changed */
+		ByteBufferInput(ByteBuffer shared[], int chunkBits) {
+			this.chunkBits = chunkBits;
+			long length = 0;
+			chunks = new ByteBuffer[shared.length];
+			for (int i = 0; i < shared.length; i++) {
+				chunks[i] = shared[i].duplicate();
+				length += chunks[i].limit();
+			}
+			this.length = length;
+			index = 0;
+			chunk = chunks[0];
+			chunk.position(0);
+		}
+
+		public byte readByte() throws IOException {
+			if (!chunk.hasRemaining())
+				nextChunk();
+			return chunk.get();
+		}
+
+		public void readBytes(byte[] b, int offset, int len) throws IOException {
+			while (len > chunk.remaining()) {
+				int n = chunk.remaining();
+				chunk.get(b, offset, n);
+				offset += n;
+				len -= n;
+				nextChunk();
+			}
+			chunk.get(b, offset, len);
+		}
+
+		private void nextChunk() throws IOException {
+			if (index + 1 >= chunks.length)
+				throw new IOException("read past EOF");
+			chunk = chunks[++index];
+			chunk.position(0);
+		}
+
+		public long getFilePointer() {
+			return ((long) index << chunkBits) + chunk.position();
+		}
+
+		public void seek(long pos) throws IOException {
+			if (pos < 0 || pos > length)
+				throw new IOException("seek past EOF: " + pos);
+			// the end of a full last chunk is in that chunk
+			index = Math.min((int) (pos >>> chunkBits), chunks.length - 1);
+			chunk = chunks[index];
+			chunk.position((int) (pos - ((long) index << chunkBits)));
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public Object clone() {
+			ByteBufferInput clone = (ByteBufferInput) super.clone();
+			clone.chunks = new ByteBuffer[chunks.length];
+			for (int i = 0; i < chunks.length; i++)
+				clone.chunks[i] = chunks[i].duplicate();
+			clone.chunk = clone.chunks[index];
+			return clone;
+		}
+
+		public void close() {
+		}
+	}
+
+	/** A buffered input reading a file with positional channel reads. */
+	private static class ChannelInput extends BufferedIndexInput {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final long length;
+		private boolean isClone = false;
+
+		ChannelInput(RandomAccessFile file, int bufferSize) throws IOException {
+			super(bufferSize);
+			this.file = file;
+			this.channel = file.getChannel();
+			this.length = file.length();
+		}
+
+		protected void readInternal(byte[] b, int offset, int len)
+				throws IOException {
+			ByteBuffer bb = ByteBuffer.wrap(b, offset, len);
+			long pos = getFilePointer();
+			while (bb.hasRemaining()) {
+				int n = channel.read(bb, pos);
+				if (n < 0)
+					throw new IOException("read past EOF");
+				pos += n;
+			}
+		}
+
+		protected void seekInternal(long pos) {
+		}
+
+		public long length() {
+			return length;
+		}
+
+		public Object clone() {
+			ChannelInput clone = (ChannelInput) super.clone();
+			clone.isClone = true;
+			return clone;
+		}
+
+		public void close() throws IOException {
+			if (!isClone)
+				file.close();
+		}
+	}
+}
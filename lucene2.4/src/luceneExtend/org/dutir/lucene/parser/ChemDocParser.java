@@ -3,15 +3,15 @@
  */
 package org.dutir.lucene.parser;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.util.regex.Pattern;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
@@ -20,27 +20,29 @@ import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.TermVector;
 import org.apache.lucene.index.IndexWriter;
 import org.dutir.lucene.util.ApplicationSetup;
-import org.dutir.parser.DomNodeHandle;
-import org.dutir.util.dom.DomNodeUtils;
-import org.w3c.dom.DOMException;
-import org.w3c.dom.NamedNodeMap;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
+ * Parses chemistry patents and RSC articles, or PMC articles when
+ * <tt>Lucene.ChemDocParser.PMC</tt> is set, with a StAX pull parser: each
+ * <tt>patent-document</tt> or <tt>article</tt> element of a file is read as
+ * it streams by and becomes a document, so neither the file nor its DOM is
+ * held in memory. With <tt>Lucene.ChemDocParser.XMLDocBuilder</tt> off the
+ * files are read as ISO-8859-1 whatever they declare.
+ *
  * @author yezheng
  *
  */
 public class ChemDocParser implements DocumentParser {
 
 	static Logger logger  = Logger.getLogger(ChemDocParser.class);
-	private static org.dutir.util.dom.HtmlFileToDocument hf2doc = new org.dutir.util.dom.HtmlFileToDocument();
-	InputStream bis = null;
+	static final Pattern datePattern = Pattern.compile("[0-9]+{8}");
+	static final Pattern rscIdPattern = Pattern.compile("10\\.1039/[a-zA-Z0-9]+$");
+	/** factories are not shared between threads */
+	private final XMLInputFactory factory = XMLRecordReader.newFactory();
+	XMLRecordReader reader = null;
 	File file = null;
 	private String encoding = "utf8";
-	BufferedReader br = null;
 	IndexWriter writer = null;
-	boolean parsedTag = false;
 	boolean oneFieldIndex = Boolean.parseBoolean(ApplicationSetup.getProperty("Lucene.ChemDocParser.oneFieldIndex", "false"));
 	boolean XMLDocBuilder = Boolean.parseBoolean(ApplicationSetup.getProperty("Lucene.ChemDocParser.XMLDocBuilder", "true"));
 	
@@ -54,12 +56,6 @@ public class ChemDocParser implements DocumentParser {
 	 * @see org.dutir.lucene.parser.DocumentParser#indexAll()
 	 */
 	public void indexAll() {
-		String retval = null;
-		if(file == null){
-			retval = "" + count;
-		}else{
-			retval = file.getAbsolutePath();
-		}
 		if(count% 500 ==0 ){
 			logger.debug("adding doc: " + count );
 		}
@@ -68,7 +64,6 @@ public class ChemDocParser implements DocumentParser {
 			while (doc != null) {
 				this.writer.addDocument(doc);
 				count ++;
-//				System.out.println(doc);
 				doc = nextDoc();
 			}
 		} catch (Exception e) {
@@ -80,58 +75,48 @@ public class ChemDocParser implements DocumentParser {
 	 * @see org.dutir.lucene.parser.DocumentParser#nextDoc()
 	 */
 	public Document nextDoc() throws Exception {
-		try {
-			if (!parsedTag) {
-//				long start = System.currentTimeMillis();
-				org.w3c.dom.Document domdoc = null;
-				if(XMLDocBuilder){
-					domdoc = hf2doc.getDocumentFomeXMLFile(this.bis);
-				}else{					
-					domdoc = hf2doc
-					.getDocument(this.bis, "ISO-8859-1");
-				}
-//				long end = System.currentTimeMillis();
-//				System.out.print("build:" +(end -start)+ "\t");
-//				start = end;
-				DomNodeHandle handle = null;
-				if(pmcTag ){
-					handle = new ChemPMCHandler();
-				}else{
-					handle = new ChemHandler();
+		while (reader != null) {
+			try {
+				ChemRecord record = pmcTag ? new ChemPMCHandler() : new ChemHandler();
+				if (!reader.read(record)) {
+					close();
+					return null;
 				}
-				handle = new ChemPMCHandler();
-				
-//				handle.bbuf = this.tbuf;
-				DomNodeUtils.recTravel(domdoc, handle);
-//				end = System.currentTimeMillis();
-//				System.out.println("parser:" +(end -start)+ "\t");
-				parsedTag = true;
-				if(pmcTag){
-					if(oneFieldIndex){
-						return ((ChemPMCHandler) handle).toDocument_OneField();
-					}else{
-						return ((ChemPMCHandler)handle).toDocument_MultiField();
-					}
-				}else{
-					if(oneFieldIndex){
-						return ((ChemHandler)handle).toDocument_OneField();
-					}else{
-						return ((ChemHandler)handle).toDocument_MultiField();
-					}
+				try {
+					return oneFieldIndex ? record.toDocument_OneField() : record
+							.toDocument_MultiField();
+				} catch (Exception e) {
+					// skip the record, not the rest of the file
+					logger.warn("record parser error in " + file + ":", e);
 				}
-			} else {
-				return null;
+			} catch (XMLStreamException e) {
+				logger.warn("file parser error in " + file + ":", e);
+				close();
 			}
-		} catch (Exception e) {
-			logger.warn("file parser error:", e);
-//			logger.warn(new String (tbuf));
 		}
 		return null;
 	}
 
-	
-	class ChemHandler implements DomNodeHandle{
-		byte bbuf[] = null;
+	private void close() {
+		reader.close();
+		reader = null;
+	}
+
+	static abstract class ChemRecord extends XMLRecordReader.Record {
+		abstract Document toDocument_MultiField();
+
+		abstract Document toDocument_OneField();
+	}
+
+	/** Appends the text, after a space if the buffer is not empty. */
+	static void append(StringBuilder buf, String text) {
+		if (buf.length() > 0) {
+			buf.append(' ');
+		}
+		buf.append(text);
+	}
+
+	class ChemHandler extends ChemRecord{
 		String ucid = null;
 		String backid = null;
 		String title = null;
@@ -140,124 +125,74 @@ public class ChemDocParser implements DocumentParser {
 		StringBuilder claBuf = new StringBuilder();
 		StringBuilder desBuf = new StringBuilder();
 		boolean pTag = true;
-//		StringBuilder desBuf = new StringBuilder();
-		public boolean handle(Node node) {
-			if (node == null) {
-				System.out.println("encounter null node");
-				return true;
-			}
-			String name = node.getNodeName();
-			try {
-				if(name.equalsIgnoreCase("patent-document")){
-					NamedNodeMap map = node.getAttributes();
-					if(map == null)return false;
-					Node inode = map.getNamedItem("ucid");
-					ucid = inode.getNodeValue();
-//					int pos = ucid.lastIndexOf("-");
-//					ucid = ucid.substring(0, pos);
-					
-					Node dateNode = map.getNamedItem("date");
-					date = dateNode.getNodeValue();
-					if(!date.matches("[0-9]+{8}")){
-						logger.warn("Date parser error for document: " + ucid + ":" + date);
-					}
-					return false; //extract ucid, and then continue to extract other info in this Node. 
-				}else if(name.equalsIgnoreCase("article")){//is article
-					pTag = false;
-				}
-				// extract patent.
-				else if(pTag && name.equalsIgnoreCase("invention-title")){
-					title = DomNodeUtils.getText(node);
-					return true;
-				}else if(pTag && name.equalsIgnoreCase("abstract")){
-					String text = DomNodeUtils.getText(node);
-					if(absBuf.length() > 0 ){
-						absBuf.append(" " + text);
-					}else{
-						absBuf.append(text);
-					}
-					return true;
-				}else if(pTag && name.equalsIgnoreCase("claims")){
-					String text = DomNodeUtils.getText(node);
-					if(claBuf.length() > 0 ){
-						claBuf.append(" " + text);
-					}else{
-						claBuf.append(text);
-					}
-					return true;
-				}else if(pTag && name.equalsIgnoreCase("description")){
-					String text = DomNodeUtils.getText(node);
-					if(desBuf.length() > 0 ){
-						desBuf.append(" " + text);
-					}else{
-						desBuf.append(text);
-					}
-					return true;			
-				}
-				//article parser
-				else if(!pTag && name.equalsIgnoreCase("art-body")){
-					String text = DomNodeUtils.getText(node);
-					if(desBuf.length() > 0 ){
-						desBuf.append(" " + text);
-					}else{
-						desBuf.append(text);
-					}
-					return true;			
-				}else if(!pTag && name.equalsIgnoreCase("ms-id")){
-					String text = DomNodeUtils.getText(node);
-					this.backid = text.trim();
-					return true;			
-				}
-				else if(!pTag && name.equalsIgnoreCase("doi")){
-					String text = DomNodeUtils.getText(node);
-					ucid = text.trim();
-					return true;			
-				}else if(!pTag && name.equalsIgnoreCase("titlegrp")){
-					String text = DomNodeUtils.getText(node);
-					title = text.trim();
-					return true;
-				}else if(!pTag && name.equalsIgnoreCase("abstract")){
-					String text = DomNodeUtils.getText(node);
-					this.absBuf.append(text);
-					return true;
+
+		boolean isRecord(String name) {
+			return name.equalsIgnoreCase("patent-document")
+					|| name.equalsIgnoreCase("article");
+		}
+
+		boolean start(String name, XMLStreamReader xml) {
+			if(name.equalsIgnoreCase("patent-document")){
+				ucid = xml.getAttributeValue(null, "ucid");
+				date = xml.getAttributeValue(null, "date");
+				if(date == null || !datePattern.matcher(date).matches()){
+					logger.warn("Date parser error for document: " + ucid + ":" + date);
 				}
-			} catch (DOMException e) {
-				e.printStackTrace();
+				return false; //extract ucid, and then continue to extract other info in this Node. 
+			}else if(name.equalsIgnoreCase("article")){//is article
+				pTag = false;
+				return false;
 			}
-			return false;
+			if (pTag) {
+				return name.equalsIgnoreCase("invention-title")
+						|| name.equalsIgnoreCase("abstract")
+						|| name.equalsIgnoreCase("claims")
+						|| name.equalsIgnoreCase("description");
+			}
+			return name.equalsIgnoreCase("art-body")
+					|| name.equalsIgnoreCase("ms-id")
+					|| name.equalsIgnoreCase("doi")
+					|| name.equalsIgnoreCase("titlegrp")
+					|| name.equalsIgnoreCase("abstract");
 		}
-		
-		public org.apache.lucene.document.Document toDocument_MultiField(){
-			Document doc = new Document();
-			
-//			if(this.ucid == null || this.ucid.equals("")){
-//				this.ucid = "10.1039/" + this.backid;
-//			}
-			
+
+		void text(String name, String text) {
+			// extract patent.
+			if(pTag && name.equalsIgnoreCase("invention-title")){
+				title = text;
+			}else if(pTag && name.equalsIgnoreCase("abstract")){
+				append(absBuf, text);
+			}else if(pTag && name.equalsIgnoreCase("claims")){
+				append(claBuf, text);
+			}else if(pTag && name.equalsIgnoreCase("description")){
+				append(desBuf, text);
+			}
+			//article parser
+			else if(name.equalsIgnoreCase("art-body")){
+				append(desBuf, text);
+			}else if(name.equalsIgnoreCase("ms-id")){
+				this.backid = text.trim();
+			}else if(name.equalsIgnoreCase("doi")){
+				ucid = text.trim();
+			}else if(name.equalsIgnoreCase("titlegrp")){
+				title = text.trim();
+			}else if(name.equalsIgnoreCase("abstract")){
+				this.absBuf.append(text);
+			}
+		}
+
+		private void articleId() {
 			if(!pTag){
 				this.ucid = "10.1039/" + this.backid;
-//				System.out.println(this.ucid);
-//				try {
-//					System.out.println(new String(this.bbuf, "ISO-8859-1"));
-//				} catch (UnsupportedEncodingException e) {
-//					// TODO Auto-generated catch block
-//					e.printStackTrace();
-//				}
-//				this.ucid = this.ucid.replace("&sol;", "/");
-				if(this.ucid.matches("10\\.1039/[a-zA-Z0-9]+$")){
-//					System.out.println("replacement is true");
-//					logger.info("matched: " + this.ucid);
-				}else{
-					logger.info("not matched: " + this.ucid);
-					try {
-						System.out.print(new String(this.bbuf, "utf8"));
-						logger.info("ecoding problem in article file");
-						logger.info(new String(this.bbuf, "utf8"));
-					} catch (UnsupportedEncodingException e) {
-						e.printStackTrace();
-					}
+				if(!rscIdPattern.matcher(this.ucid).matches()){
+					logger.info("not matched: " + this.ucid + " in " + file);
 				}
 			}
+		}
+		
+		public org.apache.lucene.document.Document toDocument_MultiField(){
+			Document doc = new Document();
+			articleId();
 			
 			Field idField = new Field("id", this.ucid, Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS, TermVector.NO);
 			if(title != null){
@@ -267,7 +202,7 @@ public class ChemDocParser implements DocumentParser {
 			Field absField = new Field("abstract", this.absBuf.toString(), Store.NO, Field.Index.ANALYZED, TermVector.YES);
 			Field desField = new Field("description", this.desBuf.toString(), Store.NO, Field.Index.ANALYZED, TermVector.YES);
 			Field claField = new Field("claims", this.claBuf.toString(), Store.NO, Field.Index.ANALYZED, TermVector.YES);
-			Field dateField = new Field("date", this.date, Field.Store.YES, Field.Index.NOT_ANALYZED);
+			Field dateField = new Field("date", this.date ==null? "00000000": this.date, Field.Store.YES, Field.Index.NOT_ANALYZED);
 			doc.add(dateField);
 			doc.add(idField);
 			doc.add(claField);
@@ -277,30 +212,7 @@ public class ChemDocParser implements DocumentParser {
 		}
 		
 		public org.apache.lucene.document.Document toDocument_OneField(){
-			if(!pTag){
-				this.ucid = "10.1039/" + this.backid;
-//				System.out.println(this.ucid);
-//				try {
-//					System.out.println(new String(this.bbuf, "ISO-8859-1"));
-//				} catch (UnsupportedEncodingException e) {
-//					// TODO Auto-generated catch block
-//					e.printStackTrace();
-//				}
-//				this.ucid = this.ucid.replace("&sol;", "/");
-				if(this.ucid.matches("10\\.1039/[a-zA-Z0-9]+$")){
-//					System.out.println("replacement is true");
-//					logger.info("matched: " + this.ucid);
-				}else{
-					logger.info("not matched: " + this.ucid);
-					try {
-						System.out.print(new String(this.bbuf, "utf8"));
-						logger.info("ecoding problem in article file");
-						logger.info(new String(this.bbuf, "utf8"));
-					} catch (UnsupportedEncodingException e) {
-						e.printStackTrace();
-					}
-				}
-			}
+			articleId();
 			
 			Document doc = new Document();
 			Field idField = new Field("id", this.ucid, Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS, TermVector.NO);
@@ -309,7 +221,7 @@ public class ChemDocParser implements DocumentParser {
 			}
 			String text = this.absBuf.toString() +" " + this.desBuf.toString() + " " + this.claBuf.toString() + title;
 			Field desField = new Field("description", text, Store.NO, Field.Index.ANALYZED, TermVector.YES);
-			Field dateField = new Field("date", this.date, Field.Store.YES, Field.Index.NOT_ANALYZED);
+			Field dateField = new Field("date", this.date ==null? "00000000": this.date, Field.Store.YES, Field.Index.NOT_ANALYZED);
 			doc.add(dateField);
 			doc.add(idField);
 			doc.add(desField);
@@ -320,94 +232,70 @@ public class ChemDocParser implements DocumentParser {
 	}
 	
 	
-	class ChemPMCHandler implements DomNodeHandle{
-		byte bbuf[] = null;
+	class ChemPMCHandler extends ChemRecord{
 		String ucid = null;
-		String backid = null;
 		String title = null;
 		String date = null;
 		StringBuilder secBuf = new StringBuilder();
-//		StringBuilder absBuf = new StringBuilder();
-//		StringBuilder claBuf = new StringBuilder();
-//		StringBuilder desBuf = new StringBuilder();
-//		boolean pTag = true;
-//		StringBuilder desBuf = new StringBuilder();
-		public boolean handle(Node node) {
-			if (node == null) {
-				System.out.println("encounter null node");
+		/** within the accepted date, and its parts */
+		boolean accepted = false;
+		String year = null, month = null, day = null;
+		/** within the article-id of the doi */
+		boolean doi = false;
+
+		boolean isRecord(String name) {
+			return name.equalsIgnoreCase("article");
+		}
+
+		boolean start(String name, XMLStreamReader xml) {
+			if(name.equalsIgnoreCase("date")){
+				accepted = "accepted".equalsIgnoreCase(xml.getAttributeValue(null, "date-type"));
+				return !accepted;
+			}else if(accepted){
+				return name.equalsIgnoreCase("year")
+						|| name.equalsIgnoreCase("month")
+						|| name.equalsIgnoreCase("day");
+			}else if(name.equalsIgnoreCase("article-id")){
+				doi = "doi".equalsIgnoreCase(xml.getAttributeValue(null, "pub-id-type"));
 				return true;
 			}
-			String name = node.getNodeName();
-			try {
-				if(name.equalsIgnoreCase("date")){
-					NamedNodeMap map = node.getAttributes();
-					if(map == null)return false;
-					Node inode = map.getNamedItem("date-type");
-					String datetype = inode.getNodeValue();
-					if(datetype.equalsIgnoreCase("accepted")){
-						NodeList list = node.getChildNodes();
-						String year = null, month = null, day = null;
-						for(int i=0, len= list.getLength(); i < len; i++){
-							Node tmpNode = list.item(i);
-							String tmpname = tmpNode.getNodeName();
-							if(tmpname.equalsIgnoreCase("year")){
-								year =  DomNodeUtils.getText(tmpNode).trim();
-							}else if(tmpname.equalsIgnoreCase("month")){
-								month = DomNodeUtils.getText(tmpNode).trim();
-								if(month.length() < 2){
-									month = "0" + month;
-								}
-							}else if (tmpname.equalsIgnoreCase("day")){
-								day = DomNodeUtils.getText(tmpNode).trim();
-								if(day.length() <2){
-									day = "0" + day; 
-								}
-							}
-						}
-						date = year + month + day;
-					}else{
-						return true;
+			return name.equalsIgnoreCase("article-title")
+					|| name.equalsIgnoreCase("abstract")
+					|| name.equalsIgnoreCase("sec");
+		}
+
+		void text(String name, String text) {
+			if(accepted){
+				if(name.equalsIgnoreCase("year")){
+					year = text.trim();
+				}else if(name.equalsIgnoreCase("month")){
+					month = text.trim();
+					if(month.length() < 2){
+						month = "0" + month;
 					}
-					
-					if(!date.matches("[0-9]+{8}")){
-						logger.warn("Date parser error for document: " + ucid + ":" + date);
+				}else if (name.equalsIgnoreCase("day")){
+					day = text.trim();
+					if(day.length() <2){
+						day = "0" + day; 
 					}
-					return true; //extract ucid, and then continue to extract other info in this Node. 
 				}
-				else if(name.equalsIgnoreCase("article-title")){
-					title = DomNodeUtils.getText(node);
-					return true;
-				}else if(name.equalsIgnoreCase("abstract")){
-					String text = DomNodeUtils.getText(node);
-					if(secBuf.length() > 0 ){
-						secBuf.append(" " + text);
-					}else{
-						secBuf.append(text);
-					}
-					return true;
-				}else if(name.equalsIgnoreCase("sec")){
-					String text = DomNodeUtils.getText(node);
-					if(secBuf.length() > 0 ){
-						secBuf.append(" " + text);
-					}else{
-						secBuf.append(text);
-					}
-					return true;
-				}else if(name.equalsIgnoreCase("article-id")){
-					NamedNodeMap map = node.getAttributes();
-					if(map == null)return false;
-					Node inode = map.getNamedItem("pub-id-type");
-					if(inode == null) return true;
-					String value = inode.getNodeValue();
-					if(value.equalsIgnoreCase("doi")){
-						this.ucid = DomNodeUtils.getText(node).trim();
-					}
-					return true;
+			}else if(name.equalsIgnoreCase("article-title")){
+				title = text;
+			}else if(name.equalsIgnoreCase("abstract") || name.equalsIgnoreCase("sec")){
+				append(secBuf, text);
+			}else if(doi && name.equalsIgnoreCase("article-id")){
+				this.ucid = text.trim();
+			}
+		}
+
+		void end(String name) {
+			if(accepted && name.equalsIgnoreCase("date")){
+				accepted = false;
+				date = year + month + day;
+				if(!datePattern.matcher(date).matches()){
+					logger.warn("Date parser error for document: " + ucid + ":" + date);
 				}
-			} catch (DOMException e) {
-				e.printStackTrace();
 			}
-			return false;
 		}
 		
 		public org.apache.lucene.document.Document toDocument_MultiField(){
@@ -416,20 +304,6 @@ public class ChemDocParser implements DocumentParser {
 		}
 		
 		public org.apache.lucene.document.Document toDocument_OneField(){
-//				if(this.ucid.matches("10\\.1039/[a-zA-Z0-9]+$")){
-////					System.out.println("replacement is true");
-////					logger.info("matched: " + this.ucid);
-//				}else{
-//					logger.info("not matched: " + this.ucid);
-//					try {
-//						System.out.print(new String(this.bbuf, "utf8"));
-//						logger.info("ecoding problem in article file");
-//						logger.info(new String(this.bbuf, "utf8"));
-//					} catch (UnsupportedEncodingException e) {
-//						e.printStackTrace();
-//					}
-//				}
-			
 			Document doc = new Document();
 			Field idField = new Field("id", this.ucid, Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS, TermVector.NO);
 			if(title != null){
@@ -459,23 +333,14 @@ public class ChemDocParser implements DocumentParser {
 		this.file = file;
 	}
 
-	byte tbuf[] = null;
 	public void setup(InputStream is, File file, String encoding) {
-		parsedTag = false;
 		this.file = file;
 		this.encoding = encoding;
 		try {
-			ByteArrayOutputStream bos = new ByteArrayOutputStream();
-			byte buf[] = new byte[1024];
-			int blen;
-			while ( (blen = is.read(buf)) != -1){
-				bos.write(buf, 0, blen);
-			}
-			byte cbuf[] = bos.toByteArray();
-			tbuf = cbuf;
-			bis = new ByteArrayInputStream(cbuf);
-		} catch (IOException e) {
-			e.printStackTrace();
+			reader = new XMLRecordReader(factory, is, XMLDocBuilder ? null : "ISO-8859-1");
+		} catch (XMLStreamException e) {
+			logger.warn("file parser error in " + file + ":", e);
+			reader = null;
 		}
 	}
 
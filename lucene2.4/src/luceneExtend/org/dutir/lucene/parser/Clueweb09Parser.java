@@ -4,15 +4,16 @@
 package org.dutir.lucene.parser;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.FileWriter;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.HashMap;
+import java.util.zip.GZIPInputStream;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
@@ -21,7 +22,6 @@ import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.TermVector;
 import org.apache.lucene.index.IndexWriter;
-import org.dutir.util.dom.DomNodeUtils;
 
 /**
  * @author yezheng
@@ -32,9 +32,14 @@ public class Clueweb09Parser implements DocumentParser {
 	BufferedInputStream bis = null;
 	File file = null;
 	private String encoding = "utf8";
-	BufferedReader br = null;
+	WarcRecordReader reader = null;
 	IndexWriter writer = null;
 
+	HtmlTextExtractor extractor = new HtmlTextExtractor();
+	/** decoders by charset name, reused across records */
+	HashMap<String, CharsetDecoder> decoders = new HashMap<String, CharsetDecoder>();
+	CharBuffer chars = CharBuffer.allocate(64 * 1024);
+
 	public void indexAll() {
 		logger.info("adding doc: " + this.file.getAbsolutePath());
 		this.preid = null;
@@ -45,7 +50,6 @@ public class Clueweb09Parser implements DocumentParser {
 				doc = nextDoc();
 				// System.out.println(doc);
 			}
-			this.br.close();
 			this.bis.close();
 		} catch (Exception e) {
 			// TODO Auto-generated catch block
@@ -53,18 +57,6 @@ public class Clueweb09Parser implements DocumentParser {
 		}
 	}
 
-	private static org.dutir.util.dom.HtmlFileToDocument hf2doc = new org.dutir.util.dom.HtmlFileToDocument();
-	static String sWARCb = "WARC/0.18";
-	static String sWARCType = "WARC-Type:";
-	static String sWARCTRECID = "WARC-TREC-ID:";
-	static String sWARCTargetURI = "WARC-Target-URI:";
-	static String sWARCContentType = "Content-Type:";
-	static String sWARCContentLength = "Content-Length:";
-	static String conformsTo = "conformsTo";
-	static boolean conformsTotag = false;
-	// static String sWARCb = "WARC/0.18";
-	// static String sWARCb = "WARC/0.18";
-
 	int count = 0;
 
 	String preid = null;
@@ -94,128 +86,139 @@ public class Clueweb09Parser implements DocumentParser {
 		return -1;
 	}
 
+	/**
+	 * Returns the next document of the WARC file. Records are sliced by
+	 * their Content-Length, the payload is decoded with the charset named in
+	 * the HTTP header or in a &lt;meta&gt; tag (the setup encoding otherwise),
+	 * and the title and text of HTML pages are pulled out by
+	 * {@link HtmlTextExtractor} in one pass.
+	 */
 	public Document nextDoc() throws Exception {
-		// WARC/0.18 WARC-Type: //WARC-TREC-ID: //WARC-Target-URI:
-		// //Content-Type: //Content-Length:
-		boolean WARCbtag = false, sWARCTypetag = false, WARCTRECIDtag = false, WARCTargetURItag = false, ContentTypetag = false, ContentLengthtag = false;
-		String line = null;
-		String id = null;
-		String url = null;
-		String title = null;
-		String content = null;
-		String contentType = null;
-		// String WARC_Type = null;
-		int contentCount = 0;
-		StringBuilder buf = new StringBuilder();
-		int contentLen = 0;
-		while ((line = this.br.readLine()) != null) {
-			if (!conformsTotag) {
-				if (line.startsWith(conformsTo)) {
-					conformsTotag = true;
-				}
+		while (reader.next()) {
+			String id = reader.getTrecId();
+			if (id == null || !"response".equals(reader.getType()))
+				continue; // the warcinfo record
+			count++;
+			if (logger.isDebugEnabled()) {
+				check(preid, id);
+			}
+			String url = reader.getTargetURI();
+			if (url == null) {
+				url = "";
+			}
+			String contentType = reader.getHttpContentType();
+			if (contentType == null) {
+				logger.warn("ignore unsupported type (contentType == null): "
+						+ id);
 				continue;
 			}
-			if (line.startsWith(sWARCType)) {
-				sWARCTypetag = true;
-				// System.out.println(count++);
-			} else if (line.startsWith(sWARCTRECID)) {
-				id = line.substring(14).trim();
-				count++;
-				WARCTRECIDtag = true;
-				if (logger.isDebugEnabled()) {
-					check(preid, id);
-				}
-			} else if (line.startsWith(sWARCTargetURI)) {
-				url = line.substring(17);
-				WARCTargetURItag = true;
-			} else if (line.startsWith(sWARCContentType)) {
-				contentCount++;
-				if (contentCount == 2) {
-					contentType = line.substring(14).toLowerCase().trim();
-					ContentTypetag = true;
-				}
-			} else if (WARCTRECIDtag && ContentTypetag
-					&& line.startsWith(sWARCContentLength)) {
-				contentLen = Integer.parseInt(line.substring(16));
-				ContentLengthtag = true; // indicate the content begins
+			int offset = reader.getPayloadOffset();
+			int length = reader.getContentLength() - offset;
+			CharBuffer chars = decode(reader.getContent(), offset, length,
+					contentType);
+			if (contentType.startsWith("text/plain")) {
+				return getLuceneDoc(id, url, null, chars.toString(),
+						PLAINDOCUMENT);
+			}
+			extractor.extract(chars.array(), 0, chars.limit());
+			return getLuceneDoc(id, url, extractor.getTitle(), extractor
+					.getText(), HTMLDOCUMENT);
+		}
+		return null;
+	}
+
+	/** Decodes the payload into the reused char buffer. */
+	private CharBuffer decode(byte[] bytes, int offset, int length,
+			String contentType) {
+		String charsetName = charsetParameter(contentType);
+		if (charsetName == null) {
+			charsetName = sniffCharset(bytes, offset, Math.min(length,
+					SNIFF_LENGTH));
+		}
+		CharsetDecoder decoder = getDecoder(charsetName);
+		int capacity = (int) (length * (double) decoder.maxCharsPerByte()) + 1;
+		if (chars.capacity() < capacity) {
+			chars = CharBuffer.allocate(capacity);
+		}
+		chars.clear();
+		decoder.reset();
+		ByteBuffer in = ByteBuffer.wrap(bytes, offset, length);
+		decoder.decode(in, chars, true);
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	private CharsetDecoder getDecoder(String charsetName) {
+		if (charsetName == null) {
+			charsetName = encoding;
+		}
+		CharsetDecoder decoder = decoders.get(charsetName);
+		if (decoder == null) {
+			Charset charset;
+			try {
+				charset = Charset.forName(charsetName);
+			} catch (Exception e) {
+				// unknown or malformed names are common in crawled pages
+				charset = Charset.forName(encoding);
+			}
+			decoder = charset.newDecoder().onMalformedInput(
+					CodingErrorAction.REPLACE).onUnmappableCharacter(
+					CodingErrorAction.REPLACE);
+			decoders.put(charsetName, decoder);
+		}
+		return decoder;
+	}
 
-			} else if (WARCTRECIDtag && ContentTypetag && ContentLengthtag) {
+	static final int SNIFF_LENGTH = 2048;
 
-				int lineCount = 0;
+	static final byte[] CHARSET = WarcRecordReader.ascii("charset=");
 
-				while ((line = this.br.readLine()) != null) {
-					if (!line.startsWith(sWARCb) && !line.startsWith(sWARCType)
-							&& !line.startsWith("WARC-Record-ID:")
-							&& !line.startsWith("WARC-Warcinfo-ID:")) {// finished
-						if (lineCount++ < 10000) {
-							if (lineCount < 5
-									&& !contentType.matches("application/xml")) {
-								if (line.matches("<\\?xml version.{1,40}\\?>")) {
-									line = line.replace(
-											"<\\?xml version.{1,40}\\?>", "");
-								}
-							}
-							buf.append(line + "\n");
-						} else {
-							if (line.startsWith("WARC-TREC-ID:")) {
-								logger.warn("WARC error:" + "doc-" + id
-										+ " is too long");
-								break;
-							}
-						}
-					} else {
-						// System.out.println(count +":" + line);
-						break;
-					}
-				}
-				// System.out.println(id + ", len: " + contentLen + ", " +
-				// buf.length());
-				if (url == null) {
-					url = "";
-				}
+	/** the charset parameter of a content type, or null */
+	static String charsetParameter(String contentType) {
+		int pos = contentType.indexOf("charset=");
+		if (pos < 0) {
+			return null;
+		}
+		pos += 8;
+		int end = pos;
+		while (end < contentType.length()
+				&& isCharsetChar(contentType.charAt(end))) {
+			end++;
+		}
+		return end > pos ? contentType.substring(pos, end) : null;
+	}
 
-				if (contentType != null && contentType.startsWith("text/plain")) {
-					return getLuceneDoc(id, url, title, buf.toString(),
-							PLAINDOCUMENT);
-				} else if (contentType != null) {
-					try {
-						org.w3c.dom.Document domdoc = hf2doc
-								.getDocument(new StringReader(buf.toString()));
-						title = DomNodeUtils.getTitle(domdoc);
-						content = DomNodeUtils.getText(domdoc);
-						if (title == null) {
-							title = "";
-							// logger.info("titlenull contend: \t" +
-							// buf.toString() + "\n");
-							// System.out.println("titlenull contend: \t" +
-							// content);
-						}
-						// System.out.print("title:" + title);
-						// System.out.println("Content:\n" + content);
-						return getLuceneDoc(id, url, title, content,
-								HTMLDOCUMENT);
-					} catch (Exception e) {
-						logger.error("unsupported doc: " + id + ", "
-								+ contentType);
-						logger.debug(buf.toString());
-						logger.info(e.getMessage());
-						return getLuceneDoc(id, url,
-								title != null ? title : "", buf.toString()
-										.replaceAll("<[/!]?[^>]+>", ""),
-								PLAINDOCUMENT);
-					}
-					// System.out.println(id);
-				} else {
-					logger
-							.warn("ignore unsupported type (contentType == null): "
-									+ id + ", " + contentType);
-					return nextDoc();
+	/** looks for charset= in the head of an HTML page, e.g. in a meta tag */
+	static String sniffCharset(byte[] bytes, int offset, int length) {
+		int end = offset + length - CHARSET.length;
+		for (int i = offset; i <= end; i++) {
+			if ((bytes[i] == 'c' || bytes[i] == 'C')
+					&& WarcRecordReader.startsWithIgnoreCase(bytes, i,
+							CHARSET.length, CHARSET)) {
+				int start = i + CHARSET.length;
+				while (start < offset + length
+						&& (bytes[start] == '"' || bytes[start] == '\''))
+					start++;
+				int stop = start;
+				while (stop < offset + length
+						&& isCharsetChar((char) bytes[stop]))
+					stop++;
+				if (stop > start) {
+					return WarcRecordReader.latin1(bytes, start, stop - start)
+							.toLowerCase();
 				}
 			}
 		}
 		return null;
 	}
 
+	private static boolean isCharsetChar(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+				|| (c >= '0' && c <= '9') || c == '-' || c == '_' || c == '.'
+				|| c == ':';
+	}
+
 	final static int HTMLDOCUMENT = 0;
 	final static int PLAINDOCUMENT = 1;
 
@@ -265,34 +268,34 @@ public class Clueweb09Parser implements DocumentParser {
 	}
 
 	public void setup(InputStream is, File file, String encoding) {
-		conformsTotag = false;
 		bis = new BufferedInputStream(is, Cache);
 		this.file = file;
 		this.encoding = encoding;
-		try {
-			this.br = new BufferedReader(new InputStreamReader(bis, encoding));
-		} catch (UnsupportedEncodingException e) {
-			e.printStackTrace();
-		}
+		this.reader = new WarcRecordReader(bis);
 	}
 
 	/**
+	 * Parses a (gzipped) WARC file and reports the parse throughput.
+	 * 
 	 * @param args
-	 * @throws FileNotFoundException
+	 *            the WARC file
 	 */
-	public static void main(String[] args) throws FileNotFoundException {
-		String test = "<?xml version=\"1.0\" encoding=\"windows-1252\"?>add";
-		// String ptest = test.replaceAll("<[/!]?[^>]+>", "");
-		String ptest = test.replaceAll("<\\?xml version.{1,40}\\?>", "");
-		System.out.println(ptest);
-		System.out.println(ptest.substring(ptest.length()));
-
-		// Clueweb09Parser parser = new Clueweb09Parser();
-		// String s = "/home/yezheng/corpus/TREC/Clueweb09/00.warc.gz";
-		// File file = new File(s);
-		// FileInputStream is = new FileInputStream(file);
-		// parser.setup(is, file, "utf8");
-		// parser.indexAll();
-
+	public static void main(String[] args) throws Exception {
+		File file = new File(args[0]);
+		InputStream is = new FileInputStream(file);
+		if (file.getName().endsWith(".gz")) {
+			is = new GZIPInputStream(is, Cache);
+		}
+		Clueweb09Parser parser = new Clueweb09Parser();
+		parser.setup(is, file, "utf8");
+		long start = System.currentTimeMillis();
+		int docs = 0;
+		while (parser.nextDoc() != null) {
+			docs++;
+		}
+		parser.bis.close();
+		long time = System.currentTimeMillis() - start;
+		System.out.println(docs + " docs in " + time + " ms ("
+				+ (docs * 1000f / Math.max(1, time)) + " docs/s)");
 	}
 }
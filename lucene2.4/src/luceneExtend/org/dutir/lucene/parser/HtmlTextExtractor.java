@@ -0,0 +1,312 @@
+/**
+ *
+ */
+package org.dutir.lucene.parser;
+
+import java.util.HashMap;
+
+/**
+ * Extracts the title and the visible text of an HTML page in a single pass
+ * over its characters, without building a DOM. Tags, comments, processing
+ * instructions and declarations are dropped, the content of
+ * <tt>script</tt> and <tt>style</tt> elements is skipped, character
+ * references are decoded and runs of white space are collapsed. A space is
+ * emitted for every tag except inline ones such as <tt>b</tt> or
+ * <tt>span</tt>, so words on either side of a block boundary are not glued
+ * together. Malformed markup never fails: whatever cannot be read as a tag
+ * is taken as text.
+ * <p>
+ * An instance keeps its buffers between pages and is not thread-safe.
+ *
+ * @author yezheng
+ */
+public class HtmlTextExtractor {
+
+	private final StringBuilder text = new StringBuilder();
+	private final StringBuilder title = new StringBuilder();
+	private final StringBuilder name = new StringBuilder();
+
+	private char[] buf;
+	private int pos;
+	private int end;
+
+	private boolean inTitle;
+	private boolean titleDone;
+	private boolean pendingSpace;
+
+	/**
+	 * Extracts the text of <tt>buf[off..off+len)</tt>, replacing the result
+	 * of the previous call.
+	 */
+	public void extract(char[] buf, int off, int len) {
+		this.buf = buf;
+		this.pos = off;
+		this.end = off + len;
+		text.setLength(0);
+		title.setLength(0);
+		inTitle = titleDone = pendingSpace = false;
+
+		while (pos < end) {
+			char c = buf[pos];
+			if (c == '<') {
+				tag();
+			} else if (c == '&') {
+				pos++;
+				append(entity());
+			} else {
+				pos++;
+				append(c);
+			}
+		}
+		this.buf = null;
+	}
+
+	/** the text of the first <tt>title</tt> element, empty if none */
+	public String getTitle() {
+		return title.toString().trim();
+	}
+
+	/** the visible text of the page, title included */
+	public String getText() {
+		return text.toString();
+	}
+
+	private void append(char c) {
+		if (Character.isWhitespace(c) || c == '\u00a0') {
+			pendingSpace = true;
+			return;
+		}
+		if (pendingSpace) {
+			if (text.length() > 0)
+				text.append(' ');
+			if (inTitle && title.length() > 0)
+				title.append(' ');
+			pendingSpace = false;
+		}
+		text.append(c);
+		if (inTitle)
+			title.append(c);
+	}
+
+	/** Handles the markup starting at the '&lt;' at pos. */
+	private void tag() {
+		int start = pos++;
+		if (pos >= end) {
+			append('<');
+			return;
+		}
+		char c = buf[pos];
+		if (c == '!') {
+			if (startsWith("!--")) {
+				skipPast("-->", pos + 3);
+			} else if (startsWith("![CDATA[")) {
+				int from = pos + 8;
+				int close = indexOf("]]>", from);
+				int to = close < 0 ? end : close;
+				for (int i = from; i < to; i++)
+					append(buf[i]);
+				pos = close < 0 ? end : close + 3;
+			} else {
+				skipPast(">", pos);
+			}
+			pendingSpace = true;
+			return;
+		}
+		if (c == '?') {
+			skipPast(">", pos);
+			pendingSpace = true;
+			return;
+		}
+		boolean closing = c == '/';
+		if (closing)
+			pos++;
+		if (pos >= end || !isNameStart(buf[pos])) {
+			// "a < b", not a tag
+			pos = start + 1;
+			append('<');
+			return;
+		}
+		name.setLength(0);
+		while (pos < end && isNameChar(buf[pos]))
+			name.append(Character.toLowerCase(buf[pos++]));
+		skipTagBody();
+		String tagName = name.toString();
+
+		if (!closing && (tagName.equals("script") || tagName.equals("style"))) {
+			skipElement(tagName);
+			pendingSpace = true;
+			return;
+		}
+		if (tagName.equals("title")) {
+			if (!closing && !titleDone) {
+				inTitle = true;
+			} else if (closing && inTitle) {
+				inTitle = false;
+				titleDone = true;
+			}
+			pendingSpace = true;
+			return;
+		}
+		if (!isInline(tagName))
+			pendingSpace = true;
+	}
+
+	/** Moves past the attributes and the closing '&gt;' of a tag. */
+	private void skipTagBody() {
+		char quote = 0;
+		while (pos < end) {
+			char c = buf[pos++];
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == '>') {
+				return;
+			}
+		}
+	}
+
+	/** Skips the raw content of a script or style element. */
+	private void skipElement(String tagName) {
+		while (pos < end) {
+			int close = indexOf("</", pos);
+			if (close < 0) {
+				pos = end;
+				return;
+			}
+			pos = close + 2;
+			if (regionMatchesIgnoreCase(pos, tagName)) {
+				pos += tagName.length();
+				skipTagBody();
+				return;
+			}
+		}
+	}
+
+	/** Decodes the character reference after the '&amp;' at pos - 1. */
+	private char entity() {
+		int semi = -1;
+		int limit = Math.min(end, pos + 10);
+		for (int i = pos; i < limit; i++) {
+			char c = buf[i];
+			if (c == ';') {
+				semi = i;
+				break;
+			}
+			if (!Character.isLetterOrDigit(c) && c != '#')
+				break;
+		}
+		if (semi > pos) {
+			char decoded = 0;
+			if (buf[pos] == '#') {
+				try {
+					int code;
+					if (semi > pos + 1 && (buf[pos + 1] == 'x' || buf[pos + 1] == 'X'))
+						code = Integer.parseInt(new String(buf, pos + 2, semi
+								- pos - 2), 16);
+					else
+						code = Integer.parseInt(new String(buf, pos + 1, semi
+								- pos - 1));
+					if (code > 0 && code < 0xffff)
+						decoded = (char) code;
+				} catch (NumberFormatException e) {
+				}
+			} else {
+				Character named = ENTITIES.get(new String(buf, pos, semi - pos));
+				if (named != null)
+					decoded = named.charValue();
+			}
+			if (decoded != 0) {
+				pos = semi + 1;
+				return decoded;
+			}
+		}
+		return '&';
+	}
+
+	private boolean startsWith(String s) {
+		return pos + s.length() <= end && regionMatchesIgnoreCase(pos, s);
+	}
+
+	private boolean regionMatchesIgnoreCase(int from, String s) {
+		if (from + s.length() > end)
+			return false;
+		for (int i = 0; i < s.length(); i++)
+			if (Character.toLowerCase(buf[from + i]) != Character
+					.toLowerCase(s.charAt(i)))
+				return false;
+		return true;
+	}
+
+	private int indexOf(String s, int from) {
+		char first = s.charAt(0);
+		for (int i = from; i + s.length() <= end; i++)
+			if (buf[i] == first && regionMatchesIgnoreCase(i, s))
+				return i;
+		return -1;
+	}
+
+	private void skipPast(String s, int from) {
+		int i = indexOf(s, from);
+		pos = i < 0 ? end : i + s.length();
+	}
+
+	private static boolean isNameStart(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isNameChar(char c) {
+		return isNameStart(c) || (c >= '0' && c <= '9') || c == '-'
+				|| c == ':' || c == '_';
+	}
+
+	private static final String INLINE[] = { "a", "abbr", "acronym", "b",
+			"big", "cite", "code", "em", "font", "i", "kbd", "q", "s", "samp",
+			"small", "span", "strike", "strong", "sub", "sup", "tt", "u",
+			"var" };
+
+	private static boolean isInline(String tagName) {
+		for (int i = 0; i < INLINE.length; i++)
+			if (INLINE[i].equals(tagName))
+				return true;
+		return false;
+	}
+
+	private static final HashMap<String, Character> ENTITIES = new HashMap<String, Character>();
+	static {
+		String names[] = { "nbsp", "iexcl", "cent", "pound", "curren", "yen",
+				"brvbar", "sect", "uml", "copy", "ordf", "laquo", "not", "shy",
+				"reg", "macr", "deg", "plusmn", "sup2", "sup3", "acute",
+				"micro", "para", "middot", "cedil", "sup1", "ordm", "raquo",
+				"frac14", "frac12", "frac34", "iquest", "Agrave", "Aacute",
+				"Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+				"Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute",
+				"Icirc", "Iuml", "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc",
+				"Otilde", "Ouml", "times", "Oslash", "Ugrave", "Uacute",
+				"Ucirc", "Uuml", "Yacute", "THORN", "szlig", "agrave",
+				"aacute", "acirc", "atilde", "auml", "aring", "aelig",
+				"ccedil", "egrave", "eacute", "ecirc", "euml", "igrave",
+				"iacute", "icirc", "iuml", "eth", "ntilde", "ograve", "oacute",
+				"ocirc", "otilde", "ouml", "divide", "oslash", "ugrave",
+				"uacute", "ucirc", "uuml", "yacute", "thorn", "yuml" };
+		// ISO 8859-1 entities are U+00A0 .. U+00FF in order
+		for (int i = 0; i < names.length; i++)
+			ENTITIES.put(names[i], Character.valueOf((char) (0xa0 + i)));
+		ENTITIES.put("amp", Character.valueOf('&'));
+		ENTITIES.put("lt", Character.valueOf('<'));
+		ENTITIES.put("gt", Character.valueOf('>'));
+		ENTITIES.put("quot", Character.valueOf('"'));
+		ENTITIES.put("apos", Character.valueOf('\''));
+		ENTITIES.put("ndash", Character.valueOf('\u2013'));
+		ENTITIES.put("mdash", Character.valueOf('\u2014'));
+		ENTITIES.put("lsquo", Character.valueOf('\u2018'));
+		ENTITIES.put("rsquo", Character.valueOf('\u2019'));
+		ENTITIES.put("ldquo", Character.valueOf('\u201c'));
+		ENTITIES.put("rdquo", Character.valueOf('\u201d'));
+		ENTITIES.put("bull", Character.valueOf('\u2022'));
+		ENTITIES.put("hellip", Character.valueOf('\u2026'));
+		ENTITIES.put("euro", Character.valueOf('\u20ac'));
+		ENTITIES.put("trade", Character.valueOf('\u2122'));
+	}
+}
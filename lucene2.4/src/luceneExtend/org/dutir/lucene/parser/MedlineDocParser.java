@@ -4,28 +4,30 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.IOException;
 import java.io.InputStream;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
 import org.apache.log4j.Logger;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Field.Store;
 import org.apache.lucene.document.Field.TermVector;
 import org.apache.lucene.index.IndexWriter;
-import org.dutir.parser.medline.AuthorList;
-import org.dutir.parser.medline.Chemical;
-import org.dutir.parser.medline.KeywordList;
-import org.dutir.parser.medline.MedlineCitation;
-import org.dutir.parser.medline.MedlineHandler;
-import org.dutir.parser.medline.MedlineParser;
-import org.dutir.parser.medline.MeshHeading;
-import org.dutir.parser.medline.Topic;
-import org.xml.sax.InputSource;
-
-public class MedlineDocParser implements DocumentParser, MedlineHandler {
-	static Logger logger = Logger.getLogger(ChemDocParser.class);
-	InputStream bis = null;
+
+/**
+ * Parses MEDLINE citation sets with a StAX pull parser, one
+ * <tt>MedlineCitation</tt> at a time, reading only the elements indexed:
+ * the PMID, the article title, the abstract, the MeSH headings and the
+ * chemicals. Deleted citations are ignored.
+ */
+public class MedlineDocParser implements DocumentParser {
+	static Logger logger = Logger.getLogger(MedlineDocParser.class);
+	/** factories are not shared between threads */
+	private final XMLInputFactory factory = XMLRecordReader.newFactory();
+	XMLRecordReader reader = null;
 	File file = null;
 	private String encoding = "utf8";
 	IndexWriter writer = null;
@@ -36,22 +38,95 @@ public class MedlineDocParser implements DocumentParser, MedlineHandler {
 
 	@Override
 	public void indexAll() {
-		boolean saveXML = false;
-		MedlineParser parser = new MedlineParser(saveXML);
-		parser.setHandler(this);
-		InputSource inputSource = new InputSource(bis);
 		try {
-			parser.parse(inputSource);
-		} catch (IOException e) {
+			Document doc = nextDoc();
+			while (doc != null) {
+				this.writer.addDocument(doc);
+				doc = nextDoc();
+			}
+		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
 	public Document nextDoc() throws Exception {
-		// TODO Auto-generated method stub
+		while (reader != null) {
+			try {
+				Citation citation = new Citation();
+				if (!reader.read(citation)) {
+					close();
+					return null;
+				}
+				if (citation.pmid != null)
+					return citation.toDocument();
+			} catch (XMLStreamException e) {
+				logger.warn("file parser error in " + file + ":", e);
+				close();
+			}
+		}
 		return null;
 	}
 
+	private void close() {
+		reader.close();
+		reader = null;
+	}
+
+	static class Citation extends XMLRecordReader.Record {
+		boolean started = false;
+		String pmid = null;
+		String title = "";
+		StringBuilder absBuf = new StringBuilder();
+		StringBuilder meshBuf = new StringBuilder();
+		StringBuilder chemBuf = new StringBuilder();
+
+		boolean isRecord(String name) {
+			return name.equals("MedlineCitation");
+		}
+
+		boolean start(String name, XMLStreamReader xml) {
+			if (name.equals("MedlineCitation"))
+				started = true;
+			if (!started)
+				return false;
+			// the PMID of the citation comes before those it refers to
+			return (pmid == null && name.equals("PMID"))
+					|| name.equals("ArticleTitle")
+					|| name.equals("AbstractText")
+					|| name.equals("DescriptorName")
+					|| name.equals("QualifierName")
+					|| name.equals("NameOfSubstance");
+		}
+
+		void text(String name, String text) {
+			if (name.equals("PMID")) {
+				pmid = text.trim();
+			} else if (name.equals("ArticleTitle")) {
+				title = text;
+			} else if (name.equals("AbstractText")) {
+				if (absBuf.length() > 0)
+					absBuf.append(' ');
+				absBuf.append(text);
+			} else if (name.equals("NameOfSubstance")) {
+				chemBuf.append(text).append(' ');
+			} else {
+				meshBuf.append(text).append(' ');
+			}
+		}
+
+		Document toDocument() {
+			Document doc = new Document();
+			Field pmidF = new Field("pmid", pmid, Store.YES,
+					Field.Index.NOT_ANALYZED_NO_NORMS, TermVector.NO);
+			Field contentF = new Field("content", title + " " + absBuf + " "
+					+ meshBuf + " " + chemBuf, Store.NO, Field.Index.ANALYZED,
+					TermVector.YES);
+			doc.add(pmidF);
+			doc.add(contentF);
+			return doc;
+		}
+	}
+
 	@Override
 	public void setIndexWriter(IndexWriter writer) {
 		this.writer = writer;
@@ -69,65 +144,17 @@ public class MedlineDocParser implements DocumentParser, MedlineHandler {
 
 	@Override
 	public void setup(InputStream is, File file, String encoding) {
-		bis = new BufferedInputStream(is, Cache);
 		this.file = file;
 		this.encoding = encoding;
-	}
-
-	@Override
-	public void handle(MedlineCitation citation) {
-		Document doc = new Document();
-		Field pmidF = new Field("pmid", citation.pmid(), Store.YES,
-				Field.Index.NOT_ANALYZED_NO_NORMS, TermVector.NO);
-		KeywordList kwlist[] = citation.keywordLists();
-		MeshHeading mheading[] = citation.meshHeadings();
-		AuthorList alist = citation.article().authorList();
-		// ////////keywords//////////
-		StringBuffer keywordsBuf = new StringBuffer();
-		for (int i = 0; i < kwlist.length; i++) {
-			Topic topics[] = kwlist[i].keywords();
-			for (int j = 0; j < topics.length; j++) {
-				keywordsBuf.append(topics[j].topic() + " ");
-			}
-		}
-
-		// ///////////////mheadings/////////////////////
-		StringBuffer meshBuf = new StringBuffer();
-		for (int i = 0; i < mheading.length; i++) {
-			Topic topics[] = mheading[i].topics();
-			Topic qtopics[] = mheading[i].qualifiers();
-			for (int j = 0; j < topics.length; j++) {
-				meshBuf.append(topics[j].topic() + " ");
-			}
-			for (int j = 0; j < qtopics.length; j++) {
-				meshBuf.append(qtopics[j].topic() + " ");
-			}
-		}
-		/////////////////Chemical////////////////////
-		Chemical[] chems = citation.chemicals();
-		StringBuffer chemBuf = new StringBuffer();
-		for (int i = 0; i < chems.length; i++) {
-			chemBuf.append(chems[i].nameOfSubstance() + " ");
-		}
-		
-		// Field authorF
-		Field contentF = new Field("content", citation.article().articleTitle() + " " + citation.article().abstrct()
-				.text() + " " + meshBuf.toString() +" " + chemBuf, Store.NO, Field.Index.ANALYZED,
-				TermVector.YES);
-		doc.add(pmidF);
-		doc.add(contentF);
 		try {
-			this.writer.addDocument(doc);
-		} catch (Exception e) {
-			e.printStackTrace();
+			reader = new XMLRecordReader(factory, new BufferedInputStream(is,
+					Cache), null);
+		} catch (XMLStreamException e) {
+			logger.warn("file parser error in " + file + ":", e);
+			reader = null;
 		}
 	}
 
-	@Override
-	public void delete(String pmid) {
-		throw new UnsupportedOperationException();
-	}
-
 	public static void main(String args[]) throws FileNotFoundException {
 		MedlineDocParser parser = new MedlineDocParser();
 		String s = "conf/Medline_Samp2009.xml";
@@ -0,0 +1,256 @@
+/**
+ *
+ */
+package org.dutir.lucene.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the records of a WARC file (as distributed with ClueWeb09) directly
+ * from bytes. Only the header block of a record is split into lines; the
+ * content block is copied in one piece, using the <tt>Content-Length</tt>
+ * of the record header. For <tt>response</tt> records the HTTP headers at
+ * the start of the content can be located with {@link #getPayloadOffset()},
+ * and the HTTP <tt>Content-Type</tt> is available without decoding the
+ * payload.
+ * <p>
+ * The byte arrays returned are reused by the next call to {@link #next()}.
+ *
+ * @author yezheng
+ */
+public class WarcRecordReader {
+
+	static final byte[] WARC_VERSION = ascii("WARC/");
+	static final byte[] WARC_TYPE = ascii("WARC-Type:");
+	static final byte[] WARC_TREC_ID = ascii("WARC-TREC-ID:");
+	static final byte[] WARC_TARGET_URI = ascii("WARC-Target-URI:");
+	static final byte[] CONTENT_LENGTH = ascii("Content-Length:");
+	static final byte[] CONTENT_TYPE = ascii("Content-Type:");
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int pos = 0;
+	private int limit = 0;
+
+	private byte[] line = new byte[1024];
+	private int lineLength;
+
+	private byte[] content = new byte[64 * 1024];
+	private int contentLength;
+
+	private String type;
+	private String trecId;
+	private String targetURI;
+
+	private int payloadOffset;
+	private String httpContentType;
+
+	public WarcRecordReader(InputStream in) {
+		this(in, 64 * 1024);
+	}
+
+	public WarcRecordReader(InputStream in, int bufferSize) {
+		this.in = in;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Advances to the next record.
+	 *
+	 * @return false at the end of the stream
+	 */
+	public boolean next() throws IOException {
+		// skip the blank lines between records; a content block that was
+		// shorter than announced leaves garbage that is skipped too
+		do {
+			if (!readLine())
+				return false;
+		} while (!startsWith(WARC_VERSION));
+
+		type = trecId = targetURI = httpContentType = null;
+		payloadOffset = -1;
+		long length = -1;
+		while (readLine() && lineLength > 0) {
+			if (startsWith(WARC_TYPE))
+				type = value(WARC_TYPE.length);
+			else if (startsWith(WARC_TREC_ID))
+				trecId = value(WARC_TREC_ID.length);
+			else if (startsWith(WARC_TARGET_URI))
+				targetURI = value(WARC_TARGET_URI.length);
+			else if (startsWith(CONTENT_LENGTH))
+				length = Long.parseLong(value(CONTENT_LENGTH.length));
+		}
+		if (length < 0 || length > Integer.MAX_VALUE)
+			throw new IOException("invalid Content-Length in WARC record "
+					+ trecId);
+		readContent((int) length);
+		return true;
+	}
+
+	/** the WARC-Type of the record, e.g. <tt>response</tt> */
+	public String getType() {
+		return type;
+	}
+
+	/** the WARC-TREC-ID of the record, or null */
+	public String getTrecId() {
+		return trecId;
+	}
+
+	/** the WARC-Target-URI of the record, or null */
+	public String getTargetURI() {
+		return targetURI;
+	}
+
+	/** the content block of the record, valid up to {@link #getContentLength()} */
+	public byte[] getContent() {
+		return content;
+	}
+
+	public int getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * @return the offset in the content of the HTTP payload, i.e. the byte
+	 *         after the HTTP headers, or 0 if the content has no headers.
+	 */
+	public int getPayloadOffset() {
+		if (payloadOffset < 0)
+			parseHttpHeaders();
+		return payloadOffset;
+	}
+
+	/** the lower-cased HTTP Content-Type of a response record, or null */
+	public String getHttpContentType() {
+		if (payloadOffset < 0)
+			parseHttpHeaders();
+		return httpContentType;
+	}
+
+	private void parseHttpHeaders() {
+		payloadOffset = 0;
+		int start = 0;
+		while (start < contentLength) {
+			int end = start;
+			while (end < contentLength && content[end] != '\n')
+				end++;
+			int len = end - start;
+			if (len > 0 && content[start + len - 1] == '\r')
+				len--;
+			if (len == 0) {
+				payloadOffset = Math.min(end + 1, contentLength);
+				return;
+			}
+			if (httpContentType == null
+					&& startsWithIgnoreCase(content, start, len, CONTENT_TYPE))
+				httpContentType = latin1(content, start + CONTENT_TYPE.length,
+						len - CONTENT_TYPE.length).trim().toLowerCase();
+			start = end + 1;
+		}
+		// no blank line: the whole block is headers, or there are none
+		if (httpContentType == null)
+			payloadOffset = 0;
+		else
+			payloadOffset = contentLength;
+	}
+
+	private void readContent(int length) throws IOException {
+		if (content.length < length)
+			content = new byte[Math.max(length, content.length * 2)];
+		int upto = 0;
+		while (upto < length) {
+			if (pos == limit && !fill())
+				break;
+			int n = Math.min(length - upto, limit - pos);
+			System.arraycopy(buffer, pos, content, upto, n);
+			pos += n;
+			upto += n;
+		}
+		contentLength = upto;
+	}
+
+	private boolean fill() throws IOException {
+		int n = in.read(buffer, 0, buffer.length);
+		if (n <= 0)
+			return false;
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+	/** Reads the next line, without the line terminator, into line. */
+	private boolean readLine() throws IOException {
+		lineLength = 0;
+		boolean read = false;
+		while (true) {
+			if (pos == limit && !fill())
+				return read;
+			read = true;
+			int start = pos;
+			while (pos < limit && buffer[pos] != '\n')
+				pos++;
+			int n = pos - start;
+			if (lineLength + n > line.length) {
+				byte[] newLine = new byte[Math.max(lineLength + n,
+						line.length * 2)];
+				System.arraycopy(line, 0, newLine, 0, lineLength);
+				line = newLine;
+			}
+			System.arraycopy(buffer, start, line, lineLength, n);
+			lineLength += n;
+			if (pos < limit) {
+				pos++; // the '\n'
+				if (lineLength > 0 && line[lineLength - 1] == '\r')
+					lineLength--;
+				return true;
+			}
+		}
+	}
+
+	private boolean startsWith(byte[] prefix) {
+		if (lineLength < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++)
+			if (line[i] != prefix[i])
+				return false;
+		return true;
+	}
+
+	private String value(int offset) {
+		return latin1(line, offset, lineLength - offset).trim();
+	}
+
+	/** header values are ASCII, decoded without a charset lookup */
+	static String latin1(byte[] b, int off, int len) {
+		char[] chars = new char[len];
+		for (int i = 0; i < len; i++)
+			chars[i] = (char) (b[off + i] & 0xff);
+		return new String(chars);
+	}
+
+	static boolean startsWithIgnoreCase(byte[] b, int off, int len,
+			byte[] prefix) {
+		if (len < prefix.length)
+			return false;
+		for (int i = 0; i < prefix.length; i++) {
+			int c = b[off + i];
+			if (c >= 'A' && c <= 'Z')
+				c += 'a' - 'A';
+			int p = prefix[i];
+			if (p >= 'A' && p <= 'Z')
+				p += 'a' - 'A';
+			if (c != p)
+				return false;
+		}
+		return true;
+	}
+
+	static byte[] ascii(String s) {
+		byte[] b = new byte[s.length()];
+		for (int i = 0; i < b.length; i++)
+			b[i] = (byte) s.charAt(i);
+		return b;
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ */
+package org.dutir.lucene.parser;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Pulls the records of an XML stream one at a time with StAX, so that a
+ * parser holds the fields of the current record only, never a DOM of the
+ * file. A record is an element its {@link Record} recognises, or the whole
+ * file when it has none. An element the record asks for is collected as the
+ * concatenation of its text, the way the DOM parsers read it, and the
+ * elements within it are not seen.
+ *
+ * @author yezheng
+ */
+class XMLRecordReader {
+
+	/** The fields of a record, filled element by element. */
+	static abstract class Record {
+		/** @return whether the element is a whole record */
+		abstract boolean isRecord(String name);
+
+		/**
+		 * Called at the start of every element outside the collected ones,
+		 * the record element included.
+		 *
+		 * @return whether to collect the text of the element
+		 */
+		abstract boolean start(String name, XMLStreamReader xml);
+
+		/** the text of an element {@link #start} asked for */
+		abstract void text(String name, String text);
+
+		/** the end of an element whose text was not collected */
+		void end(String name) {
+		}
+	}
+
+	/**
+	 * @return a factory that neither reads external DTDs nor fails on the
+	 *         entities they would define
+	 */
+	static XMLInputFactory newFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+				Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES,
+				Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+		return factory;
+	}
+
+	private final XMLStreamReader xml;
+	private int depth = 0;
+
+	/**
+	 * @param in
+	 *            the stream, left open: it may be an entry of an archive
+	 * @param encoding
+	 *            the encoding of the stream, or null to take it from the XML
+	 *            declaration
+	 */
+	XMLRecordReader(XMLInputFactory factory, InputStream in, String encoding)
+			throws XMLStreamException {
+		// the reader closes the stream it reads when it is closed
+		in = new FilterInputStream(in) {
+			public void close() {
+			}
+		};
+		xml = encoding == null ? factory.createXMLStreamReader(in) : factory
+				.createXMLStreamReader(in, encoding);
+	}
+
+	/**
+	 * Reads the next record into <code>record</code>.
+	 *
+	 * @return false at the end of the stream, when there is no further
+	 *         element
+	 */
+	boolean read(Record record) throws XMLStreamException {
+		boolean any = false;
+		int recordDepth = -1;
+		StringBuilder text = null;
+		String textName = null;
+		int textDepth = 0;
+		while (xml.hasNext()) {
+			switch (xml.next()) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				if (text != null)
+					break;
+				String name = xml.getLocalName();
+				if (recordDepth < 0 && record.isRecord(name))
+					recordDepth = depth;
+				any = true;
+				if (record.start(name, xml)) {
+					text = new StringBuilder();
+					textName = name;
+					textDepth = depth;
+				}
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if (text != null)
+					text.append(xml.getTextCharacters(), xml.getTextStart(),
+							xml.getTextLength());
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				if (text == null)
+					record.end(xml.getLocalName());
+				else if (depth == textDepth) {
+					record.text(textName, text.toString());
+					text = null;
+				}
+				if (depth-- == recordDepth)
+					return true;
+				break;
+			}
+		}
+		return any;
+	}
+
+	void close() {
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+		}
+	}
+}
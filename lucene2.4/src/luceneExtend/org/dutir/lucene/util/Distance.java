@@ -498,6 +498,58 @@ public class Distance {
 		}
 	}
 
+	/**
+	 * The windows of a term as windowsForTerms marks them, as prefix counts:
+	 * the windows before window j holding the term are windows[j].
+	 *
+	 * @return windows, of one entry more than the windows of the document
+	 */
+	public static int[] windowCounts(int[] blocksOfTerm, int start, int end,
+			int windowSize, int documentLengthInTokens) {
+		int numberOfNGrams = documentLengthInTokens < windowSize ? 1
+				: documentLengthInTokens - windowSize + 1;
+		int[] windows = new int[numberOfNGrams + 1];
+		// the windows of each block start at lo and end at hi
+		for (int i = start; i < end; i++) {
+			int lo = Math.max(0, blocksOfTerm[i] - windowSize + 1);
+			int hi = Math.min(blocksOfTerm[i], numberOfNGrams - 1);
+			if (lo <= hi) {
+				windows[lo + 1]++;
+				if (hi + 2 <= numberOfNGrams)
+					windows[hi + 2]--;
+			}
+		}
+		int open = 0;
+		for (int j = 1; j <= numberOfNGrams; j++) {
+			open += windows[j];
+			windows[j] = windows[j - 1] + (open > 0 ? 1 : 0);
+		}
+		return windows;
+	}
+
+	/**
+	 * The count of noTimes for a term of increasing positions and a second
+	 * term whose windowCounts are given, in time linear in the positions of
+	 * the first term.
+	 */
+	public static int noTimes(final int[] positionOfTerm1, int start1,
+			int end1, final int[] windowsOfTerm2, final int windowSize) {
+		int numberOfNGrams = windowsOfTerm2.length - 1;
+		int count = 0;
+		// the windows counted so far end before next
+		int next = 0;
+		for (int i = start1; i < end1; i++) {
+			int lo = Math.max(next,
+					Math.max(0, positionOfTerm1[i] - windowSize + 1));
+			int hi = Math.min(positionOfTerm1[i], numberOfNGrams - 1);
+			if (lo <= hi) {
+				count += windowsOfTerm2[hi + 1] - windowsOfTerm2[lo];
+				next = hi + 1;
+			}
+		}
+		return count;
+	}
+
 	/** number of blocks where */
 	public static int noTimesSameOrder(final int[] blocksOfTerm1, int start1,
 			int end1, final int[] blocksofTerm2, int start2, int end2,
@@ -0,0 +1,165 @@
+/**
+ *
+ */
+package org.dutir.lucene.util;
+
+import org.apache.lucene.index.Term;
+import org.apache.lucene.postProcess.QueryExpansionModel;
+import org.apache.lucene.search.Searcher;
+import org.dutir.lucene.util.ExpansionTerms.ExpansionTerm;
+
+/**
+ * The candidate terms of a feedback set laid out as parallel arrays, so
+ * that a {@link QueryExpansionModel} weights all of them in one call of
+ * {@link QueryExpansionModel#score(float[], float[], float[], int)} and the
+ * best ones are selected without sorting them all.
+ * <p>
+ * The candidates eligible for expansion, those in at least
+ * <code>minDocuments</code> feedback documents, come first; the others
+ * follow with a weight of 0, so they are only selected when there are not
+ * enough eligible ones.
+ *
+ * @author yezheng
+ */
+public class ExpansionCandidates {
+
+	public final ExpansionTerm terms[];
+	/** the number of eligible candidates, at the start of the arrays */
+	public final int numEligible;
+	/** frequency in the feedback documents */
+	public final float withinDocumentFrequency[];
+	/** number of feedback documents containing the term */
+	public final int documentFrequency[];
+	/** frequency in the collection */
+	public final float termFrequency[];
+	/** number of documents of the collection containing the term */
+	public final float collectionDocumentFrequency[];
+	public final float weights[];
+
+	public ExpansionCandidates(ExpansionTerm candidates[], int minDocuments) {
+		int n = candidates.length;
+		terms = new ExpansionTerm[n];
+		int eligible = 0;
+		for (int i = 0; i < n; i++)
+			if (candidates[i].getDocumentFrequency() >= minDocuments)
+				terms[eligible++] = candidates[i];
+		numEligible = eligible;
+		for (int i = 0; i < n; i++)
+			if (candidates[i].getDocumentFrequency() < minDocuments)
+				terms[eligible++] = candidates[i];
+
+		withinDocumentFrequency = new float[n];
+		documentFrequency = new int[n];
+		termFrequency = new float[n];
+		collectionDocumentFrequency = new float[n];
+		weights = new float[n];
+		for (int i = 0; i < n; i++) {
+			withinDocumentFrequency[i] = terms[i].getWithinDocumentFrequency();
+			documentFrequency[i] = terms[i].getDocumentFrequency();
+		}
+	}
+
+	public int size() {
+		return terms.length;
+	}
+
+	/**
+	 * Reads the collection statistics of the eligible candidates, in one
+	 * lookup through the {@link TermsCache}.
+	 */
+	public void lookup(String field, Searcher searcher) {
+		Term lookup[] = new Term[numEligible];
+		Term prototype = new Term(field, "");
+		for (int i = 0; i < numEligible; i++)
+			lookup[i] = prototype.createTerm(terms[i].getTerm());
+		TermsCache.Item items[] = TermsCache.getInstance().getItems(lookup,
+				searcher);
+		for (int i = 0; i < numEligible; i++) {
+			termFrequency[i] = items[i].ctf;
+			collectionDocumentFrequency[i] = items[i].df;
+		}
+	}
+
+	/**
+	 * Weights the eligible candidates with the model and sets the weight of
+	 * every candidate's {@link ExpansionTerm}.
+	 */
+	public void score(QueryExpansionModel model) {
+		model.score(withinDocumentFrequency, termFrequency, weights,
+				numEligible);
+		for (int i = 0; i < terms.length; i++)
+			terms[i].setWeightExpansion(weights[i]);
+	}
+
+	/** @return the position of the first candidate of highest weight */
+	public int argMax() {
+		int max = 0;
+		for (int i = 1; i < weights.length; i++)
+			if (weights[i] > weights[max])
+				max = i;
+		return max;
+	}
+
+	/**
+	 * Returns the positions of the <code>k</code> candidates of highest
+	 * weight, highest first; of equal weights, the earlier candidate
+	 * ranks higher. Keeps a heap of the best <code>k</code> seen.
+	 */
+	public int[] top(int k) {
+		k = Math.min(k, weights.length);
+		int heap[] = new int[k];
+		int size = 0;
+		for (int i = 0; i < weights.length; i++) {
+			if (size < k) {
+				heap[size] = i;
+				up(heap, size++);
+			} else if (better(i, heap[0])) {
+				heap[0] = i;
+				down(heap, size);
+			}
+		}
+		int result[] = new int[k];
+		while (size > 0) {
+			result[--size] = heap[0];
+			heap[0] = heap[size];
+			down(heap, size);
+		}
+		return result;
+	}
+
+	private boolean better(int a, int b) {
+		return weights[a] > weights[b] || (weights[a] == weights[b] && a < b);
+	}
+
+	/** min-heap on {@link #better(int, int)}: the worst kept is at the root */
+	private void up(int heap[], int i) {
+		int x = heap[i];
+		while (i > 0) {
+			int parent = (i - 1) >>> 1;
+			if (!better(heap[parent], x))
+				break;
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = x;
+	}
+
+	private void down(int heap[], int size) {
+		if (size == 0)
+			return;
+		int x = heap[0];
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size)
+				break;
+			if (child + 1 < size && better(heap[child], heap[child + 1]))
+				child++;
+			if (!better(x, heap[child]))
+				break;
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = x;
+	}
+}
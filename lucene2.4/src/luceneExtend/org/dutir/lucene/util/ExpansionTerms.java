@@ -314,50 +314,16 @@ public class ExpansionTerms {
 
 		final boolean ConservativeQE = (numberOfExpandedTerms == 0);
 
-		// weight the terms
-		int posMaxWeight = 0;
-		int size = terms.values().size();
-		ExpansionTerms.ExpansionTerm[] allTerms = new ExpansionTerms.ExpansionTerm[size];
-
-		allTerms = (ExpansionTerm[]) terms.values().toArray(allTerms);
-
-		final int len = allTerms.length;
-
-		for (int i = 0; i < len; i++) {
-			try {
-				// only consider terms which occur in 2 or more documents. Alter
-				// using the expansion.mindocuments property.
-				if (allTerms[i].getDocumentFrequency() < EXPANSION_MIN_DOCUMENTS ) {
-					allTerms[i].setWeightExpansion(0);
-					continue;
-				}
-
-				// Term term = new Term(field, allTerms[i].getTerm());
-				// float TF = searcher.termFreq(term);
-				// float Nt = searcher.docFreq(term);
-				TermsCache.Item item = getItem(allTerms[i].getTerm());
-				float TF = item.ctf;
-				float Nt = item.df;
-
-				allTerms[i].setWeightExpansion(QEModel.score(allTerms[i]
-						.getWithinDocumentFrequency(), TF));
-				if (allTerms[i].getWeightExpansion() > allTerms[posMaxWeight]
-						.getWeightExpansion())
-					posMaxWeight = i;
-
-			} catch (NullPointerException npe) {
-				// TODO print something more explanatory here
-				logger
-						.fatal(
-								"A nullpointer exception occured while iterating over expansion terms at iteration number: "
-										+ "i = " + i, npe);
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-
-		// sort the terms by weight
+		// weight the terms, the eligible ones in one batch: only consider
+		// terms which occur in 2 or more documents. Alter using the
+		// expansion.mindocuments property.
+		ExpansionCandidates candidates = new ExpansionCandidates(terms
+				.values().toArray(new ExpansionTerm[terms.size()]),
+				EXPANSION_MIN_DOCUMENTS);
+		candidates.lookup(field, searcher);
+		candidates.score(QEModel);
+		ExpansionTerm[] allTerms = candidates.terms;
+		int posMaxWeight = candidates.argMax();
 
 		normaliser = allTerms[posMaxWeight].getWeightExpansion();
 		if (QEModel.PARAMETER_FREE) {
@@ -374,21 +340,10 @@ public class ExpansionTerms {
 		THashSet<ExpansionTerm> expandedTerms = new THashSet<ExpansionTerm>();
 		if (!ConservativeQE) {
 
-			for (int i = 0; i < numberOfExpandedTerms; i++) {
-				int position = i;
-				for (int j = i; j < len; j++) {
-					if (allTerms[j].getWeightExpansion() > allTerms[position]
-							.getWeightExpansion())
-						position = j;
-				}
-				if (position != i) {
-					ExpansionTerm temp = allTerms[position];
-					allTerms[position] = allTerms[i];
-					allTerms[i] = temp;
-				}
-
-				ExpansionTerm tmpETerm = allTerms[i].clone();
-				tmpETerm.setWeightExpansion(allTerms[i].getWeightExpansion()
+			int top[] = candidates.top(numberOfExpandedTerms);
+			for (int i = 0; i < top.length; i++) {
+				ExpansionTerm tmpETerm = allTerms[top[i]].clone();
+				tmpETerm.setWeightExpansion(tmpETerm.getWeightExpansion()
 						/ normaliser);
 
 				// expandedTerms[i].normalisedFrequency =
@@ -438,24 +393,6 @@ public class ExpansionTerms {
 	// this.originalTermids.add(query.getTermCode(terms[i]));
 	// }
 	// }
-	private Item getItem(String term) {
-		Term lterm = new Term(field, term);
-		TermsCache.Item item = tcache.get(lterm);
-		if (item == null) {
-			try {
-				float TF = searcher.termFreq(lterm);
-				float Nt = searcher.docFreq(lterm);
-				item = new TermsCache.Item(Nt, TF);
-				tcache.put(lterm, item);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-
-		}
-		return item;
-	}
-
 	/**
 	 * Returns the weight of a given term, computed by the specified query
 	 * expansion model.
@@ -531,38 +468,15 @@ public class ExpansionTerms {
 		QEModel.setAverageDocumentLength(this.averageDocumentLength);
 		QEModel.setNumberOfDocuments(this.numberOfDocuments);
 
-		// weight the terms
-		int posMaxWeight = 0;
-
-		ExpansionTerm[] allTerms = terms.values().toArray(new ExpansionTerm[0]);
-		final int len = allTerms.length;
-
-		for (int i = 0; i < len; i++) {
-			try {
-				if (allTerms[i].getDocumentFrequency() <= EXPANSION_MIN_DOCUMENTS) {
-					allTerms[i].setWeightExpansion(0);
-					continue;
-				}
-				Term term = new Term(field, allTerms[i].getTerm());
-				float TF = searcher.termFreq(term);
-				float Nt = searcher.docFreq(term);
-				allTerms[i].setWeightExpansion((float) QEModel.score(
-						allTerms[i].getWithinDocumentFrequency(), TF));
-				if (allTerms[i].getWeightExpansion() > allTerms[posMaxWeight]
-						.getWeightExpansion())
-					posMaxWeight = i;
-
-			} catch (NullPointerException npe) {
-				// TODO print something more explanatory here
-				logger
-						.fatal(
-								"A nullpointer exception occured while assigning weights on expansion terms at iteration: "
-										+ "i = " + i, npe);
-			} catch (IOException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
+		// weight the terms which occur in more than
+		// expansion.mindocuments documents, in one batch
+		ExpansionCandidates candidates = new ExpansionCandidates(terms
+				.values().toArray(new ExpansionTerm[terms.size()]),
+				EXPANSION_MIN_DOCUMENTS + 1);
+		candidates.lookup(field, searcher);
+		candidates.score(QEModel);
+		ExpansionTerm[] allTerms = candidates.terms;
+		int posMaxWeight = candidates.argMax();
 
 		// sort the terms by weight
 		normaliser = allTerms[posMaxWeight].getWeightExpansion();
@@ -579,7 +493,7 @@ public class ExpansionTerms {
 		// logger.debug("term with the maximum weight: " + lexicon.getTerm() +
 		// ", normaliser: " + Rounding.toString(normaliser, 4));
 		// }
-		for (int i = 0; i < len; i++) {
+		for (int i = 0; i < allTerms.length; i++) {
 			allTerms[i].setWeightExpansion(allTerms[i].getWeightExpansion()
 					/ normaliser);
 			// expandedTerms[i].normalisedFrequency =
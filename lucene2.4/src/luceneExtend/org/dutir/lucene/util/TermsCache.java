@@ -3,16 +3,22 @@
  */
 package org.dutir.lucene.util;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.nio.channels.FileLock;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.apache.lucene.search.Searcher;
+import org.dutir.lucene.IndexUtility;
 import org.dutir.util.AbstractExternalizable;
 import org.dutir.util.FastCache;
 
@@ -20,6 +26,12 @@ import org.dutir.util.FastCache;
  * @author yezheng This class is used to cache the ctf and df for a term. The
  *         speed can be boosted greatly, especially when we search from multiple
  *         indexes.
+ *         <p>
+ *         The cached values belong to one state of the index, identified by
+ *         {@link IndexUtility#indexSignature}. The signature is saved next to
+ *         the cache file, and the cache is dropped as soon as it is used with
+ *         a searcher whose index has been changed (e.g. segments appended by
+ *         an IndexWriter and the searcher reopened).
  */
 
 public class TermsCache {
@@ -30,10 +42,12 @@ public class TermsCache {
 	 */
 	static String path = null;
 	static String lockpath = null;
+	static String versionpath = null;
 	static {
 		String indexPath = ApplicationSetup.getProperty(
 				"Lucene.indexDirectory", ".");
 		path = indexPath + "/terms.cache";
+		versionpath = path + ".version";
 		lockpath = indexPath + "/termscache.lock";
 	}
 
@@ -49,8 +63,19 @@ public class TermsCache {
 
 	static TermsCache instance = null;
 
+	/** statistics of the current thread that take precedence over the cache */
+	private static final ThreadLocal<Map<Term, Item>> overrides = new ThreadLocal<Map<Term, Item>>();
+
 	FastCache<Term, Item> fc = null;
 
+	/** signature of the index the cached values were read from, -1 if unknown */
+	long signature = -1;
+	/**
+	 * the searcher last checked against the signature; volatile and set
+	 * after the cache, so a thread that skips the check sees the cache
+	 */
+	volatile Searcher checkedSearcher = null;
+
 	// new FastCache<String,String>(100,0.5);
 
 	// static String path = "./conf/terms.cache";
@@ -61,29 +86,54 @@ public class TermsCache {
 		return instance;
 	}
 
-	public Item getItem(String term, String field, Searcher searcher) {
-		TermsCache.Item item = get(term, field);
-		if (item == null) {
-			Term lterm = new Term(field, term);
-			try {
-				float TF = searcher.termFreq(lterm);
-				float Nt = searcher.docFreq(lterm);
-				item = new TermsCache.Item(Nt, TF);
-				put(lterm, item);
-			} catch (IOException e) {
-				e.printStackTrace();
+	/**
+	 * Drops all cached values if the index behind the searcher is not the
+	 * one they were computed from. The check is only repeated when a
+	 * different searcher instance is passed in.
+	 */
+	public void validate(Searcher searcher) {
+		if (searcher == checkedSearcher) {
+			return;
+		}
+		synchronized (this) {
+			long current = IndexUtility.indexSignature(searcher.getIndexReader());
+			if (current != signature) {
+				if (fc.size() > 0 && logger.isInfoEnabled())
+					logger.info("index changed, dropping " + fc.size()
+							+ " cached term statistics");
+				fc = new FastCache<Term, Item>(1024 * 1000);
+				signature = current;
+				insertCount = 1;
 			}
+			checkedSearcher = searcher;
 		}
-		return item;
+	}
+
+	/**
+	 * Makes the current thread read the statistics of the given terms
+	 * instead of the cached ones until it clears them with null, such as the
+	 * collection-wide statistics of one distributed search request. The cache
+	 * itself is left alone.
+	 */
+	public static void setOverrides(Map<Term, Item> items) {
+		if (items == null)
+			overrides.remove();
+		else
+			overrides.set(items);
+	}
+
+	public Item getItem(String term, String field, Searcher searcher) {
+		return getItem(new Term(field, term), searcher);
 	}
 
 	public Item getItem(Term lterm, Searcher searcher) {
+		validate(searcher);
 		TermsCache.Item item = get(lterm);
 		if (item == null) {
 			try {
-				float TF = searcher.termFreq(lterm);
-				float Nt = searcher.docFreq(lterm);
-				item = new TermsCache.Item(Nt, TF);
+				TermStats stats = searcher.termStats(new Term[] { lterm });
+				item = new TermsCache.Item(stats.docFreqs[0],
+						stats.termFreqs[0]);
 				put(lterm, item);
 			} catch (IOException e) {
 				e.printStackTrace();
@@ -92,6 +142,42 @@ public class TermsCache {
 		return item;
 	}
 
+	/**
+	 * Returns the items of all the terms. The terms which are not cached
+	 * are looked up with a single {@link Searcher#termStats(Term[])} call,
+	 * which reads each segment's dictionary once for all of them.
+	 */
+	public Item[] getItems(Term terms[], Searcher searcher) {
+		validate(searcher);
+		Item items[] = new Item[terms.length];
+		int missing = 0;
+		for (int i = 0; i < terms.length; i++) {
+			items[i] = get(terms[i]);
+			if (items[i] == null)
+				missing++;
+		}
+		if (missing == 0)
+			return items;
+		Term lookup[] = new Term[missing];
+		for (int i = 0, j = 0; i < terms.length; i++)
+			if (items[i] == null)
+				lookup[j++] = terms[i];
+		try {
+			TermStats stats = searcher.termStats(lookup);
+			for (int i = 0, j = 0; i < terms.length; i++) {
+				if (items[i] == null) {
+					items[i] = new TermsCache.Item(stats.docFreqs[j],
+							stats.termFreqs[j]);
+					put(terms[i], items[i]);
+					j++;
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return items;
+	}
+
 	private TermsCache() {
 		initCache();
 	}
@@ -118,6 +204,7 @@ public class TermsCache {
 			if (file.exists()) {
 				fc = (FastCache<Term, Item>) AbstractExternalizable
 						.readObject(new File(path));
+				signature = readSignature();
 				if (fc != null) {
 					if(logger.isInfoEnabled()) logger.info("load existing TermsCache with " + fc.size()
 							+ " entries from :" + path);
@@ -142,11 +229,17 @@ public class TermsCache {
 	}
 
 	final Item get(Term term) {
+		Map<Term, Item> items = overrides.get();
+		if (items != null) {
+			Item item = items.get(term);
+			if (item != null)
+				return item;
+		}
 		return this.fc.get(term);
 	}
 
 	public Item get(String term, String field) {
-		return this.fc.get(new Term(field, term));
+		return get(new Term(field, term));
 	}
 
 	public boolean contain(Term term) {
@@ -157,6 +250,7 @@ public class TermsCache {
 		try {
 			if (insertCount > 10) {
 				AbstractExternalizable.serializeTo(fc, new File(path));
+				writeSignature();
 				insertCount = 0;
 			}
 		} catch (Exception e) {
@@ -164,6 +258,38 @@ public class TermsCache {
 		}
 	}
 
+	private long readSignature() {
+		File file = new File(versionpath);
+		if (!file.exists()) {
+			return -1;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(file));
+			return in.readLong();
+		} catch (IOException e) {
+			logger.warn("cannot read " + versionpath, e);
+			return -1;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void writeSignature() throws IOException {
+		DataOutputStream out = new DataOutputStream(new FileOutputStream(
+				versionpath));
+		try {
+			out.writeLong(signature);
+		} finally {
+			out.close();
+		}
+	}
+
 	/**
 	 * @param args
 	 * @throws Exception
@@ -40,6 +40,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Searcher;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.Weight;
+import org.ninit.models.bm25f.BM25FFieldParameters;
 import org.ninit.models.bm25f.BM25FParameters;
 
 /**
@@ -63,6 +64,7 @@ public class BM25BooleanQuery extends Query {
 	private String[] fields = null;
 	private float[] boosts;
 	private float[] bParams;
+	private BM25FFieldParameters params = null;
 
 	/**
 	 * Build a query that will use BM25 function ranking in the field passed as
@@ -140,9 +142,6 @@ public class BM25BooleanQuery extends Query {
 			this.boosts[i] = 1;
 			this.bParams[i] = 0.75f;
 		}
-		BM25FParameters.setBoost(this.boosts);
-		BM25FParameters.setBParam(this.bParams);
-
 	}
 
 	/**
@@ -182,15 +181,45 @@ public class BM25BooleanQuery extends Query {
 		this.fields = fields;
 		this.boosts = boosts;
 		this.bParams = bParams;
-		BM25FParameters.setBoost(this.boosts);
-		BM25FParameters.setBParam(this.bParams);
+	}
 
+	/**
+	 * Build a query that will use BM25F function ranking with the fields, k1,
+	 * boosts, length normalization parameters and average lengths of
+	 * 'params', whatever is set in BM25FParameters.
+	 * 
+	 * @see BM25FFieldParameters
+	 * @param query
+	 *            The query String
+	 * @param analyzer
+	 *            Analyzer used to parse the query String
+	 * @param params
+	 *            The BM25F parameters of this query
+	 * @throws ParseException
+	 * @throws IOException
+	 */
+	public BM25BooleanQuery(String query, Analyzer analyzer,
+			BM25FFieldParameters params) throws ParseException, IOException {
+		this(query, "ALL_FIELDS", analyzer);
+		this.params = params;
 	}
 
+	/**
+	 * The BM25F parameters are those given to the constructor, or else those
+	 * set in BM25FParameters when the weight is built.
+	 */
 	@Override
 	public Weight weight(Searcher searcher) throws IOException {
 
-		if (this.fields == null)
+		if (this.params != null)
+			return new BM25BooleanWeight(this.shouldBoolTermQueries
+					.toArray(new BooleanTermQuery[this.shouldBoolTermQueries
+							.size()]), this.mustBoolTermQueries
+					.toArray(new BooleanTermQuery[this.mustBoolTermQueries
+							.size()]), this.notBoolTermQueries
+					.toArray(new BooleanTermQuery[this.notBoolTermQueries
+							.size()]), this.params);
+		else if (this.fields == null)
 			return new BM25BooleanWeight(this.shouldBoolTermQueries
 					.toArray(new BooleanTermQuery[this.shouldBoolTermQueries
 							.size()]), this.mustBoolTermQueries
@@ -29,9 +29,9 @@ import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Similarity;
 import org.ninit.models.bm25.BM25BooleanQuery.BooleanTermQuery;
+import org.ninit.models.bm25f.BM25FFieldParameters;
 import org.ninit.models.bm25f.BM25FTermScorer;
 import org.ninit.models.bool.AbstractBooleanScorer;
-import org.ninit.models.bool.MatchAllBooleanScorer;
 import org.ninit.models.bool.MustBooleanScorer;
 import org.ninit.models.bool.NotBooleanScorer;
 import org.ninit.models.bool.ShouldBooleanScorer;
@@ -39,6 +39,10 @@ import org.ninit.models.bool.ShouldBooleanScorer;
 /**
  * BM25BooleanScorer, calculates the total relevance value based in a boolean
  * expression.<BR>
+ * Only the postings of the terms are walked: the MUST terms are leapfrogged
+ * with skipTo (or, without them, the SHOULD terms are merged) to find the
+ * candidates, and the NOT terms and the SHOULD terms are skipped to each
+ * candidate. Without MUST terms a document has to contain a SHOULD term.<BR>
  * 
  * @author "Joaquin Perez-Iglesias"
  * 
@@ -47,107 +51,96 @@ public class BM25BooleanScorer extends Scorer {
 
 	private AbstractBooleanScorer shouldBooleanScorer;
 	private AbstractBooleanScorer mustBooleanScorer;
+	/** the documents containing a NOT term */
 	private AbstractBooleanScorer notBooleanScorer;
-	private boolean hasMoreShould = false;
-	private boolean hasMoreMust = false;
-	private boolean hasMoreNot = false;
+	/** the scorer whose documents are the candidates */
+	private AbstractBooleanScorer driver;
 	private int doc = -1;
-	private int ndocs;
-	private boolean initialized = false;
 
 	public BM25BooleanScorer(IndexReader reader, BooleanTermQuery[] should,
 			BooleanTermQuery[] must, BooleanTermQuery[] not,
 			Similarity similarity) throws IOException {
 		super(similarity);
-		this.ndocs = reader.numDocs();
-
+		Scorer[] shouldScorer = null, mustScorer = null, notScorer = null;
 		if (should != null && should.length > 0) {
-
-			Scorer[] shouldScorer = new Scorer[should.length];
-			for (int i = 0; i < shouldScorer.length; i++) {
+			shouldScorer = new Scorer[should.length];
+			for (int i = 0; i < shouldScorer.length; i++)
 				shouldScorer[i] = new BM25TermScorer(reader,
 						should[i].termQuery, similarity);
-			}
-			this.shouldBooleanScorer = new ShouldBooleanScorer(similarity,
-					shouldScorer);
-
-		} else
-			this.shouldBooleanScorer = new MatchAllBooleanScorer(similarity,
-					this.ndocs);
-
+		}
 		if (must != null && must.length > 0) {
-			Scorer[] mustScorer = new Scorer[must.length];
-			for (int i = 0; i < mustScorer.length; i++) {
+			mustScorer = new Scorer[must.length];
+			for (int i = 0; i < mustScorer.length; i++)
 				mustScorer[i] = new BM25TermScorer(reader, must[i].termQuery,
 						similarity);
-			}
-
-			this.mustBooleanScorer = new MustBooleanScorer(similarity,
-					mustScorer);
-		} else
-			this.mustBooleanScorer = new MatchAllBooleanScorer(similarity,
-					this.ndocs);
-
+		}
 		if (not != null && not.length > 0) {
-			Scorer[] notScorer = new Scorer[not.length];
-			for (int i = 0; i < notScorer.length; i++) {
+			notScorer = new Scorer[not.length];
+			for (int i = 0; i < notScorer.length; i++)
 				notScorer[i] = new BM25TermScorer(reader, not[i].termQuery,
 						similarity);
-			}
-
-			this.notBooleanScorer = new NotBooleanScorer(similarity, notScorer,
-					this.ndocs);
-		} else
-			this.notBooleanScorer = new MatchAllBooleanScorer(similarity,
-					this.ndocs);
+		}
+		this.init(reader, similarity, shouldScorer, mustScorer, notScorer);
 	}
 
 	public BM25BooleanScorer(IndexReader reader, BooleanTermQuery[] should,
 			BooleanTermQuery[] must, BooleanTermQuery[] not,
 			Similarity similarity, String[] fields, float[] boosts,
 			float[] bParams) throws IOException {
+		this(reader, should, must, not, similarity, BM25FFieldParameters
+				.fromBM25FParameters(fields, boosts, bParams));
+	}
+
+	public BM25BooleanScorer(IndexReader reader, BooleanTermQuery[] should,
+			BooleanTermQuery[] must, BooleanTermQuery[] not,
+			Similarity similarity, BM25FFieldParameters params)
+			throws IOException {
 		super(similarity);
-		this.ndocs = reader.numDocs();
+		Scorer[] shouldScorer = null, mustScorer = null, notScorer = null;
 		if (should != null && should.length > 0) {
-			Scorer[] shouldScorer = new Scorer[should.length];
-			for (int i = 0; i < shouldScorer.length; i++) {
+			shouldScorer = new Scorer[should.length];
+			for (int i = 0; i < shouldScorer.length; i++)
 				shouldScorer[i] = new BM25FTermScorer(reader,
-						should[i].termQuery, fields, boosts, bParams,
-						similarity);
-			}
-
-			this.shouldBooleanScorer = new ShouldBooleanScorer(similarity,
-					shouldScorer);
-		} else
-			this.shouldBooleanScorer = new MatchAllBooleanScorer(similarity,
-					this.ndocs);
-
+						should[i].termQuery, params, similarity);
+		}
 		if (must != null && must.length > 0) {
-			Scorer[] mustScorer = new Scorer[must.length];
-			for (int i = 0; i < mustScorer.length; i++) {
+			mustScorer = new Scorer[must.length];
+			for (int i = 0; i < mustScorer.length; i++)
 				mustScorer[i] = new BM25FTermScorer(reader, must[i].termQuery,
-						fields, boosts, bParams, similarity);
-			}
-
-			this.mustBooleanScorer = new MustBooleanScorer(similarity,
-					mustScorer);
-		} else
-			this.mustBooleanScorer = new MatchAllBooleanScorer(similarity,
-					this.ndocs);
-
+						params, similarity);
+		}
 		if (not != null && not.length > 0) {
-			Scorer[] notScorer = new Scorer[not.length];
-			for (int i = 0; i < notScorer.length; i++) {
+			notScorer = new Scorer[not.length];
+			for (int i = 0; i < notScorer.length; i++)
 				notScorer[i] = new BM25FTermScorer(reader, not[i].termQuery,
-						fields, boosts, bParams, similarity);
-			}
-
-			this.notBooleanScorer = new NotBooleanScorer(similarity, notScorer,
-					this.ndocs);
-		} else
-			this.notBooleanScorer = new MatchAllBooleanScorer(similarity,
-					this.ndocs);
+						params, similarity);
+		}
+		this.init(reader, similarity, shouldScorer, mustScorer, notScorer);
+	}
 
+	private void init(IndexReader reader, Similarity similarity,
+			Scorer[] shouldScorer, Scorer[] mustScorer, Scorer[] notScorer)
+			throws IOException {
+		if (shouldScorer != null)
+			this.shouldBooleanScorer = new ShouldBooleanScorer(similarity,
+					shouldScorer);
+		if (mustScorer != null)
+			this.mustBooleanScorer = new MustBooleanScorer(similarity,
+					mustScorer);
+		if (notScorer != null)
+			this.notBooleanScorer = new ShouldBooleanScorer(similarity,
+					notScorer);
+
+		if (this.mustBooleanScorer != null)
+			this.driver = this.mustBooleanScorer;
+		else if (this.shouldBooleanScorer != null)
+			this.driver = this.shouldBooleanScorer;
+		else {
+			// only NOT terms: every other document
+			this.driver = new NotBooleanScorer(similarity, notScorer, reader
+					.maxDoc());
+			this.notBooleanScorer = null;
+		}
 	}
 
 	/*
@@ -167,44 +160,31 @@ public class BM25BooleanScorer extends Scorer {
 	 */
 	@Override
 	public Explanation explain(int doc) throws IOException {
-		if (!this.skipTo(doc))
+		if (!this.skipTo(doc) || this.doc() != doc)
 			return null;
 		Explanation result = new Explanation();
 		result.setDescription("Total");
-		Explanation detail = null;
 		float value = 0f;
-		if (this.hasMoreMust && this.mustBooleanScorer.doc() == doc)
-			detail = this.mustBooleanScorer.explain(doc);
-		if (detail != null) {
-			result.addDetail(this.mustBooleanScorer.explain(doc));
-			value += detail.getValue();
+		if (this.mustBooleanScorer != null
+				&& this.mustBooleanScorer.doc() == doc) {
+			Explanation detail = this.mustBooleanScorer.explain(doc);
+			if (detail != null) {
+				result.addDetail(detail);
+				value += detail.getValue();
+			}
 		}
-
-		if (this.hasMoreShould && this.shouldBooleanScorer.doc() == doc)
-			detail = this.shouldBooleanScorer.explain(doc);
-		if (detail != null) {
-			result.addDetail(this.shouldBooleanScorer.explain(doc));
-			value += detail.getValue();
+		if (this.shouldBooleanScorer != null
+				&& this.shouldBooleanScorer.doc() == doc) {
+			Explanation detail = this.shouldBooleanScorer.explain(doc);
+			if (detail != null) {
+				result.addDetail(detail);
+				value += detail.getValue();
+			}
 		}
 		result.setValue(value);
 		return result;
 	}
 
-	private void init() throws IOException {
-		this.hasMoreShould = this.shouldBooleanScorer.next();
-		this.hasMoreMust = this.mustBooleanScorer.next();
-		this.hasMoreNot = this.notBooleanScorer.next();
-	}
-
-	private void doNext() throws IOException {
-		if (this.hasMoreShould && this.shouldBooleanScorer.doc() == this.doc)
-			this.hasMoreShould = this.shouldBooleanScorer.next();
-		if (this.hasMoreMust && this.mustBooleanScorer.doc() == this.doc)
-			this.hasMoreMust = this.mustBooleanScorer.next();
-		if (this.hasMoreNot && this.notBooleanScorer.doc() == this.doc)
-			this.hasMoreNot = this.notBooleanScorer.next();
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -212,40 +192,42 @@ public class BM25BooleanScorer extends Scorer {
 	 */
 	@Override
 	public boolean next() throws IOException {
+		if (this.doc == Integer.MAX_VALUE)
+			return false;
+		return this.accept(this.driver.next());
+	}
 
-		if (!this.initialized) {
-			this.initialized = true;
-			this.init();
-		} else {
-			this.doNext();
-		}
-
-		while (this.doc < this.ndocs - 1) {
-			this.doc++;
-			if (this.hasMoreMust) {
-				if (this.mustBooleanScorer.doc() < this.doc)
-					this.hasMoreMust = this.mustBooleanScorer.next();
-			} else
-				return false;
-
-			if (this.hasMoreNot) {
-				if (this.notBooleanScorer.doc() < this.doc)
-					this.hasMoreNot = this.notBooleanScorer.next();
-			} else
-				return false;
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see org.apache.lucene.search.Scorer#skipTo(int)
+	 */
+	@Override
+	public boolean skipTo(int target) throws IOException {
+		if (this.doc >= target)
+			return this.doc != Integer.MAX_VALUE;
+		return this.accept(this.driver.skipTo(target));
+	}
 
-			if (this.hasMoreShould) {
-				if (this.shouldBooleanScorer.doc() < this.doc)
-					this.hasMoreShould = this.shouldBooleanScorer.next();
+	/**
+	 * Moves on from the driver's current document to the first one without
+	 * a NOT term, and the SHOULD terms to it.
+	 */
+	private boolean accept(boolean more) throws IOException {
+		while (more) {
+			int candidate = this.driver.doc();
+			if (this.notBooleanScorer == null
+					|| !this.notBooleanScorer.skipTo(candidate)
+					|| this.notBooleanScorer.doc() != candidate) {
+				if (this.shouldBooleanScorer != null
+						&& this.driver != this.shouldBooleanScorer)
+					this.shouldBooleanScorer.skipTo(candidate);
+				this.doc = candidate;
+				return true;
 			}
-
-			if (this.hasMoreMust && this.hasMoreNot) {
-				if (this.mustBooleanScorer.doc() == this.notBooleanScorer.doc())
-					return true;
-			} else
-				return false;
+			more = this.driver.next();
 		}
-
+		this.doc = Integer.MAX_VALUE;
 		return false;
 	}
 
@@ -257,26 +239,15 @@ public class BM25BooleanScorer extends Scorer {
 	@Override
 	public float score() throws IOException {
 		float result = 0f;
-		if (this.hasMoreMust && this.mustBooleanScorer.doc() == doc)
+		if (this.mustBooleanScorer != null
+				&& this.mustBooleanScorer.doc() == doc)
 			result += this.mustBooleanScorer.score();
 
-		if (this.hasMoreShould && this.shouldBooleanScorer.doc() == doc)
+		if (this.shouldBooleanScorer != null
+				&& this.shouldBooleanScorer.doc() == doc)
 			result += this.shouldBooleanScorer.score();
 
 		return result;
 	}
 
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * @see org.apache.lucene.search.Scorer#skipTo(int)
-	 */
-	@Override
-	public boolean skipTo(int target) throws IOException {
-		while (this.next() && this.doc() < target) {
-		}
-
-		return this.doc() == target;
-	}
-
 }
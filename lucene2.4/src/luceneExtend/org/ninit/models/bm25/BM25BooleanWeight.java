@@ -30,6 +30,7 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Weight;
 import org.ninit.models.bm25.BM25BooleanQuery.BooleanTermQuery;
+import org.ninit.models.bm25f.BM25FFieldParameters;
 
 /**
  * Weight BM25 class, implements <I>public Scorer scorer(IndexReader reader)
@@ -48,9 +49,7 @@ public class BM25BooleanWeight implements Weight {
 	private BooleanTermQuery[] must;
 	private BooleanTermQuery[] not;
 	private BooleanTermQuery[] unique = null;
-	private String[] fields = null;
-	private float[] boosts;
-	private float[] bParams;
+	private BM25FFieldParameters params = null;
 	private int howMany = 0;
 
 	public BM25BooleanWeight(BooleanTermQuery[] should,
@@ -75,10 +74,15 @@ public class BM25BooleanWeight implements Weight {
 	public BM25BooleanWeight(BooleanTermQuery[] should,
 			BooleanTermQuery[] must, BooleanTermQuery[] not, String fields[],
 			float[] boosts, float[] bParams) {
+		this(should, must, not, BM25FFieldParameters.fromBM25FParameters(
+				fields, boosts, bParams));
+	}
+
+	public BM25BooleanWeight(BooleanTermQuery[] should,
+			BooleanTermQuery[] must, BooleanTermQuery[] not,
+			BM25FFieldParameters params) {
 		this(should, must, not);
-		this.fields = fields;
-		this.boosts = boosts;
-		this.bParams = bParams;
+		this.params = params;
 	}
 
 	/**
@@ -89,13 +93,12 @@ public class BM25BooleanWeight implements Weight {
 	 */
 	@Override
 	public Explanation explain(IndexReader reader, int doc) throws IOException {
-		if (this.fields == null)
+		if (this.params == null)
 			return new BM25BooleanScorer(reader, this.should, this.must,
 					this.not, new BM25Similarity()).explain(doc);
 		else
 			return new BM25BooleanScorer(reader, this.should, this.must,
-					this.not, new BM25Similarity(), this.fields, this.boosts,
-					this.bParams).explain(doc);
+					this.not, new BM25Similarity(), this.params).explain(doc);
 	}
 
 	/*
@@ -138,21 +141,19 @@ public class BM25BooleanWeight implements Weight {
 	@Override
 	public Scorer scorer(IndexReader reader) throws IOException {
 		if (howMany > 1) { // BM25BooleaScorer
-			if (this.fields == null)
+			if (this.params == null)
 				return new BM25BooleanScorer(reader, this.should, this.must,
 						this.not, new BM25Similarity());
 			else
 				return new BM25BooleanScorer(reader, this.should, this.must,
-						this.not, new BM25Similarity(), this.fields,
-						this.boosts, this.bParams);
+						this.not, new BM25Similarity(), this.params);
 		} else {// BM25SingleBooleanScorer
-			if (this.fields == null)
+			if (this.params == null)
 				return new BM25SingleBooleanScorer(reader, this.unique,
 						new BM25Similarity());
 			else
 				return new BM25SingleBooleanScorer(reader, this.unique,
-						new BM25Similarity(), this.fields, this.boosts,
-						this.bParams);
+						new BM25Similarity(), this.params);
 		}
 
 	}
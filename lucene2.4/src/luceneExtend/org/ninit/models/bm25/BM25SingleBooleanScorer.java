@@ -30,6 +30,7 @@ import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Similarity;
 import org.ninit.models.bm25.BM25BooleanQuery.BooleanTermQuery;
+import org.ninit.models.bm25f.BM25FFieldParameters;
 import org.ninit.models.bm25f.BM25FTermScorer;
 import org.ninit.models.bool.AbstractBooleanScorer;
 import org.ninit.models.bool.MustBooleanScorer;
@@ -72,12 +73,19 @@ public class BM25SingleBooleanScorer extends Scorer {
 			BooleanTermQuery[] termQuery, Similarity similarity,
 			String[] fields, float[] boosts, float[] bParams)
 			throws IOException {
+		this(reader, termQuery, similarity, BM25FFieldParameters
+				.fromBM25FParameters(fields, boosts, bParams));
+	}
+
+	public BM25SingleBooleanScorer(IndexReader reader,
+			BooleanTermQuery[] termQuery, Similarity similarity,
+			BM25FFieldParameters params) throws IOException {
 		super(similarity);
 		Scorer[] scorer = new Scorer[termQuery.length];
 
 		for (int i = 0; i < scorer.length; i++) {
 			scorer[i] = new BM25FTermScorer(reader, termQuery[i].termQuery,
-					fields, boosts, bParams, similarity);
+					params, similarity);
 		}
 
 		if (termQuery[0].occur == BooleanClause.Occur.MUST)
@@ -143,10 +151,7 @@ public class BM25SingleBooleanScorer extends Scorer {
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		while (this.next() && this.doc() < target) {
-		}
-
-		return this.doc() == target;
+		return booleanScorer.skipTo(target);
 	}
 
 }
@@ -0,0 +1,186 @@
+package org.ninit.models.bm25f;
+
+/**
+ * BM25FFieldParameters.java
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.apache.lucene.search.Similarity;
+
+/**
+ * The BM25F parameters of one query: k1, and the boost, the length
+ * normalization parameter b and the average length of each field. Unlike
+ * {@link BM25FParameters} an instance is immutable, so queries with
+ * different parameters can be scored at the same time, by different threads
+ * of one process.<BR>
+ * For every field the length normalization of the 256 norm values, boost /
+ * (1 - b + b * length / avgLength), is computed once when the parameters are
+ * built, so scoring a document only looks it up.
+ *
+ * @author yezheng
+ * @see BM25FTermScorer
+ */
+public final class BM25FFieldParameters {
+
+	private final float k1;
+	private final String[] fields;
+	private final float[] boosts;
+	private final float[] bParams;
+	private final float[] avgLengths;
+	private final String idfField;
+	/** boost / (1 - b + b * length / avgLength) of each field and norm */
+	private final float[][] lengthNorms;
+
+	/**
+	 * @param k1
+	 *            the k1 parameter
+	 * @param fields
+	 *            the fields to search
+	 * @param boosts
+	 *            the boost factor of each field
+	 * @param bParams
+	 *            the length normalization parameter of each field
+	 * @param avgLengths
+	 *            the average length of each field
+	 * @param idfField
+	 *            the field whose document frequencies give the idf, if null
+	 *            the field with the longest average length
+	 */
+	public BM25FFieldParameters(float k1, String[] fields, float[] boosts,
+			float[] bParams, float[] avgLengths, String idfField) {
+		if (boosts.length != fields.length || bParams.length != fields.length
+				|| avgLengths.length != fields.length)
+			throw new IllegalArgumentException(
+					"one boost, b and average length is needed for each of the "
+							+ fields.length + " fields");
+		this.k1 = k1;
+		this.fields = fields.clone();
+		this.boosts = boosts.clone();
+		this.bParams = bParams.clone();
+		this.avgLengths = avgLengths.clone();
+		if (idfField == null) {
+			int longest = 0;
+			for (int i = 1; i < this.fields.length; i++)
+				if (this.avgLengths[i] > this.avgLengths[longest])
+					longest = i;
+			idfField = this.fields.length > 0 ? this.fields[longest] : "";
+		}
+		this.idfField = idfField;
+
+		this.lengthNorms = new float[this.fields.length][256];
+		for (int i = 0; i < this.fields.length; i++) {
+			for (int n = 0; n < 256; n++) {
+				float normV = Similarity.decodeNorm((byte) n);
+				float length = 1 / (normV * normV);
+				float aux = this.bParams[i] * length / this.avgLengths[i];
+				aux = aux + 1 - this.bParams[i];
+				this.lengthNorms[i][n] = this.boosts[i] / aux;
+			}
+		}
+	}
+
+	/**
+	 * Takes k1, the average lengths and the idf field currently set in
+	 * {@link BM25FParameters}.
+	 *
+	 * @param fields
+	 *            the fields to search
+	 * @param boosts
+	 *            the boost factor of each field
+	 * @param bParams
+	 *            the length normalization parameter of each field
+	 */
+	public static BM25FFieldParameters fromBM25FParameters(String[] fields,
+			float[] boosts, float[] bParams) {
+		float[] avgLengths = new float[fields.length];
+		for (int i = 0; i < fields.length; i++)
+			avgLengths[i] = BM25FParameters.getAverageLength(fields[i]);
+		return new BM25FFieldParameters(BM25FParameters.getK1(), fields,
+				boosts, bParams, avgLengths, BM25FParameters.getIdfField());
+	}
+
+	/**
+	 * @return the same parameters with other field boosts
+	 */
+	public BM25FFieldParameters withBoosts(float[] boosts) {
+		return new BM25FFieldParameters(this.k1, this.fields, boosts,
+				this.bParams, this.avgLengths, this.idfField);
+	}
+
+	/**
+	 * @return the same parameters with other length normalization parameters
+	 */
+	public BM25FFieldParameters withBParams(float[] bParams) {
+		return new BM25FFieldParameters(this.k1, this.fields, this.boosts,
+				bParams, this.avgLengths, this.idfField);
+	}
+
+	/**
+	 * @return the same parameters with another k1
+	 */
+	public BM25FFieldParameters withK1(float k1) {
+		return new BM25FFieldParameters(k1, this.fields, this.boosts,
+				this.bParams, this.avgLengths, this.idfField);
+	}
+
+	public float getK1() {
+		return this.k1;
+	}
+
+	public int numFields() {
+		return this.fields.length;
+	}
+
+	public String getField(int i) {
+		return this.fields[i];
+	}
+
+	public float getBoost(int i) {
+		return this.boosts[i];
+	}
+
+	public float getBParam(int i) {
+		return this.bParams[i];
+	}
+
+	public float getAverageLength(int i) {
+		return this.avgLengths[i];
+	}
+
+	public String getIdfField() {
+		return this.idfField;
+	}
+
+	/**
+	 * @return boost / (1 - b + b * length / avgLength) of the field i for each
+	 *         norm value, to be indexed by <code>norm & 0xFF</code>; not to be
+	 *         modified
+	 */
+	float[] lengthNorms(int i) {
+		return this.lengthNorms[i];
+	}
+
+	public String toString() {
+		StringBuilder buffer = new StringBuilder("K1:").append(this.k1);
+		for (int i = 0; i < this.fields.length; i++)
+			buffer.append(" ").append(this.fields[i]).append("(Boost:")
+					.append(this.boosts[i]).append(",B:").append(
+							this.bParams[i]).append(",AvgLength:").append(
+							this.avgLengths[i]).append(")");
+		return buffer.toString();
+	}
+}
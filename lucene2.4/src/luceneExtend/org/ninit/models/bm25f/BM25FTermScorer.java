@@ -33,10 +33,13 @@ import org.apache.lucene.search.TermQuery;
 
 /**
  * Calculate the relevance value of a term applying BM25F function ranking. The
- * {@link BM25FParameters} k1,b_field, boost_field are used.<BR>
+ * k1,b_field, boost_field of a {@link BM25FFieldParameters} are used.<BR>
+ * The norms of the fields are read once, when the scorer is built for a
+ * reader, and the length normalization of a document in a field is looked up
+ * by its norm.<BR>
  * 
  * @author "Joaquin Perez-Iglesias"
- * @see BM25FParameters
+ * @see BM25FFieldParameters
  * 
  */
 public class BM25FTermScorer extends Scorer {
@@ -45,30 +48,45 @@ public class BM25FTermScorer extends Scorer {
 	private TermQuery term;
 	private float idf = 0f;
 	private IndexReader reader;
+	private BM25FFieldParameters params;
 	private String[] fields;
-	private float[] boost;
-	private float[] bParam;
+	private byte[][] norms;
+	private float[][] lengthNorms;
 	private boolean[] termDocsNext;
 	private int doc = Integer.MAX_VALUE;
 	private boolean initializated = false;
 
+	/**
+	 * Scores with the k1 and the average lengths set in {@link BM25FParameters}.
+	 */
 	public BM25FTermScorer(IndexReader reader, TermQuery term, String[] fields,
 			float[] boosts, float[] bParams, Similarity similarity) {
+		this(reader, term, BM25FFieldParameters.fromBM25FParameters(fields,
+				boosts, bParams), similarity);
+	}
+
+	public BM25FTermScorer(IndexReader reader, TermQuery term,
+			BM25FFieldParameters params, Similarity similarity) {
 		super(similarity);
 		this.reader = reader;
 		this.term = term;
-		this.fields = fields;
-		this.boost = boosts;
-		this.bParam = bParams;
+		this.params = params;
+		this.fields = new String[params.numFields()];
+		this.norms = new byte[this.fields.length][];
+		this.lengthNorms = new float[this.fields.length][];
 		this.termDocs = new TermDocs[this.fields.length];
 		this.termDocsNext = new boolean[this.fields.length];
 		try {
-			for (int i = 0; i < this.fields.length; i++)
+			for (int i = 0; i < this.fields.length; i++) {
+				this.fields[i] = params.getField(i);
+				this.norms[i] = reader.norms(this.fields[i]);
+				this.lengthNorms[i] = params.lengthNorms(i);
 				this.termDocs[i] = reader.termDocs(new Term(this.fields[i],
 						term.getTerm().text()));
+			}
 
 			this.idf = this.getSimilarity().idf(
-					this.reader.docFreq(new Term(BM25FParameters.getIdfField(),
+					this.reader.docFreq(new Term(params.getIdfField(),
 							term.getTerm().text())), this.reader.numDocs());
 
 		} catch (IOException e) {
@@ -94,7 +112,7 @@ public class BM25FTermScorer extends Scorer {
 	 */
 	@Override
 	public Explanation explain(int doc) throws IOException {
-		if (!this.skipTo(doc))
+		if (!this.skipTo(doc) || this.doc() != doc)
 			return null;
 		float acum = 0f;
 		Explanation result = new Explanation();
@@ -103,42 +121,42 @@ public class BM25FTermScorer extends Scorer {
 
 		for (int i = 0; i < this.fields.length; i++) {
 
-			if (this.termDocs[i].doc() == doc) {
+			if (this.termDocsNext[i] && this.termDocs[i].doc() == doc) {
 				Explanation partial = new Explanation();
 
-				byte[] norm = this.reader.norms(this.fields[i]);
+				byte[] norm = this.norms[i];
 
-				float av_length = (float) BM25FParameters
-						.getAverageLength(this.fields[i]);
+				float av_length = this.params.getAverageLength(i);
 				float length = 1 / ((Similarity.decodeNorm(norm[this.doc()])) * (Similarity
 						.decodeNorm(norm[this.doc()])));
 
 				float aux = 0f;
-				aux = this.bParam[i] * length / av_length;
+				aux = this.params.getBParam(i) * length / av_length;
 
-				aux = aux + 1 - this.bParam[i];
-				acum += this.boost[i] * this.termDocs[i].freq() / aux;
+				aux = aux + 1 - this.params.getBParam(i);
+				acum += this.params.getBoost(i) * this.termDocs[i].freq() / aux;
 
-				partial = new Explanation(this.boost[i]
+				partial = new Explanation(this.params.getBoost(i)
 						* this.termDocs[i].freq() / aux, "(" + this.fields[i]
 						+ ":" + this.term.getTerm().text() + ") B:"
-						+ this.bParam[i] + ",Length:" + length + ",AvgLength:"
-						+ av_length + ",Freq:" + this.termDocs[i].freq()
-						+ ",Boost:" + this.boost[i]);
+						+ this.params.getBParam(i) + ",Length:" + length
+						+ ",AvgLength:" + av_length + ",Freq:"
+						+ this.termDocs[i].freq() + ",Boost:"
+						+ this.params.getBoost(i));
 				tf.addDetail(partial);
 			}
 		}
 
 		Explanation idfE = new Explanation(this.idf, " idf (docFreq:"
-				+ this.reader.docFreq(new Term(BM25FParameters.getIdfField(),
+				+ this.reader.docFreq(new Term(this.params.getIdfField(),
 						this.term.getTerm().text())) + ",numDocs:"
 				+ this.reader.numDocs() + ")");
 		result.addDetail(idfE);
 
 		tf.setDescription("K1: " + acum + "/(" + acum + " + "
-				+ BM25FParameters.getK1() + ")");
+				+ this.params.getK1() + ")");
 
-		acum = acum / (BM25FParameters.getK1() + acum);
+		acum = acum / (this.params.getK1() + acum);
 		tf.setValue(acum);
 		result.addDetail(tf);
 		acum = acum * this.idf;
@@ -196,40 +214,44 @@ public class BM25FTermScorer extends Scorer {
 
 		for (int i = 0; i < this.fields.length; i++) {
 
-			if (this.termDocs[i].doc() == doc) {
-				byte[] norm = this.reader.norms(this.fields[i]);
-
-				float av_length = (float) BM25FParameters
-						.getAverageLength(this.fields[i]);
-				float length = 0f;
-				float normV = Similarity.decodeNorm(norm[this.doc()]);
-				length = 1 / (normV * normV);
-
-				float aux = 0f;
-				aux = this.bParam[i] * length / av_length;
-
-				aux = aux + 1 - this.bParam[i];
-				acum += (this.term.getBoost()*this.boost[i] * this.termDocs[i].freq()) / aux;
-			}
+			if (this.termDocsNext[i] && this.termDocs[i].doc() == doc)
+				acum += this.termDocs[i].freq()
+						* this.lengthNorms[i][this.norms[i][doc] & 0xFF];
 		}
 
-		acum = acum / (BM25FParameters.getK1() + acum);
+		acum = this.term.getBoost() * acum;
+		acum = acum / (this.params.getK1() + acum);
 		acum = acum * this.idf;
 
 		return acum;
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Moves the postings of every field to the first document at or after
+	 * <code>target</code> with their skip lists; stays on the current
+	 * document if it is not before the target.
 	 * 
 	 * @see org.apache.lucene.search.Scorer#skipTo(int)
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		while (this.doc() < target && this.next()) {
+		if (!this.initializated) {
+			this.initializated = true;
+			for (int i = 0; i < this.fields.length; i++)
+				this.termDocsNext[i] = this.termDocs[i].skipTo(target);
+		} else {
+			if (this.doc >= target)
+				return this.doc != Integer.MAX_VALUE;
+			for (int i = 0; i < this.fields.length; i++)
+				if (this.termDocsNext[i] && this.termDocs[i].doc() < target)
+					this.termDocsNext[i] = this.termDocs[i].skipTo(target);
 		}
 
-		return this.doc() == target;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < this.fields.length; i++)
+			if (this.termDocsNext[i] && this.termDocs[i].doc() < min)
+				min = this.termDocs[i].doc();
+		return ((this.doc = min) != Integer.MAX_VALUE);
 	}
 	
 	
@@ -29,13 +29,10 @@ import org.apache.lucene.search.Similarity;
 public abstract class AbstractBooleanScorer extends Scorer {
 
 	protected Scorer[] subScorer;
-	protected boolean subScorerNext[];
 
 	protected AbstractBooleanScorer(Similarity similarity, Scorer scorer[])
 			throws IOException {
 		super(similarity);
 		this.subScorer = scorer;
-		if (scorer != null && scorer.length > 0)
-			this.subScorerNext = new boolean[this.subScorer.length];
 	}
 }
@@ -91,7 +91,9 @@ public class MatchAllBooleanScorer extends AbstractBooleanScorer {
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		return target < this.ndocs;
+		if (this.doc < target)
+			this.doc = target;
+		return this.doc < this.ndocs;
 	}
 
 }
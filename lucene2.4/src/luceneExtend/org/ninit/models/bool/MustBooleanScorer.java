@@ -62,7 +62,7 @@ public class MustBooleanScorer extends AbstractBooleanScorer {
 	@Override
 	public Explanation explain(int doc) throws IOException {
 
-		if (!this.skipTo(doc))
+		if (!this.skipTo(doc) || this.doc() != doc)
 			return null;
 		Explanation result = new Explanation();
 		Explanation detail;
@@ -77,16 +77,6 @@ public class MustBooleanScorer extends AbstractBooleanScorer {
 		return result;
 	}
 
-	private boolean init() throws IOException {
-		for (int i = 0; i < this.subScorer.length; i++) {
-			this.subScorerNext[i] = this.subScorer[i].next();
-			if (this.subScorerNext[i] && this.subScorer[i].doc() > this.doc) {
-				this.doc = this.subScorer[i].doc();
-			}
-		}
-		return false;
-	}
-
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -94,46 +84,46 @@ public class MustBooleanScorer extends AbstractBooleanScorer {
 	 */
 	@Override
 	public boolean next() throws IOException {
-		// INIT SUBSCORERS
 		if (!this.initializated) {
-			this.init();
 			this.initializated = true;
-		} else {
-			int max = -1;
-			for (int i = 0; i < this.subScorer.length; i++) {
-				if (this.subScorerNext[i]
-						&& this.subScorer[i].doc() == this.doc) {
-					this.subScorerNext[i] = this.subScorer[i].next();
-					if (this.subScorerNext[i] && this.subScorer[i].doc() > max)
-						max = this.subScorer[i].doc();
-				}
-			}
-			this.doc = max;
+			for (int i = 0; i < this.subScorer.length; i++)
+				if (!this.subScorer[i].next())
+					return this.exhausted();
+			return this.doNext(this.subScorer[0].doc());
 		}
-		while (true) {
-			int count = 0;
-			boolean more = true;
-			for (int i = 0; i < this.subScorer.length && more; i++) {
-				if (this.subScorerNext[i]) {
-					if (this.subScorer[i].doc() == this.doc) {
-						count++;
-					}
-					if (this.subScorer[i].doc() < this.doc) {
-						this.subScorerNext[i] = this.subScorer[i].next();
-						if (this.subScorerNext[i]
-								&& this.subScorer[i].doc() > this.doc) {
-							this.doc = this.subScorer[i].doc();
-							more = false;
-							count = 0;
-						}
-					}
-					if (count == this.subScorer.length)
-						return true;
-				} else
-					return false;
-			}
+		if (this.doc == Integer.MAX_VALUE)
+			return false;
+		// all sub scorers are on doc, the first one moves on
+		if (!this.subScorer[0].next())
+			return this.exhausted();
+		return this.doNext(this.subScorer[0].doc());
+	}
 
+	/**
+	 * Leapfrogs the sub scorers: each one skips to the largest document seen
+	 * so far, until they all agree.
+	 */
+	private boolean doNext(int target) throws IOException {
+		int agreeing = 0;
+		int i = 0;
+		while (agreeing < this.subScorer.length) {
+			Scorer scorer = this.subScorer[i];
+			if (scorer.doc() < target && !scorer.skipTo(target))
+				return this.exhausted();
+			if (scorer.doc() > target) {
+				target = scorer.doc();
+				agreeing = 1;
+			} else
+				agreeing++;
+			i = (i + 1) % this.subScorer.length;
 		}
+		this.doc = target;
+		return true;
+	}
+
+	private boolean exhausted() {
+		this.doc = Integer.MAX_VALUE;
+		return false;
 	}
 
 	/*
@@ -159,10 +149,16 @@ public class MustBooleanScorer extends AbstractBooleanScorer {
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		while (this.doc() < target && this.next()) {
+		if (!this.initializated) {
+			this.initializated = true;
+			for (int i = 0; i < this.subScorer.length; i++)
+				if (!this.subScorer[i].skipTo(target))
+					return this.exhausted();
+			return this.doNext(this.subScorer[0].doc());
 		}
-
-		return this.doc() == target;
+		if (this.doc >= target)
+			return this.doc != Integer.MAX_VALUE;
+		return this.doNext(target);
 	}
 
 }
@@ -30,6 +30,9 @@ import org.apache.lucene.search.Similarity;
 /**
  * Boolean Scorer that matches all documents that NOT contains any term (NOT
  * operator).<BR>
+ * The documents containing a term are found by skipping a
+ * {@link ShouldBooleanScorer} over the terms, not by testing every term at
+ * every document.<BR>
  * 
  * @author "Joaquin Perez-Iglesias"
  * 
@@ -38,14 +41,14 @@ public class NotBooleanScorer extends AbstractBooleanScorer {
 
 	private int doc = -1;
 	private int numDocs;
+	/** the documents containing any of the terms */
+	private ShouldBooleanScorer excluded;
 
 	public NotBooleanScorer(Similarity similarity, Scorer[] scorer, int numDocs)
 			throws IOException {
 		super(similarity, scorer);
 		this.numDocs = numDocs;
-		for (int i = 0; i < this.subScorer.length; i++)
-			this.subScorerNext[i] = this.subScorer[i].next();
-
+		this.excluded = new ShouldBooleanScorer(similarity, scorer);
 	}
 
 	/*
@@ -75,24 +78,18 @@ public class NotBooleanScorer extends AbstractBooleanScorer {
 	 */
 	@Override
 	public boolean next() throws IOException {
-		while (this.doc < this.numDocs - 1) {
-			this.doc++;
-			int count = 0;
-			for (int i = 0; i < this.subScorer.length; i++) {
-				if (this.subScorerNext[i])
-					if (this.subScorer[i].doc() != this.doc) {
-						count++;
-					} else {
-						this.subScorerNext[i] = this.subScorer[i].next();
-						count = 0;
-					}
-				else
-					count++;
-				if (count == this.subScorer.length)
-					return true;
-			}
-		}
+		if (this.doc == Integer.MAX_VALUE)
+			return false;
+		return this.advance(this.doc + 1);
+	}
 
+	private boolean advance(int target) throws IOException {
+		for (this.doc = target; this.doc < this.numDocs; this.doc++) {
+			if (!this.excluded.skipTo(this.doc)
+					|| this.excluded.doc() != this.doc)
+				return true;
+		}
+		this.doc = Integer.MAX_VALUE;
 		return false;
 	}
 
@@ -113,10 +110,9 @@ public class NotBooleanScorer extends AbstractBooleanScorer {
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		while (this.doc() < target && this.next()) {
-		}
-
-		return this.doc() == target;
+		if (this.doc >= target)
+			return this.doc != Integer.MAX_VALUE;
+		return this.advance(target);
 	}
 
 }
@@ -26,10 +26,13 @@ import java.io.IOException;
 import org.apache.lucene.search.Explanation;
 import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Similarity;
+import org.apache.lucene.util.ScorerDocQueue;
 
 /**
  * Boolean Scorer that matches all documents that contains at least one term (OR
  * operator).<BR>
+ * The sub scorers are merged in a heap ordered by their current document, so
+ * each step only moves the scorers on the current document.<BR>
  * 
  * @author "Joaquin Perez-Iglesias"
  * 
@@ -38,6 +41,8 @@ public class ShouldBooleanScorer extends AbstractBooleanScorer {
 
 	private boolean initializated = false;
 	private int doc = Integer.MAX_VALUE;
+	/** the sub scorers with documents left */
+	private ScorerDocQueue queue;
 
 	public ShouldBooleanScorer(Similarity similarity, Scorer scorer[])
 			throws IOException {
@@ -61,7 +66,7 @@ public class ShouldBooleanScorer extends AbstractBooleanScorer {
 	 */
 	@Override
 	public Explanation explain(int doc) throws IOException {
-		if (!this.skipTo(doc))
+		if (!this.skipTo(doc) || this.doc() != doc)
 			return null;
 		Explanation result = new Explanation();
 		Explanation detail;
@@ -89,29 +94,35 @@ public class ShouldBooleanScorer extends AbstractBooleanScorer {
 			this.initializated = true;
 			return this.init();
 		}
-		int min = Integer.MAX_VALUE;
-		// AVANZO LOS TERMDOCS CON MENOR ID
-		for (int i = 0; i < this.subScorer.length; i++) {
-			if (this.subScorerNext[i] && this.subScorer[i].doc() == this.doc) {
-				this.subScorerNext[i] = this.subScorer[i].next();
-			}
-			if (this.subScorerNext[i] && this.subScorer[i].doc() < min)
-				min = this.subScorer[i].doc();
-		}
-		return ((this.doc = min) != Integer.MAX_VALUE);
+		while (this.queue.size() > 0 && this.queue.topDoc() == this.doc)
+			this.queue.topNextAndAdjustElsePop();
+		return this.current();
 	}
 
-	/*
-	 * (non-Javadoc)
+	/**
+	 * Moves the sub scorers behind <code>target</code> to it with
+	 * {@link Scorer#skipTo(int)}; stays on the current document if it is not
+	 * before the target.
 	 * 
 	 * @see org.apache.lucene.search.Scorer#skipTo(int)
 	 */
 	@Override
 	public boolean skipTo(int target) throws IOException {
-		while (this.doc() < target && this.next()) {
+		if (!this.initializated) {
+			this.initializated = true;
+			this.init();
 		}
+		if (this.doc >= target)
+			return this.doc != Integer.MAX_VALUE;
+		while (this.queue.size() > 0 && this.queue.topDoc() < target)
+			this.queue.topSkipToAndAdjustElsePop(target);
+		return this.current();
+	}
 
-		return this.doc() == target;
+	private boolean current() {
+		this.doc = this.queue.size() > 0 ? this.queue.topDoc()
+				: Integer.MAX_VALUE;
+		return this.doc != Integer.MAX_VALUE;
 	}
 
 	/*
@@ -131,15 +142,12 @@ public class ShouldBooleanScorer extends AbstractBooleanScorer {
 	}
 
 	private boolean init() throws IOException {
-		boolean result = false;
+		this.queue = new ScorerDocQueue(this.subScorer.length);
 		for (int i = 0; i < this.subScorer.length; i++) {
-			this.subScorerNext[i] = this.subScorer[i].next();
-			if (this.subScorerNext[i] && this.subScorer[i].doc() < this.doc) {
-				this.doc = this.subScorer[i].doc();
-				result = true;
-			}
+			if (this.subScorer[i].next())
+				this.queue.insert(this.subScorer[i]);
 		}
-		return result;
+		return this.current();
 	}
 
 }
@@ -19,6 +19,8 @@ package org.apache.lucene.analysis;
 
 import java.io.IOException;
 
+import org.apache.lucene.util.ArrayUtil;
+
 /** Transforms the token stream as per the Porter stemming algorithm.
     Note: the input to the stemming filter must already be in lower case,
     so you will need to use LowerCaseFilter or LowerCaseTokenizer farther
@@ -39,14 +41,23 @@ import java.io.IOException;
 */
 
 public final class PorterStemFilter extends TokenFilter {
-  
-//  private PorterStemmer stemmer;
-  private TerrierPorterStemmer pstemmer;
+
+  /** Number of surface forms remembered per thread. */
+  public static final int CACHE_SIZE = 8192;
+
+  /** Stems are memoized per thread: most tokens of a Zipfian stream are
+   * repeats, and a thread-local cache needs no locking. */
+  private static final ThreadLocal cache = new ThreadLocal() {
+    protected Object initialValue() {
+      return new StemCache(CACHE_SIZE);
+    }
+  };
+
+  private final TerrierPorterStemmer stemmer = new TerrierPorterStemmer();
+  private final StemCache stems = (StemCache) cache.get();
 
   public PorterStemFilter(TokenStream in) {
     super(in);
-//    stemmer = new PorterStemmer();
-    pstemmer = new TerrierPorterStemmer();
   }
 
   public final Token next(final Token reusableToken) throws IOException {
@@ -54,15 +65,76 @@ public final class PorterStemFilter extends TokenFilter {
     Token nextToken = input.next(reusableToken);
     if (nextToken == null)
       return null;
-    
-//    if(nextToken.termText().matches("[a-zA-Z]+")){
-//    	if (stemmer.stem(nextToken.termBuffer(), 0, nextToken.termLength()))
-//      nextToken.setTermBuffer(stemmer.getResultBuffer(), 0, stemmer.getResultLength());
-//    }
-    String stemered = pstemmer.stem(nextToken.termText());
-    nextToken.setTermBuffer(stemered, 0, stemered.length());
-    
+
+    final char[] buffer = nextToken.termBuffer();
+    final int length = nextToken.termLength();
+    if (!stems.lookup(buffer, length, nextToken)) {
+      final int stemLength = stemmer.stem(buffer, length);
+      nextToken.setTermLength(stemLength);
+      stems.put(buffer, length, stemLength);
+    }
     return nextToken;
   }
-  
+
+  /**
+   * Direct-mapped cache from surface forms to their stems. A hit copies the
+   * stem into the token without allocating; a miss overwrites the slot.
+   * Not thread-safe.
+   */
+  static final class StemCache {
+    private final char[][] terms;
+    private final char[][] stems;
+    private final int mask;
+    private char[] pending = new char[16];
+    private int pendingHash;
+    private int pendingLength;
+
+    StemCache(int size) {
+      int n = 1;
+      while (n < size)
+        n <<= 1;
+      terms = new char[n][];
+      stems = new char[n][];
+      mask = n - 1;
+    }
+
+    /** Replaces the term of the token by its cached stem, if there is one. */
+    boolean lookup(char[] buffer, int length, Token token) {
+      int h = 0;
+      for (int i = 0; i < length; i++)
+        h = 31 * h + buffer[i];
+      pendingHash = h;
+      final int slot = (h ^ (h >>> 16)) & mask;
+      final char[] term = terms[slot];
+      if (term != null && term.length == length) {
+        int i = 0;
+        while (i < length && term[i] == buffer[i])
+          i++;
+        if (i == length) {
+          final char[] stem = stems[slot];
+          System.arraycopy(stem, 0, buffer, 0, stem.length);
+          token.setTermLength(stem.length);
+          return true;
+        }
+      }
+      // keep the surface form, the buffer is stemmed in place next
+      if (pending.length < length)
+        pending = new char[ArrayUtil.getNextSize(length)];
+      System.arraycopy(buffer, 0, pending, 0, length);
+      pendingLength = length;
+      return false;
+    }
+
+    /** Remembers the stem of the term passed to the last failed lookup. */
+    void put(char[] stem, int termLength, int stemLength) {
+      assert termLength == pendingLength;
+      final int slot = (pendingHash ^ (pendingHash >>> 16)) & mask;
+      final char[] term = new char[pendingLength];
+      System.arraycopy(pending, 0, term, 0, pendingLength);
+      final char[] stemmed = new char[stemLength];
+      System.arraycopy(stem, 0, stemmed, 0, stemLength);
+      terms[slot] = term;
+      stems[slot] = stemmed;
+    }
+  }
 }
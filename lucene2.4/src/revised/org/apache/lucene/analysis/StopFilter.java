@@ -20,6 +20,8 @@ package org.apache.lucene.analysis;
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
 
 import org.dutir.lucene.util.ApplicationSetup;
@@ -92,22 +94,42 @@ public final class StopFilter extends TokenFilter {
     this(in, stopWords, false);
   }
 
-public StopFilter(TokenStream in) {
-		super(in);
-		if(this.stopPath.equals("none")){
-			stopWords = (CharArraySet)makeStopSet(new String[]{""});
-		}else{
-			File file = new File(this.stopPath);
-			String words[] = null;
-			try {
-				words = org.dutir.util.Files.readLinesFromFile(file, encoding);
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-			stopWords = (CharArraySet)makeStopSet(words);
-		}
-	}
+  /**
+   * Uses the stop words listed in the file named by the property
+   * <tt>StopFilter.stopPath</tt>. Each file is read once for an encoding and
+   * the set is shared by all filters built this way; a file that cannot be
+   * read stops nothing and is read again by the next filter.
+   */
+  public StopFilter(TokenStream in) {
+    super(in);
+    this.stopWords = getDefaultStopSet(stopPath, encoding);
+  }
+
+  /** the stop sets read, by stop word file and encoding */
+  private static final Map<String, CharArraySet> defaultStopSets = new HashMap<String, CharArraySet>();
+
+  private static synchronized CharArraySet getDefaultStopSet(String stopPath, String encoding) {
+    String key = stopPath + '\u0000' + encoding;
+    CharArraySet stopSet = defaultStopSets.get(key);
+    if (stopSet == null) {
+      if (stopPath.equals("none")) {
+        stopSet = (CharArraySet)makeStopSet(new String[]{""});
+      } else {
+        File file = new File(stopPath);
+        String words[] = null;
+        try {
+          words = org.dutir.util.Files.readLinesFromFile(file, encoding);
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+        if (words == null)
+          return (CharArraySet)makeStopSet(new String[]{""});
+        stopSet = (CharArraySet)makeStopSet(words);
+      }
+      defaultStopSets.put(key, stopSet);
+    }
+    return stopSet;
+  }
   
   /**
    * Builds a Set from an array of stop words,
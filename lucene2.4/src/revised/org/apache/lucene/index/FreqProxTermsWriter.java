@@ -236,7 +236,7 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
       }
 
       int df = 0;
-      int termFreq = 0;
+      long termFreq = 0;
       int lastPayloadLength = -1;
 
       int lastDoc = 0;
@@ -270,10 +270,12 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
 
         final int doc = minState.docID;
         final int termDocFreq = minState.termFreq;
-        termFreq += termDocFreq; //?????????????????????????????
+        termFreq += termDocFreq;
         assert doc < flushState.numDocsInRAM;
         assert doc > lastDoc || df == 1;
 
+        termsOut.addDoc(fieldNumber, doc);
+
         final ByteSliceReader prox = minState.prox;
 
         // Carefully copy over the prox + payload info,
@@ -354,7 +356,7 @@ final class FreqProxTermsWriter extends TermsHashConsumer {
 
       // Write term
       termInfo.set(df, freqPointer, proxPointer, (int) (skipPointer - freqPointer));
-      termInfo.setTermFrequency(termFreq); //?????????????????????
+      termInfo.setTermFrequency(termFreq);
       // TODO: we could do this incrementally
       UnicodeUtil.UTF16toUTF8(text, start, termsUTF8);
 
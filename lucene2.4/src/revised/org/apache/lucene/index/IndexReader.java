@@ -762,7 +762,95 @@ public abstract class IndexReader {
    * @throws IOException if there is a low-level IO error
    */
   public abstract int docFreq(Term t) throws IOException;
-  public abstract int termFreq(Term t) throws IOException;
+
+  /** Returns the total number of occurrences of the term <code>t</code>
+   * (its collection frequency).
+   * @throws IOException if there is a low-level IO error
+   */
+  public abstract long termFreq(Term t) throws IOException;
+
+  /** Returns the document frequency and the collection frequency of every
+   * term in <code>terms</code>. The terms are looked up in sorted order,
+   * so each segment's dictionary is read front to back once, and each term
+   * costs one lookup instead of one for {@link #docFreq(Term)} and another
+   * for {@link #termFreq(Term)}.
+   * @throws IOException if there is a low-level IO error
+   */
+  public TermStats termStats(Term[] terms) throws IOException {
+    ensureOpen();
+    TermStats stats = new TermStats(terms.length);
+    addTermStats(terms, TermStats.sortedOrder(terms), stats);
+    return stats;
+  }
+
+  /** Adds the frequencies of <code>terms[order[0]]</code>,
+   * <code>terms[order[1]]</code>, ... to <code>stats</code>;
+   * <code>order</code> lists the terms in ascending order. Readers over a
+   * term dictionary override this to read the dictionary sequentially. */
+  void addTermStats(Term[] terms, int[] order, TermStats stats) throws IOException {
+    for (int i = 0; i < terms.length; i++) {
+      stats.docFreqs[i] += docFreq(terms[i]);
+      stats.termFreqs[i] += termFreq(terms[i]);
+    }
+  }
+
+  /** Returns the total number of tokens in <code>field</code>, i.e. the sum
+   * of the collection frequencies of its terms, as stored in the segment
+   * metadata. Returns -1 if any segment was written without field
+   * statistics.
+   * @throws IOException if there is a low-level IO error
+   */
+  public long getSumTotalTermFreq(String field) throws IOException {
+    return -1;
+  }
+
+  /** Returns the number of unique terms in <code>field</code>, or -1 if
+   * unknown. For readers over several segments this is the sum of the
+   * per-segment counts, i.e. an upper bound that is exact once the index
+   * is optimized.
+   * @throws IOException if there is a low-level IO error
+   */
+  public long getUniqueTermCount(String field) throws IOException {
+    return -1;
+  }
+
+  /** Returns the number of documents with at least one term in
+   * <code>field</code>, or -1 if unknown. Deleted documents are counted
+   * until their segment is merged.
+   * @throws IOException if there is a low-level IO error
+   */
+  public int getDocCount(String field) throws IOException {
+    return -1;
+  }
+
+  /** Returns the sum, over the documents not deleted, of the lengths
+   * 1 / norm<sup>2</sup> the scorers decode from the norms of
+   * <code>field</code>. Segments compute it once and keep it until their
+   * norms or deletions change, so a reopened reader only scans the segments
+   * that changed.
+   * @throws IOException if there is a low-level IO error
+   */
+  public double getSumNormLength(String field) throws IOException {
+    ensureOpen();
+    return sumNormLength(this, field);
+  }
+
+  /** Scans the norms of <code>field</code> for {@link
+   * #getSumNormLength(String)}. */
+  static double sumNormLength(IndexReader reader, String field)
+      throws IOException {
+    byte[] norms = reader.norms(field);
+    if (norms == null)
+      return 0;
+    double sum = 0;
+    for (int i = 0; i < norms.length; i++) {
+      if (reader.isDeleted(i))
+        continue;
+      float norm = Similarity.decodeNorm(norms[i]);
+      sum += 1 / (norm * norm);
+    }
+    return sum;
+  }
   
   /** Returns an enumeration of all the documents which contain
    * <code>term</code>. For each document, the document number, the frequency of
@@ -315,14 +315,63 @@ public class MultiReader extends IndexReader {
     return total;
   }
   
-  public int termFreq(Term t) throws IOException {
+  public long termFreq(Term t) throws IOException {
 	    ensureOpen();
-	    int total = 0;          // sum freqs in segments
+	    long total = 0;          // sum freqs in segments
 	    for (int i = 0; i < subReaders.length; i++)
 	      total += subReaders[i].termFreq(t);
 	    return total;
 	  }
 
+  void addTermStats(Term[] terms, int[] order, TermStats stats) throws IOException {
+    for (int i = 0; i < subReaders.length; i++)
+      subReaders[i].addTermStats(terms, order, stats);
+  }
+
+  public long getSumTotalTermFreq(String field) throws IOException {
+    ensureOpen();
+    long total = 0;
+    for (int i = 0; i < subReaders.length; i++) {
+      long sum = subReaders[i].getSumTotalTermFreq(field);
+      if (sum < 0)
+        return -1;
+      total += sum;
+    }
+    return total;
+  }
+
+  public long getUniqueTermCount(String field) throws IOException {
+    ensureOpen();
+    long total = 0;
+    for (int i = 0; i < subReaders.length; i++) {
+      long count = subReaders[i].getUniqueTermCount(field);
+      if (count < 0)
+        return -1;
+      total += count;
+    }
+    return total;
+  }
+
+  public int getDocCount(String field) throws IOException {
+    ensureOpen();
+    int total = 0;
+    for (int i = 0; i < subReaders.length; i++) {
+      int count = subReaders[i].getDocCount(field);
+      if (count < 0)
+        return -1;
+      total += count;
+    }
+    return total;
+  }
+
+  public double getSumNormLength(String field) throws IOException {
+    ensureOpen();
+    double total = 0;
+    for (int i = 0; i < subReaders.length; i++)
+      total += subReaders[i].getSumNormLength(field);
+    return total;
+  }
+
   public TermDocs termDocs() throws IOException {
     ensureOpen();
     return new MultiTermDocs(subReaders, starts);
@@ -364,12 +364,36 @@ public class ParallelReader extends IndexReader {
     return reader==null ? 0 : reader.docFreq(term);
   }
   
-  public int termFreq(Term term) throws IOException {
+  public long termFreq(Term term) throws IOException {
 	    ensureOpen();
 	    IndexReader reader = ((IndexReader)fieldToReader.get(term.field()));
 	    return reader==null ? 0 : reader.termFreq(term);
 	  }
 
+  public long getSumTotalTermFreq(String field) throws IOException {
+    ensureOpen();
+    IndexReader reader = ((IndexReader)fieldToReader.get(field));
+    return reader==null ? 0 : reader.getSumTotalTermFreq(field);
+  }
+
+  public long getUniqueTermCount(String field) throws IOException {
+    ensureOpen();
+    IndexReader reader = ((IndexReader)fieldToReader.get(field));
+    return reader==null ? 0 : reader.getUniqueTermCount(field);
+  }
+
+  public int getDocCount(String field) throws IOException {
+    ensureOpen();
+    IndexReader reader = ((IndexReader)fieldToReader.get(field));
+    return reader==null ? 0 : reader.getDocCount(field);
+  }
+
+  public double getSumNormLength(String field) throws IOException {
+    ensureOpen();
+    IndexReader reader = ((IndexReader)fieldToReader.get(field));
+    return reader==null ? 0 : reader.getSumNormLength(field);
+  }
+
   public TermDocs termDocs(Term term) throws IOException {
     ensureOpen();
     return new ParallelTermDocs(term);
@@ -524,7 +548,7 @@ public class ParallelReader extends IndexReader {
     }
 
 	@Override
-	public int termFreq() {
+	public long termFreq() {
 	      if (termEnum==null)
 	          return 0;
 	        return termEnum.termFreq();
@@ -0,0 +1,131 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.OpenBitSet;
+
+/**
+ * Per-field collection statistics of one segment, indexed by field number:
+ * the total number of tokens (sum of the terms' collection frequencies),
+ * the number of unique terms and the number of documents with at least one
+ * term in the field. They are gathered by {@link TermInfosWriter} while the
+ * term dictionary is written (on flush and on merge) and stored as a trailer
+ * of the <tt>.tis</tt> file, so readers get them in O(#fields) at open time.
+ * Fields without postings in the segment report 0.
+ */
+final class SegmentFieldStats {
+
+  private long[] sumTotalTermFreq = new long[0];
+  private long[] numTerms = new long[0];
+  private int[] docCount = new int[0];
+
+  // documents seen for the field currently being written
+  private OpenBitSet docs;
+  private int docsField = -1;
+
+  /** Records one term of the field with its collection frequency. */
+  void addTerm(int fieldNumber, long totalTermFreq) {
+    ensureField(fieldNumber);
+    sumTotalTermFreq[fieldNumber] += totalTermFreq;
+    numTerms[fieldNumber]++;
+  }
+
+  /** Records that <code>doc</code> has a posting in the field. Fields must
+   * be visited one after the other, as when writing the term dictionary. */
+  void addDoc(int fieldNumber, int doc) {
+    if (fieldNumber != docsField) {
+      finishField();
+      docs = new OpenBitSet();
+      docsField = fieldNumber;
+    }
+    docs.set(doc);
+  }
+
+  private void finishField() {
+    if (docsField >= 0) {
+      ensureField(docsField);
+      docCount[docsField] = (int) docs.cardinality();
+      docs = null;
+      docsField = -1;
+    }
+  }
+
+  private void ensureField(int fieldNumber) {
+    if (fieldNumber >= numTerms.length) {
+      final int oldSize = numTerms.length;
+      final int newSize = ArrayUtil.getNextSize(fieldNumber + 1);
+      sumTotalTermFreq = ArrayUtil.grow(sumTotalTermFreq, newSize);
+      numTerms = ArrayUtil.grow(numTerms, newSize);
+      docCount = ArrayUtil.grow(docCount, newSize);
+      for (int i = oldSize; i < docCount.length; i++)
+        docCount[i] = -1;
+    }
+  }
+
+  private boolean hasTerms(int fieldNumber) {
+    return fieldNumber >= 0 && fieldNumber < numTerms.length && numTerms[fieldNumber] > 0;
+  }
+
+  long getSumTotalTermFreq(int fieldNumber) {
+    return hasTerms(fieldNumber) ? sumTotalTermFreq[fieldNumber] : 0;
+  }
+
+  long getNumTerms(int fieldNumber) {
+    return hasTerms(fieldNumber) ? numTerms[fieldNumber] : 0;
+  }
+
+  /** Returns -1 if the writer did not track the field's documents. */
+  int getDocCount(int fieldNumber) {
+    return hasTerms(fieldNumber) ? docCount[fieldNumber] : 0;
+  }
+
+  void write(IndexOutput output) throws IOException {
+    finishField();
+    int count = 0;
+    for (int i = 0; i < numTerms.length; i++)
+      if (numTerms[i] > 0)
+        count++;
+    output.writeVInt(count);
+    for (int i = 0; i < numTerms.length; i++) {
+      if (numTerms[i] > 0) {
+        output.writeVInt(i);
+        output.writeVLong(sumTotalTermFreq[i]);
+        output.writeVLong(numTerms[i]);
+        output.writeVInt(docCount[i] + 1);      // -1 when docs were not tracked
+      }
+    }
+  }
+
+  static SegmentFieldStats read(IndexInput input) throws IOException {
+    SegmentFieldStats stats = new SegmentFieldStats();
+    final int count = input.readVInt();
+    for (int i = 0; i < count; i++) {
+      final int fieldNumber = input.readVInt();
+      stats.ensureField(fieldNumber);
+      stats.sumTotalTermFreq[fieldNumber] = input.readVLong();
+      stats.numTerms[fieldNumber] = input.readVLong();
+      stats.docCount[fieldNumber] = input.readVInt() - 1;
+    }
+    return stats;
+  }
+}
@@ -580,10 +580,11 @@ final class SegmentMerger {
       proxPointer = 0;
 
     int df;
-    if (fieldInfos.fieldInfo(smis[0].term.field).omitTf) { // append posting data
-      df = appendPostingsNoTf(smis, n);     
+    FieldInfo fi = fieldInfos.fieldInfo(smis[0].term.field);
+    if (fi.omitTf) { // append posting data
+      df = appendPostingsNoTf(smis, n, fi.number);     
     } else{
-      df = appendPostings(smis, n);      
+      df = appendPostings(smis, n, fi.number);      
     }
     
     long skipPointer = skipListWriter.writeSkip(freqOutput);
@@ -618,17 +619,16 @@ final class SegmentMerger {
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  private final int appendPostings(SegmentMergeInfo[] smis, int n)
+  private final int appendPostings(SegmentMergeInfo[] smis, int n, int fieldNumber)
           throws CorruptIndexException, IOException {
     int lastDoc = 0;
     int df = 0;					  // number of docs w/ term
     termFrequency = 0;
     skipListWriter.resetSkip();
-    boolean storePayloads = fieldInfos.fieldInfo(smis[0].term.field).storePayloads;
+    boolean storePayloads = fieldInfos.fieldInfo(fieldNumber).storePayloads;
     int lastPayloadLength = -1;   // ensures that we write the first length
     for (int i = 0; i < n; i++) {
       SegmentMergeInfo smi = smis[i];
-      termFrequency += smi.termEnum.termFreq();
       TermPositions postings = smi.getPositions();
       assert postings != null;
       int base = smi.base;
@@ -645,6 +645,7 @@ final class SegmentMerger {
               " <= " + lastDoc + " )");
 
         df++;
+        termInfosWriter.addDoc(fieldNumber, doc);
 
         if ((df % skipInterval) == 0) {
           skipListWriter.setSkipData(lastDoc, storePayloads, lastPayloadLength);
@@ -655,6 +656,7 @@ final class SegmentMerger {
         lastDoc = doc;
 
         int freq = postings.freq();
+        termFrequency += freq;        // counted here so deleted docs drop out
         if (freq == 1) {
           freqOutput.writeVInt(docCode | 1);	  // write doc & freq=1
         } else {
@@ -695,7 +697,7 @@ final class SegmentMerger {
     return df;
   }
 
-  int termFrequency =0; 
+  long termFrequency =0; 
   
   /** Process postings from multiple segments without tf, all positioned on the
    *  same term. Writes out merged entries only into freqOutput, proxOut is not written.
@@ -706,7 +708,7 @@ final class SegmentMerger {
    * @throws CorruptIndexException if the index is corrupt
    * @throws IOException if there is a low-level IO error
    */
-  private final int appendPostingsNoTf(SegmentMergeInfo[] smis, int n)
+  private final int appendPostingsNoTf(SegmentMergeInfo[] smis, int n, int fieldNumber)
           throws CorruptIndexException, IOException {
     int lastDoc = 0;
     int df = 0;           // number of docs w/ term
@@ -716,7 +718,6 @@ final class SegmentMerger {
     for (int i = 0; i < n; i++) {
       SegmentMergeInfo smi = smis[i];
       TermPositions postings = smi.getPositions();
-      termFrequency += smi.termEnum.termFreq();
       assert postings != null;
       int base = smi.base;
       int[] docMap = smi.getDocMap();
@@ -732,6 +733,8 @@ final class SegmentMerger {
               " <= " + lastDoc + " )");
 
         df++;
+        termFrequency++;              // without tf every posting counts once
+        termInfosWriter.addDoc(fieldNumber, doc);
 
         if ((df % skipInterval) == 0) {
           skipListWriter.setSkipData(lastDoc, false, lastPayloadLength);
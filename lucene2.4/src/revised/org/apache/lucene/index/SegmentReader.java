@@ -174,6 +174,9 @@ class SegmentReader extends DirectoryIndexReader {
   }
   
   Map norms = new HashMap();
+
+  // getSumNormLength per field, dropped when norms or deletions change
+  private Map<String, Double> normLengthSums = new HashMap<String, Double>();
   
   /** The class which implements SegmentReader. */
   private static Class IMPL;
@@ -695,12 +698,14 @@ class SegmentReader extends DirectoryIndexReader {
     undeleteAll = false;
     if (!deletedDocs.getAndSet(docNum))
       pendingDeleteCount++;
+    normLengthSums.clear();
   }
 
   protected void doUndeleteAll() {
       deletedDocs = null;
       deletedDocsDirty = false;
       undeleteAll = true;
+      normLengthSums.clear();
   }
 
   List files() throws IOException {
@@ -756,7 +761,7 @@ class SegmentReader extends DirectoryIndexReader {
       return 0;
   }
   
-  public int termFreq(Term t) throws IOException {
+  public long termFreq(Term t) throws IOException {
 	    ensureOpen();
 	    TermInfo ti = tis.get(t);
 	    if (ti != null)
@@ -765,6 +770,44 @@ class SegmentReader extends DirectoryIndexReader {
 	      return 0;
 	  }
 
+  void addTermStats(Term[] terms, int[] order, TermStats stats) throws IOException {
+    tis.addTermStats(terms, order, stats);
+  }
+
+  public long getSumTotalTermFreq(String field) throws IOException {
+    ensureOpen();
+    FieldInfo fi = fieldInfos.fieldInfo(field);
+    if (fi == null)
+      return 0;
+    return tis.getSumTotalTermFreq(fi.number);
+  }
+
+  public long getUniqueTermCount(String field) throws IOException {
+    ensureOpen();
+    FieldInfo fi = fieldInfos.fieldInfo(field);
+    if (fi == null)
+      return 0;
+    return tis.getUniqueTermCount(fi.number);
+  }
+
+  public int getDocCount(String field) throws IOException {
+    ensureOpen();
+    FieldInfo fi = fieldInfos.fieldInfo(field);
+    if (fi == null)
+      return 0;
+    return tis.getDocCount(fi.number);
+  }
+
+  public synchronized double getSumNormLength(String field) throws IOException {
+    ensureOpen();
+    Double sum = normLengthSums.get(field);
+    if (sum == null) {
+      sum = Double.valueOf(sumNormLength(this, field));
+      normLengthSums.put(field, sum);
+    }
+    return sum.doubleValue();
+  }
+
   public int numDocs() {
     // Don't call ensureOpen() here (it could affect performance)
     int n = maxDoc();
@@ -887,6 +930,7 @@ class SegmentReader extends DirectoryIndexReader {
 
     norm.dirty = true;                            // mark it dirty
     normsDirty = true;
+    normLengthSums.remove(field);
 
     norms(field)[doc] = value;                    // set the value
   }
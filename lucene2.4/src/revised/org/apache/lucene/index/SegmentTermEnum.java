@@ -38,6 +38,7 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
   int indexInterval;
   int skipInterval;
   int maxSkipLevels;
+  long fieldStatsPointer = 0;
   private int formatM1SkipInterval;
 
   SegmentTermEnum(IndexInput i, FieldInfos fis, boolean isi)
@@ -81,6 +82,9 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
           // this new format introduces multi-level skipping
           maxSkipLevels = input.readInt();
         }
+        if (format <= TermInfosWriter.FORMAT_PER_FIELD_STATS) {
+          fieldStatsPointer = input.readLong();
+        }
       }
     }
     if (format > TermInfosWriter.FORMAT_VERSION_UTF8_LENGTH_IN_BYTES) {
@@ -127,7 +131,10 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
     termBuffer.read(input, fieldInfos);
 
     termInfo.docFreq = input.readVInt();	  // read doc freq
-    termInfo.termFreqency = input.readInt();
+    if (format <= TermInfosWriter.FORMAT_PER_FIELD_STATS)
+      termInfo.termFreqency = termInfo.docFreq + input.readVLong();
+    else
+      termInfo.termFreqency = input.readInt();
     termInfo.freqPointer += input.readVLong();	  // read freq pointer
     termInfo.proxPointer += input.readVLong();	  // read prox pointer
     
@@ -203,14 +210,27 @@ final class SegmentTermEnum extends TermEnum implements Cloneable {
     return termInfo.proxPointer;
   }
 
+  /** Reads the per-field statistics stored at the end of the file, or
+   * returns null if the segment was written in an older format. */
+  final SegmentFieldStats readFieldStats() throws IOException {
+    if (fieldStatsPointer <= 0)
+      return null;
+    IndexInput in = (IndexInput) input.clone();
+    try {
+      in.seek(fieldStatsPointer);
+      return SegmentFieldStats.read(in);
+    } finally {
+      in.close();
+    }
+  }
+
   /** Closes the enumeration to further activity, freeing resources. */
   public final void close() throws IOException {
     input.close();
   }
 
 @Override
-public int termFreq() {
-	// TODO Auto-generated method stub
+public long termFreq() {
 	return termInfo.termFreqency;
 }
 }
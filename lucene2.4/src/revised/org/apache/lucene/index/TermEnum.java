@@ -34,7 +34,8 @@ public abstract class TermEnum {
   /** Returns the docFreq of the current Term in the enumeration.*/
   public abstract int docFreq();
 
-  public abstract int termFreq();
+  /** Returns the collection frequency of the current Term in the enumeration.*/
+  public abstract long termFreq();
   /** Closes the enumeration to further activity, freeing resources. */
   public abstract void close() throws IOException;
   
@@ -22,7 +22,8 @@ package org.apache.lucene.index;
 final class TermInfo {
   /** The number of documents which contain the term. */
   int docFreq = 0;
-  int termFreqency =0;
+  /** The number of occurrences of the term in the segment (collection frequency). */
+  long termFreqency =0;
   long freqPointer = 0;
   long proxPointer = 0;
   int skipOffset;
@@ -43,7 +44,7 @@ final class TermInfo {
     termFreqency = ti.termFreqency;
   }
 
-  final void setTermFrequency(int fre){
+  final void setTermFrequency(long fre){
 	  this.termFreqency = fre;
   }
   
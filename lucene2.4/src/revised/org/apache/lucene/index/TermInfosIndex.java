@@ -0,0 +1,314 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.UnicodeUtil;
+
+/**
+ * Compact in-memory form of the term index (<tt>.tii</tt>) used by
+ * {@link TermInfosReader}. Instead of one Term, two Strings and one TermInfo
+ * object per indexed term, the entries are kept in a handful of primitive
+ * arrays:
+ * <ul>
+ * <li>the term texts as prefix-compressed UTF-8 in a single byte[], in blocks
+ * of {@link #BLOCK_SIZE} entries whose first entry is stored in full;</li>
+ * <li>the distinct field names together with the ordinal of their first
+ * entry (entries are sorted by field, so each field is one contiguous run);</li>
+ * <li>parallel int/long arrays for the TermInfo members and the pointer into
+ * the <tt>.tis</tt> file.</li>
+ * </ul>
+ * Lookups binary-search the block heads and then scan at most one block,
+ * comparing UTF-8 bytes in UTF-16 code unit order so the result is identical
+ * to {@link Term#compareTo}.
+ */
+final class TermInfosIndex {
+
+  static final int BLOCK_SIZE = 16;
+
+  private final int size;
+
+  private final String[] fieldNames;   // interned, ascending
+  private final int[] fieldStarts;     // first entry of each field, plus size
+
+  private final byte[] termBytes;      // [prefix VInt][suffix VInt][suffix]*
+  private final int[] blockStarts;     // offset in termBytes of each block head
+  private final int[] blockFields;     // field index of each block head
+
+  private final int[] docFreqs;
+  private final long[] termFreqs;
+  private final long[] freqPointers;
+  private final long[] proxPointers;
+  private final int[] skipOffsets;
+  private final long[] indexPointers;
+
+  /**
+   * Reads every <code>indexDivisor</code>-th entry of the given index
+   * enumeration. The enumeration is consumed but not closed.
+   */
+  TermInfosIndex(SegmentTermEnum indexEnum, int indexDivisor) throws IOException {
+    size = 1 + ((int) indexEnum.size - 1) / indexDivisor;
+
+    docFreqs = new int[size];
+    termFreqs = new long[size];
+    freqPointers = new long[size];
+    proxPointers = new long[size];
+    skipOffsets = new int[size];
+    indexPointers = new long[size];
+    blockStarts = new int[(size + BLOCK_SIZE - 1) / BLOCK_SIZE];
+    blockFields = new int[blockStarts.length];
+
+    String[] fields = new String[4];
+    int[] starts = new int[4];
+    int numFields = 0;
+
+    byte[] bytes = new byte[Math.max(16, size * 8)];
+    int upto = 0;
+    UnicodeUtil.UTF8Result last = new UnicodeUtil.UTF8Result();
+    UnicodeUtil.UTF8Result current = new UnicodeUtil.UTF8Result();
+    TermInfo ti = new TermInfo();
+
+    int count = 0;
+    while (count < size && indexEnum.next()) {
+      Term term = indexEnum.term();
+      indexEnum.termInfo(ti);
+
+      boolean newField = numFields == 0 || fields[numFields - 1] != term.field;
+      if (newField) {
+        if (numFields == fields.length) {
+          String[] newFields = new String[ArrayUtil.getNextSize(numFields + 1)];
+          System.arraycopy(fields, 0, newFields, 0, numFields);
+          fields = newFields;
+          starts = ArrayUtil.grow(starts, newFields.length);
+        }
+        fields[numFields] = term.field;
+        starts[numFields] = count;
+        numFields++;
+      }
+
+      UnicodeUtil.UTF16toUTF8(term.text, 0, term.text.length(), current);
+      int prefix = 0;
+      if (count % BLOCK_SIZE == 0) {
+        blockStarts[count / BLOCK_SIZE] = upto;
+        blockFields[count / BLOCK_SIZE] = numFields - 1;
+      } else if (!newField) {
+        final int limit = Math.min(last.length, current.length);
+        while (prefix < limit && last.result[prefix] == current.result[prefix])
+          prefix++;
+      }
+      final int suffix = current.length - prefix;
+      if (upto + 10 + suffix > bytes.length)
+        bytes = ArrayUtil.grow(bytes, upto + 10 + suffix);
+      upto = writeVInt(bytes, upto, prefix);
+      upto = writeVInt(bytes, upto, suffix);
+      System.arraycopy(current.result, prefix, bytes, upto, suffix);
+      upto += suffix;
+
+      docFreqs[count] = ti.docFreq;
+      termFreqs[count] = ti.termFreqency;
+      freqPointers[count] = ti.freqPointer;
+      proxPointers[count] = ti.proxPointer;
+      skipOffsets[count] = ti.skipOffset;
+      indexPointers[count] = indexEnum.indexPointer;
+      count++;
+
+      UnicodeUtil.UTF8Result tmp = last;
+      last = current;
+      current = tmp;
+
+      for (int j = 1; j < indexDivisor; j++)
+        if (!indexEnum.next())
+          break;
+    }
+
+    fieldNames = new String[numFields];
+    System.arraycopy(fields, 0, fieldNames, 0, numFields);
+    fieldStarts = new int[numFields + 1];
+    System.arraycopy(starts, 0, fieldStarts, 0, numFields);
+    fieldStarts[numFields] = size;
+
+    termBytes = new byte[upto];
+    System.arraycopy(bytes, 0, termBytes, 0, upto);
+  }
+
+  /** Number of entries held in memory. */
+  int size() {
+    return size;
+  }
+
+  /** Approximate heap used by this index, in bytes. */
+  long ramBytesUsed() {
+    return termBytes.length
+      + 4L * (blockStarts.length + blockFields.length + fieldStarts.length)
+      + (4L * 2 + 8L * 4) * size;
+  }
+
+  /**
+   * Returns the offset of the greatest entry which is less than or equal to
+   * the term, or -1 if the term sorts before every entry.
+   * @param target the term text, already converted to UTF-8
+   * @param scratch reusable buffer for decoding entries
+   */
+  int getIndexOffset(String field, UnicodeUtil.UTF8Result target,
+                     UnicodeUtil.UTF8Result scratch) {
+    // binary search the block heads
+    int lo = 0;
+    int hi = blockStarts.length - 1;
+    while (hi >= lo) {
+      int mid = (lo + hi) >>> 1;
+      int pos = blockStarts[mid];
+      pos = skipVInt(termBytes, pos);                  // prefix is always 0
+      int len = readVInt(termBytes, pos);
+      pos = skipVInt(termBytes, pos);
+      int delta = compare(field, target.result, target.length,
+                          fieldNames[blockFields[mid]], termBytes, pos, len);
+      if (delta < 0)
+        hi = mid - 1;
+      else if (delta > 0)
+        lo = mid + 1;
+      else
+        return mid * BLOCK_SIZE;
+    }
+    if (hi < 0)
+      return -1;
+
+    // scan the block: entries after the head are all greater than it
+    final int blockStart = hi * BLOCK_SIZE;
+    final int blockEnd = Math.min(size, blockStart + BLOCK_SIZE);
+    int fieldIdx = blockFields[hi];
+    int pos = blockStarts[hi];
+    for (int i = blockStart; i < blockEnd; i++) {
+      while (fieldStarts[fieldIdx + 1] <= i)
+        fieldIdx++;
+      pos = decode(pos, scratch);
+      if (compare(field, target.result, target.length,
+                  fieldNames[fieldIdx], scratch.result, 0, scratch.length) < 0)
+        return i - 1;
+    }
+    return blockEnd - 1;
+  }
+
+  /** Compares the term to entry <code>i</code>, as {@link Term#compareTo}. */
+  int compareTo(int i, String field, UnicodeUtil.UTF8Result target,
+                UnicodeUtil.UTF8Result scratch) {
+    text(i, scratch);
+    return compare(field, target.result, target.length,
+                   fieldNames[fieldIndex(i)], scratch.result, 0, scratch.length);
+  }
+
+  /** Materializes entry <code>i</code> as a Term. */
+  Term term(int i, UnicodeUtil.UTF8Result scratch, UnicodeUtil.UTF16Result chars) {
+    text(i, scratch);
+    UnicodeUtil.UTF8toUTF16(scratch.result, 0, scratch.length, chars);
+    return new Term(fieldNames[fieldIndex(i)], new String(chars.result, 0, chars.length), false);
+  }
+
+  /** Copies the TermInfo of entry <code>i</code> into <code>ti</code>. */
+  void termInfo(int i, TermInfo ti) {
+    ti.set(docFreqs[i], freqPointers[i], proxPointers[i], skipOffsets[i]);
+    ti.setTermFrequency(termFreqs[i]);
+  }
+
+  long indexPointer(int i) {
+    return indexPointers[i];
+  }
+
+  private int fieldIndex(int i) {
+    int lo = 0;
+    int hi = fieldNames.length - 1;
+    while (hi > lo) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (fieldStarts[mid] <= i)
+        lo = mid;
+      else
+        hi = mid - 1;
+    }
+    return lo;
+  }
+
+  /** Rebuilds the full UTF-8 text of entry <code>i</code> into scratch. */
+  private void text(int i, UnicodeUtil.UTF8Result scratch) {
+    int pos = blockStarts[i / BLOCK_SIZE];
+    for (int j = (i / BLOCK_SIZE) * BLOCK_SIZE; j <= i; j++)
+      pos = decode(pos, scratch);
+  }
+
+  /** Applies the entry at <code>pos</code> on top of scratch; returns the next offset. */
+  private int decode(int pos, UnicodeUtil.UTF8Result scratch) {
+    final int prefix = readVInt(termBytes, pos);
+    pos = skipVInt(termBytes, pos);
+    final int suffix = readVInt(termBytes, pos);
+    pos = skipVInt(termBytes, pos);
+    scratch.setLength(prefix + suffix);
+    System.arraycopy(termBytes, pos, scratch.result, prefix, suffix);
+    return pos + suffix;
+  }
+
+  private static int compare(String field1, byte[] b1, int len1,
+                             String field2, byte[] b2, int off2, int len2) {
+    if (field1 != field2) {                            // fields are interned
+      int c = field1.compareTo(field2);
+      if (c != 0)
+        return c;
+    }
+    final int end = len1 < len2 ? len1 : len2;
+    for (int k = 0; k < end; k++) {
+      int c1 = b1[k] & 0xff;
+      int c2 = b2[off2 + k] & 0xff;
+      if (c1 != c2) {
+        // UTF-8 byte order differs from UTF-16 code unit order only for
+        // surrogate pairs versus U+E000..U+FFFF; fix up lead bytes so that
+        // the comparison matches String.compareTo
+        if (c1 >= 0xee && c2 >= 0xee) {
+          if ((c1 & 0xfe) == 0xee)
+            c1 += 0x0e;
+          if ((c2 & 0xfe) == 0xee)
+            c2 += 0x0e;
+        }
+        return c1 - c2;
+      }
+    }
+    return len1 - len2;
+  }
+
+  private static int writeVInt(byte[] b, int pos, int i) {
+    while ((i & ~0x7F) != 0) {
+      b[pos++] = (byte) ((i & 0x7f) | 0x80);
+      i >>>= 7;
+    }
+    b[pos++] = (byte) i;
+    return pos;
+  }
+
+  private static int readVInt(byte[] b, int pos) {
+    byte v = b[pos++];
+    int i = v & 0x7F;
+    for (int shift = 7; (v & 0x80) != 0; shift += 7) {
+      v = b[pos++];
+      i |= (v & 0x7F) << shift;
+    }
+    return i;
+  }
+
+  private static int skipVInt(byte[] b, int pos) {
+    while ((b[pos++] & 0x80) != 0) {}
+    return pos;
+  }
+}
@@ -22,12 +22,18 @@ import java.io.IOException;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.BufferedIndexInput;
 import org.apache.lucene.util.cache.Cache;
-import org.apache.lucene.util.cache.SimpleLRUCache;
+import org.apache.lucene.util.cache.StripedLRUCache;
 import org.apache.lucene.util.CloseableThreadLocal;
+import org.apache.lucene.util.UnicodeUtil;
+import org.dutir.lucene.util.ApplicationSetup;
 
 /** This stores a monotonically increasing set of <Term, TermInfo> pairs in a
  * Directory.  Pairs are accessed either by Term or by ordinal position the
- * set.  */
+ * set.
+ * <p>The term index is loaded lazily, on the first lookup, into a compact
+ * {@link TermInfosIndex}. Looked-up TermInfos are kept in a cache shared by
+ * all threads, sized by the <tt>TermInfosReader.cacheSize</tt> property
+ * (default 16384 entries per segment).</p> */
 
 final class TermInfosReader {
   private Directory directory;
@@ -37,17 +43,21 @@ final class TermInfosReader {
   private CloseableThreadLocal threadResources = new CloseableThreadLocal();
   private SegmentTermEnum origEnum;
   private long size;
+  private SegmentFieldStats fieldStats;
 
-  private Term[] indexTerms = null;
-  private TermInfo[] indexInfos;
-  private long[] indexPointers;
+  private volatile TermInfosIndex index = null;
   
   private SegmentTermEnum indexEnum;
   
   private int indexDivisor = 1;
   private int totalIndexInterval;
 
-  private final static int DEFAULT_CACHE_SIZE = 1024;
+  private final static int DEFAULT_CACHE_SIZE = Integer.parseInt(
+      ApplicationSetup.getProperty("TermInfosReader.cacheSize", "16384"));
+  private final static int CACHE_CONCURRENCY = 16;
+
+  // Used for caching the least recently looked-up Terms, shared by all threads
+  private final Cache termInfoCache = new StripedLRUCache(DEFAULT_CACHE_SIZE, CACHE_CONCURRENCY);
   
   /**
    * Per-thread resources managed by ThreadLocal
@@ -55,8 +65,11 @@ final class TermInfosReader {
   private static final class ThreadResources {
     SegmentTermEnum termEnum;
     
-    // Used for caching the least recently looked-up Terms
-    Cache termInfoCache;
+    // scratch buffers for comparing against and decoding index entries
+    UnicodeUtil.UTF8Result termBytes = new UnicodeUtil.UTF8Result();
+    UnicodeUtil.UTF8Result scratch = new UnicodeUtil.UTF8Result();
+    UnicodeUtil.UTF16Result chars = new UnicodeUtil.UTF16Result();
+    TermInfo termInfo = new TermInfo();
   }
   
   TermInfosReader(Directory dir, String seg, FieldInfos fis)
@@ -77,6 +90,7 @@ final class TermInfosReader {
           readBufferSize), fieldInfos, false);
       size = origEnum.size;
       totalIndexInterval = origEnum.indexInterval;
+      fieldStats = origEnum.readFieldStats();
 
       indexEnum = new SegmentTermEnum(directory.openInput(segment + "." + IndexFileNames.TERMS_INDEX_EXTENSION,
           readBufferSize), fieldInfos, true);
@@ -125,7 +139,7 @@ final class TermInfosReader {
     if (indexDivisor < 1)
       throw new IllegalArgumentException("indexDivisor must be > 0: got " + indexDivisor);
 
-    if (indexTerms != null)
+    if (index != null)
       throw new IllegalStateException("index terms are already loaded");
 
     this.indexDivisor = indexDivisor;
@@ -145,6 +159,7 @@ final class TermInfosReader {
     if (indexEnum != null)
       indexEnum.close();
     threadResources.close();
+    termInfoCache.close();
   }
 
   /** Returns the number of term/value pairs in the set. */
@@ -152,65 +167,67 @@ final class TermInfosReader {
     return size;
   }
 
+  /** Returns the sum of the collection frequencies of the field's terms,
+   * or -1 if the segment does not store field statistics. */
+  final long getSumTotalTermFreq(int fieldNumber) {
+    return fieldStats == null ? -1 : fieldStats.getSumTotalTermFreq(fieldNumber);
+  }
+
+  /** Returns the number of unique terms of the field, or -1 if unknown. */
+  final long getUniqueTermCount(int fieldNumber) {
+    return fieldStats == null ? -1 : fieldStats.getNumTerms(fieldNumber);
+  }
+
+  /** Returns the number of documents with a posting in the field, or -1 if unknown. */
+  final int getDocCount(int fieldNumber) {
+    return fieldStats == null ? -1 : fieldStats.getDocCount(fieldNumber);
+  }
+
   private ThreadResources getThreadResources() {
     ThreadResources resources = (ThreadResources)threadResources.get();
     if (resources == null) {
       resources = new ThreadResources();
       resources.termEnum = terms();
-      // Cache does not have to be thread-safe, it is only used by one thread at the same time
-      resources.termInfoCache = new SimpleLRUCache(DEFAULT_CACHE_SIZE);
       threadResources.set(resources);
     }
     return resources;
   }
 
-  private synchronized void ensureIndexIsRead() throws IOException {
-    if (indexTerms != null)                                    // index already read
+  private void ensureIndexIsRead() throws IOException {
+    if (index != null)                                         // index already read
       return;                                                  // do nothing
-    try {
-      int indexSize = 1+((int)indexEnum.size-1)/indexDivisor;  // otherwise read index
-
-      indexTerms = new Term[indexSize];
-      indexInfos = new TermInfo[indexSize];
-      indexPointers = new long[indexSize];
-        
-      for (int i = 0; indexEnum.next(); i++) {
-        indexTerms[i] = indexEnum.term();
-        indexInfos[i] = indexEnum.termInfo();
-        indexPointers[i] = indexEnum.indexPointer;
-        
-        for (int j = 1; j < indexDivisor; j++)
-            if (!indexEnum.next())
-                break;
-      }
-    } finally {
+    synchronized (this) {
+      if (index != null)
+        return;
+      try {
+        index = new TermInfosIndex(indexEnum, indexDivisor);   // otherwise read index
+      } finally {
         indexEnum.close();
         indexEnum = null;
+      }
     }
   }
 
+  /** Returns the approximate heap used by the loaded term index, or 0 if it
+   * has not been loaded yet. */
+  final long indexRamBytesUsed() {
+    TermInfosIndex idx = index;
+    return idx == null ? 0 : idx.ramBytesUsed();
+  }
+
   /** Returns the offset of the greatest index entry which is less than or equal to term.*/
-  private final int getIndexOffset(Term term) {
-    int lo = 0;					  // binary search indexTerms[]
-    int hi = indexTerms.length - 1;
-
-    while (hi >= lo) {
-      int mid = (lo + hi) >>> 1;
-      int delta = term.compareTo(indexTerms[mid]);
-      if (delta < 0)
-	hi = mid - 1;
-      else if (delta > 0)
-	lo = mid + 1;
-      else
-	return mid;
-    }
-    return hi;
+  private final int getIndexOffset(Term term, ThreadResources resources) {
+    UnicodeUtil.UTF16toUTF8(term.text, 0, term.text.length(), resources.termBytes);
+    return index.getIndexOffset(term.field, resources.termBytes, resources.scratch);
   }
 
-  private final void seekEnum(SegmentTermEnum enumerator, int indexOffset) throws IOException {
-    enumerator.seek(indexPointers[indexOffset],
+  private final void seekEnum(SegmentTermEnum enumerator, int indexOffset,
+                              ThreadResources resources) throws IOException {
+    index.termInfo(indexOffset, resources.termInfo);
+    enumerator.seek(index.indexPointer(indexOffset),
                    (indexOffset * totalIndexInterval) - 1,
-                   indexTerms[indexOffset], indexInfos[indexOffset]);
+                   index.term(indexOffset, resources.scratch, resources.chars),
+                   resources.termInfo);
   }
 
   /** Returns the TermInfo for a Term in the set, or null. */
@@ -229,7 +246,7 @@ final class TermInfosReader {
     Cache cache = null;
     
     if (useCache) {
-      cache = resources.termInfoCache;
+      cache = termInfoCache;
       // check the cache first if the term was recently looked up
       ti = (TermInfo) cache.get(term);
       if (ti != null) {
@@ -237,40 +254,28 @@ final class TermInfosReader {
       }
     }
     
-    // optimize sequential access: first try scanning cached enum w/o
-		// seeking
-		SegmentTermEnum enumerator = resources.termEnum;
-		if (enumerator.term() != null // term is at or past current
-				&& ((enumerator.prev() != null && term.compareTo(enumerator
-						.prev()) > 0) || term.compareTo(enumerator.term()) >= 0)) {
-			int enumOffset = (int) (enumerator.position / totalIndexInterval) + 1;
-			if (indexTerms.length == enumOffset // but before end of block
-					|| term.compareTo(indexTerms[enumOffset]) < 0) {
-				// no need to seek
-
-				int numScans = enumerator.scanTo(term);
-				if (enumerator.term() != null
-						&& term.compareTo(enumerator.term()) == 0) {
-					ti = enumerator.termInfo();
-					if (cache != null && numScans > 1) {
-						// we only want to put this TermInfo into the cache if
-						// scanEnum skipped more than one dictionary entry.
-						// This prevents RangeQueries or WildcardQueries to
-						// wipe out the cache when they iterate over a large
-						// numbers
-						// of terms in order
-						cache.put(term, ti);
-					}
-				} else {
-					ti = null;
-				}
-
-				return ti;
-			}
-		}
+    // optimize sequential access: first try scanning cached enum w/o seeking
+    SegmentTermEnum enumerator = resources.termEnum;
+    if (canScanTo(term, enumerator, resources)) {
+      int numScans = enumerator.scanTo(term);
+      if (enumerator.term() != null && term.compareTo(enumerator.term()) == 0) {
+        ti = enumerator.termInfo();
+        if (cache != null && numScans > 1) {
+          // we only want to put this TermInfo into the cache if
+          // scanEnum skipped more than one dictionary entry.
+          // This prevents RangeQueries or WildcardQueries to
+          // wipe out the cache when they iterate over a large numbers
+          // of terms in order
+          cache.put(term, ti);
+        }
+      } else {
+        ti = null;
+      }
+      return ti;
+    }
 
     // random-access: must seek
-    seekEnum(enumerator, getIndexOffset(term));
+    seekEnum(enumerator, getIndexOffset(term, resources), resources);
     enumerator.scanTo(term);
     if (enumerator.term() != null && term.compareTo(enumerator.term()) == 0) {
       ti = enumerator.termInfo();
@@ -283,17 +288,72 @@ final class TermInfosReader {
     return ti;
   }
 
+  /** Whether the term lies at or after the enumeration's current term and
+   * before the next index entry, i.e. can be reached without a seek. */
+  private boolean canScanTo(Term term, SegmentTermEnum enumerator, ThreadResources resources) {
+    if (enumerator.term() == null                     // term is at or past current
+        || !((enumerator.prev() != null && term.compareTo(enumerator.prev()) > 0)
+             || term.compareTo(enumerator.term()) >= 0))
+      return false;
+    int enumOffset = (int) (enumerator.position / totalIndexInterval) + 1;
+    return index.size() == enumOffset                 // but before end of block
+      || compareToIndex(term, enumOffset, resources) < 0;
+  }
+
+  /** Adds the docFreq and the collection frequency of
+   * <code>terms[order[0]]</code>, <code>terms[order[1]]</code>, ... to
+   * <code>stats</code>. The terms must be listed in ascending order: the
+   * enumeration then only moves forward, a term in the same index block as
+   * the previous one is reached by scanning and only the others need a
+   * seek. */
+  final void addTermStats(Term[] terms, int[] order, TermStats stats) throws IOException {
+    if (size == 0) return;
+
+    ensureIndexIsRead();
+    ThreadResources resources = getThreadResources();
+    SegmentTermEnum enumerator = resources.termEnum;
+    for (int k = 0; k < order.length; k++) {
+      final int i = order[k];
+      final Term term = terms[i];
+      TermInfo ti = (TermInfo) termInfoCache.get(term);
+      if (ti == null) {
+        boolean seeked = false;
+        if (!canScanTo(term, enumerator, resources)) {
+          seekEnum(enumerator, getIndexOffset(term, resources), resources);
+          seeked = true;
+        }
+        enumerator.scanTo(term);
+        if (enumerator.term() == null)
+          return;                                     // past the last term
+        if (term.compareTo(enumerator.term()) != 0)
+          continue;
+        ti = enumerator.termInfo();
+        if (seeked)
+          termInfoCache.put(term, ti);
+      }
+      stats.docFreqs[i] += ti.docFreq;
+      stats.termFreqs[i] += ti.termFreqency;
+    }
+  }
+
+  private final int compareToIndex(Term term, int indexOffset, ThreadResources resources) {
+    UnicodeUtil.UTF16toUTF8(term.text, 0, term.text.length(), resources.termBytes);
+    return index.compareTo(indexOffset, term.field, resources.termBytes, resources.scratch);
+  }
+
   /** Returns the nth term in the set. */
   final Term get(int position) throws IOException {
     if (size == 0) return null;
 
-    SegmentTermEnum enumerator = getThreadResources().termEnum;
+    ThreadResources resources = getThreadResources();
+    SegmentTermEnum enumerator = resources.termEnum;
     if (enumerator != null && enumerator.term() != null &&
         position >= enumerator.position &&
 	position < (enumerator.position + totalIndexInterval))
       return scanEnum(enumerator, position);      // can avoid seek
 
-    seekEnum(enumerator, position/totalIndexInterval); // must seek
+    ensureIndexIsRead();
+    seekEnum(enumerator, position/totalIndexInterval, resources); // must seek
     return scanEnum(enumerator, position);
   }
 
@@ -310,10 +370,11 @@ final class TermInfosReader {
     if (size == 0) return -1;
 
     ensureIndexIsRead();
-    int indexOffset = getIndexOffset(term);
+    ThreadResources resources = getThreadResources();
+    int indexOffset = getIndexOffset(term, resources);
     
-    SegmentTermEnum enumerator = getThreadResources().termEnum;
-    seekEnum(enumerator, indexOffset);
+    SegmentTermEnum enumerator = resources.termEnum;
+    seekEnum(enumerator, indexOffset, resources);
 
     while(term.compareTo(enumerator.term()) > 0 && enumerator.next()) {}
 
@@ -34,20 +34,22 @@ final class TermInfosWriter {
   // length-in-chars
   public static final int FORMAT_VERSION_UTF8_LENGTH_IN_BYTES = -4;
 
+  // Collection frequency stored as VLong(ctf - df) instead of a fixed
+  // int, and a trailer with per-field statistics (see SegmentFieldStats)
+  // whose file pointer is stored in the header
+  public static final int FORMAT_PER_FIELD_STATS = -5;
+
   // NOTE: always change this if you switch to a new format!
-  public static final int FORMAT_CURRENT = FORMAT_VERSION_UTF8_LENGTH_IN_BYTES;
+  public static final int FORMAT_CURRENT = FORMAT_PER_FIELD_STATS;
 
   private FieldInfos fieldInfos;
   private IndexOutput output;
   private TermInfo lastTi = new TermInfo();
   private long size;
 
-  private int termFrequency =0;
-  
-  public void setTermFrequency(int fre){
-	  this.termFrequency = fre;
-  }
-  
+  /** Per-field statistics gathered while terms are added; null for the index. */
+  private SegmentFieldStats fieldStats;
+
   // TODO: the default values for these two parameters should be settable from
   // IndexWriter.  However, once that's done, folks will start setting them to
   // ridiculous values and complaining that things don't work well, as with
@@ -107,6 +109,9 @@ final class TermInfosWriter {
     output.writeInt(indexInterval);               // write indexInterval
     output.writeInt(skipInterval);                // write skipInterval
     output.writeInt(maxSkipLevels);               // write maxSkipLevels
+    output.writeLong(0);                          // leave space for field stats pointer
+    if (!isIndex)
+      fieldStats = new SegmentFieldStats();
     assert initUTF16Results();
   }
 
@@ -176,8 +181,9 @@ final class TermInfosWriter {
 
     writeTerm(fieldNumber, termBytes, termBytesLength);                        // write term
 
+    assert ti.termFreqency >= ti.docFreq: "termFreq < docFreq (" + ti.termFreqency + " < " + ti.docFreq + ")";
     output.writeVInt(ti.docFreq);                       // write doc freq
-    output.writeInt(ti.termFreqency);
+    output.writeVLong(ti.termFreqency - ti.docFreq);    // write collection freq
     output.writeVLong(ti.freqPointer - lastTi.freqPointer); // write pointers
     output.writeVLong(ti.proxPointer - lastTi.proxPointer);
 
@@ -190,6 +196,9 @@ final class TermInfosWriter {
       lastIndexPointer = other.output.getFilePointer(); // write pointer
     }
 
+    if (fieldStats != null)
+      fieldStats.addTerm(fieldNumber, ti.termFreqency);
+
     lastFieldNumber = fieldNumber;
     lastTi.set(ti);
     size++;
@@ -222,10 +231,24 @@ final class TermInfosWriter {
     lastTermBytesLength = termBytesLength;
   }
 
+  /** Records that <code>doc</code> has a posting for the field. Called by
+   * the postings writers so that the per-field document count is stored
+   * along with the other field statistics. */
+  void addDoc(int fieldNumber, int doc) {
+    fieldStats.addDoc(fieldNumber, doc);
+  }
+
   /** Called to complete TermInfos creation. */
   void close() throws IOException {
+    long fieldStatsPointer = 0;
+    if (fieldStats != null) {
+      fieldStatsPointer = output.getFilePointer();
+      fieldStats.write(output);
+    }
     output.seek(4);          // write size after format
     output.writeLong(size);
+    output.seek(24);         // write field stats pointer after maxSkipLevels
+    output.writeLong(fieldStatsPointer);
     output.close();
 
     if (!isIndex)
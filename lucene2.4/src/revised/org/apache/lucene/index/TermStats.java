@@ -0,0 +1,64 @@
+package org.apache.lucene.index;
+
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * The document frequencies and collection frequencies of an array of terms,
+ * as returned by {@link IndexReader#termStats(Term[])}: entry <code>i</code>
+ * of each array belongs to term <code>i</code> of the request. Terms which
+ * do not occur have 0 in both arrays.
+ */
+public class TermStats implements java.io.Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  public final int[] docFreqs;
+  public final long[] termFreqs;
+
+  public TermStats(int size) {
+    docFreqs = new int[size];
+    termFreqs = new long[size];
+  }
+
+  /** Adds the frequencies of another part of the index, for the same terms. */
+  public void add(TermStats other) {
+    for (int i = 0; i < docFreqs.length; i++) {
+      docFreqs[i] += other.docFreqs[i];
+      termFreqs[i] += other.termFreqs[i];
+    }
+  }
+
+  /** Returns the positions of the terms in {@link Term#compareTo} order. */
+  static int[] sortedOrder(final Term[] terms) {
+    Integer[] order = new Integer[terms.length];
+    for (int i = 0; i < order.length; i++)
+      order[i] = Integer.valueOf(i);
+    Arrays.sort(order, new Comparator<Integer>() {
+      public int compare(Integer a, Integer b) {
+        return terms[a.intValue()].compareTo(terms[b.intValue()]);
+      }
+    });
+    int[] result = new int[order.length];
+    for (int i = 0; i < result.length; i++)
+      result[i] = order[i].intValue();
+    return result;
+  }
+}
@@ -58,7 +58,7 @@ public abstract class FilteredTermEnum extends TermEnum {
         return actualEnum.docFreq();
     }
     
-    public  int termFreq(){
+    public  long termFreq(){
         if (actualEnum == null) return -1;
         return actualEnum.termFreq();
     }
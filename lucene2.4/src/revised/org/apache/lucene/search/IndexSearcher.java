@@ -22,8 +22,10 @@ import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.apache.lucene.search.model.Statistics;
 import org.apache.lucene.store.Directory;
+import org.dutir.lucene.StoredDocumentStore;
 
 import java.io.IOException;
 
@@ -40,6 +42,10 @@ public class IndexSearcher extends Searcher {
 	IndexReader reader;
 	
 	private boolean closeReader;
+	/** the block-compressed stored fields of the index, if any */
+	private StoredDocumentStore store;
+	/** written after store, so a thread that sees it set sees the store */
+	private volatile boolean storeOpened = false;
 
 	/** Creates a searcher searching the index in the named directory.
 	 * @throws CorruptIndexException if the index is corrupt
@@ -89,14 +95,33 @@ public class IndexSearcher extends Searcher {
 		return reader.docFreq(term);
 	}
 
+	/**
+	 * looked up on the first document fetched: the searchers an IndexWriter
+	 * opens on its segments never fetch one. Threads racing on the first
+	 * fetch get the same store, as the stores are shared by file.
+	 */
+	private StoredDocumentStore store() {
+		if (!storeOpened) {
+			store = StoredDocumentStore.get(reader);
+			storeOpened = true;
+		}
+		return store;
+	}
+
 	// inherit javadoc
 	public Document doc(int i) throws CorruptIndexException, IOException {
+		StoredDocumentStore stored = store();
+		if (stored != null && !reader.isDeleted(i))
+			return stored.document(i);
 		return reader.document(i);
 	}
 
 	// inherit javadoc
 	public Document doc(int i, FieldSelector fieldSelector)
 			throws CorruptIndexException, IOException {
+		StoredDocumentStore stored = store();
+		if (stored != null && !reader.isDeleted(i))
+			return stored.document(i, fieldSelector);
 		return reader.document(i, fieldSelector);
 	}
 
@@ -175,15 +200,23 @@ public class IndexSearcher extends Searcher {
 	}
 
 	@Override
-	public int termFreq(Term term) throws IOException {
+	public long termFreq(Term term) throws IOException {
 		return reader.termFreq(term);
 	}
 
+	public TermStats termStats(Term[] terms) throws IOException {
+		return reader.termStats(terms);
+	}
+
+	public int[] docFreqs(Term[] terms) throws IOException {
+		return reader.termStats(terms).docFreqs;
+	}
+
 	public float[] termFreqs(Term[] allTermsArray) throws IOException {
-		// TODO Auto-generated method stub
-		float[] retValue = new float[allTermsArray.length];
+		long[] termFreqs = reader.termStats(allTermsArray).termFreqs;
+		float[] retValue = new float[termFreqs.length];
 		for(int i=0; i < retValue.length; i++){
-			retValue[i] = termFreq(allTermsArray[i]);
+			retValue[i] = termFreqs[i];
 		}
 		return retValue;
 	}
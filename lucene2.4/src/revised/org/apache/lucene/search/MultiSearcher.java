@@ -23,9 +23,11 @@ import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.dutir.lucene.util.TermsCache;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -111,8 +113,8 @@ public class MultiSearcher extends Searcher {
 		}
 		
 		@Override
-		public int termFreq(Term term) throws IOException {
-			int tf = 0;
+		public long termFreq(Term term) throws IOException {
+			long tf = 0;
 //			try {
 //				Integer inter = (Integer)numTokensMap.get(term);
 //				if(inter != null){
@@ -128,10 +130,10 @@ public class MultiSearcher extends Searcher {
 //				e.printStackTrace();
 //			}
 			if(term.equals(curTerm)){
-				tf =  (int) curItem.ctf;
+				tf =  (long) curItem.ctf;
 			}else{
 				curItem = tcache.getItem(term, cSearcher);
-				tf = (int) curItem.ctf;
+				tf = (long) curItem.ctf;
 			}
 			return tf;
 		}
@@ -448,6 +450,7 @@ public class MultiSearcher extends Searcher {
 		// step3
 		Term[] allTermsArray = new Term[terms.size()];
 		terms.toArray(allTermsArray);
+		tcache.validate(this);
 //		int[] aggregatedDfs = new int[terms.size()];
 //		float[] aggregatedTFs = new float[terms.size()];
 //		
@@ -460,16 +463,21 @@ public class MultiSearcher extends Searcher {
 //			}
 //		}
 		
+		// one bulk call per searchable for the terms not cached yet, instead
+		// of two calls per term and searchable (each a round trip when the
+		// searchable is remote, two dictionary lookups when it is local)
+		ArrayList<Term> missing = new ArrayList<Term>();
 		for(int i=0; i < allTermsArray.length; i ++){
-			Term term = allTermsArray[i];
-			if(!tcache.contain(term)){
-				int df =0;
-				float tfs =0;
-				for (int j = 0; j < searchables.length; j++) {
-					df += searchables[j].docFreq(term);
-					tfs += searchables[j].termFreq(term);
-				}
-				tcache.put(term, new TermsCache.Item(df, tfs));
+			if(!tcache.contain(allTermsArray[i])){
+				missing.add(allTermsArray[i]);
+			}
+		}
+		if (missing.size() > 0) {
+			Term[] missingTerms = missing.toArray(new Term[missing.size()]);
+			TermStats stats = termStats(missingTerms);
+			for (int i = 0; i < missingTerms.length; i++) {
+				tcache.put(missingTerms[i], new TermsCache.Item(
+						stats.docFreqs[i], stats.termFreqs[i]));
 			}
 		}
 
@@ -491,8 +499,8 @@ public class MultiSearcher extends Searcher {
 	}
 
 	@Override
-	public int termFreq(Term term) throws IOException {
-		int termFreq = 0;
+	public long termFreq(Term term) throws IOException {
+		long termFreq = 0;
 		for (int i = 0; i < searchables.length; i++)
 			termFreq += searchables[i].termFreq(term);
 		return termFreq;
@@ -536,9 +544,23 @@ public class MultiSearcher extends Searcher {
 		return retValue;
 	}
 
-	public float[] termFreqs(Term[] allTermsArray) {
-		// TODO Auto-generated method stub
-		throw new RuntimeException();
+	public TermStats termStats(Term[] terms) throws IOException {
+		TermStats stats = new TermStats(terms.length);
+		for (int i = 0; i < searchables.length; i++)
+			stats.add(searchables[i].termStats(terms));
+		return stats;
+	}
+
+	public int[] docFreqs(Term[] terms) throws IOException {
+		return termStats(terms).docFreqs;
+	}
+
+	public float[] termFreqs(Term[] allTermsArray) throws IOException {
+		long[] termFreqs = termStats(allTermsArray).termFreqs;
+		float[] result = new float[termFreqs.length];
+		for (int i = 0; i < result.length; i++)
+			result[i] = termFreqs[i];
+		return result;
 	}
 
 }
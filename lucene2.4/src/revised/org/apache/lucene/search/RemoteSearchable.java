@@ -21,6 +21,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.apache.lucene.index.CorruptIndexException;
 
 import java.io.IOException;
@@ -65,6 +66,10 @@ public class RemoteSearchable
     return local.docFreqs(terms);
   }
 
+  public TermStats termStats(Term[] terms) throws IOException {
+    return local.termStats(terms);
+  }
+
   public int maxDoc() throws IOException {
     return local.maxDoc();
   }
@@ -121,7 +126,7 @@ public class RemoteSearchable
   }
 
 
-public int termFreq(Term term) throws IOException {
+public long termFreq(Term term) throws IOException {
 	return local.termFreq(term);
 }
 
@@ -21,6 +21,7 @@ import org.apache.lucene.document.Document;
 import org.apache.lucene.document.FieldSelector;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.apache.lucene.index.CorruptIndexException;
 
 import java.io.IOException;       // for javadoc
@@ -69,13 +70,24 @@ public interface Searchable extends java.rmi.Remote {
   int docFreq(Term term) throws IOException;
   
   float[] termFreqs(Term[] allTermsArray)throws IOException;
-  int termFreq(Term term) throws IOException;
+  /** Expert: Returns the total number of occurrences of <code>term</code>.
+   * @see IndexReader#termFreq(Term)
+   */
+  long termFreq(Term term) throws IOException;
   /** Expert: For each term in the terms array, calculates the number of
    * documents containing <code>term</code>. Returns an array with these
    * document frequencies. Used to minimize number of remote calls.
    */
   int[] docFreqs(Term[] terms) throws IOException;
 
+  /** Expert: Returns the document frequency and the total number of
+   * occurrences of every term in the array, looked up together. Used by
+   * weighting models, so that a term costs one dictionary lookup (and one
+   * remote call per array) rather than two.
+   * @see IndexReader#termStats(Term[])
+   */
+  TermStats termStats(Term[] terms) throws IOException;
+
   /** Expert: Returns one greater than the largest possible document number.
    * Called by search code to compute term weights.
    * @see IndexReader#maxDoc()
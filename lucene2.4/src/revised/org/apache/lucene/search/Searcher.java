@@ -22,6 +22,7 @@ import java.io.IOException;
 import org.apache.log4j.Logger;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermStats;
 import org.apache.lucene.document.Document;
 import org.dutir.lucene.ISManager;
 
@@ -189,6 +190,16 @@ public abstract class Searcher implements Searchable {
       return query.weight(this);
   }
 
+  // inherit javadoc
+  public TermStats termStats(Term[] terms) throws IOException {
+    TermStats stats = new TermStats(terms.length);
+    for (int i = 0; i < terms.length; i++) {
+      stats.docFreqs[i] = docFreq(terms[i]);
+      stats.termFreqs[i] = termFreq(terms[i]);
+    }
+    return stats;
+  }
+
   // inherit javadoc
   public int[] docFreqs(Term[] terms) throws IOException {
     int[] result = new int[terms.length];
@@ -204,7 +215,7 @@ public abstract class Searcher implements Searchable {
   abstract public void search(Weight weight, Filter filter, HitCollector results) throws IOException;
   abstract public void close() throws IOException;
   abstract public int docFreq(Term term) throws IOException;
-  abstract public int termFreq(Term term) throws IOException;
+  abstract public long termFreq(Term term) throws IOException;
   abstract public int maxDoc() throws IOException;
   abstract public TopDocs search(Weight weight, Filter filter, int n) throws IOException;
   abstract public Document doc(int i) throws CorruptIndexException, IOException;